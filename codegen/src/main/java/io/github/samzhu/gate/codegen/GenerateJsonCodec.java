@@ -0,0 +1,18 @@
+package io.github.samzhu.gate.codegen;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a model class for build-time generation of a Jackson serializer and deserializer.
+ *
+ * The class must have a no-arg constructor and getters/setters following the JavaBean
+ * naming convention (as generated by Lombok {@code @Data}). The generated codecs are
+ * collected into a {@code GeneratedJsonCodecs} module in the same package.
+ */
+@Retention(RetentionPolicy.SOURCE)
+@Target(ElementType.TYPE)
+public @interface GenerateJsonCodec {
+}
@@ -0,0 +1,417 @@
+package io.github.samzhu.gate.codegen;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.AnnotationMirror;
+import javax.lang.model.element.AnnotationValue;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.tools.Diagnostic;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+
+/**
+ * Generates Jackson serializers and deserializers for classes annotated with
+ * {@link GenerateJsonCodec}, so the runtime (and the native image) does not need
+ * reflective bean introspection for them.
+ *
+ * Field types the generator does not handle directly (dates, collections, nested models)
+ * are delegated back to Jackson, which resolves them through the regular lookup.
+ *
+ * Only the Jackson annotations the generator implements are accepted: {@code @JsonInclude}
+ * (NON_NULL or ALWAYS) and {@code @JsonIgnoreProperties(ignoreUnknown)} on the class,
+ * {@code @JsonProperty} (name only) and {@code @JsonIgnore} on fields. Any other Jackson
+ * annotation is a compile error, since the generated codec would silently not honor it.
+ */
+@SupportedAnnotationTypes("io.github.samzhu.gate.codegen.GenerateJsonCodec")
+public class JsonCodecProcessor extends AbstractProcessor {
+
+    private static final String CODEC_SUFFIX = "JsonCodec";
+    private static final String MODULE_NAME = "GeneratedJsonCodecs";
+
+    private static final String JSON_PROPERTY = "com.fasterxml.jackson.annotation.JsonProperty";
+    private static final String JSON_IGNORE = "com.fasterxml.jackson.annotation.JsonIgnore";
+    private static final String JSON_INCLUDE = "com.fasterxml.jackson.annotation.JsonInclude";
+    private static final String JSON_IGNORE_PROPERTIES = "com.fasterxml.jackson.annotation.JsonIgnoreProperties";
+    private static final List<String> JACKSON_ANNOTATION_PACKAGES = List.of(
+            "com.fasterxml.jackson.annotation.", "com.fasterxml.jackson.databind.annotation.");
+    private static final Set<String> TYPE_ANNOTATIONS = Set.of(JSON_INCLUDE, JSON_IGNORE_PROPERTIES);
+    private static final Set<String> FIELD_ANNOTATIONS = Set.of(JSON_PROPERTY, JSON_IGNORE);
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        Map<String, List<TypeElement>> typesByPackage = new TreeMap<>();
+
+        for (Element element : roundEnv.getElementsAnnotatedWith(GenerateJsonCodec.class)) {
+            if (element.getKind() != ElementKind.CLASS || element.getModifiers().contains(Modifier.ABSTRACT)) {
+                error(element, "@GenerateJsonCodec requires a concrete class");
+                continue;
+            }
+            TypeElement type = (TypeElement) element;
+            if (type.getNestingKind().isNested() && !type.getModifiers().contains(Modifier.STATIC)) {
+                error(element, "@GenerateJsonCodec requires nested classes to be static");
+                continue;
+            }
+            if (!checkAnnotations(type)) {
+                continue;
+            }
+            writeCodec(type);
+            typesByPackage.computeIfAbsent(packageOf(type), key -> new ArrayList<>()).add(type);
+        }
+
+        typesByPackage.forEach(this::writeModule);
+        return true;
+    }
+
+    private void writeCodec(TypeElement type) {
+        String packageName = packageOf(type);
+        String codecName = codecName(type);
+        String typeName = type.getQualifiedName().toString();
+        List<Property> properties = properties(type);
+        boolean skipNulls = "NON_NULL".equals(enumValue(type, JSON_INCLUDE, "value"));
+        boolean ignoreUnknown = Boolean.TRUE.equals(value(type, JSON_IGNORE_PROPERTIES, "ignoreUnknown"));
+
+        StringBuilder src = new StringBuilder();
+        src.append("package ").append(packageName).append(";\n\n");
+        src.append("import com.fasterxml.jackson.core.JsonGenerator;\n");
+        src.append("import com.fasterxml.jackson.core.JsonParser;\n");
+        src.append("import com.fasterxml.jackson.core.JsonToken;\n");
+        src.append("import com.fasterxml.jackson.core.type.TypeReference;\n");
+        src.append("import com.fasterxml.jackson.databind.DeserializationContext;\n");
+        src.append("import com.fasterxml.jackson.databind.SerializerProvider;\n");
+        src.append("import com.fasterxml.jackson.databind.deser.std.StdDeserializer;\n");
+        src.append("import com.fasterxml.jackson.databind.ser.std.StdSerializer;\n\n");
+        src.append("import java.io.IOException;\n\n");
+        src.append("/**\n * Jackson codec for {@link ").append(typeName).append("}.\n */\n");
+        src.append("@javax.annotation.processing.Generated(\"").append(getClass().getName()).append("\")\n");
+        src.append("public final class ").append(codecName).append(" {\n\n");
+
+        for (Property property : properties) {
+            if (property.kind() == ValueKind.GENERIC) {
+                src.append("    private static final TypeReference<").append(property.type()).append("> ")
+                        .append(property.typeConstant()).append(" = new TypeReference<>() {};\n");
+            }
+        }
+
+        src.append("\n    private ").append(codecName).append("() {\n    }\n\n");
+
+        // Serializer
+        src.append("    public static final class Serializer extends StdSerializer<").append(typeName).append("> {\n\n");
+        src.append("        public Serializer() {\n            super(").append(typeName).append(".class);\n        }\n\n");
+        src.append("        @Override\n");
+        src.append("        public void serialize(").append(typeName)
+                .append(" value, JsonGenerator gen, SerializerProvider provider) throws IOException {\n");
+        src.append("            gen.writeStartObject(value);\n");
+        for (Property property : properties) {
+            writeSerializeField(src, property, skipNulls);
+        }
+        src.append("            gen.writeEndObject();\n        }\n    }\n\n");
+
+        // Deserializer
+        src.append("    public static final class Deserializer extends StdDeserializer<").append(typeName).append("> {\n\n");
+        src.append("        public Deserializer() {\n            super(").append(typeName).append(".class);\n        }\n\n");
+        src.append("        @Override\n");
+        src.append("        public ").append(typeName)
+                .append(" deserialize(JsonParser p, DeserializationContext ctxt) throws IOException {\n");
+        src.append("            JsonToken token = p.currentToken();\n");
+        src.append("            if (token == JsonToken.START_OBJECT) {\n");
+        src.append("                token = p.nextToken();\n");
+        src.append("            } else if (token != JsonToken.FIELD_NAME && token != JsonToken.END_OBJECT) {\n");
+        src.append("                return (").append(typeName).append(") ctxt.handleUnexpectedToken(handledType(), p);\n");
+        src.append("            }\n\n");
+        src.append("            ").append(typeName).append(" result = new ").append(typeName).append("();\n");
+        src.append("            for (; token == JsonToken.FIELD_NAME; token = p.nextToken()) {\n");
+        src.append("                String name = p.currentName();\n");
+        src.append("                p.nextToken();\n");
+        src.append("                switch (name) {\n");
+        for (Property property : properties) {
+            src.append("                    case \"").append(property.jsonName()).append("\" -> result.")
+                    .append(property.setter()).append("(").append(readExpression(property)).append(");\n");
+        }
+        if (ignoreUnknown) {
+            src.append("                    default -> p.skipChildren();\n");
+        } else {
+            src.append("                    default -> handleUnknownProperty(p, ctxt, result, name);\n");
+        }
+        src.append("                }\n            }\n            return result;\n        }\n    }\n\n");
+
+        src.append("    private static <V> V read(JsonParser p, DeserializationContext ctxt, Class<V> type) throws IOException {\n");
+        src.append("        return p.currentToken() == JsonToken.VALUE_NULL ? null : ctxt.readValue(p, type);\n    }\n\n");
+        src.append("    private static <V> V read(JsonParser p, DeserializationContext ctxt, TypeReference<V> type) throws IOException {\n");
+        src.append("        return p.currentToken() == JsonToken.VALUE_NULL ? null\n");
+        src.append("                : ctxt.readValue(p, ctxt.getTypeFactory().constructType(type));\n    }\n");
+        src.append("}\n");
+
+        writeSource(packageName + "." + codecName, src, type);
+    }
+
+    private void writeSerializeField(StringBuilder src, Property property, boolean skipNulls) {
+        String name = "\"" + property.jsonName() + "\"";
+        String getter = "value." + property.getter() + "()";
+        switch (property.kind()) {
+            case PRIMITIVE_NUMBER -> src.append("            gen.writeNumberField(").append(name).append(", ")
+                    .append(getter).append(");\n");
+            case PRIMITIVE_BOOLEAN -> src.append("            gen.writeBooleanField(").append(name).append(", ")
+                    .append(getter).append(");\n");
+            default -> {
+                String write = switch (property.kind()) {
+                    case STRING -> "gen.writeStringField(" + name + ", v)";
+                    case BOXED_NUMBER -> "gen.writeNumberField(" + name + ", v)";
+                    case BOXED_BOOLEAN -> "gen.writeBooleanField(" + name + ", v)";
+                    default -> "provider.defaultSerializeField(" + name + ", v, gen)";
+                };
+                src.append("            {\n");
+                src.append("                ").append(property.type()).append(" v = ").append(getter).append(";\n");
+                src.append("                if (v != null) {\n");
+                src.append("                    ").append(write).append(";\n");
+                src.append("                }");
+                if (!skipNulls) {
+                    src.append(" else {\n                    gen.writeNullField(").append(name).append(");\n                }");
+                }
+                src.append("\n            }\n");
+            }
+        }
+    }
+
+    private String readExpression(Property property) {
+        return switch (property.kind()) {
+            case STRING -> "p.currentToken() == JsonToken.VALUE_STRING ? p.getText() : read(p, ctxt, String.class)";
+            case PRIMITIVE_BOOLEAN -> "p.getValueAsBoolean()";
+            case PRIMITIVE_NUMBER -> switch (property.type()) {
+                case "long" -> "p.getValueAsLong()";
+                case "double", "float" -> "(" + property.type() + ") p.getValueAsDouble()";
+                default -> "(" + property.type() + ") p.getValueAsInt()";
+            };
+            case GENERIC -> "read(p, ctxt, " + property.typeConstant() + ")";
+            default -> "read(p, ctxt, " + property.erasure() + ".class)";
+        };
+    }
+
+    private void writeModule(String packageName, List<TypeElement> types) {
+        StringBuilder src = new StringBuilder();
+        src.append("package ").append(packageName).append(";\n\n");
+        src.append("import com.fasterxml.jackson.databind.module.SimpleModule;\n\n");
+        src.append("/**\n * Registers the generated Jackson codecs of this package.\n */\n");
+        src.append("@javax.annotation.processing.Generated(\"").append(getClass().getName()).append("\")\n");
+        src.append("public final class ").append(MODULE_NAME).append(" extends SimpleModule {\n\n");
+        src.append("    public ").append(MODULE_NAME).append("() {\n");
+        src.append("        super(\"").append(MODULE_NAME).append("\");\n");
+        for (TypeElement type : types) {
+            String typeName = type.getQualifiedName().toString();
+            String codecName = codecName(type);
+            src.append("        addSerializer(").append(typeName).append(".class, new ")
+                    .append(codecName).append(".Serializer());\n");
+            src.append("        addDeserializer(").append(typeName).append(".class, new ")
+                    .append(codecName).append(".Deserializer());\n");
+        }
+        src.append("    }\n}\n");
+
+        writeSource(packageName + "." + MODULE_NAME, src, types.toArray(new Element[0]));
+    }
+
+    /**
+     * Reports Jackson annotations the generated codec would not honor.
+     * Lombok copies field annotations onto the accessors it generates, so accessors of
+     * fields may carry the field annotations; other methods and constructors may only
+     * be excluded with {@code @JsonIgnore}.
+     *
+     * @return true if the class only uses supported annotations
+     */
+    private boolean checkAnnotations(TypeElement type) {
+        boolean supported = checkAnnotations(type, TYPE_ANNOTATIONS);
+        Set<String> accessors = new HashSet<>();
+        for (VariableElement field : ElementFilter.fieldsIn(type.getEnclosedElements())) {
+            supported &= checkAnnotations(field, FIELD_ANNOTATIONS);
+            String fieldName = field.getSimpleName().toString();
+            String capitalized = Character.toUpperCase(fieldName.charAt(0)) + fieldName.substring(1);
+            accessors.addAll(List.of("get" + capitalized, "is" + capitalized, "set" + capitalized));
+        }
+        for (Element member : type.getEnclosedElements()) {
+            if (member instanceof ExecutableElement executable) {
+                boolean accessor = executable.getKind() == ElementKind.METHOD
+                        && accessors.contains(executable.getSimpleName().toString());
+                supported &= checkAnnotations(executable, accessor ? FIELD_ANNOTATIONS : Set.of(JSON_IGNORE));
+                for (VariableElement parameter : executable.getParameters()) {
+                    // Without @JsonCreator, parameter names are never read
+                    supported &= checkAnnotations(parameter, Set.of(JSON_PROPERTY));
+                }
+            }
+        }
+        return supported;
+    }
+
+    private boolean checkAnnotations(Element element, Set<String> allowed) {
+        boolean supported = true;
+        for (AnnotationMirror mirror : element.getAnnotationMirrors()) {
+            String annotationType = mirror.getAnnotationType().toString();
+            if (JACKSON_ANNOTATION_PACKAGES.stream().noneMatch(annotationType::startsWith)) {
+                continue;
+            }
+            String unsupported = !allowed.contains(annotationType)
+                    ? "is not supported"
+                    : unsupportedUsage(element, annotationType, mirror);
+            if (unsupported != null) {
+                processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+                        "@" + mirror.getAnnotationType().asElement().getSimpleName() + " " + unsupported
+                                + " by @GenerateJsonCodec", element, mirror);
+                supported = false;
+            }
+        }
+        return supported;
+    }
+
+    /**
+     * Checks the attributes of a supported annotation.
+     *
+     * @return Why this usage is not supported, or null if it is
+     */
+    private String unsupportedUsage(Element element, String annotationType, AnnotationMirror mirror) {
+        Set<String> attributes = new HashSet<>();
+        mirror.getElementValues().keySet().forEach(key -> attributes.add(key.getSimpleName().toString()));
+        return switch (annotationType) {
+            case JSON_PROPERTY -> attributes.equals(Set.of()) || attributes.equals(Set.of("value"))
+                    ? null : "with attributes other than value is not supported";
+            case JSON_IGNORE -> Boolean.FALSE.equals(value(element, JSON_IGNORE, "value"))
+                    ? "with value false is not supported" : null;
+            case JSON_INCLUDE -> {
+                String include = enumValue(element, JSON_INCLUDE, "value");
+                boolean onlyValue = attributes.equals(Set.of()) || attributes.equals(Set.of("value"));
+                yield onlyValue && (include == null || include.equals("NON_NULL") || include.equals("ALWAYS"))
+                        ? null : "other than NON_NULL or ALWAYS is not supported";
+            }
+            case JSON_IGNORE_PROPERTIES -> attributes.equals(Set.of()) || attributes.equals(Set.of("ignoreUnknown"))
+                    ? null : "with attributes other than ignoreUnknown is not supported";
+            default -> null;
+        };
+    }
+
+    private List<Property> properties(TypeElement type) {
+        List<Property> properties = new ArrayList<>();
+        for (VariableElement field : ElementFilter.fieldsIn(type.getEnclosedElements())) {
+            Set<Modifier> modifiers = field.getModifiers();
+            if (modifiers.contains(Modifier.STATIC) || modifiers.contains(Modifier.TRANSIENT)
+                    || annotation(field, JSON_IGNORE) != null) {
+                continue;
+            }
+            String fieldName = field.getSimpleName().toString();
+            Object renamed = value(field, JSON_PROPERTY, "value");
+            String jsonName = renamed instanceof String s && !s.isEmpty() ? s : fieldName;
+            TypeMirror fieldType = field.asType();
+            ValueKind kind = kindOf(fieldType);
+            String capitalized = Character.toUpperCase(fieldName.charAt(0)) + fieldName.substring(1);
+            String getter = (kind == ValueKind.PRIMITIVE_BOOLEAN ? "is" : "get") + capitalized;
+
+            properties.add(new Property(jsonName, fieldType.toString(),
+                    processingEnv.getTypeUtils().erasure(fieldType).toString(),
+                    kind, getter, "set" + capitalized, fieldName.toUpperCase() + "_TYPE"));
+        }
+        return properties;
+    }
+
+    private ValueKind kindOf(TypeMirror type) {
+        if (type.getKind() == TypeKind.BOOLEAN) {
+            return ValueKind.PRIMITIVE_BOOLEAN;
+        }
+        if (type.getKind().isPrimitive() && type.getKind() != TypeKind.CHAR) {
+            return ValueKind.PRIMITIVE_NUMBER;
+        }
+        if (type instanceof DeclaredType declared) {
+            if (!declared.getTypeArguments().isEmpty()) {
+                return ValueKind.GENERIC;
+            }
+            return switch (declared.asElement().toString()) {
+                case "java.lang.String" -> ValueKind.STRING;
+                case "java.lang.Integer", "java.lang.Long" -> ValueKind.BOXED_NUMBER;
+                case "java.lang.Boolean" -> ValueKind.BOXED_BOOLEAN;
+                default -> ValueKind.OTHER;
+            };
+        }
+        return ValueKind.OTHER;
+    }
+
+    private String codecName(TypeElement type) {
+        StringBuilder name = new StringBuilder(type.getSimpleName());
+        Element enclosing = type.getEnclosingElement();
+        while (enclosing instanceof TypeElement outer) {
+            name.insert(0, outer.getSimpleName() + "_");
+            enclosing = outer.getEnclosingElement();
+        }
+        return name.append(CODEC_SUFFIX).toString();
+    }
+
+    private String packageOf(TypeElement type) {
+        PackageElement pkg = processingEnv.getElementUtils().getPackageOf(type);
+        return pkg.getQualifiedName().toString();
+    }
+
+    private AnnotationMirror annotation(Element element, String annotationType) {
+        for (AnnotationMirror mirror : element.getAnnotationMirrors()) {
+            if (mirror.getAnnotationType().toString().equals(annotationType)) {
+                return mirror;
+            }
+        }
+        return null;
+    }
+
+    private Object value(Element element, String annotationType, String attribute) {
+        AnnotationMirror mirror = annotation(element, annotationType);
+        if (mirror == null) {
+            return null;
+        }
+        for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry
+                : mirror.getElementValues().entrySet()) {
+            if (entry.getKey().getSimpleName().contentEquals(attribute)) {
+                return entry.getValue().getValue();
+            }
+        }
+        return null;
+    }
+
+    private String enumValue(Element element, String annotationType, String attribute) {
+        Object value = value(element, annotationType, attribute);
+        return value instanceof VariableElement constant ? constant.getSimpleName().toString() : null;
+    }
+
+    private void writeSource(String className, CharSequence source, Element... originatingElements) {
+        try (Writer writer = processingEnv.getFiler().createSourceFile(className, originatingElements).openWriter()) {
+            writer.write(source.toString());
+        } catch (IOException e) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+                    "Failed to write " + className + ": " + e.getMessage());
+        }
+    }
+
+    private void error(Element element, String message) {
+        processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, message, element);
+    }
+
+    private enum ValueKind {
+        STRING, PRIMITIVE_NUMBER, PRIMITIVE_BOOLEAN, BOXED_NUMBER, BOXED_BOOLEAN, GENERIC, OTHER
+    }
+
+    private record Property(String jsonName, String type, String erasure, ValueKind kind,
+                            String getter, String setter, String typeConstant) {
+    }
+}
@@ -1,17 +1,23 @@
 package io.github.samzhu.gate;
 
 import io.github.samzhu.gate.model.AuthorizationResult;
+import io.github.samzhu.gate.model.BackupManifest;
+import io.github.samzhu.gate.model.BackupRecord;
+import io.github.samzhu.gate.model.CachedDiscovery;
+import io.github.samzhu.gate.model.IssuerHealth;
 import io.github.samzhu.gate.model.ClaudeSettings;
 import io.github.samzhu.gate.model.ConnectionConfig;
+import io.github.samzhu.gate.model.GeneratedJsonCodecs;
 import io.github.samzhu.gate.model.OAuth2TokenResponse;
 import io.github.samzhu.gate.model.OIDCConfiguration;
 import io.github.samzhu.gate.model.PKCEPair;
+import io.github.samzhu.gate.model.SnapshotIndex;
+import io.github.samzhu.gate.model.SnapshotTree;
 import org.springframework.aot.hint.annotation.RegisterReflectionForBinding;
 import org.springframework.boot.SpringApplication;
 import org.springframework.boot.autoconfigure.SpringBootApplication;
 import org.springframework.context.annotation.Bean;
 import org.springframework.shell.command.annotation.CommandScan;
-import org.springframework.web.client.RestClient;
 
 /**
  * Gate-CLI: Simplify Claude Code configuration with OAuth2-protected custom API endpoints.
@@ -20,6 +26,10 @@ import org.springframework.web.client.RestClient;
  * @RegisterReflectionForBinding registers model classes for Jackson deserialization
  * in GraalVM native image. Without this, Jackson cannot construct instances at runtime.
  * See: https://stackoverflow.com/questions/74908739/spring-boot-3-native-image-with-jackson
+ *
+ * The same model classes also get Jackson codecs generated at build time (see the codegen
+ * module), so the hot paths skip reflective introspection; the reflection hints remain
+ * as a fallback for anything the generated codecs delegate back to Jackson.
  */
 @SpringBootApplication
 @CommandScan
@@ -32,7 +42,17 @@ import org.springframework.web.client.RestClient;
     ClaudeSettings.class,
     OIDCConfiguration.class,
     PKCEPair.class,
-    AuthorizationResult.class
+    AuthorizationResult.class,
+    BackupRecord.class,
+    BackupManifest.class,
+    BackupManifest.Entry.class,
+    CachedDiscovery.class,
+    IssuerHealth.class,
+    IssuerHealth.Score.class,
+    SnapshotIndex.class,
+    SnapshotIndex.Snapshot.class,
+    SnapshotTree.class,
+    SnapshotTree.Node.class
 })
 public class GateCliApplication {
 
@@ -41,10 +61,10 @@ public class GateCliApplication {
 	}
 
 	/**
-	 * Provides RestClient.Builder for OAuth2Service and other HTTP operations.
+	 * Registers the build-time generated model codecs with Spring Boot's ObjectMapper.
 	 */
 	@Bean
-	public RestClient.Builder restClientBuilder() {
-		return RestClient.builder();
+	public GeneratedJsonCodecs generatedJsonCodecs() {
+		return new GeneratedJsonCodecs();
 	}
 }
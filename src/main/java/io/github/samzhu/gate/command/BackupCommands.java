@@ -0,0 +1,193 @@
+package io.github.samzhu.gate.command;
+
+import io.github.samzhu.gate.model.SnapshotIndex;
+import io.github.samzhu.gate.service.BackupService;
+import io.github.samzhu.gate.service.SnapshotService;
+import lombok.RequiredArgsConstructor;
+import org.springframework.shell.command.annotation.Command;
+import org.springframework.shell.command.annotation.Option;
+import org.springframework.stereotype.Component;
+
+import java.util.List;
+
+/**
+ * Commands for maintaining the backup store.
+ * Uses Spring Shell 3.x new @Command annotation model; commands run as "backup <name>".
+ */
+@Command(command = "backup", group = "Backup Commands")
+@Component
+@RequiredArgsConstructor
+public class BackupCommands {
+
+    private final BackupService backupService;
+    private final SnapshotService snapshotService;
+
+    /**
+     * Verify all backups against their recorded checksums.
+     */
+    @Command(command = "verify", description = "Verify the integrity of all backups")
+    public String verify(
+            @Option(longNames = "check-shape",
+                    description = "Also warn about backups that do not look like settings.json",
+                    defaultValue = "false") boolean checkShape
+    ) {
+        try {
+            long start = System.nanoTime();
+            List<BackupService.VerifyResult> results = backupService.verifyBackups(checkShape);
+            long elapsedNanos = System.nanoTime() - start;
+
+            if (results.isEmpty()) {
+                return "No backups available.\n";
+            }
+
+            long bytes = 0;
+            int ok = 0;
+            int unchecked = 0;
+            StringBuilder problems = new StringBuilder();
+            StringBuilder warnings = new StringBuilder();
+            for (BackupService.VerifyResult result : results) {
+                bytes += result.backup().size();
+                switch (result.status()) {
+                    case OK -> ok++;
+                    case UNCHECKED -> unchecked++;
+                    case UNEXPECTED_SHAPE -> warnings.append(String.format("  ⚠ %s (%s)\n",
+                            result.backup().getPath(), result.detail()));
+                    default -> problems.append(String.format("  ✗ %s: %s (%s)\n",
+                            result.status(), result.backup().getPath(), result.detail()));
+                }
+            }
+
+            double seconds = Math.max(elapsedNanos, 1) / 1_000_000_000.0;
+            StringBuilder output = new StringBuilder();
+            output.append("Backup Verification:\n");
+            output.append("====================\n\n");
+            output.append(String.format("  Verified: %d backup(s), %.1f KB in %.0f ms (%.1f MB/s)\n",
+                    results.size(), bytes / 1024.0, seconds * 1000, bytes / (1024.0 * 1024.0) / seconds));
+            output.append(String.format("  OK: %d\n", ok));
+            if (unchecked > 0) {
+                output.append(String.format("  Valid JSON, no checksum (older backups): %d\n", unchecked));
+            }
+
+            if (problems.isEmpty()) {
+                output.append("\n✓ All backups are intact\n");
+            } else {
+                output.append("\nDamaged backups:\n").append(problems);
+            }
+            if (!warnings.isEmpty()) {
+                output.append("\nIntact, but not shaped like settings.json (still restorable):\n").append(warnings);
+            }
+            return output.toString();
+
+        } catch (Exception e) {
+            return "✗ Backup verification failed\nError: " + e.getMessage() + "\n";
+        }
+    }
+
+    /**
+     * Export all backups into a single archive.
+     */
+    @Command(command = "export", description = "Export all backups into a single archive")
+    public String export(
+            @Option(longNames = "file", shortNames = 'f', required = true,
+                    description = "Archive file to write (.zip)") String file
+    ) {
+        try {
+            BackupService.ArchiveResult result = backupService.exportBackups(file);
+            StringBuilder output = new StringBuilder();
+            output.append(String.format("✓ Exported %d backup(s) (%d distinct content) to %s\n",
+                    result.backups(), result.blobs(), file));
+            if (result.original()) {
+                output.append("  Includes the original settings backup\n");
+            }
+            if (result.skipped() > 0) {
+                output.append(String.format("  Skipped %d unreadable backup(s); run 'backup verify' for details\n",
+                        result.skipped()));
+            }
+            output.append("\nThe archive contains your settings, including credentials; keep it private.\n");
+            return output.toString();
+
+        } catch (Exception e) {
+            return "✗ Backup export failed\nError: " + e.getMessage() + "\n";
+        }
+    }
+
+    /**
+     * Import backups from an archive created by backup export.
+     */
+    @Command(command = "import", description = "Import backups from an exported archive")
+    public String importArchive(
+            @Option(longNames = "file", shortNames = 'f', required = true,
+                    description = "Archive file to read") String file
+    ) {
+        try {
+            BackupService.ArchiveResult result = backupService.importBackups(file);
+            StringBuilder output = new StringBuilder();
+            output.append(String.format("✓ Imported %d backup(s) (%d new content) from %s\n",
+                    result.backups(), result.blobs(), file));
+            if (result.skipped() > 0) {
+                output.append(String.format("  Skipped %d backup(s) already present or without content in the archive\n",
+                        result.skipped()));
+            }
+            if (result.dropped() > 0) {
+                output.append(String.format("  Dropped %d imported backup(s) the retention policy does not keep;"
+                        + " raise maxBackups or keepHourly/keepDaily/keepWeekly in backupSettings to keep them\n",
+                        result.dropped()));
+            }
+            if (result.original()) {
+                output.append("  Imported the original settings backup\n");
+            }
+            output.append("\nUse 'restore --list' to see available backups.\n");
+            return output.toString();
+
+        } catch (Exception e) {
+            return "✗ Backup import failed\nError: " + e.getMessage() + "\n";
+        }
+    }
+
+    /**
+     * Snapshot, list or restore the whole ~/.claude directory.
+     */
+    @Command(command = "snapshot", description = "Snapshot the ~/.claude directory (incremental)")
+    public String snapshot(
+            @Option(longNames = "list", shortNames = 'l', description = "List snapshots",
+                    defaultValue = "false") boolean list,
+            @Option(longNames = "restore", shortNames = 'r',
+                    description = "Restore ~/.claude to the snapshot with this id") Long restore
+    ) {
+        try {
+            if (list) {
+                List<SnapshotIndex.Snapshot> snapshots = snapshotService.listSnapshots();
+                if (snapshots.isEmpty()) {
+                    return "No snapshots available.\n";
+                }
+                StringBuilder output = new StringBuilder();
+                output.append("Available Snapshots:\n");
+                output.append("====================\n\n");
+                for (SnapshotIndex.Snapshot snapshot : snapshots) {
+                    output.append(String.format("  %d. %s\n", snapshot.getId(), snapshot.getCreated()));
+                    output.append(String.format("     Files: %d, %.1f KB\n",
+                            snapshot.getFiles(), snapshot.getSize() / 1024.0));
+                }
+                return output.toString();
+            }
+
+            if (restore != null) {
+                SnapshotIndex.Snapshot snapshot = snapshotService.restoreSnapshot(restore);
+                return String.format("✓ Restored ~/.claude to snapshot %d (%s, %d files)\n"
+                        + "  The previous state was snapshotted first.\n"
+                        + "\nRestart Claude Code for the changes to take effect.\n",
+                        snapshot.getId(), snapshot.getCreated(), snapshot.getFiles());
+            }
+
+            SnapshotService.SnapshotResult result = snapshotService.createSnapshot();
+            String status = result.created()
+                    ? "✓ Created snapshot " + result.snapshot().getId()
+                    : "✓ No changes since snapshot " + result.snapshot().getId();
+            return String.format("%s\n  Scanned %d file(s), read %d changed file(s) in %d ms\n",
+                    status, result.files(), result.hashed(), result.elapsed().toMillis());
+
+        } catch (Exception e) {
+            return "✗ Snapshot failed\nError: " + e.getMessage() + "\n";
+        }
+    }
+}
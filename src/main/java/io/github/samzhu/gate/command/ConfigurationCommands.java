@@ -1,10 +1,12 @@
 package io.github.samzhu.gate.command;
 
+import com.fasterxml.jackson.databind.JsonNode;
 import io.github.samzhu.gate.model.ConnectionConfig;
 import io.github.samzhu.gate.service.BackupService;
 import io.github.samzhu.gate.service.ClaudeConfigService;
 import io.github.samzhu.gate.service.ConfigurationService;
 import io.github.samzhu.gate.service.OAuth2Service;
+import io.github.samzhu.gate.util.SettingsDiff;
 import lombok.RequiredArgsConstructor;
 import org.springframework.shell.command.annotation.Command;
 import org.springframework.shell.command.annotation.Option;
@@ -12,9 +14,15 @@ import org.springframework.stereotype.Component;
 
 import java.time.Duration;
 import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.OffsetDateTime;
 import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
 import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 /**
  * Commands for configuration and backup management.
@@ -27,6 +35,8 @@ public class ConfigurationCommands {
 
     private static final DateTimeFormatter TIMESTAMP_FORMAT =
             DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss").withZone(ZoneId.systemDefault());
+    private static final Pattern DURATION_PART = Pattern.compile("(\\d+)([smhdw])");
+    private static final Pattern SECRET_FIELD = Pattern.compile("(?i)(token|secret|key|password)");
 
     private final BackupService backupService;
     private final ClaudeConfigService claudeConfigService;
@@ -62,32 +72,38 @@ public class ConfigurationCommands {
             return "✓ Configuration reset to default values\n";
         }
 
-        // Update settings
+        // Update settings (single write for all options)
         StringBuilder output = new StringBuilder();
-        boolean updated = false;
+        boolean updated = clientId != null || clientSecret != null || issuerUri != null || apiUrl != null;
+
+        if (updated) {
+            configurationService.update(config -> {
+                if (clientId != null) {
+                    config.setClientId(clientId);
+                }
+                if (clientSecret != null) {
+                    config.setClientSecret(clientSecret);
+                }
+                if (issuerUri != null) {
+                    config.setIssuerUri(issuerUri);
+                }
+                if (apiUrl != null) {
+                    config.setApiUrl(apiUrl);
+                }
+            });
+        }
 
         if (clientId != null) {
-            configurationService.setClientId(clientId);
             output.append("✓ Client ID set to: ").append(clientId).append("\n");
-            updated = true;
         }
-
         if (clientSecret != null) {
-            configurationService.setClientSecret(clientSecret);
             output.append("✓ Client Secret set\n");
-            updated = true;
         }
-
         if (issuerUri != null) {
-            configurationService.setIssuerUri(issuerUri);
             output.append("✓ Issuer URI set to: ").append(issuerUri).append("\n");
-            updated = true;
         }
-
         if (apiUrl != null) {
-            configurationService.setApiUrl(apiUrl);
             output.append("✓ API URL set to: ").append(apiUrl).append("\n");
-            updated = true;
         }
 
         // Show configuration if no parameters were provided
@@ -108,13 +124,13 @@ public class ConfigurationCommands {
 
         String clientId = configurationService.getEffectiveClientId();
         String clientSecret = configurationService.getEffectiveClientSecret();
-        String issuerUri = configurationService.getEffectiveIssuerUri();
+        String issuerUris = String.join(", ", configurationService.getEffectiveIssuerUris());
         String apiUrl = configurationService.getEffectiveApiUrl();
 
         output.append("Settings:\n");
         output.append("  Client ID:     ").append(valueOrNotSet(clientId)).append("\n");
         output.append("  Client Secret: ").append(maskSecret(clientSecret)).append("\n");
-        output.append("  Issuer URI:    ").append(valueOrNotSet(issuerUri)).append("\n");
+        output.append("  Issuer URIs:   ").append(valueOrNotSet(issuerUris)).append("\n");
         output.append("  API URL:       ").append(valueOrNotSet(apiUrl)).append("\n");
 
         output.append("\nConfig file: ~/.gate-cli/config.json\n");
@@ -156,12 +172,12 @@ public class ConfigurationCommands {
         output.append("Configuration:\n");
         String clientId = configurationService.getEffectiveClientId();
         String clientSecret = configurationService.getEffectiveClientSecret();
-        String issuerUri = configurationService.getEffectiveIssuerUri();
+        String issuerUris = String.join(", ", configurationService.getEffectiveIssuerUris());
         String apiUrl = configurationService.getEffectiveApiUrl();
 
         output.append("  Client ID:     ").append(valueOrNotSet(clientId)).append("\n");
         output.append("  Client Secret: ").append(maskSecret(clientSecret)).append("\n");
-        output.append("  Issuer URI:    ").append(valueOrNotSet(issuerUri)).append("\n");
+        output.append("  Issuer URIs:   ").append(valueOrNotSet(issuerUris)).append("\n");
         output.append("  API URL:       ").append(valueOrNotSet(apiUrl)).append("\n");
         output.append("\n");
 
@@ -236,9 +252,19 @@ public class ConfigurationCommands {
     @Command(command = "restore", description = "Restore Claude Code settings from a backup")
     public String restore(
             @Option(longNames = "backup", shortNames = 'b', description = "Specific backup file to restore") String backupFile,
-            @Option(longNames = "list", shortNames = 'l', description = "List available backups", defaultValue = "false") boolean list
+            @Option(longNames = "list", shortNames = 'l', description = "List available backups", defaultValue = "false") boolean list,
+            @Option(longNames = "repair", description = "Rebuild the backup index from the backup directory", defaultValue = "false") boolean repair,
+            @Option(longNames = "at", description = "Restore the newest backup at or before this time (e.g. 2026-10-15T14:00)") String at,
+            @Option(longNames = "ago", description = "Restore the newest backup at least this long ago (e.g. 2h, 30m, 1d)") String ago,
+            @Option(longNames = "dry-run", description = "Show what would change without restoring", defaultValue = "false") boolean dryRun
     ) {
         try {
+            // If repair flag is set, rebuild the backup manifest
+            if (repair) {
+                int count = backupService.rebuildManifest();
+                return "✓ Backup index rebuilt: " + count + " backup(s) found\n";
+            }
+
             // If list flag is set, show available backups
             if (list) {
                 return listBackups();
@@ -251,6 +277,19 @@ public class ConfigurationCommands {
             if (backupFile != null && !backupFile.isEmpty()) {
                 targetBackup = backupFile;
                 output.append("→ Restoring from specified backup: ").append(backupFile).append("\n");
+            } else if (at != null || ago != null) {
+                if (at != null && ago != null) {
+                    return "✗ Use either --at or --ago, not both.\n";
+                }
+                Instant instant = at != null ? parseTimestamp(at) : Instant.now().minus(parseAgo(ago));
+                BackupService.BackupInfo backup = backupService.findBackupAt(instant);
+                if (backup == null) {
+                    return "✗ No backup exists at or before " + TIMESTAMP_FORMAT.format(instant) + ".\n" +
+                           "Use 'restore --list' to see available backups.\n";
+                }
+                targetBackup = backup.getPath();
+                output.append("→ Restoring backup from ").append(TIMESTAMP_FORMAT.format(backup.getCreated()))
+                        .append(" (newest at or before ").append(TIMESTAMP_FORMAT.format(instant)).append(")\n");
             } else {
                 targetBackup = backupService.getMostRecentBackup();
                 if (targetBackup == null) {
@@ -260,6 +299,15 @@ public class ConfigurationCommands {
                 output.append("→ Restoring from most recent backup\n");
             }
 
+            // Preview only
+            if (dryRun) {
+                List<SettingsDiff.Change> changes =
+                        backupService.previewRestore(targetBackup, claudeConfigService.getSettingsPath());
+                output.append(formatChanges(changes));
+                output.append("\nDry run: nothing was restored.\n");
+                return output.toString();
+            }
+
             // Restore the backup
             backupService.restoreBackup(targetBackup, claudeConfigService.getSettingsPath());
 
@@ -274,6 +322,98 @@ public class ConfigurationCommands {
         }
     }
 
+    /**
+     * Formats settings changes as a diff, masking values of secret-looking fields.
+     */
+    private String formatChanges(List<SettingsDiff.Change> changes) {
+        if (changes.isEmpty()) {
+            return "\nNo changes: the backup matches the current settings.\n";
+        }
+        StringBuilder output = new StringBuilder();
+        output.append("\nChanges to ").append(claudeConfigService.getSettingsPath()).append(":\n");
+        for (SettingsDiff.Change change : changes) {
+            String path = change.path();
+            if (change.isAdded()) {
+                output.append("  + ").append(path).append(": ").append(formatValue(path, change.after()));
+            } else if (change.isRemoved()) {
+                output.append("  - ").append(path).append(": ").append(formatValue(path, change.before()));
+            } else {
+                output.append("  ~ ").append(path).append(": ").append(formatValue(path, change.before()))
+                        .append(" → ").append(formatValue(path, change.after()));
+            }
+            output.append("\n");
+        }
+        return output.toString();
+    }
+
+    private String formatValue(String path, JsonNode value) {
+        if (value.isTextual() && SECRET_FIELD.matcher(path).find()) {
+            return maskSecret(value.asText());
+        }
+        return value.toString();
+    }
+
+    /**
+     * Parses a point in time: an ISO instant or offset date-time, or a local date-time
+     * ("2026-10-15T14:00", "2026-10-15 14:00:30") or date (midnight) in the system time zone.
+     */
+    static Instant parseTimestamp(String value) {
+        String text = value.trim().replace(' ', 'T');
+        try {
+            return OffsetDateTime.parse(text).toInstant();
+        } catch (DateTimeParseException e) {
+            // Not an absolute time; try local forms
+        }
+        try {
+            return LocalDateTime.parse(text).atZone(ZoneId.systemDefault()).toInstant();
+        } catch (DateTimeParseException e) {
+            // Not a local date-time; try a date
+        }
+        try {
+            return LocalDate.parse(text).atStartOfDay(ZoneId.systemDefault()).toInstant();
+        } catch (DateTimeParseException e) {
+            throw new IllegalArgumentException("Invalid time '" + value
+                    + "'. Use e.g. 2026-10-15T14:00, 2026-10-15 14:00 or 2026-10-15");
+        }
+    }
+
+    /**
+     * Parses a relative duration such as "2h", "90m", "1d12h" or "1w", or a non-negative
+     * ISO-8601 duration.
+     */
+    static Duration parseAgo(String value) {
+        String text = value.trim().toLowerCase();
+        if (text.startsWith("p")) {
+            try {
+                Duration duration = Duration.parse(text.toUpperCase());
+                if (!duration.isNegative()) {
+                    return duration;
+                }
+            } catch (DateTimeParseException e) {
+                // Reported below
+            }
+            throw new IllegalArgumentException("Invalid duration '" + value + "'");
+        }
+        Matcher matcher = DURATION_PART.matcher(text);
+        Duration duration = Duration.ZERO;
+        int end = 0;
+        while (matcher.find() && matcher.start() == end) {
+            long amount = Long.parseLong(matcher.group(1));
+            duration = duration.plus(switch (matcher.group(2)) {
+                case "s" -> Duration.ofSeconds(amount);
+                case "m" -> Duration.ofMinutes(amount);
+                case "h" -> Duration.ofHours(amount);
+                case "d" -> Duration.ofDays(amount);
+                default -> Duration.ofDays(amount * 7);
+            });
+            end = matcher.end();
+        }
+        if (end == 0 || end != text.length()) {
+            throw new IllegalArgumentException("Invalid duration '" + value + "'. Use e.g. 30m, 2h, 1d or 1w");
+        }
+        return duration;
+    }
+
     /**
      * Lists all available backups.
      */
@@ -291,7 +431,12 @@ public class ConfigurationCommands {
         int index = 1;
         for (BackupService.BackupInfo backup : backups) {
             output.append(String.format("%d. %s\n", index++, backup.getFileName()));
-            output.append(String.format("   Size: %s\n", backup.getSizeFormatted()));
+            if (backup.storedSize() != backup.size()) {
+                output.append(String.format("   Size: %s (%s stored)\n",
+                        backup.getSizeFormatted(), backup.getStoredSizeFormatted()));
+            } else {
+                output.append(String.format("   Size: %s\n", backup.getSizeFormatted()));
+            }
             output.append(String.format("   Created: %s\n",
                     TIMESTAMP_FORMAT.format(backup.getCreated())));
             output.append(String.format("   Path: %s\n", backup.getPath()));
@@ -300,6 +445,9 @@ public class ConfigurationCommands {
 
         output.append("To restore a specific backup:\n");
         output.append("  restore --backup <path>\n");
+        output.append("\nTo restore the settings as of a point in time:\n");
+        output.append("  restore --at 2026-10-15T14:00   or   restore --ago 2h\n");
+        output.append("  (add --dry-run to preview the changes)\n");
         output.append("\nTo restore the most recent backup:\n");
         output.append("  restore\n");
 
@@ -3,12 +3,13 @@ package io.github.samzhu.gate.command;
 import io.github.samzhu.gate.command.availability.ConnectedAvailability;
 import io.github.samzhu.gate.model.ConnectionConfig;
 import io.github.samzhu.gate.model.OAuth2TokenResponse;
-import io.github.samzhu.gate.model.OIDCConfiguration;
+import io.github.samzhu.gate.service.BackupService;
 import io.github.samzhu.gate.service.ClaudeConfigService;
 import io.github.samzhu.gate.service.ConfigurationService;
+import io.github.samzhu.gate.service.IssuerFailoverService;
 import io.github.samzhu.gate.service.OAuth2LoginService;
 import io.github.samzhu.gate.service.OAuth2Service;
-import io.github.samzhu.gate.service.OIDCDiscoveryService;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.RequiredArgsConstructor;
 import org.springframework.shell.command.annotation.Command;
 import org.springframework.shell.command.annotation.CommandAvailability;
@@ -17,6 +18,14 @@ import org.springframework.stereotype.Component;
 import java.time.Duration;
 import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
 
 /**
  * Commands for managing OAuth2 connections to custom Claude API endpoints.
@@ -29,13 +38,22 @@ public class ConnectionCommands {
 
     private static final DateTimeFormatter TIMESTAMP_FORMAT =
             DateTimeFormatter.ofPattern("yyyy-MM-dd HH:mm:ss").withZone(ZoneId.systemDefault());
+    private static final String CONNECT_PHASE_METRIC = "gate.connect.phase";
+    private static final String PHASE_DISCOVERY = "discovery";
+    private static final String PHASE_TOKEN = "token";
+    private static final String PHASE_BACKUP = "backup";
+    private static final String PHASE_SETTINGS = "settings";
+    private static final String PHASE_SAVE = "save";
+    private static final List<String> CONNECT_PHASES =
+            List.of(PHASE_DISCOVERY, PHASE_TOKEN, PHASE_BACKUP, PHASE_SETTINGS, PHASE_SAVE);
 
     private final OAuth2Service oauth2Service;
     private final OAuth2LoginService oauth2LoginService;
-    private final OIDCDiscoveryService oidcDiscoveryService;
+    private final IssuerFailoverService issuerFailoverService;
     private final ClaudeConfigService claudeConfigService;
     private final ConfigurationService configurationService;
     private final ConnectedAvailability connectedAvailability;
+    private final MeterRegistry meterRegistry;
 
     /**
      * Connect to OAuth2 server using client credentials (M2M).
@@ -49,7 +67,7 @@ public class ConnectionCommands {
             // 1. Read configuration
             String clientId = configurationService.getEffectiveClientId();
             String clientSecret = configurationService.getEffectiveClientSecret();
-            String issuerUri = configurationService.getEffectiveIssuerUri();
+            List<String> issuerUris = configurationService.getEffectiveIssuerUris();
             String apiUrl = configurationService.getEffectiveApiUrl();
 
             // 2. Validate required settings
@@ -61,7 +79,7 @@ public class ConnectionCommands {
                 return "✗ Missing configuration: client-secret\n" +
                        "Use 'config --client-secret <secret>' to set it.\n";
             }
-            if (isEmpty(issuerUri)) {
+            if (issuerUris.isEmpty()) {
                 return "✗ Missing configuration: issuer-uri\n" +
                        "Use 'config --issuer-uri <url>' to set it.\n";
             }
@@ -70,26 +88,47 @@ public class ConnectionCommands {
                        "Use 'config --api-url <url>' to set it.\n";
             }
 
-            // 3. OIDC Discovery to get token endpoint
-            output.append("→ Discovering token endpoint...\n");
-            OIDCConfiguration oidcConfig = oidcDiscoveryService.discover(issuerUri);
-            String tokenUrl = oidcConfig.getTokenEndpoint();
-
             // Check if already connected and settings exist
-            if (claudeConfigService.settingsExist() && configurationService.isConnected()) {
+            boolean connected = configurationService.isConnected();
+            if (claudeConfigService.settingsExist() && connected) {
                 output.append("⚠ Claude Code settings already configured.\n");
                 output.append("Use 'disconnect' first or continue to overwrite.\n");
             }
 
-            // Backup original settings if this is the first connection
-            if (!configurationService.isConnected()) {
-                claudeConfigService.ensureOriginalBackup();
-            }
-
-            // 4. OAuth2 Client Credentials authentication
+            // 3. Network (discovery, then token request) and local backups run concurrently
+            output.append("→ Discovering token endpoint...\n");
             output.append("→ Connecting to OAuth2 server...\n");
-            OAuth2TokenResponse tokenResponse = oauth2Service.getAccessToken(
-                    clientId, clientSecret, tokenUrl);
+            long start = System.nanoTime();
+            Map<String, Duration> timings = new ConcurrentHashMap<>();
+            LocalWork localWork;
+            IssuerFailoverService.Answered<OAuth2TokenResponse> authorization;
+            try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+                Future<IssuerFailoverService.Answered<OAuth2TokenResponse>> network = executor.submit(() -> {
+                    // Races discovery across the configured issuers; the token request fails over
+                    IssuerFailoverService.Discovered discovered = timed(PHASE_DISCOVERY, timings,
+                            () -> issuerFailoverService.discover(issuerUris));
+                    return timed(PHASE_TOKEN, timings, () -> issuerFailoverService.requestToken(discovered,
+                            tokenUrl -> oauth2Service.getAccessToken(clientId, clientSecret, tokenUrl)));
+                });
+                Future<LocalWork> local = executor.submit(() -> timed(PHASE_BACKUP, timings, () -> {
+                    // Backup original settings if this is the first connection
+                    String original = !connected ? claudeConfigService.ensureOriginalBackup() : null;
+                    // Only recorded once a token is obtained, so failed attempts rotate nothing out
+                    return new LocalWork(original, claudeConfigService.prepareBackup());
+                }));
+
+                // Local work is never interrupted (it holds file locks); a network failure
+                // waits for it to finish. A local failure cancels the network requests.
+                try {
+                    localWork = await(local);
+                } catch (RuntimeException e) {
+                    network.cancel(true);
+                    throw e;
+                }
+                authorization = await(network);
+            }
+            OAuth2TokenResponse tokenResponse = authorization.result();
+            String tokenUrl = authorization.tokenUrl();
 
             if (tokenResponse == null || tokenResponse.getAccessToken() == null) {
                 return "✗ Failed to obtain access token from OAuth2 server";
@@ -98,21 +137,36 @@ public class ConnectionCommands {
             output.append("✓ Connected to OAuth2 server\n");
             output.append("✓ Obtained access token\n");
 
-            // 5. Update Claude Code settings
+            // 4. Record the backup prepared above, then update Claude Code settings
             output.append("→ Updating Claude Code settings...\n");
-            claudeConfigService.updateSettings(apiUrl, tokenResponse.getTokenForAuth(), true);
+            String originalBackup = localWork.originalBackup();
+            timed(PHASE_SETTINGS, timings, () -> {
+                claudeConfigService.commitBackup(localWork.settingsBackup());
+                claudeConfigService.updateSettings(apiUrl, tokenResponse.getTokenForAuth(), false);
+                return null;
+            });
             output.append("✓ Updated Claude Code settings\n");
 
-            // 6. Save connection configuration
-            configurationService.saveConnection(
-                    clientId, clientSecret, tokenUrl, apiUrl,
-                    tokenResponse.getExpiresAt());
+            // 5. Save connection configuration (single write)
+            timed(PHASE_SAVE, timings, () -> {
+                configurationService.update(config -> {
+                    if (originalBackup != null) {
+                        config.setOriginalSettingsBackup(originalBackup);
+                    }
+                    config.saveConnection(clientId, clientSecret, tokenUrl, apiUrl,
+                            tokenResponse.getExpiresAt());
+                });
+                return null;
+            });
             output.append("✓ Saved connection configuration\n");
 
             // Display summary
             output.append("\n");
             output.append("Configuration Summary:\n");
             output.append("  API URL: ").append(apiUrl).append("\n");
+            if (issuerUris.size() > 1) {
+                output.append("  Issuer: ").append(authorization.issuerUri()).append("\n");
+            }
             output.append("  Auth Type: OAuth2 Client Credentials (M2M)\n");
             if (tokenResponse.getExpiresAt() != null) {
                 output.append("  Token expires: ")
@@ -120,6 +174,9 @@ public class ConnectionCommands {
                         .append("\n");
             }
             output.append("  Settings file: ").append(claudeConfigService.getSettingsPath()).append("\n");
+            output.append("  Timings: ")
+                    .append(formatTimings(CONNECT_PHASES, timings, Duration.ofNanos(System.nanoTime() - start)))
+                    .append("\n");
 
             return output.toString();
 
@@ -138,14 +195,14 @@ public class ConnectionCommands {
             StringBuilder output = new StringBuilder();
 
             // 1. Read effective configuration
-            String issuerUri = configurationService.getEffectiveIssuerUri();
+            List<String> issuerUris = configurationService.getEffectiveIssuerUris();
             String clientId = configurationService.getEffectiveClientId();
             String apiUrl = configurationService.getEffectiveApiUrl();
             String scope = configurationService.getEffectiveScope();
             int callbackPort = configurationService.getEffectiveCallbackPort();
 
             // 2. Validate required settings
-            if (isEmpty(issuerUri)) {
+            if (issuerUris.isEmpty()) {
                 return "✗ Missing configuration: issuer-uri\n" +
                        "Use 'config --issuer-uri <url>' to set it.\n";
             }
@@ -162,12 +219,13 @@ public class ConnectionCommands {
 
             // 3. Execute OAuth2 login flow
             output.append("→ Starting OAuth2 login...\n");
-            output.append("  Issuer:    ").append(issuerUri).append("\n");
+            output.append("  Issuer:    ").append(String.join(", ", issuerUris)).append("\n");
             output.append("  Client ID: ").append(clientId).append("\n");
 
-            OAuth2TokenResponse tokenResponse = oauth2LoginService.login(
-                    issuerUri, clientId, scope, redirectUri
+            OAuth2LoginService.LoginResult loginResult = oauth2LoginService.login(
+                    issuerUris, clientId, scope, redirectUri
             );
+            OAuth2TokenResponse tokenResponse = loginResult.token();
 
             if (tokenResponse == null || tokenResponse.getAccessToken() == null) {
                 return "✗ Failed to obtain access token";
@@ -177,23 +235,30 @@ public class ConnectionCommands {
             output.append("✓ Obtained access token\n");
 
             // 4. Backup and update Claude Code settings
-            if (!configurationService.isConnected()) {
-                claudeConfigService.ensureOriginalBackup();
-            }
+            String originalBackup = !configurationService.isConnected()
+                    ? claudeConfigService.ensureOriginalBackup()
+                    : null;
 
             claudeConfigService.updateSettings(apiUrl, tokenResponse.getTokenForAuth(), true);
             output.append("✓ Updated Claude Code settings\n");
 
-            // 5. Save connection configuration
-            configurationService.saveLoginConnection(
-                    clientId, issuerUri, apiUrl, tokenResponse.getExpiresAt()
-            );
+            // 5. Save connection configuration (single write)
+            configurationService.update(config -> {
+                if (originalBackup != null) {
+                    config.setOriginalSettingsBackup(originalBackup);
+                }
+                config.saveLoginConnection(clientId, loginResult.issuerUri(), apiUrl,
+                        tokenResponse.getExpiresAt());
+            });
             output.append("✓ Saved connection configuration\n");
 
             // 6. Display summary
             output.append("\n");
             output.append("Configuration Summary:\n");
             output.append("  API URL: ").append(apiUrl).append("\n");
+            if (issuerUris.size() > 1) {
+                output.append("  Issuer: ").append(loginResult.issuerUri()).append("\n");
+            }
             output.append("  Auth Type: OAuth2 PKCE (Public Client)\n");
             if (tokenResponse.getExpiresAt() != null) {
                 output.append("  Token expires: ")
@@ -201,6 +266,9 @@ public class ConnectionCommands {
                         .append("\n");
             }
             output.append("  Settings file: ").append(claudeConfigService.getSettingsPath()).append("\n");
+            output.append("  Timings: ")
+                    .append(formatTimings(OAuth2LoginService.PHASES, loginResult.timings(), loginResult.elapsed()))
+                    .append("\n");
 
             return output.toString();
 
@@ -281,13 +349,27 @@ public class ConnectionCommands {
                        "Use 'connect' command first.\n";
             }
 
-            // Request new token
+            // Request new token, failing over across the configured issuers like connect
             output.append("→ Refreshing OAuth2 token...\n");
-            OAuth2TokenResponse tokenResponse = oauth2Service.getAccessToken(
-                    connection.getClientId(),
-                    connection.getClientSecret(),
-                    connection.getTokenUrl()
-            );
+            String clientId = connection.getClientId();
+            String clientSecret = connection.getClientSecret();
+            List<String> issuerUris = configurationService.getEffectiveIssuerUris();
+            String tokenUrl;
+            OAuth2TokenResponse tokenResponse;
+            if (issuerUris.isEmpty()) {
+                // No issuer configured any more: use the token endpoint saved on connect
+                tokenUrl = connection.getTokenUrl();
+                tokenResponse = oauth2Service.getAccessToken(clientId, clientSecret, tokenUrl);
+            } else {
+                IssuerFailoverService.Answered<OAuth2TokenResponse> authorization =
+                        issuerFailoverService.requestToken(issuerFailoverService.discover(issuerUris),
+                                url -> oauth2Service.getAccessToken(clientId, clientSecret, url));
+                tokenUrl = authorization.tokenUrl();
+                tokenResponse = authorization.result();
+                if (issuerUris.size() > 1) {
+                    output.append("✓ Token issued by ").append(authorization.issuerUri()).append("\n");
+                }
+            }
 
             output.append("✓ Token refreshed successfully\n");
 
@@ -298,8 +380,10 @@ public class ConnectionCommands {
                     false // Don't create backup on refresh
             );
 
-            // Update token expiration in configuration
-            configurationService.updateTokenExpiration(tokenResponse.getExpiresAt());
+            // Update token expiration, and the token endpoint if the refresh failed over
+            configurationService.update(config -> config
+                    .updateTokenUrl(tokenUrl)
+                    .updateTokenExpiration(tokenResponse.getExpiresAt()));
 
             // Display new expiration
             output.append("\n");
@@ -323,6 +407,52 @@ public class ConnectionCommands {
         }
     }
 
+    /**
+     * Runs one phase of a command, recording its duration.
+     */
+    private <T> T timed(String phase, Map<String, Duration> timings, Supplier<T> step) {
+        long start = System.nanoTime();
+        try {
+            return step.get();
+        } finally {
+            Duration elapsed = Duration.ofNanos(System.nanoTime() - start);
+            timings.put(phase, elapsed);
+            meterRegistry.timer(CONNECT_PHASE_METRIC, "phase", phase).record(elapsed);
+        }
+    }
+
+    /**
+     * Waits for a task, rethrowing its failure as is so error messages stay unchanged.
+     */
+    private <T> T await(Future<T> task) throws InterruptedException {
+        try {
+            return task.get();
+        } catch (ExecutionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            if (e.getCause() instanceof Error error) {
+                throw error;
+            }
+            throw new IllegalStateException(e.getCause());
+        }
+    }
+
+    /**
+     * Formats phase timings, e.g. "discovery 120 ms, token 85 ms, backup 12 ms, total 210 ms".
+     * Some phases run concurrently, so the total can be less than the sum.
+     */
+    private String formatTimings(List<String> phases, Map<String, Duration> timings, Duration total) {
+        StringBuilder result = new StringBuilder();
+        for (String phase : phases) {
+            Duration elapsed = timings.get(phase);
+            if (elapsed != null) {
+                result.append(phase).append(' ').append(elapsed.toMillis()).append(" ms, ");
+            }
+        }
+        return result.append("total ").append(total.toMillis()).append(" ms").toString();
+    }
+
     /**
      * Formats error message with troubleshooting hints.
      */
@@ -352,4 +482,13 @@ public class ConnectionCommands {
 
         return output.toString();
     }
+
+    /**
+     * What the local half of connect prepared while the network requests ran.
+     *
+     * @param originalBackup Path to the original settings backup, or null if not created now
+     * @param settingsBackup Settings backup to record once a token is obtained, or null
+     */
+    private record LocalWork(String originalBackup, BackupService.PreparedBackup settingsBackup) {
+    }
 }
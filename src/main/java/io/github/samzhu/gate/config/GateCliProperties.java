@@ -3,6 +3,9 @@ package io.github.samzhu.gate.config;
 import lombok.Data;
 import org.springframework.boot.context.properties.ConfigurationProperties;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.util.unit.DataSize;
+
+import java.time.Duration;
 
 /**
  * Configuration properties for Gate-CLI.
@@ -10,7 +13,7 @@ import org.springframework.context.annotation.Configuration;
  *
  * Note: Business settings (apiUrl, issuerUri, clientId) should be configured
  * via 'config' command, not in application.yaml.
- * Only technical defaults (scope, callbackPort) are retained here.
+ * Only technical defaults (scope, callbackPort, file handling) are retained here.
  */
 @Data
 @Configuration
@@ -44,4 +47,49 @@ public class GateCliProperties {
      * Local port for OAuth callback server (fixed value).
      */
     private int callbackPort = 8080;
+
+    /**
+     * Timeout for opening a connection to the identity provider.
+     */
+    private Duration httpConnectTimeout = Duration.ofSeconds(10);
+
+    /**
+     * Timeout for an identity provider response, once the request is sent.
+     */
+    private Duration httpReadTimeout = Duration.ofSeconds(30);
+
+    /**
+     * Maximum time to wait for another gate-cli process to release a file lock.
+     */
+    private Duration lockTimeout = Duration.ofSeconds(10);
+
+    /**
+     * How hard atomic writes push data to disk before returning.
+     * Use FILE_AND_DIRECTORY on servers that must survive power loss,
+     * NONE on laptops where write latency matters more.
+     */
+    private Durability durability = Durability.FILE;
+
+    /**
+     * Size at which the config.json journal is compacted back into config.json.
+     */
+    private DataSize journalCompactionThreshold = DataSize.ofKilobytes(64);
+
+    /**
+     * Durability levels for atomic file writes.
+     */
+    public enum Durability {
+        /**
+         * Rename without fsync; the OS flushes when it sees fit.
+         */
+        NONE,
+        /**
+         * Fsync the temp file before the rename, so the target never ends up empty.
+         */
+        FILE,
+        /**
+         * Also fsync the parent directory after the rename, so the rename itself survives a crash.
+         */
+        FILE_AND_DIRECTORY
+    }
 }
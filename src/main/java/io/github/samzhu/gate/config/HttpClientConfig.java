@@ -0,0 +1,165 @@
+package io.github.samzhu.gate.config;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.http.client.ClientHttpRequestInterceptor;
+import org.springframework.http.client.JdkClientHttpRequestFactory;
+import org.springframework.http.converter.json.MappingJackson2HttpMessageConverter;
+import org.springframework.web.client.RestClient;
+
+import javax.net.ssl.KeyManager;
+import javax.net.ssl.SSLContext;
+import javax.net.ssl.SSLContextSpi;
+import javax.net.ssl.SSLEngine;
+import javax.net.ssl.SSLParameters;
+import javax.net.ssl.SSLServerSocketFactory;
+import javax.net.ssl.SSLSessionContext;
+import javax.net.ssl.SSLSocketFactory;
+import javax.net.ssl.TrustManager;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.security.KeyManagementException;
+import java.security.NoSuchAlgorithmException;
+import java.security.SecureRandom;
+import java.util.Locale;
+import java.util.function.Consumer;
+
+/**
+ * Shared HTTP client for all OAuth2 and OIDC calls.
+ *
+ * One JDK {@link HttpClient} backs a single {@link RestClient}, so discovery and token
+ * requests to the same identity provider reuse its pooled connection (HTTP/2 where the
+ * server supports it, keep-alive otherwise) instead of paying a TCP and TLS handshake
+ * per request.
+ *
+ * The client creates one SSL engine per new TLS connection, so engine creations are counted
+ * as gate.http.connections.opened{host} and HTTPS requests as gate.http.requests{host}.
+ * Requests minus opened connections is the number of requests that reused a connection.
+ * The two are counted independently because concurrent requests to the same host (a
+ * discovery race, a keep-warm request) make it impossible to tell which request an engine
+ * was created for.
+ */
+@Configuration
+public class HttpClientConfig {
+
+    private static final String CONNECTIONS_OPENED_METRIC = "gate.http.connections.opened";
+    private static final String REQUESTS_METRIC = "gate.http.requests";
+
+    @Bean
+    public HttpClient httpClient(GateCliProperties properties, MeterRegistry meterRegistry)
+            throws NoSuchAlgorithmException {
+        return HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_2)
+                .connectTimeout(properties.getHttpConnectTimeout())
+                .followRedirects(HttpClient.Redirect.NORMAL)
+                .sslContext(new CountingSslContext(SSLContext.getDefault(),
+                        host -> connectionOpened(meterRegistry, host)))
+                .build();
+    }
+
+    /**
+     * Provides the RestClient used for all identity provider calls.
+     * JSON bodies go through Spring Boot's ObjectMapper so the generated codecs apply.
+     */
+    @Bean
+    public RestClient restClient(HttpClient httpClient, ObjectMapper objectMapper,
+                                 GateCliProperties properties, MeterRegistry meterRegistry) {
+        JdkClientHttpRequestFactory requestFactory = new JdkClientHttpRequestFactory(httpClient);
+        requestFactory.setReadTimeout(properties.getHttpReadTimeout());
+
+        return RestClient.builder()
+                .requestFactory(requestFactory)
+                .messageConverters(converters -> converters.replaceAll(converter ->
+                        converter instanceof MappingJackson2HttpMessageConverter
+                                ? new MappingJackson2HttpMessageConverter(objectMapper)
+                                : converter))
+                .requestInterceptor(requestMetrics(meterRegistry))
+                .build();
+    }
+
+    /**
+     * Counts HTTPS requests per host, the baseline for the opened connection count.
+     */
+    private ClientHttpRequestInterceptor requestMetrics(MeterRegistry meterRegistry) {
+        return (request, body, execution) -> {
+            URI uri = request.getURI();
+            if ("https".equalsIgnoreCase(uri.getScheme()) && uri.getHost() != null) {
+                meterRegistry.counter(REQUESTS_METRIC, "host", uri.getHost().toLowerCase(Locale.ROOT)).increment();
+            }
+            return execution.execute(request, body);
+        };
+    }
+
+    private void connectionOpened(MeterRegistry meterRegistry, String host) {
+        if (host != null) {
+            meterRegistry.counter(CONNECTIONS_OPENED_METRIC, "host", host.toLowerCase(Locale.ROOT)).increment();
+        }
+    }
+
+    /**
+     * SSLContext that reports the host of every client SSL engine it creates.
+     */
+    private static final class CountingSslContext extends SSLContext {
+        CountingSslContext(SSLContext delegate, Consumer<String> onEngine) {
+            super(new CountingSpi(delegate, onEngine), delegate.getProvider(), delegate.getProtocol());
+        }
+    }
+
+    private static final class CountingSpi extends SSLContextSpi {
+        private final SSLContext delegate;
+        private final Consumer<String> onEngine;
+
+        CountingSpi(SSLContext delegate, Consumer<String> onEngine) {
+            this.delegate = delegate;
+            this.onEngine = onEngine;
+        }
+
+        @Override
+        protected void engineInit(KeyManager[] km, TrustManager[] tm, SecureRandom sr) throws KeyManagementException {
+            delegate.init(km, tm, sr);
+        }
+
+        @Override
+        protected SSLSocketFactory engineGetSocketFactory() {
+            return delegate.getSocketFactory();
+        }
+
+        @Override
+        protected SSLServerSocketFactory engineGetServerSocketFactory() {
+            return delegate.getServerSocketFactory();
+        }
+
+        @Override
+        protected SSLEngine engineCreateSSLEngine() {
+            return delegate.createSSLEngine();
+        }
+
+        @Override
+        protected SSLEngine engineCreateSSLEngine(String host, int port) {
+            onEngine.accept(host);
+            return delegate.createSSLEngine(host, port);
+        }
+
+        @Override
+        protected SSLSessionContext engineGetServerSessionContext() {
+            return delegate.getServerSessionContext();
+        }
+
+        @Override
+        protected SSLSessionContext engineGetClientSessionContext() {
+            return delegate.getClientSessionContext();
+        }
+
+        @Override
+        protected SSLParameters engineGetDefaultSSLParameters() {
+            return delegate.getDefaultSSLParameters();
+        }
+
+        @Override
+        protected SSLParameters engineGetSupportedSSLParameters() {
+            return delegate.getSupportedSSLParameters();
+        }
+    }
+}
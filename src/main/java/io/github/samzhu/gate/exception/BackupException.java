@@ -1,5 +1,8 @@
 package io.github.samzhu.gate.exception;
 
+import com.fasterxml.jackson.core.JsonLocation;
+import com.fasterxml.jackson.core.JsonProcessingException;
+
 /**
  * Exception thrown when backup operations fail.
  */
@@ -29,7 +32,48 @@ public class BackupException extends RuntimeException {
         return new BackupException("Invalid backup file (corrupted or invalid JSON): " + path);
     }
 
+    public static BackupException invalidBackup(String path, JsonProcessingException cause) {
+        JsonLocation location = cause.getLocation();
+        String where = location != null
+                ? " at line " + location.getLineNr() + ", column " + location.getColumnNr()
+                : "";
+        return new BackupException("Invalid backup file " + path + ": "
+                + cause.getOriginalMessage() + where, cause);
+    }
+
+    public static BackupException corrupted(String path) {
+        return new BackupException("Backup content does not match its checksum (corrupted): " + path);
+    }
+
+    public static BackupException verifyFailed(Throwable cause) {
+        return new BackupException("Failed to verify backups", cause);
+    }
+
     public static BackupException rotationFailed(Throwable cause) {
         return new BackupException("Failed to rotate backups", cause);
     }
+
+    public static BackupException manifestFailed(Throwable cause) {
+        return new BackupException("Failed to rebuild backup manifest", cause);
+    }
+
+    public static BackupException exportFailed(String path, Throwable cause) {
+        return new BackupException("Failed to export backups to: " + path, cause);
+    }
+
+    public static BackupException importFailed(String path, Throwable cause) {
+        return new BackupException("Failed to import backups from: " + path, cause);
+    }
+
+    public static BackupException snapshotFailed(String path, Throwable cause) {
+        return new BackupException("Failed to snapshot directory: " + path, cause);
+    }
+
+    public static BackupException snapshotNotFound(long id) {
+        return new BackupException("Snapshot not found: " + id);
+    }
+
+    public static BackupException snapshotRestoreFailed(long id, Throwable cause) {
+        return new BackupException("Failed to restore snapshot: " + id, cause);
+    }
 }
@@ -5,12 +5,26 @@ package io.github.samzhu.gate.exception;
  */
 public class OAuth2Exception extends RuntimeException {
 
+    /**
+     * Whether the failure lies with the server or network, so another issuer may succeed
+     */
+    private final boolean retryable;
+
     public OAuth2Exception(String message) {
-        super(message);
+        this(message, null, false);
     }
 
     public OAuth2Exception(String message, Throwable cause) {
+        this(message, cause, false);
+    }
+
+    public OAuth2Exception(String message, Throwable cause, boolean retryable) {
         super(message, cause);
+        this.retryable = retryable;
+    }
+
+    public boolean isRetryable() {
+        return retryable;
     }
 
     public static OAuth2Exception authenticationFailed(String reason) {
@@ -21,8 +35,13 @@ public class OAuth2Exception extends RuntimeException {
         return new OAuth2Exception("Invalid token response: " + reason);
     }
 
+    public static OAuth2Exception serverError() {
+        return new OAuth2Exception("OAuth2 authentication failed: OAuth2 server error. Please try again later.",
+                null, true);
+    }
+
     public static OAuth2Exception connectionFailed(String tokenUrl, Throwable cause) {
-        return new OAuth2Exception("Failed to connect to token URL: " + tokenUrl, cause);
+        return new OAuth2Exception("Failed to connect to token URL: " + tokenUrl, cause, true);
     }
 
     public static OAuth2Exception tokenExpired() {
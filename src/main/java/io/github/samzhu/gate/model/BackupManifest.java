@@ -0,0 +1,64 @@
+package io.github.samzhu.gate.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import io.github.samzhu.gate.codegen.GenerateJsonCodec;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Index of settings backups, stored as manifest.json in the backup directory.
+ * Lets backups be listed and rotated without scanning the directory.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@GenerateJsonCodec
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class BackupManifest {
+
+    /**
+     * Sequence number for the next backup; never reused
+     */
+    @Builder.Default
+    private Long nextSequence = 1L;
+
+    /**
+     * Backups, oldest first (excluding the original backup)
+     */
+    @Builder.Default
+    private List<Entry> backups = new ArrayList<>();
+
+    @Data
+    @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    @GenerateJsonCodec
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public static class Entry {
+        /**
+         * Sequence number, or null for full-copy backups made before sequencing
+         */
+        private Long sequence;
+
+        /**
+         * Backup file path, relative to the backup directory
+         */
+        private String file;
+
+        /**
+         * Content blob hash, or null for full-copy backups
+         */
+        private String blob;
+
+        private Long size;
+        private Long storedSize;
+        private Instant created;
+    }
+}
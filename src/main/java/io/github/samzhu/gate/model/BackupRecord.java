@@ -0,0 +1,51 @@
+package io.github.samzhu.gate.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import io.github.samzhu.gate.codegen.GenerateJsonCodec;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+
+/**
+ * Metadata of one settings backup.
+ * The backed-up content itself is stored once per distinct content, as a blob named
+ * by its SHA-256 hash under the backup directory's objects/ folder.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@GenerateJsonCodec
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class BackupRecord {
+
+    /**
+     * Sequence number of the backup, unique within the backup directory
+     */
+    private Long sequence;
+
+    /**
+     * SHA-256 hash (hex) of the backed-up content, which is also the blob name
+     */
+    private String blob;
+
+    /**
+     * Size of the backed-up content in bytes
+     */
+    private Long size;
+
+    /**
+     * Size of the stored blob in bytes (smaller than size when compressed)
+     */
+    private Long storedSize;
+
+    private Instant created;
+
+    /**
+     * Path of the file that was backed up
+     */
+    private String source;
+}
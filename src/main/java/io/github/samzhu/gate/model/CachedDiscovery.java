@@ -0,0 +1,45 @@
+package io.github.samzhu.gate.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import io.github.samzhu.gate.codegen.GenerateJsonCodec;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+
+/**
+ * OIDC discovery document cached on disk, with the HTTP caching metadata it was served with.
+ * Stored per issuer under ~/.gate-cli/cache/oidc/.
+ */
+@Data
+@Builder(toBuilder = true)
+@NoArgsConstructor
+@AllArgsConstructor
+@GenerateJsonCodec
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class CachedDiscovery {
+
+    private String issuer;
+
+    private OIDCConfiguration configuration;
+
+    /**
+     * Validators for conditional revalidation (ETag and Last-Modified response headers)
+     */
+    private String etag;
+    private String lastModified;
+
+    private Instant fetched;
+
+    /**
+     * Until when the document is fresh and used without contacting the issuer
+     */
+    private Instant expires;
+
+    /**
+     * Until when a stale document may still be used while it is revalidated in the background
+     */
+    private Instant staleUntil;
+}
@@ -1,8 +1,10 @@
 package io.github.samzhu.gate.model;
 
 import com.fasterxml.jackson.annotation.JsonIgnore;
+import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
+import io.github.samzhu.gate.codegen.GenerateJsonCodec;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
@@ -24,9 +26,14 @@ import java.util.Map;
 @Builder
 @NoArgsConstructor
 @AllArgsConstructor
+@GenerateJsonCodec
 @JsonInclude(JsonInclude.Include.NON_NULL)
+@JsonIgnoreProperties(ignoreUnknown = true)
 public class ClaudeSettings {
 
+    public static final String ENV_AUTH_TOKEN = "ANTHROPIC_AUTH_TOKEN";
+    public static final String ENV_BASE_URL = "ANTHROPIC_BASE_URL";
+
     /**
      * Environment variables for Claude Code configuration.
      * Key variables:
@@ -50,6 +57,7 @@ public class ClaudeSettings {
     @Builder
     @NoArgsConstructor
     @AllArgsConstructor
+    @GenerateJsonCodec
     @JsonInclude(JsonInclude.Include.NON_NULL)
     public static class Permissions {
         @Builder.Default
@@ -71,12 +79,21 @@ public class ClaudeSettings {
         if (env == null) {
             env = new HashMap<>();
         }
-        // Remove "Bearer " prefix if present (for backwards compatibility)
-        String rawToken = token;
+        env.put(ENV_AUTH_TOKEN, stripBearerPrefix(token));
+    }
+
+    /**
+     * Removes "Bearer " prefix if present (for backwards compatibility).
+     * Claude Code adds the prefix itself when sending ANTHROPIC_AUTH_TOKEN.
+     *
+     * @param token Access token, possibly prefixed with "Bearer "
+     * @return Raw access token
+     */
+    public static String stripBearerPrefix(String token) {
         if (token != null && token.startsWith("Bearer ")) {
-            rawToken = token.substring(7);
+            return token.substring(7);
         }
-        env.put("ANTHROPIC_AUTH_TOKEN", rawToken);
+        return token;
     }
 
     /**
@@ -89,9 +106,9 @@ public class ClaudeSettings {
             env = new HashMap<>();
         }
         if (baseUrl != null) {
-            env.put("ANTHROPIC_BASE_URL", baseUrl);
+            env.put(ENV_BASE_URL, baseUrl);
         } else {
-            env.remove("ANTHROPIC_BASE_URL");
+            env.remove(ENV_BASE_URL);
         }
     }
 
@@ -100,7 +117,7 @@ public class ClaudeSettings {
      */
     @JsonIgnore
     public String getBaseUrl() {
-        return env != null ? env.get("ANTHROPIC_BASE_URL") : null;
+        return env != null ? env.get(ENV_BASE_URL) : null;
     }
 
     /**
@@ -108,7 +125,7 @@ public class ClaudeSettings {
      */
     public void removeAuthToken() {
         if (env != null) {
-            env.remove("ANTHROPIC_AUTH_TOKEN");
+            env.remove(ENV_AUTH_TOKEN);
         }
     }
 
@@ -117,7 +134,7 @@ public class ClaudeSettings {
      */
     public void removeBaseUrl() {
         if (env != null) {
-            env.remove("ANTHROPIC_BASE_URL");
+            env.remove(ENV_BASE_URL);
         }
     }
 
@@ -127,16 +144,6 @@ public class ClaudeSettings {
      */
     @JsonIgnore
     public String getAuthToken() {
-        return env != null ? env.get("ANTHROPIC_AUTH_TOKEN") : null;
-    }
-
-    /**
-     * Creates minimal default settings with only env block.
-     * Does NOT include permissions - those are high-risk security settings
-     * that should be preserved from original file or left to Claude Code defaults.
-     */
-    public static ClaudeSettings createDefault() {
-        return ClaudeSettings.builder()
-                .build();
+        return env != null ? env.get(ENV_AUTH_TOKEN) : null;
     }
 }
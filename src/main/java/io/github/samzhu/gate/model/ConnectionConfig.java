@@ -1,12 +1,15 @@
 package io.github.samzhu.gate.model;
 
 import com.fasterxml.jackson.annotation.JsonInclude;
+import io.github.samzhu.gate.codegen.GenerateJsonCodec;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
 import lombok.NoArgsConstructor;
 
 import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
 
 /**
  * Configuration for OAuth2 connection to custom Claude API endpoint.
@@ -16,6 +19,7 @@ import java.time.Instant;
 @Builder
 @NoArgsConstructor
 @AllArgsConstructor
+@GenerateJsonCodec
 @JsonInclude(JsonInclude.Include.NON_NULL)
 public class ConnectionConfig {
 
@@ -25,14 +29,26 @@ public class ConnectionConfig {
     private BackupSettings backupSettings;
     private String originalSettingsBackup;
 
+    /**
+     * Deep copy, so a cached configuration can be handed out without sharing mutable state.
+     */
+    public ConnectionConfig copy() {
+        return new ConnectionConfig(version,
+                settings != null ? settings.toBuilder().build() : null,
+                currentConnection != null ? currentConnection.toBuilder().build() : null,
+                backupSettings != null ? backupSettings.copy() : null,
+                originalSettingsBackup);
+    }
+
     /**
      * User-configurable settings managed by 'config' command.
      * These override application.yaml defaults.
      */
     @Data
-    @Builder
+    @Builder(toBuilder = true)
     @NoArgsConstructor
     @AllArgsConstructor
+    @GenerateJsonCodec
     @JsonInclude(JsonInclude.Include.NON_NULL)
     public static class Settings {
         private String apiUrl;
@@ -45,9 +61,10 @@ public class ConnectionConfig {
      * Current active connection information.
      */
     @Data
-    @Builder
+    @Builder(toBuilder = true)
     @NoArgsConstructor
     @AllArgsConstructor
+    @GenerateJsonCodec
     @JsonInclude(JsonInclude.Include.NON_NULL)
     public static class CurrentConnection {
         /**
@@ -64,14 +81,52 @@ public class ConnectionConfig {
     }
 
     @Data
-    @Builder
+    @Builder(toBuilder = true)
     @NoArgsConstructor
     @AllArgsConstructor
+    @GenerateJsonCodec
     @JsonInclude(JsonInclude.Include.NON_NULL)
     public static class BackupSettings {
+        /**
+         * Number of most recent backups always kept
+         */
         @Builder.Default
         private Integer maxBackups = 10;
+        /**
+         * Additionally keep the newest backup of each of this many most recent hours, days
+         * and weeks that have backups (0 or unset disables the tier)
+         */
+        private Integer keepHourly;
+        private Integer keepDaily;
+        private Integer keepWeekly;
         @Builder.Default
         private String backupDirectory = "~/.gate-cli/backups";
+        /**
+         * Store new backups GZIP-compressed (existing backups stay as they are)
+         */
+        @Builder.Default
+        private Boolean compress = false;
+        /**
+         * Store a full backup every N backups and deltas against the previous backup
+         * in between (1 disables deltas)
+         */
+        @Builder.Default
+        private Integer snapshotInterval = 10;
+        /**
+         * Glob patterns, relative to ~/.claude, left out of directory snapshots
+         * (transcripts and caches by default)
+         */
+        @Builder.Default
+        private List<String> snapshotExclude = new ArrayList<>(List.of(
+                "projects", "todos", "shell-snapshots", "statsig", "ide", "debug"));
+
+        /**
+         * Deep copy; the exclude list is copied too.
+         */
+        public BackupSettings copy() {
+            return toBuilder()
+                    .snapshotExclude(snapshotExclude != null ? new ArrayList<>(snapshotExclude) : null)
+                    .build();
+        }
     }
 }
@@ -0,0 +1,47 @@
+package io.github.samzhu.gate.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import io.github.samzhu.gate.codegen.GenerateJsonCodec;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Remembered health of OAuth2 issuers, stored in ~/.gate-cli/cache/issuers.json.
+ * Used to try the fastest healthy issuer first when several are configured.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@GenerateJsonCodec
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class IssuerHealth {
+
+    /**
+     * Scores by issuer URI
+     */
+    @Builder.Default
+    private Map<String, Score> issuers = new HashMap<>();
+
+    @Data
+    @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    @GenerateJsonCodec
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public static class Score {
+        /**
+         * Exponentially weighted moving average of token request latency
+         */
+        private Double latencyMillis;
+
+        private Instant lastSuccess;
+        private Instant lastFailure;
+    }
+}
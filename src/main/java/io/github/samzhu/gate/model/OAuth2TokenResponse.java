@@ -1,7 +1,9 @@
 package io.github.samzhu.gate.model;
 
+import com.fasterxml.jackson.annotation.JsonIgnore;
 import com.fasterxml.jackson.annotation.JsonInclude;
 import com.fasterxml.jackson.annotation.JsonProperty;
+import io.github.samzhu.gate.codegen.GenerateJsonCodec;
 import lombok.AllArgsConstructor;
 import lombok.Builder;
 import lombok.Data;
@@ -17,6 +19,7 @@ import java.time.Instant;
 @Builder
 @NoArgsConstructor
 @AllArgsConstructor
+@GenerateJsonCodec
 @JsonInclude(JsonInclude.Include.NON_NULL)
 public class OAuth2TokenResponse {
 
@@ -49,6 +52,7 @@ public class OAuth2TokenResponse {
     /**
      * Checks if the token is expired
      */
+    @JsonIgnore
     public boolean isExpired() {
         return expiresAt != null && expiresAt.isBefore(Instant.now());
     }
@@ -56,6 +60,7 @@ public class OAuth2TokenResponse {
     /**
      * Checks if the token is valid (not expired)
      */
+    @JsonIgnore
     public boolean isValid() {
         return !isExpired();
     }
@@ -65,6 +70,7 @@ public class OAuth2TokenResponse {
      * Note: ANTHROPIC_AUTH_TOKEN in settings.json will automatically
      * get "Bearer " prefix added by Claude Code.
      */
+    @JsonIgnore
     public String getTokenForAuth() {
         return accessToken;
     }
@@ -2,6 +2,7 @@ package io.github.samzhu.gate.model;
 
 import com.fasterxml.jackson.annotation.JsonIgnoreProperties;
 import com.fasterxml.jackson.annotation.JsonProperty;
+import io.github.samzhu.gate.codegen.GenerateJsonCodec;
 import lombok.AllArgsConstructor;
 import lombok.Data;
 import lombok.NoArgsConstructor;
@@ -13,6 +14,7 @@ import lombok.NoArgsConstructor;
 @Data
 @NoArgsConstructor
 @AllArgsConstructor
+@GenerateJsonCodec
 @JsonIgnoreProperties(ignoreUnknown = true)
 public class OIDCConfiguration {
 
@@ -0,0 +1,68 @@
+package io.github.samzhu.gate.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import io.github.samzhu.gate.codegen.GenerateJsonCodec;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Index of ~/.claude directory snapshots, stored as snapshots/index.json in the backup directory.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@GenerateJsonCodec
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class SnapshotIndex {
+
+    /**
+     * Id for the next snapshot; never reused
+     */
+    @Builder.Default
+    private Long nextId = 1L;
+
+    /**
+     * Snapshots, oldest first
+     */
+    @Builder.Default
+    private List<Snapshot> snapshots = new ArrayList<>();
+
+    /**
+     * File nodes of the last scan by relative path, so files whose size and
+     * modification time are unchanged are not read again
+     */
+    @Builder.Default
+    private Map<String, SnapshotTree.Node> statCache = new HashMap<>();
+
+    @Data
+    @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    @GenerateJsonCodec
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public static class Snapshot {
+        private Long id;
+
+        /**
+         * Hash of the root tree
+         */
+        private String root;
+
+        private Instant created;
+
+        /**
+         * Number of files and their total size in bytes
+         */
+        private Long files;
+        private Long size;
+    }
+}
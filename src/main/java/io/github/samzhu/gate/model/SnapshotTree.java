@@ -0,0 +1,71 @@
+package io.github.samzhu.gate.model;
+
+import com.fasterxml.jackson.annotation.JsonInclude;
+import io.github.samzhu.gate.codegen.GenerateJsonCodec;
+import lombok.AllArgsConstructor;
+import lombok.Builder;
+import lombok.Data;
+import lombok.NoArgsConstructor;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * One directory of a ~/.claude snapshot, stored under snapshots/trees/ named by the
+ * SHA-256 of its JSON. Subdirectories are referenced by their tree hash, so the root
+ * hash identifies the content of the whole directory tree.
+ */
+@Data
+@Builder
+@NoArgsConstructor
+@AllArgsConstructor
+@GenerateJsonCodec
+@JsonInclude(JsonInclude.Include.NON_NULL)
+public class SnapshotTree {
+
+    public static final String FILE = "file";
+    public static final String DIRECTORY = "dir";
+
+    /**
+     * Entries of the directory, sorted by name
+     */
+    @Builder.Default
+    private List<Node> entries = new ArrayList<>();
+
+    @Data
+    @Builder
+    @NoArgsConstructor
+    @AllArgsConstructor
+    @GenerateJsonCodec
+    @JsonInclude(JsonInclude.Include.NON_NULL)
+    public static class Node {
+        private String name;
+
+        /**
+         * {@link #FILE} or {@link #DIRECTORY}
+         */
+        private String type;
+
+        /**
+         * SHA-256 hash of the file content, or of the subdirectory's tree
+         */
+        private String hash;
+
+        /**
+         * File size in bytes and last-modified time in epoch milliseconds (files only)
+         */
+        private Long size;
+        private Long modified;
+
+        /**
+         * POSIX permissions, as in "rwxr-xr-x"; null on file systems without them
+         */
+        private String mode;
+
+        /**
+         * Whether the file was executable; only set by snapshots taken before {@link #mode}
+         * was recorded
+         */
+        private Boolean executable;
+    }
+}
@@ -0,0 +1,91 @@
+package io.github.samzhu.gate.service;
+
+import io.github.samzhu.gate.model.BackupManifest;
+import io.github.samzhu.gate.model.ConnectionConfig;
+import org.springframework.stereotype.Component;
+
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.temporal.ChronoUnit;
+import java.time.temporal.IsoFields;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Objects;
+
+/**
+ * Time-tiered backup retention.
+ *
+ * Keeps the last {@code maxBackups} backups, plus the newest backup of each of the
+ * {@code keepHourly} most recent hours, {@code keepDaily} days and {@code keepWeekly} weeks
+ * that have backups. A burst of backups therefore only displaces the recent tier, while
+ * older history thins out to one backup per hour, day and week.
+ */
+@Component
+public class BackupRetention {
+
+    /**
+     * Selects the backups the policy no longer keeps, in a single pass from newest to oldest.
+     *
+     * @param backups  Backups, oldest first (as in the manifest)
+     * @param settings Retention settings
+     * @return Backups to delete, oldest first
+     */
+    public List<BackupManifest.Entry> expired(List<BackupManifest.Entry> backups,
+                                              ConnectionConfig.BackupSettings settings) {
+        ZoneId zone = ZoneId.systemDefault();
+        int keepLast = orZero(settings.getMaxBackups());
+        Tier hourly = new Tier(orZero(settings.getKeepHourly()));
+        Tier daily = new Tier(orZero(settings.getKeepDaily()));
+        Tier weekly = new Tier(orZero(settings.getKeepWeekly()));
+
+        List<BackupManifest.Entry> expired = new ArrayList<>();
+        int kept = 0;
+        for (int i = backups.size() - 1; i >= 0; i--) {
+            BackupManifest.Entry backup = backups.get(i);
+            boolean keep = kept < keepLast;
+
+            if (backup.getCreated() != null) {
+                ZonedDateTime created = backup.getCreated().atZone(zone);
+                // Every tier sees every backup, so each tier tracks its own buckets
+                keep |= hourly.keep(created.truncatedTo(ChronoUnit.HOURS));
+                keep |= daily.keep(created.toLocalDate());
+                keep |= weekly.keep(created.get(IsoFields.WEEK_BASED_YEAR) * 100
+                        + created.get(IsoFields.WEEK_OF_WEEK_BASED_YEAR));
+            }
+
+            if (keep) {
+                kept++;
+            } else {
+                expired.add(0, backup);
+            }
+        }
+        return expired;
+    }
+
+    private int orZero(Integer value) {
+        return value != null ? Math.max(value, 0) : 0;
+    }
+
+    /**
+     * Keeps the first (newest) backup seen in each bucket, for a limited number of buckets.
+     * Backups arrive newest first, so a bucket is complete once a different bucket shows up.
+     */
+    private static final class Tier {
+        private final int limit;
+        private int buckets;
+        private Object lastBucket;
+
+        private Tier(int limit) {
+            this.limit = limit;
+        }
+
+        boolean keep(Object bucket) {
+            if (buckets >= limit || Objects.equals(bucket, lastBucket)) {
+                return false;
+            }
+            lastBucket = bucket;
+            buckets++;
+            return true;
+        }
+    }
+}
@@ -1,27 +1,99 @@
 package io.github.samzhu.gate.service;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
 import io.github.samzhu.gate.exception.BackupException;
+import io.github.samzhu.gate.model.BackupManifest;
+import io.github.samzhu.gate.model.BackupRecord;
 import io.github.samzhu.gate.model.ConnectionConfig;
+import io.github.samzhu.gate.util.DeltaCodec;
 import io.github.samzhu.gate.util.FileUtil;
+import io.github.samzhu.gate.util.JsonValidator;
+import io.github.samzhu.gate.util.SettingsDiff;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 
+import java.io.BufferedInputStream;
+import java.io.ByteArrayInputStream;
 import java.io.IOException;
+import java.io.FilterOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
 import java.nio.file.Path;
+import java.time.Duration;
 import java.time.Instant;
 import java.time.ZoneId;
 import java.time.format.DateTimeFormatter;
 import java.util.ArrayList;
 import java.util.Comparator;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.regex.Pattern;
 import java.util.stream.Collectors;
 import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+import java.util.zip.ZipOutputStream;
 
 /**
  * Service for managing Claude Code settings backups.
- * Implements automatic rotation strategy (max 10 backups).
+ * Implements automatic rotation strategy: the last 10 backups by default, optionally
+ * thinned to hourly, daily and weekly backups beyond that ({@link BackupRetention}).
+ *
+ * Backups are content-addressed: each distinct settings content is stored once as a blob
+ * named by its SHA-256 hash under objects/, and each backup is a small metadata record
+ * under records/ pointing at its blob. Rotation deletes records only; blobs no longer
+ * referenced by any record are reclaimed by a sweep.
+ *
+ * Every record names its content by the SHA-256 taken at creation; restore and
+ * {@link #verifyBackups(boolean)} check content against it. Legacy full copies have no recorded
+ * checksum and are only checked to be well-formed JSON; whether content has the shape of
+ * settings.json is only reported, on request, by verification.
+ *
+ * Rotation and the sweep run after the backup is written, on a single background virtual
+ * thread with a bounded queue, so commands only pay for the durable write itself.
+ * Pending work is drained when the application shuts down.
+ * Full-copy backups from older versions (in the backup directory itself) are still
+ * listed, rotated and restorable.
+ *
+ * manifest.json indexes the backups in creation order, so listing, most-recent lookup
+ * and rotation read one file instead of scanning the directory. Every backup gets a
+ * monotonic sequence number in its name, so backups within the same second stay distinct.
+ * A missing or unreadable manifest is rebuilt from a scan ({@link #rebuildManifest()}).
+ *
+ * With {@code backupSettings.compress} enabled, new blobs are stored GZIP-compressed
+ * (objects/<hash>.gz), streamed through the compressor into the blob file.
+ * The hash always names the uncompressed content, so both forms deduplicate together.
+ *
+ * Most new blobs are stored as byte-exact deltas against the previous backup
+ * (objects/<hash>.delta), with a full blob every {@code backupSettings.snapshotInterval}
+ * backups so reconstruction follows a bounded chain. Restore rebuilds (or inflates) the content
+ * in memory once, then checks and writes those same bytes; the sweep keeps every blob a
+ * referenced delta depends on.
+ *
+ * {@link #exportBackups(String)} and {@link #importBackups(String)} move the whole backup
+ * history between machines as one streamed ZIP archive.
+ *
+ * Changes to the backup directory hold an exclusive lock on it;
+ * lock order is always settings file first, then backup directory.
  */
 @Slf4j
 @Service
@@ -32,16 +104,72 @@ public class BackupService {
             DateTimeFormatter.ofPattern("yyyy-MM-dd-HH-mm-ss").withZone(ZoneId.systemDefault());
     private static final String BACKUP_PREFIX = "settings.json.backup.";
     private static final String ORIGINAL_BACKUP = "settings.json.original";
+    private static final String OBJECTS_DIR = "objects";
+    private static final String RECORDS_DIR = "records";
+    private static final String MANIFEST_FILE = "manifest.json";
+    private static final String COMPRESSED_SUFFIX = ".gz";
+    private static final String DELTA_SUFFIX = ".delta";
+    private static final int MAX_DELTA_CHAIN = 1000;
+    private static final String MAINTENANCE_QUEUE_METRIC = "gate.backup.maintenance.queue";
+    private static final String PRUNE_DURATION_METRIC = "gate.backup.prune.duration";
+    private static final int MAINTENANCE_QUEUE_CAPACITY = 16;
+    private static final Duration MAINTENANCE_DRAIN_TIMEOUT = Duration.ofSeconds(10);
+    private static final Pattern SHA256_HEX = Pattern.compile("[0-9a-f]{64}");
+    private static final Comparator<BackupManifest.Entry> CREATION_ORDER =
+            Comparator.comparing(BackupManifest.Entry::getCreated)
+                    .thenComparing(BackupManifest.Entry::getSequence, Comparator.nullsFirst(Comparator.naturalOrder()));
 
     private final FileUtil fileUtil;
     private final ConfigurationService configurationService;
+    private final JsonValidator jsonValidator;
+    private final DeltaCodec deltaCodec;
+    private final MeterRegistry meterRegistry;
+    private final BackupRetention backupRetention;
+    private final SettingsDiff settingsDiff;
+
+    /**
+     * Runs rotation and sweeps one at a time. Pruning is idempotent, so work that does not
+     * fit the queue is dropped; a later backup schedules it again.
+     */
+    private final ThreadPoolExecutor maintenanceExecutor = new ThreadPoolExecutor(
+            1, 1, 0L, TimeUnit.MILLISECONDS,
+            new ArrayBlockingQueue<>(MAINTENANCE_QUEUE_CAPACITY),
+            Thread.ofVirtual().name("backup-maintenance-", 0).factory(),
+            new ThreadPoolExecutor.DiscardPolicy());
+
+    /**
+     * Set while a prune is queued but not started, so bursts of backups queue one prune.
+     */
+    private final AtomicBoolean prunePending = new AtomicBoolean();
+
+    @PostConstruct
+    void registerMetrics() {
+        meterRegistry.gauge(MAINTENANCE_QUEUE_METRIC, maintenanceExecutor,
+                executor -> executor.getQueue().size() + executor.getActiveCount());
+    }
+
+    /**
+     * Lets queued rotation and sweeps finish before the application exits.
+     */
+    @PreDestroy
+    void drainMaintenance() {
+        maintenanceExecutor.shutdown();
+        try {
+            if (!maintenanceExecutor.awaitTermination(MAINTENANCE_DRAIN_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS)) {
+                log.warn("Backup maintenance did not finish within {} s", MAINTENANCE_DRAIN_TIMEOUT.toSeconds());
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
 
     /**
      * Creates a backup of the Claude Code settings file.
-     * Automatically rotates old backups if max count is reached.
+     * The content is only stored if no earlier backup holds the same bytes.
+     * Backups the retention policy no longer keeps are rotated out in the background afterwards.
      *
      * @param sourceFile Path to the settings file to backup
-     * @return Path to the created backup file
+     * @return Path to the created backup record
      */
     public String createBackup(String sourceFile) {
         try {
@@ -49,34 +177,123 @@ public class BackupService {
                 log.warn("Source file does not exist, skipping backup: {}", sourceFile);
                 return null;
             }
+            byte[] content = Files.readAllBytes(fileUtil.expandPath(sourceFile));
 
-            // Get backup settings
             ConnectionConfig.BackupSettings settings = configurationService.getBackupSettings();
             String backupDir = settings.getBackupDirectory();
+            try (FileUtil.FileLockHandle lock = fileUtil.lockExclusive(backupDir)) {
+                return addRecord(sourceFile, content, backupDir, settings);
+            }
+        } catch (IOException e) {
+            throw BackupException.createFailed(sourceFile, e);
+        }
+    }
+
+    /**
+     * Reads a settings file and stores its content, without recording a backup yet.
+     * The expensive part of a backup (hashing, delta encoding, writing the blob) can so run
+     * ahead of an operation that may still fail; {@link #commitBackup} then records the
+     * backup only if it is wanted. Content never committed is reclaimed by the next sweep.
+     *
+     * @param sourceFile Path to the settings file to backup
+     * @return The prepared backup, or null if the file does not exist
+     */
+    public PreparedBackup prepareBackup(String sourceFile) {
+        try {
+            if (!fileUtil.exists(sourceFile)) {
+                log.warn("Source file does not exist, skipping backup: {}", sourceFile);
+                return null;
+            }
+            byte[] content = Files.readAllBytes(fileUtil.expandPath(sourceFile));
+
+            ConnectionConfig.BackupSettings settings = configurationService.getBackupSettings();
+            String backupDir = settings.getBackupDirectory();
+            try (FileUtil.FileLockHandle lock = fileUtil.lockExclusive(backupDir)) {
+                storeContent(content, backupDir, settings, newestBlob(readManifest(backupDir)));
+            }
+            return new PreparedBackup(sourceFile, content);
+        } catch (IOException e) {
+            throw BackupException.createFailed(sourceFile, e);
+        }
+    }
+
+    /**
+     * Records a backup prepared by {@link #prepareBackup}, of the content as it was read then.
+     * Content swept in the meantime is stored again.
+     *
+     * @param prepared The prepared backup
+     * @return Path to the created backup record
+     */
+    public String commitBackup(PreparedBackup prepared) {
+        try {
+            ConnectionConfig.BackupSettings settings = configurationService.getBackupSettings();
+            String backupDir = settings.getBackupDirectory();
+            try (FileUtil.FileLockHandle lock = fileUtil.lockExclusive(backupDir)) {
+                return addRecord(prepared.sourceFile(), prepared.content(), backupDir, settings);
+            }
+        } catch (IOException e) {
+            throw BackupException.createFailed(prepared.sourceFile(), e);
+        }
+    }
 
-            // Ensure backup directory exists
-            fileUtil.createDirectory(backupDir);
+    /**
+     * Stores content unless already stored and records a new backup of it.
+     * The caller holds the exclusive lock on the backup directory.
+     *
+     * @return Path to the created backup record
+     */
+    private String addRecord(String sourceFile, byte[] content, String backupDir,
+                             ConnectionConfig.BackupSettings settings) throws IOException {
+        BackupManifest manifest = readManifest(backupDir);
+        long sequence = manifest.getNextSequence();
 
-            // Generate backup filename with timestamp
-            String timestamp = TIMESTAMP_FORMAT.format(Instant.now());
-            String backupFile = backupDir + "/" + BACKUP_PREFIX + timestamp;
+        // Generate backup record name with timestamp and sequence number
+        String timestamp = TIMESTAMP_FORMAT.format(Instant.now());
+        String recordName = RECORDS_DIR + "/" + BACKUP_PREFIX + timestamp + "." + sequence;
+        String recordFile = backupDir + "/" + recordName;
 
-            // Rotate backups before creating new one
-            rotateBackups(backupDir, settings.getMaxBackups());
+        // Store content (deduplicated, the previous backup is the base for a delta)
+        // and point a new record at it
+        StoredContent stored = storeContent(content, backupDir, settings, newestBlob(manifest));
+        BackupRecord record = BackupRecord.builder()
+                .sequence(sequence)
+                .blob(stored.hash())
+                .size((long) content.length)
+                .storedSize(stored.storedSize())
+                .created(Instant.now())
+                .source(sourceFile)
+                .build();
+        fileUtil.atomicWriteJson(recordFile, record);
 
-            // Copy file to backup location
-            fileUtil.copyFile(sourceFile, backupFile);
+        manifest.getBackups().add(BackupManifest.Entry.builder()
+                .sequence(sequence)
+                .file(recordName)
+                .blob(record.getBlob())
+                .size(record.getSize())
+                .storedSize(record.getStoredSize())
+                .created(record.getCreated())
+                .build());
+        manifest.setNextSequence(sequence + 1);
+        writeManifest(backupDir, manifest);
 
-            log.info("Created backup: {}", backupFile);
-            return backupFile;
-        } catch (IOException e) {
-            throw BackupException.createFailed(sourceFile, e);
+        log.info("Created backup: {} (content {})", recordFile, record.getBlob());
+        if (manifest.getBackups().size() > settings.getMaxBackups()) {
+            schedulePrune();
         }
+        return recordFile;
+    }
+
+    private String newestBlob(BackupManifest manifest) {
+        List<BackupManifest.Entry> backups = manifest.getBackups();
+        return backups.isEmpty() ? null : backups.getLast().getBlob();
     }
 
     /**
      * Creates the original settings backup (never rotated).
      * Only creates if it doesn't already exist.
+     * The original backup stays a plain copy, so its path recorded in config.json
+     * can be restored by any version.
+     * The caller is responsible for recording the returned path in config.json.
      *
      * @param sourceFile Path to the settings file to backup
      * @return Path to the original backup file
@@ -92,43 +309,50 @@ public class BackupService {
             String backupDir = settings.getBackupDirectory();
             String originalBackup = backupDir + "/" + ORIGINAL_BACKUP;
 
-            // Only create if doesn't exist
-            if (fileUtil.exists(originalBackup)) {
-                log.debug("Original backup already exists: {}", originalBackup);
-                return originalBackup;
-            }
-
-            // Ensure backup directory exists
-            fileUtil.createDirectory(backupDir);
+            try (FileUtil.FileLockHandle lock = fileUtil.lockExclusive(backupDir)) {
+                // Only create if doesn't exist
+                if (fileUtil.exists(originalBackup)) {
+                    log.debug("Original backup already exists: {}", originalBackup);
+                    return originalBackup;
+                }
 
-            // Copy file to backup location
-            fileUtil.copyFile(sourceFile, originalBackup);
+                // Ensure backup directory exists
+                fileUtil.createDirectory(backupDir);
 
-            // Save path to configuration
-            configurationService.setOriginalSettingsBackup(originalBackup);
+                // Copy file to backup location
+                fileUtil.copyFile(sourceFile, originalBackup);
 
-            log.info("Created original backup: {}", originalBackup);
-            return originalBackup;
+                log.info("Created original backup: {}", originalBackup);
+                return originalBackup;
+            }
         } catch (IOException e) {
             throw BackupException.createFailed(sourceFile, e);
         }
     }
 
     /**
-     * Restores a backup file to the target location.
+     * Restores a backup to the target location.
      *
-     * @param backupFile Path to the backup file
+     * @param backupFile Path to the backup record (or legacy full-copy backup)
      * @param targetFile Path to restore the backup to
      */
     public void restoreBackup(String backupFile, String targetFile) {
-        try {
+        String backupDir = configurationService.getBackupSettings().getBackupDirectory();
+        try (FileUtil.FileLockHandle targetLock = fileUtil.lockExclusive(targetFile);
+             FileUtil.FileLockHandle backupLock = fileUtil.lockExclusive(backupDir)) {
             if (!fileUtil.exists(backupFile)) {
                 throw BackupException.notFound(backupFile);
             }
+            BackupContent content = resolveContent(backupFile, backupDir);
 
-            // Validate backup file is valid JSON
-            if (!fileUtil.isValidJson(backupFile)) {
-                throw BackupException.invalidBackup(backupFile);
+            // Check the backup content before touching the target
+            byte[] restored;
+            try {
+                restored = readVerifiedContent(content);
+            } catch (ChecksumMismatchException e) {
+                throw BackupException.corrupted(backupFile);
+            } catch (JsonProcessingException e) {
+                throw BackupException.invalidBackup(backupFile, e);
             }
 
             // Create backup of current file before restoring
@@ -136,8 +360,8 @@ public class BackupService {
                 createBackup(targetFile);
             }
 
-            // Copy backup to target location
-            fileUtil.copyFile(backupFile, targetFile);
+            // Write the verified bytes into the target atomically
+            fileUtil.atomicWrite(targetFile, out -> out.write(restored));
 
             log.info("Restored backup from {} to {}", backupFile, targetFile);
         } catch (IOException e) {
@@ -160,14 +384,17 @@ public class BackupService {
                 return new ArrayList<>();
             }
 
-            try (Stream<Path> files = Files.list(backupPath)) {
-                return files
-                        .filter(Files::isRegularFile)
-                        .filter(p -> p.getFileName().toString().startsWith(BACKUP_PREFIX) ||
-                                     p.getFileName().toString().equals(ORIGINAL_BACKUP))
-                        .map(this::toBackupInfo)
-                        .sorted(Comparator.comparing(BackupInfo::getCreated).reversed())
-                        .collect(Collectors.toList());
+            try (FileUtil.FileLockHandle lock = fileUtil.lockShared(backupDir)) {
+                List<BackupInfo> backups = new ArrayList<>();
+                for (BackupManifest.Entry entry : readManifest(backupDir).getBackups()) {
+                    backups.add(toBackupInfo(backupPath, entry));
+                }
+                Path original = backupPath.resolve(ORIGINAL_BACKUP);
+                if (Files.isRegularFile(original)) {
+                    backups.add(toLegacyBackupInfo(original));
+                }
+                backups.sort(Comparator.comparing(BackupInfo::getCreated).reversed());
+                return backups;
             }
         } catch (IOException e) {
             log.error("Failed to list backups", e);
@@ -181,50 +408,835 @@ public class BackupService {
      * @return Path to the most recent backup or null if none exist
      */
     public String getMostRecentBackup() {
-        List<BackupInfo> backups = listBackups().stream()
-                .filter(b -> !b.getFileName().equals(ORIGINAL_BACKUP))
-                .collect(Collectors.toList());
+        String backupDir = configurationService.getBackupSettings().getBackupDirectory();
+        Path backupPath = fileUtil.expandPath(backupDir);
+        if (!Files.exists(backupPath)) {
+            return null;
+        }
 
-        return backups.isEmpty() ? null : backups.get(0).getPath();
+        try (FileUtil.FileLockHandle lock = fileUtil.lockShared(backupDir)) {
+            List<BackupManifest.Entry> backups = readManifest(backupDir).getBackups();
+            return backups.isEmpty() ? null
+                    : backupPath.resolve(backups.get(backups.size() - 1).getFile()).toString();
+        } catch (IOException e) {
+            log.error("Failed to find most recent backup", e);
+            return null;
+        }
     }
 
     /**
-     * Rotates backups by deleting oldest ones if max count is exceeded.
+     * Finds the newest backup created at or before an instant, by binary search over the
+     * manifest (which lists backups in creation order). Falls back to the original settings
+     * backup if no other backup is old enough.
      *
-     * @param backupDir Directory containing backups
-     * @param maxBackups Maximum number of backups to keep (excluding original)
+     * @param instant Point in time to restore to
+     * @return The backup, or null if none is that old
      */
-    private void rotateBackups(String backupDir, int maxBackups) {
+    public BackupInfo findBackupAt(Instant instant) {
+        String backupDir = configurationService.getBackupSettings().getBackupDirectory();
+        Path backupPath = fileUtil.expandPath(backupDir);
+        if (!Files.exists(backupPath)) {
+            return null;
+        }
+
+        try (FileUtil.FileLockHandle lock = fileUtil.lockShared(backupDir)) {
+            List<BackupManifest.Entry> backups = readManifest(backupDir).getBackups();
+            int low = 0;
+            int high = backups.size() - 1;
+            int found = -1;
+            while (low <= high) {
+                int mid = (low + high) >>> 1;
+                Instant created = backups.get(mid).getCreated();
+                if (created == null || !created.isAfter(instant)) {
+                    found = mid;
+                    low = mid + 1;
+                } else {
+                    high = mid - 1;
+                }
+            }
+            if (found >= 0) {
+                return toBackupInfo(backupPath, backups.get(found));
+            }
+
+            Path original = backupPath.resolve(ORIGINAL_BACKUP);
+            if (Files.isRegularFile(original)) {
+                BackupInfo info = toLegacyBackupInfo(original);
+                return info.getCreated().isAfter(instant) ? null : info;
+            }
+            return null;
+        } catch (IOException e) {
+            log.error("Failed to find backup at {}", instant, e);
+            return null;
+        }
+    }
+
+    /**
+     * Shows what restoring a backup would change in the target, without changing anything.
+     * The backup is checked as for {@link #restoreBackup}, so a preview fails the same way.
+     *
+     * @param backupFile Path to the backup record (or legacy full-copy backup)
+     * @param targetFile Path the backup would be restored to
+     * @return Changed settings fields; empty if the backup matches the target
+     */
+    public List<SettingsDiff.Change> previewRestore(String backupFile, String targetFile) {
+        String backupDir = configurationService.getBackupSettings().getBackupDirectory();
+        try (FileUtil.FileLockHandle targetLock = fileUtil.lockShared(targetFile);
+             FileUtil.FileLockHandle backupLock = fileUtil.lockShared(backupDir)) {
+            if (!fileUtil.exists(backupFile)) {
+                throw BackupException.notFound(backupFile);
+            }
+            BackupContent content = resolveContent(backupFile, backupDir);
+            JsonNode restored;
+            try {
+                restored = fileUtil.readJson(new ByteArrayInputStream(readVerifiedContent(content)), JsonNode.class);
+            } catch (ChecksumMismatchException e) {
+                throw BackupException.corrupted(backupFile);
+            } catch (JsonProcessingException e) {
+                throw BackupException.invalidBackup(backupFile, e);
+            }
+
+            JsonNode current = fileUtil.exists(targetFile) ? fileUtil.readJsonTree(targetFile) : null;
+            return settingsDiff.diff(current, restored);
+        } catch (IOException e) {
+            throw BackupException.restoreFailed(backupFile, e);
+        }
+    }
+
+    /**
+     * Rebuilds manifest.json from a scan of the backup directory.
+     * Use when the manifest was lost or backups were added or deleted by hand.
+     *
+     * @return Number of backups indexed
+     */
+    public int rebuildManifest() {
+        String backupDir = configurationService.getBackupSettings().getBackupDirectory();
+        try (FileUtil.FileLockHandle lock = fileUtil.lockExclusive(backupDir)) {
+            BackupManifest manifest = scanManifest(backupDir);
+            writeManifest(backupDir, manifest);
+            log.info("Rebuilt backup manifest with {} backup(s)", manifest.getBackups().size());
+            return manifest.getBackups().size();
+        } catch (IOException e) {
+            throw BackupException.manifestFailed(e);
+        }
+    }
+
+    /**
+     * Verifies all backups in parallel, one virtual thread per backup.
+     * Content-addressed backups are checked against their recorded SHA-256 (delta blobs are
+     * rebuilt first); backups without a checksum are checked to be well-formed JSON.
+     *
+     * @param checkShape Also check that intact content has the shape of settings.json,
+     *                   reporting content that does not as {@link VerifyStatus#UNEXPECTED_SHAPE}
+     * @return One result per backup, in listing order (newest first)
+     */
+    public List<VerifyResult> verifyBackups(boolean checkShape) {
+        String backupDir = configurationService.getBackupSettings().getBackupDirectory();
+        if (!Files.exists(fileUtil.expandPath(backupDir))) {
+            return List.of();
+        }
+
+        try (FileUtil.FileLockHandle lock = fileUtil.lockShared(backupDir);
+             ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<Future<VerifyResult>> futures = new ArrayList<>();
+            for (BackupInfo backup : listBackups()) {
+                futures.add(executor.submit(() -> verify(backup, backupDir, checkShape)));
+            }
+
+            List<VerifyResult> results = new ArrayList<>(futures.size());
+            for (Future<VerifyResult> future : futures) {
+                results.add(future.get());
+            }
+            return results;
+        } catch (IOException | ExecutionException e) {
+            throw BackupException.verifyFailed(e);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw BackupException.verifyFailed(e);
+        }
+    }
+
+    private VerifyResult verify(BackupInfo backup, String backupDir, boolean checkShape) {
         try {
-            Path backupPath = fileUtil.expandPath(backupDir);
+            BackupContent content = resolveContent(backup.getPath(), backupDir);
+            byte[] verified = readVerifiedContent(content);
+            if (checkShape) {
+                try {
+                    jsonValidator.validateSettings(new ByteArrayInputStream(verified));
+                } catch (JsonProcessingException e) {
+                    return new VerifyResult(backup, VerifyStatus.UNEXPECTED_SHAPE, e.getOriginalMessage());
+                }
+            }
+            return content.sha256() != null
+                    ? new VerifyResult(backup, VerifyStatus.OK, null)
+                    : new VerifyResult(backup, VerifyStatus.UNCHECKED, "no checksum recorded; valid JSON");
+        } catch (NoSuchFileException e) {
+            return new VerifyResult(backup, VerifyStatus.MISSING, e.getMessage());
+        } catch (BackupException e) {
+            return new VerifyResult(backup, VerifyStatus.MISSING, e.getMessage());
+        } catch (ChecksumMismatchException e) {
+            return new VerifyResult(backup, VerifyStatus.CORRUPTED, "checksum mismatch");
+        } catch (JsonProcessingException e) {
+            return new VerifyResult(backup, VerifyStatus.CORRUPTED, "invalid JSON: " + e.getOriginalMessage());
+        } catch (IOException e) {
+            return new VerifyResult(backup, VerifyStatus.CORRUPTED, e.getMessage());
+        }
+    }
 
-            if (!Files.exists(backupPath)) {
-                return;
+    /**
+     * Reads backup content once (inflating or rebuilding it) and checks those bytes against
+     * the recorded SHA-256, or checks that they are well-formed JSON if no checksum was
+     * recorded. Callers use the returned bytes, so what was checked is what gets restored.
+     * The settings shape is not checked: a restore must not refuse settings Claude Code
+     * itself accepts.
+     *
+     * @return The verified content
+     * @throws ChecksumMismatchException if the content does not match its checksum
+     * @throws JsonProcessingException   if content without a checksum is not well-formed JSON
+     */
+    private byte[] readVerifiedContent(BackupContent content) throws IOException {
+        // Rebuilt deltas are already checked against the hash their blob is named by
+        byte[] bytes = readContent(content.file());
+        if (content.sha256() == null) {
+            jsonValidator.validateWellFormed(new ByteArrayInputStream(bytes));
+        } else if (!isDelta(content.file()) && !fileUtil.sha256Hex(bytes).equals(content.sha256())) {
+            throw new ChecksumMismatchException(content.file());
+        }
+        return bytes;
+    }
+
+    /**
+     * Exports every backup, the original settings backup and the backup metadata into one
+     * ZIP archive. Each distinct content is written once, as its full (rebuilt, inflated)
+     * bytes under objects/<sha256>, and manifest.json lists the backups pointing at them.
+     * Full and compressed blobs are streamed from the backup store into the archive. Delta
+     * blobs are rebuilt in memory, one backup at a time, so memory use is bounded by the
+     * largest single backup (and its base while a delta is applied), not by the number of
+     * backups. Legacy full-copy backups are hashed on the way and exported like
+     * content-addressed ones.
+     * Backups that cannot be read are left out and counted as skipped.
+     *
+     * @param archiveFile Path of the archive to write (replaced atomically)
+     * @return What was exported
+     */
+    public ArchiveResult exportBackups(String archiveFile) {
+        String backupDir = configurationService.getBackupSettings().getBackupDirectory();
+        Path backupPath = fileUtil.expandPath(backupDir);
+        try (FileUtil.FileLockHandle lock = fileUtil.lockShared(backupDir)) {
+            BackupManifest manifest = readManifest(backupDir);
+            List<BackupManifest.Entry> exported = new ArrayList<>();
+            Set<String> written = new HashSet<>();
+            Path original = backupPath.resolve(ORIGINAL_BACKUP);
+            boolean hasOriginal = Files.isRegularFile(original);
+
+            fileUtil.atomicWrite(archiveFile, out -> {
+                try (ZipOutputStream zip = new ZipOutputStream(new NonClosingOutputStream(out))) {
+                    for (BackupManifest.Entry entry : manifest.getBackups()) {
+                        Path backupFile = backupPath.resolve(entry.getFile());
+                        BackupContent content;
+                        String hash;
+                        try {
+                            content = resolveContent(backupFile.toString(), backupDir);
+                            hash = content.sha256() != null ? content.sha256() : hashFile(content.file());
+                        } catch (IOException | BackupException e) {
+                            log.warn("Skipping unreadable backup in export: {} ({})", backupFile, e.getMessage());
+                            continue;
+                        }
+
+                        // Failures past this point abort the export rather than leave a partial entry
+                        if (written.add(hash)) {
+                            try (InputStream in = openContent(content.file())) {
+                                zip.putNextEntry(new ZipEntry(OBJECTS_DIR + "/" + hash));
+                                in.transferTo(zip);
+                                zip.closeEntry();
+                            }
+                        }
+                        exported.add(BackupManifest.Entry.builder()
+                                .sequence(entry.getSequence())
+                                .file(backupFile.getFileName().toString())
+                                .blob(hash)
+                                .size(entry.getSize())
+                                .created(entry.getCreated())
+                                .build());
+                    }
+
+                    if (hasOriginal) {
+                        zip.putNextEntry(new ZipEntry(ORIGINAL_BACKUP));
+                        Files.copy(original, zip);
+                        zip.closeEntry();
+                    }
+
+                    // Written last: an archive with a manifest holds all content it lists
+                    zip.putNextEntry(new ZipEntry(MANIFEST_FILE));
+                    fileUtil.writeJson(zip, BackupManifest.builder()
+                            .nextSequence(manifest.getNextSequence())
+                            .backups(exported)
+                            .build());
+                    zip.closeEntry();
+                }
+            });
+
+            int skipped = manifest.getBackups().size() - exported.size();
+            log.info("Exported {} backup(s) ({} content blob(s)) to {}", exported.size(), written.size(), archiveFile);
+            return new ArchiveResult(exported.size(), skipped, 0, written.size(), hasOriginal);
+        } catch (IOException e) {
+            throw BackupException.exportFailed(archiveFile, e);
+        }
+    }
+
+    /**
+     * Imports backups from an archive written by {@link #exportBackups(String)}.
+     * The archive is streamed entry by entry: content already in the backup store is skipped,
+     * new content is checked against its SHA-256 while it is written, and each imported
+     * backup gets a new record and sequence number. Backups that already exist here (same
+     * content and creation time) are skipped, so importing the same archive twice is harmless.
+     * The original settings backup is only imported if there is none yet.
+     * The retention policy is then applied to the combined history right away, so backups
+     * it does not keep (imported ones included) are removed before this returns and
+     * reported as dropped, instead of disappearing in a later background prune.
+     *
+     * @param archiveFile Path of the archive to read
+     * @return What was imported
+     */
+    public ArchiveResult importBackups(String archiveFile) {
+        ConnectionConfig.BackupSettings settings = configurationService.getBackupSettings();
+        String backupDir = settings.getBackupDirectory();
+        Path backupPath = fileUtil.expandPath(backupDir);
+        Path objects = backupPath.resolve(OBJECTS_DIR);
+
+        ArchiveResult result;
+        try (FileUtil.FileLockHandle lock = fileUtil.lockExclusive(backupDir);
+             ZipInputStream zip = new ZipInputStream(new BufferedInputStream(
+                     Files.newInputStream(fileUtil.expandPath(archiveFile))))) {
+            BackupManifest archived = null;
+            int blobs = 0;
+            boolean originalImported = false;
+
+            ZipEntry zipEntry;
+            while ((zipEntry = zip.getNextEntry()) != null) {
+                String name = zipEntry.getName();
+                if (name.startsWith(OBJECTS_DIR + "/")) {
+                    String hash = name.substring(OBJECTS_DIR.length() + 1);
+                    if (!SHA256_HEX.matcher(hash).matches()) {
+                        log.warn("Skipping unexpected archive entry: {}", name);
+                    } else if (findBlob(objects, hash) == null) {
+                        importBlob(zip, objects, hash, settings);
+                        blobs++;
+                    }
+                } else if (name.equals(ORIGINAL_BACKUP)) {
+                    Path original = backupPath.resolve(ORIGINAL_BACKUP);
+                    if (!Files.exists(original)) {
+                        fileUtil.atomicWrite(original.toString(), zip::transferTo);
+                        originalImported = true;
+                    }
+                } else if (name.equals(MANIFEST_FILE)) {
+                    archived = fileUtil.readJson(zip, BackupManifest.class);
+                } else {
+                    log.warn("Skipping unexpected archive entry: {}", name);
+                }
+            }
+            if (archived == null || archived.getBackups() == null) {
+                throw new IOException("Not a backup archive (no " + MANIFEST_FILE + "): " + archiveFile);
             }
 
-            // Get all backup files (excluding original)
-            try (Stream<Path> files = Files.list(backupPath)) {
-                List<Path> backupFiles = files
-                        .filter(Files::isRegularFile)
-                        .filter(p -> p.getFileName().toString().startsWith(BACKUP_PREFIX))
-                        .sorted(Comparator.comparing(this::getFileCreationTime))
-                        .collect(Collectors.toList());
-
-                // Delete oldest backups if we exceed max count
-                int toDelete = backupFiles.size() - maxBackups + 1; // +1 for the new backup we're about to create
-                if (toDelete > 0) {
-                    for (int i = 0; i < toDelete; i++) {
-                        Path oldBackup = backupFiles.get(i);
-                        Files.delete(oldBackup);
-                        log.debug("Deleted old backup: {}", oldBackup);
+            BackupManifest manifest = readManifest(backupDir);
+            Set<String> existing = new HashSet<>();
+            for (BackupManifest.Entry entry : manifest.getBackups()) {
+                existing.add(entry.getBlob() + "@" + entry.getCreated());
+            }
+
+            List<BackupManifest.Entry> added = new ArrayList<>();
+            int skipped = 0;
+            for (BackupManifest.Entry entry : archived.getBackups()) {
+                // Blob names come from the archive, so they must not resolve outside the store
+                boolean validBlob = entry.getBlob() != null && SHA256_HEX.matcher(entry.getBlob()).matches();
+                Path blob = validBlob ? findBlob(objects, entry.getBlob()) : null;
+                if (blob == null || !existing.add(entry.getBlob() + "@" + entry.getCreated())) {
+                    skipped++;
+                    continue;
+                }
+
+                long sequence = manifest.getNextSequence();
+                Instant created = entry.getCreated() != null ? entry.getCreated() : Instant.now();
+                String recordName = RECORDS_DIR + "/" + BACKUP_PREFIX + TIMESTAMP_FORMAT.format(created) + "." + sequence;
+                BackupRecord record = BackupRecord.builder()
+                        .sequence(sequence)
+                        .blob(entry.getBlob())
+                        .size(entry.getSize())
+                        .storedSize(Files.size(blob))
+                        .created(created)
+                        .source(archiveFile)
+                        .build();
+                fileUtil.atomicWriteJson(backupDir + "/" + recordName, record);
+
+                BackupManifest.Entry imported = BackupManifest.Entry.builder()
+                        .sequence(sequence)
+                        .file(recordName)
+                        .blob(record.getBlob())
+                        .size(record.getSize())
+                        .storedSize(record.getStoredSize())
+                        .created(created)
+                        .build();
+                manifest.getBackups().add(imported);
+                manifest.setNextSequence(sequence + 1);
+                added.add(imported);
+            }
+
+            int dropped = 0;
+            if (!added.isEmpty()) {
+                manifest.getBackups().sort(CREATION_ORDER);
+                List<BackupManifest.Entry> rotated = rotateBackups(backupDir, manifest, settings);
+                rotated.retainAll(added);
+                dropped = rotated.size();
+                writeManifest(backupDir, manifest);
+            }
+            log.info("Imported {} backup(s) ({} new content blob(s)) from {}, skipped {}, dropped {} by retention",
+                    added.size() - dropped, blobs, archiveFile, skipped, dropped);
+            result = new ArchiveResult(added.size() - dropped, skipped, dropped, blobs, originalImported);
+        } catch (IOException e) {
+            throw BackupException.importFailed(archiveFile, e);
+        }
+
+        if (result.backups() + result.dropped() + result.blobs() > 0) {
+            // Blobs of rotated backups are only orphaned, so a failed sweep is retried by the next prune
+            try {
+                sweepUnreferencedContent();
+            } catch (BackupException e) {
+                log.warn("Sweeping backup content after import failed: {}", e.getMessage());
+            }
+        }
+        return result;
+    }
+
+    /**
+     * Writes one archived content blob into the store, compressed if configured.
+     * The blob is only committed if its content matches the hash it is named by.
+     */
+    private void importBlob(InputStream in, Path objects, String hash,
+                            ConnectionConfig.BackupSettings settings) throws IOException {
+        boolean compress = Boolean.TRUE.equals(settings.getCompress());
+        Path blob = objects.resolve(compress ? hash + COMPRESSED_SUFFIX : hash);
+        fileUtil.atomicWrite(blob.toString(), out -> {
+            String actual;
+            if (compress) {
+                try (GZIPOutputStream gzip = new GZIPOutputStream(new NonClosingOutputStream(out))) {
+                    actual = fileUtil.transferAndHash(in, gzip);
+                }
+            } else {
+                actual = fileUtil.transferAndHash(in, out);
+            }
+            if (!actual.equals(hash)) {
+                throw new ChecksumMismatchException(blob);
+            }
+        });
+    }
+
+    private String hashFile(Path file) throws IOException {
+        try (InputStream in = Files.newInputStream(file)) {
+            return fileUtil.sha256Hex(in);
+        }
+    }
+
+    /**
+     * Deletes content blobs that no backup record references anymore.
+     * Nothing is deleted if any record cannot be read, since its blob would be unknown.
+     *
+     * @return Number of blobs deleted
+     */
+    public int sweepUnreferencedContent() {
+        String backupDir = configurationService.getBackupSettings().getBackupDirectory();
+        Path objects = fileUtil.expandPath(backupDir).resolve(OBJECTS_DIR);
+        try (FileUtil.FileLockHandle lock = fileUtil.lockExclusive(backupDir)) {
+            if (!Files.isDirectory(objects)) {
+                return 0;
+            }
+
+            // Records are scanned too, so a record missing from the manifest keeps its blob
+            Set<String> referenced = new HashSet<>();
+            for (BackupManifest.Entry entry : readManifest(backupDir).getBackups()) {
+                referenced.add(entry.getBlob());
+            }
+            for (Path record : listRecords(backupDir)) {
+                referenced.add(fileUtil.readJson(record.toString(), BackupRecord.class).getBlob());
+            }
+
+            // Keep the bases every referenced delta is rebuilt from
+            for (String hash : List.copyOf(referenced)) {
+                Path blob = hash != null ? findBlob(objects, hash) : null;
+                for (int depth = 0; blob != null && isDelta(blob) && depth < MAX_DELTA_CHAIN; depth++) {
+                    String base = readDelta(blob).baseHash();
+                    if (!referenced.add(base)) {
+                        break;
                     }
+                    blob = findBlob(objects, base);
                 }
             }
+
+            int deleted = 0;
+            try (Stream<Path> blobs = Files.list(objects)) {
+                for (Path blob : blobs.toList()) {
+                    if (!referenced.contains(hashOf(blob))) {
+                        Files.deleteIfExists(blob);
+                        deleted++;
+                    }
+                }
+            }
+            log.debug("Swept {} unreferenced backup blob(s)", deleted);
+            return deleted;
+        } catch (IOException e) {
+            throw BackupException.rotationFailed(e);
+        }
+    }
+
+    /**
+     * Queues a prune on the maintenance executor, unless one is already queued.
+     */
+    private void schedulePrune() {
+        if (prunePending.compareAndSet(false, true)) {
+            maintenanceExecutor.execute(() -> {
+                prunePending.set(false);
+                pruneBackups();
+            });
+        }
+    }
+
+    /**
+     * Rotates out backups the retention policy no longer keeps, then sweeps blobs nothing
+     * references anymore.
+     * Runs on the maintenance executor; failures are logged and retried by the next prune.
+     */
+    private void pruneBackups() {
+        Timer.Sample sample = Timer.start(meterRegistry);
+        try {
+            ConnectionConfig.BackupSettings settings = configurationService.getBackupSettings();
+            String backupDir = settings.getBackupDirectory();
+
+            boolean rotated;
+            try (FileUtil.FileLockHandle lock = fileUtil.lockExclusive(backupDir)) {
+                BackupManifest manifest = readManifest(backupDir);
+                rotated = !rotateBackups(backupDir, manifest, settings).isEmpty();
+                if (rotated) {
+                    writeManifest(backupDir, manifest);
+                }
+            }
+            if (rotated) {
+                sweepUnreferencedContent();
+            }
+        } catch (IOException | RuntimeException e) {
+            log.warn("Backup pruning failed: {}", e.getMessage());
+        } finally {
+            sample.stop(meterRegistry.timer(PRUNE_DURATION_METRIC));
+        }
+    }
+
+    /**
+     * Stores content as a blob named by its hash, unless already stored (in any form).
+     * A delta against the previous backup is preferred while the chain is shorter than the
+     * snapshot interval and the delta is substantially smaller than the content.
+     */
+    private StoredContent storeContent(byte[] content, String backupDir,
+                                       ConnectionConfig.BackupSettings settings,
+                                       String previousBlob) throws IOException {
+        String hash = fileUtil.sha256Hex(content);
+        Path objects = fileUtil.expandPath(backupDir).resolve(OBJECTS_DIR);
+
+        Path blob = findBlob(objects, hash);
+        byte[] delta = blob == null ? encodeDelta(objects, previousBlob, content, settings.getSnapshotInterval()) : null;
+        if (blob != null) {
+            log.debug("Backup content already stored: {}", blob.getFileName());
+        } else if (delta != null) {
+            blob = objects.resolve(hash + DELTA_SUFFIX);
+            fileUtil.atomicWrite(blob.toString(), out -> out.write(delta));
+        } else if (Boolean.TRUE.equals(settings.getCompress())) {
+            blob = objects.resolve(hash + COMPRESSED_SUFFIX);
+            fileUtil.atomicWrite(blob.toString(), out -> {
+                try (GZIPOutputStream gzip = new GZIPOutputStream(new NonClosingOutputStream(out))) {
+                    gzip.write(content);
+                }
+            });
+        } else {
+            blob = objects.resolve(hash);
+            fileUtil.atomicWrite(blob.toString(), out -> out.write(content));
+        }
+        return new StoredContent(hash, Files.size(blob));
+    }
+
+    /**
+     * Encodes content as a delta against the previous backup.
+     *
+     * @return The encoded delta, or null if a full blob should be stored instead
+     */
+    private byte[] encodeDelta(Path objects, String baseHash, byte[] content,
+                               Integer snapshotInterval) throws IOException {
+        if (baseHash == null || snapshotInterval == null || snapshotInterval <= 1) {
+            return null;
+        }
+        Path base = findBlob(objects, baseHash);
+        if (base == null || chainLength(base) + 1 >= snapshotInterval) {
+            return null;
+        }
+        byte[] delta = deltaCodec.encode(baseHash, readContent(base), content);
+        return delta.length < content.length / 2 ? delta : null;
+    }
+
+    /**
+     * Counts the deltas between a blob and the full blob its chain starts from.
+     */
+    private int chainLength(Path blob) throws IOException {
+        int length = 0;
+        while (isDelta(blob)) {
+            if (++length > MAX_DELTA_CHAIN) {
+                throw new IOException("Backup delta chain too long: " + blob);
+            }
+            String base = readDelta(blob).baseHash();
+            blob = findBlob(blob.getParent(), base);
+            if (blob == null) {
+                throw new IOException("Missing base of backup delta: " + base);
+            }
+        }
+        return length;
+    }
+
+    /**
+     * Resolves the file holding the content of a backup: the blob for a backup record,
+     * or the file itself for legacy full-copy backups (which have no recorded checksum).
+     */
+    private BackupContent resolveContent(String backupFile, String backupDir) throws IOException {
+        Path path = fileUtil.expandPath(backupFile).toAbsolutePath().normalize();
+        Path records = fileUtil.expandPath(backupDir).resolve(RECORDS_DIR).toAbsolutePath().normalize();
+        if (!records.equals(path.getParent())) {
+            if (!Files.exists(path)) {
+                throw new NoSuchFileException(path.toString());
+            }
+            return new BackupContent(path, null);
+        }
+
+        BackupRecord record = fileUtil.readJson(path.toString(), BackupRecord.class);
+        Path objects = fileUtil.expandPath(backupDir).resolve(OBJECTS_DIR);
+        Path blob = findBlob(objects, record.getBlob());
+        if (blob == null) {
+            throw BackupException.notFound(objects.resolve(record.getBlob()).toString());
+        }
+        return new BackupContent(blob, record.getBlob());
+    }
+
+    /**
+     * Finds the blob for a content hash: compressed, plain or delta.
+     *
+     * @return Blob path, or null if the content is not stored
+     */
+    private Path findBlob(Path objects, String hash) {
+        for (String suffix : new String[] {COMPRESSED_SUFFIX, "", DELTA_SUFFIX}) {
+            Path blob = objects.resolve(hash + suffix);
+            if (Files.exists(blob)) {
+                return blob;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Gets the content hash a blob is named by.
+     */
+    private String hashOf(Path blob) {
+        String name = blob.getFileName().toString();
+        for (String suffix : new String[] {COMPRESSED_SUFFIX, DELTA_SUFFIX}) {
+            if (name.endsWith(suffix)) {
+                return name.substring(0, name.length() - suffix.length());
+            }
+        }
+        return name;
+    }
+
+    private boolean isDelta(Path blob) {
+        return blob.getFileName().toString().endsWith(DELTA_SUFFIX);
+    }
+
+    private DeltaCodec.Delta readDelta(Path blob) throws IOException {
+        try (InputStream in = Files.newInputStream(blob)) {
+            return deltaCodec.decode(in);
+        }
+    }
+
+    /**
+     * Reads the full content of a blob, rebuilding delta blobs from their chain.
+     * Rebuilt content is checked against the hash the blob is named by.
+     */
+    private byte[] readContent(Path blob) throws IOException {
+        if (!isDelta(blob)) {
+            try (InputStream in = openContent(blob)) {
+                return in.readAllBytes();
+            }
+        }
+
+        // Walk back to the full blob, then apply the deltas forwards
+        List<Path> chain = new ArrayList<>();
+        Path current = blob;
+        while (isDelta(current)) {
+            if (chain.size() >= MAX_DELTA_CHAIN) {
+                throw new IOException("Backup delta chain too long: " + blob);
+            }
+            chain.add(current);
+            String base = readDelta(current).baseHash();
+            current = findBlob(blob.getParent(), base);
+            if (current == null) {
+                throw new IOException("Missing base of backup delta: " + base);
+            }
+        }
+
+        byte[] content;
+        try (InputStream in = openContent(current)) {
+            content = in.readAllBytes();
+        }
+        for (int i = chain.size() - 1; i >= 0; i--) {
+            content = deltaCodec.apply(readDelta(chain.get(i)), content);
+        }
+        if (!fileUtil.sha256Hex(content).equals(hashOf(blob))) {
+            throw new ChecksumMismatchException(blob);
+        }
+        return content;
+    }
+
+    /**
+     * Opens the backed-up content of a blob or full-copy backup,
+     * inflating compressed blobs and rebuilding delta blobs.
+     */
+    private InputStream openContent(Path content) throws IOException {
+        if (isDelta(content)) {
+            return new ByteArrayInputStream(readContent(content));
+        }
+        InputStream in = Files.newInputStream(content);
+        if (!content.getFileName().toString().endsWith(COMPRESSED_SUFFIX)) {
+            return in;
+        }
+        try {
+            return new GZIPInputStream(in);
+        } catch (IOException e) {
+            in.close();
+            throw e;
+        }
+    }
+
+    /**
+     * Rotates backups by deleting the ones the retention policy no longer keeps.
+     * The manifest is updated in place.
+     * For content-addressed backups only the record is deleted; its blob is swept later.
+     *
+     * @param backupDir Directory containing backups
+     * @param manifest Backup manifest, saved by the caller afterwards
+     * @param settings Retention settings
+     * @return Backups deleted, oldest first
+     */
+    private List<BackupManifest.Entry> rotateBackups(String backupDir, BackupManifest manifest,
+                                  ConnectionConfig.BackupSettings settings) {
+        try {
+            Path backupPath = fileUtil.expandPath(backupDir);
+            List<BackupManifest.Entry> expired = backupRetention.expired(manifest.getBackups(), settings);
+
+            for (BackupManifest.Entry entry : expired) {
+                Path oldBackup = backupPath.resolve(entry.getFile());
+                Files.deleteIfExists(oldBackup);
+                log.debug("Deleted old backup: {}", oldBackup);
+            }
+            manifest.getBackups().removeAll(expired);
+            return expired;
         } catch (IOException e) {
             throw BackupException.rotationFailed(e);
         }
     }
 
+    /**
+     * Reads the backup manifest, rebuilding it from a scan if it is missing or unreadable.
+     * A rebuilt manifest is saved by the next change to the backup directory.
+     */
+    private BackupManifest readManifest(String backupDir) throws IOException {
+        String manifestFile = backupDir + "/" + MANIFEST_FILE;
+        if (fileUtil.exists(manifestFile)) {
+            try {
+                BackupManifest manifest = fileUtil.readJson(manifestFile, BackupManifest.class);
+                if (manifest.getBackups() == null) {
+                    manifest.setBackups(new ArrayList<>());
+                }
+                if (manifest.getNextSequence() == null) {
+                    manifest.setNextSequence(1L);
+                }
+                return manifest;
+            } catch (IOException e) {
+                log.warn("Backup manifest is unreadable, rebuilding it from a scan: {}", e.getMessage());
+            }
+        }
+        return scanManifest(backupDir);
+    }
+
+    private void writeManifest(String backupDir, BackupManifest manifest) throws IOException {
+        fileUtil.atomicWriteJson(backupDir + "/" + MANIFEST_FILE, manifest);
+    }
+
+    /**
+     * Builds a manifest by scanning backup records and legacy full-copy backups.
+     */
+    private BackupManifest scanManifest(String backupDir) throws IOException {
+        Path backupPath = fileUtil.expandPath(backupDir);
+        List<BackupManifest.Entry> backups = new ArrayList<>();
+        long nextSequence = 1;
+
+        for (Path path : listRecords(backupDir)) {
+            try {
+                BackupRecord record = fileUtil.readJson(path.toString(), BackupRecord.class);
+                backups.add(BackupManifest.Entry.builder()
+                        .sequence(record.getSequence())
+                        .file(backupPath.relativize(path).toString())
+                        .blob(record.getBlob())
+                        .size(record.getSize())
+                        .storedSize(record.getStoredSize())
+                        .created(record.getCreated() != null ? record.getCreated() : getFileCreationTime(path))
+                        .build());
+                if (record.getSequence() != null) {
+                    nextSequence = Math.max(nextSequence, record.getSequence() + 1);
+                }
+            } catch (IOException e) {
+                log.warn("Skipping unreadable backup record: {}", path, e);
+            }
+        }
+
+        if (Files.isDirectory(backupPath)) {
+            try (Stream<Path> files = Files.list(backupPath)) {
+                files.filter(Files::isRegularFile)
+                        .filter(p -> p.getFileName().toString().startsWith(BACKUP_PREFIX))
+                        .forEach(p -> {
+                            long size = fileSize(p);
+                            backups.add(BackupManifest.Entry.builder()
+                                    .file(p.getFileName().toString())
+                                    .size(size)
+                                    .storedSize(size)
+                                    .created(getFileCreationTime(p))
+                                    .build());
+                        });
+            }
+        }
+
+        backups.sort(CREATION_ORDER);
+        return BackupManifest.builder()
+                .nextSequence(nextSequence)
+                .backups(backups)
+                .build();
+    }
+
+    /**
+     * Lists the backup record files.
+     */
+    private List<Path> listRecords(String backupDir) throws IOException {
+        Path records = fileUtil.expandPath(backupDir).resolve(RECORDS_DIR);
+        if (!Files.isDirectory(records)) {
+            return List.of();
+        }
+        try (Stream<Path> files = Files.list(records)) {
+            return files
+                    .filter(Files::isRegularFile)
+                    .filter(p -> p.getFileName().toString().startsWith(BACKUP_PREFIX))
+                    .collect(Collectors.toList());
+        }
+    }
+
     /**
      * Gets file creation time for sorting.
      */
@@ -236,10 +1248,33 @@ public class BackupService {
         }
     }
 
+    private long fileSize(Path path) {
+        try {
+            return Files.size(path);
+        } catch (IOException e) {
+            return 0;
+        }
+    }
+
+    /**
+     * Converts a manifest entry to BackupInfo, reporting the size of the backed-up content.
+     */
+    private BackupInfo toBackupInfo(Path backupPath, BackupManifest.Entry entry) {
+        Path path = backupPath.resolve(entry.getFile());
+        long size = entry.getSize() != null ? entry.getSize() : 0;
+        return new BackupInfo(
+                path.toString(),
+                path.getFileName().toString(),
+                size,
+                entry.getStoredSize() != null ? entry.getStoredSize() : size,
+                entry.getCreated() != null ? entry.getCreated() : Instant.MIN
+        );
+    }
+
     /**
-     * Converts Path to BackupInfo.
+     * Converts a legacy full-copy backup Path to BackupInfo.
      */
-    private BackupInfo toBackupInfo(Path path) {
+    private BackupInfo toLegacyBackupInfo(Path path) {
         try {
             long size = Files.size(path);
             Instant created = Files.getLastModifiedTime(path).toInstant();
@@ -247,39 +1282,140 @@ public class BackupService {
                     path.toString(),
                     path.getFileName().toString(),
                     size,
+                    size,
                     created
             );
         } catch (IOException e) {
             log.warn("Failed to get file info for: {}", path, e);
-            return new BackupInfo(path.toString(), path.getFileName().toString(), 0, Instant.MIN);
+            return new BackupInfo(path.toString(), path.getFileName().toString(), 0, 0, Instant.MIN);
+        }
+    }
+
+    /**
+     * File holding the content of a backup, and the SHA-256 recorded for it (null if none).
+     */
+    private record BackupContent(Path file, String sha256) {
+    }
+
+    /**
+     * Content hash of a stored blob, and the size of the blob on disk.
+     */
+    private record StoredContent(String hash, long storedSize) {
+    }
+
+    /**
+     * Settings content whose blob is stored but whose backup record is not written yet.
+     *
+     * @param sourceFile Path the content was read from
+     * @param content    The content as read
+     */
+    public record PreparedBackup(String sourceFile, byte[] content) {
+    }
+
+    /**
+     * Backup content does not match the checksum recorded when it was created.
+     */
+    private static class ChecksumMismatchException extends IOException {
+        ChecksumMismatchException(Path path) {
+            super("Backup content does not match its checksum: " + path);
+        }
+    }
+
+    /**
+     * Lets a wrapping stream (ZIP, GZIP) be closed, and so fully finished, without closing
+     * the atomic write stream underneath it.
+     */
+    private static final class NonClosingOutputStream extends FilterOutputStream {
+        NonClosingOutputStream(OutputStream out) {
+            super(out);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            out.write(b, off, len);
         }
+
+        @Override
+        public void close() throws IOException {
+            flush();
+        }
+    }
+
+    /**
+     * Result of exporting or importing a backup archive.
+     *
+     * @param backups  Backups exported or imported
+     * @param skipped  Backups left out (unreadable, or already present on import)
+     * @param dropped  Imported backups the retention policy removed right away (0 on export)
+     * @param blobs    Distinct content blobs written
+     * @param original Whether the original settings backup was exported or imported
+     */
+    public record ArchiveResult(int backups, int skipped, int dropped, int blobs, boolean original) {
+    }
+
+    /**
+     * Outcome of verifying one backup.
+     */
+    public enum VerifyStatus {
+        /** Content matches its recorded checksum */
+        OK,
+        /** No checksum recorded; content is well-formed JSON */
+        UNCHECKED,
+        /** Content is intact but does not have the shape of settings.json (only when asked for) */
+        UNEXPECTED_SHAPE,
+        /** Content does not match its checksum or is not valid JSON */
+        CORRUPTED,
+        /** Record or content is missing */
+        MISSING
+    }
+
+    /**
+     * Result of verifying one backup.
+     *
+     * @param backup The verified backup
+     * @param status Verification outcome
+     * @param detail Explanation for anything but OK, otherwise null
+     */
+    public record VerifyResult(BackupInfo backup, VerifyStatus status, String detail) {
     }
 
     /**
      * Information about a backup file.
+     * size is the logical (uncompressed) size; storedSize is what the backup takes on disk.
      */
     public static class BackupInfo {
         private final String path;
         private final String fileName;
         private final long size;
+        private final long storedSize;
         private final Instant created;
 
-        public BackupInfo(String path, String fileName, long size, Instant created) {
+        public BackupInfo(String path, String fileName, long size, long storedSize, Instant created) {
             this.path = path;
             this.fileName = fileName;
             this.size = size;
+            this.storedSize = storedSize;
             this.created = created;
         }
 
         public String getPath() { return path; }
         public String getFileName() { return fileName; }
         public long size() { return size; }
+        public long storedSize() { return storedSize; }
         public Instant getCreated() { return created; }
 
         public String getSizeFormatted() {
-            if (size < 1024) return size + " B";
-            if (size < 1024 * 1024) return String.format("%.1f KB", size / 1024.0);
-            return String.format("%.1f MB", size / (1024.0 * 1024.0));
+            return formatSize(size);
+        }
+
+        public String getStoredSizeFormatted() {
+            return formatSize(storedSize);
+        }
+
+        private static String formatSize(long bytes) {
+            if (bytes < 1024) return bytes + " B";
+            if (bytes < 1024 * 1024) return String.format("%.1f KB", bytes / 1024.0);
+            return String.format("%.1f MB", bytes / (1024.0 * 1024.0));
         }
     }
 }
@@ -1,8 +1,10 @@
 package io.github.samzhu.gate.service;
 
+import com.fasterxml.jackson.core.JsonProcessingException;
 import io.github.samzhu.gate.exception.ConfigurationException;
 import io.github.samzhu.gate.model.ClaudeSettings;
 import io.github.samzhu.gate.util.FileUtil;
+import io.github.samzhu.gate.util.SettingsEnvPatcher;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
@@ -10,10 +12,14 @@ import org.springframework.stereotype.Service;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
 /**
  * Service for managing Claude Code settings.
  * Manages ~/.claude/settings.json file with atomic operations.
+ * Env patches are compare-and-swap rewrites, so concurrent edits by Claude Code are kept;
+ * sequences that also take a backup hold an exclusive lock on settings.json.
  */
 @Slf4j
 @Service
@@ -23,6 +29,7 @@ public class ClaudeConfigService {
     private static final String SETTINGS_PATH = "~/.claude/settings.json";
 
     private final FileUtil fileUtil;
+    private final SettingsEnvPatcher settingsEnvPatcher;
     private final BackupService backupService;
 
     /**
@@ -47,70 +54,98 @@ public class ClaudeConfigService {
 
     /**
      * Updates Claude Code settings with custom API endpoint and bearer token.
+     * Only env.ANTHROPIC_BASE_URL and env.ANTHROPIC_AUTH_TOKEN are rewritten;
+     * every other setting is streamed through unchanged.
      *
      * @param apiUrl      Custom Claude API endpoint URL
      * @param bearerToken Bearer token for authentication
      * @param createBackup Whether to create a backup before updating
      */
     public void updateSettings(String apiUrl, String bearerToken, boolean createBackup) {
-        try {
+        // The compare-and-swap rewrite protects the token refresh on its own;
+        // only the backup + update sequence needs the settings lock
+        try (FileUtil.FileLockHandle lock = createBackup ? fileUtil.lockExclusive(SETTINGS_PATH) : null) {
             // Create backup if requested and file exists
             if (createBackup && fileUtil.exists(SETTINGS_PATH)) {
                 backupService.createBackup(SETTINGS_PATH);
             }
 
-            // Read existing settings or create new ones
-            ClaudeSettings settings = readSettings();
-            if (settings == null) {
-                settings = ClaudeSettings.createDefault();
-                log.debug("Creating new Claude Code settings");
-            } else {
-                log.debug("Updating existing Claude Code settings");
-            }
-
             // Update with custom configuration via environment variables
-            settings.setBaseUrl(apiUrl);
-            settings.setAuthToken(bearerToken);
-
-            // Ensure directory exists
-            Path settingsPath = fileUtil.expandPath(SETTINGS_PATH);
-            Path parent = settingsPath.getParent();
-            if (parent != null && !Files.exists(parent)) {
-                Files.createDirectories(parent);
+            Map<String, String> envChanges = new LinkedHashMap<>();
+            envChanges.put(ClaudeSettings.ENV_BASE_URL, apiUrl);
+            envChanges.put(ClaudeSettings.ENV_AUTH_TOKEN, ClaudeSettings.stripBearerPrefix(bearerToken));
+
+            boolean written;
+            try {
+                written = patchEnv(envChanges);
+            } catch (JsonProcessingException e) {
+                // If file exists but is invalid, replace it with new settings
+                log.warn("Claude Code settings file exists but is invalid, recreating: {}", SETTINGS_PATH);
+                written = fileUtil.atomicWrite(SETTINGS_PATH, out -> settingsEnvPatcher.writeNew(out, envChanges));
             }
 
-            // Write settings atomically
-            fileUtil.atomicWriteJson(SETTINGS_PATH, settings);
+            if (written) {
+                log.info("Updated Claude Code settings: custom endpoint={}", apiUrl);
+            } else {
+                log.info("Claude Code settings already up to date: custom endpoint={}", apiUrl);
+            }
+        } catch (IOException e) {
+            throw ConfigurationException.writeFailed(SETTINGS_PATH, e);
+        }
+    }
 
-            log.info("Updated Claude Code settings: custom endpoint={}", apiUrl);
+    /**
+     * Reads and stores the current settings ahead of an update made later with
+     * createBackup=false, so that work can run while the caller waits on the network.
+     * No backup is recorded until {@link #commitBackup}, so an update that never happens
+     * does not push older backups out of rotation.
+     * Edits made in between are not lost: the later env patch is a compare-and-swap rewrite.
+     *
+     * @return The prepared backup, or null if there is no settings file to back up
+     */
+    public BackupService.PreparedBackup prepareBackup() {
+        try (FileUtil.FileLockHandle lock = fileUtil.lockExclusive(SETTINGS_PATH)) {
+            return fileUtil.exists(SETTINGS_PATH) ? backupService.prepareBackup(SETTINGS_PATH) : null;
         } catch (IOException e) {
             throw ConfigurationException.writeFailed(SETTINGS_PATH, e);
         }
     }
 
+    /**
+     * Records a backup prepared by {@link #prepareBackup()}.
+     *
+     * @param prepared The prepared backup, or null if there was nothing to back up
+     * @return Path to the backup record, or null if there was nothing to back up
+     */
+    public String commitBackup(BackupService.PreparedBackup prepared) {
+        return prepared != null ? backupService.commitBackup(prepared) : null;
+    }
+
     /**
      * Removes custom configuration from Claude Code settings.
      * This removes the custom endpoint and bearer token.
      */
     public void removeCustomConfig() {
-        try {
-            ClaudeSettings settings = readSettings();
-            if (settings == null) {
+        try (FileUtil.FileLockHandle lock = fileUtil.lockExclusive(SETTINGS_PATH)) {
+            if (!fileUtil.exists(SETTINGS_PATH)) {
                 log.debug("No settings file to remove custom config from");
                 return;
             }
 
             // Create backup before modifying
-            if (fileUtil.exists(SETTINGS_PATH)) {
-                backupService.createBackup(SETTINGS_PATH);
-            }
+            backupService.createBackup(SETTINGS_PATH);
 
             // Remove custom configuration from environment variables
-            settings.removeBaseUrl();
-            settings.removeAuthToken();
+            Map<String, String> envChanges = new LinkedHashMap<>();
+            envChanges.put(ClaudeSettings.ENV_BASE_URL, null);
+            envChanges.put(ClaudeSettings.ENV_AUTH_TOKEN, null);
 
-            // Write updated settings
-            fileUtil.atomicWriteJson(SETTINGS_PATH, settings);
+            try {
+                patchEnv(envChanges);
+            } catch (JsonProcessingException e) {
+                log.warn("Claude Code settings file is invalid, leaving it unchanged: {}", SETTINGS_PATH);
+                return;
+            }
 
             log.info("Removed custom configuration from Claude Code settings");
         } catch (IOException e) {
@@ -118,6 +153,27 @@ public class ClaudeConfigService {
         }
     }
 
+    /**
+     * Streams settings.json through the env patcher into an atomic write.
+     * Creates the file with only the env block if it doesn't exist.
+     * The rewrite is a compare-and-swap: if Claude Code edits the file meanwhile,
+     * the patch is re-applied to its new content.
+     *
+     * @return true if the file was written, false if the patch left it unchanged
+     * @throws JsonProcessingException if the existing file is not a JSON object
+     */
+    private boolean patchEnv(Map<String, String> envChanges) throws IOException {
+        Path settingsPath = fileUtil.expandPath(SETTINGS_PATH);
+        if (!Files.exists(settingsPath)) {
+            log.debug("Creating new Claude Code settings");
+            return fileUtil.atomicWrite(SETTINGS_PATH, out -> settingsEnvPatcher.writeNew(out, envChanges));
+        }
+
+        log.debug("Updating existing Claude Code settings");
+        return fileUtil.atomicRewrite(SETTINGS_PATH,
+                (in, out) -> settingsEnvPatcher.patch(in, out, envChanges));
+    }
+
     /**
      * Restores original settings from backup.
      * This is used by the disconnect command to fully restore the original state.
@@ -143,7 +199,7 @@ public class ClaudeConfigService {
      * Used when restoring to original state where no settings file existed.
      */
     public void deleteSettings() {
-        try {
+        try (FileUtil.FileLockHandle lock = fileUtil.lockExclusive(SETTINGS_PATH)) {
             if (fileUtil.exists(SETTINGS_PATH)) {
                 Path settingsPath = fileUtil.expandPath(SETTINGS_PATH);
                 Files.deleteIfExists(settingsPath);
@@ -157,11 +213,14 @@ public class ClaudeConfigService {
     /**
      * Creates the original backup if it doesn't exist.
      * This should be called before the first connection.
+     *
+     * @return Path to the original backup, or null if there is no settings file to back up
      */
-    public void ensureOriginalBackup() {
+    public String ensureOriginalBackup() {
         if (fileUtil.exists(SETTINGS_PATH)) {
-            backupService.createOriginalBackup(SETTINGS_PATH);
+            return backupService.createOriginalBackup(SETTINGS_PATH);
         }
+        return null;
     }
 
     /**
@@ -1,19 +1,49 @@
 package io.github.samzhu.gate.service;
 
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
 import io.github.samzhu.gate.config.GateCliProperties;
 import io.github.samzhu.gate.exception.ConfigurationException;
 import io.github.samzhu.gate.model.ConnectionConfig;
 import io.github.samzhu.gate.util.FileUtil;
+import io.github.samzhu.gate.util.JsonJournal;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Service;
 
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
 import java.time.Instant;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Consumer;
 
 /**
  * Service for managing gate-cli local configuration.
- * Manages ~/.gate-cli/config.json file.
+ * Manages ~/.gate-cli/config.json file and its append-only journal ~/.gate-cli/config.journal.
+ *
+ * The loaded configuration is cached as a snapshot keyed on file key + mtime + size
+ * of both files, so repeated getters within one command only cost a stat instead of a re-parse.
+ * The snapshot itself is never handed out: getters return copies of the mutable model objects,
+ * so a caller modifying its result cannot corrupt the cache for the rest of the process.
+ *
+ * The journal records the digest of the config.json it was started on. If config.json is
+ * edited by hand, or rewritten by a version that does not know the journal, the journal no
+ * longer matches and is ignored, then discarded on the next update: config.json always wins.
+ * Conversely, a version that does not know the journal reads config.json only and misses
+ * changes not yet compacted into it. If a journal record is corrupted, reads stop replaying
+ * there, and the next update moves the journal aside to config.journal.corrupted and writes
+ * the configuration it could read to config.json.
  */
 @Slf4j
 @Service
@@ -22,254 +52,372 @@ public class ConfigurationService {
 
     private static final String CONFIG_FILE = "~/.gate-cli/config.json";
     private static final String CONFIG_VERSION = "2.0";
+    private static final String ORIGINAL_SETTINGS_BACKUP = "~/.gate-cli/backups/settings.json.original";
+    private static final String JOURNAL_FILE = "~/.gate-cli/config.journal";
+    private static final String CORRUPTED_JOURNAL_FILE = JOURNAL_FILE + ".corrupted";
+    private static final String READS_METRIC = "gate.config.reads";
+    private static final String WRITES_METRIC = "gate.config.writes";
 
     private final FileUtil fileUtil;
+    private final JsonJournal jsonJournal;
     private final GateCliProperties gateCliProperties;
+    private final MeterRegistry meterRegistry;
 
     /**
-     * Reads the configuration file.
+     * Last loaded configuration, swapped atomically on every read miss and write.
+     */
+    private final AtomicReference<ConfigSnapshot> snapshot = new AtomicReference<>();
+
+    /**
+     * Reads the configuration: config.json with the journal replayed on top.
+     * Served from the cached snapshot while neither file has changed on disk.
      *
-     * @return ConnectionConfig or null if file doesn't exist or is invalid
+     * @return A private copy of the ConnectionConfig, or null if file doesn't exist or is invalid
      */
     public ConnectionConfig readConfig() {
-        try {
-            if (!fileUtil.exists(CONFIG_FILE)) {
-                log.debug("Configuration file does not exist: {}", CONFIG_FILE);
-                return null;
-            }
-            return fileUtil.readJson(CONFIG_FILE, ConnectionConfig.class);
-        } catch (IOException e) {
-            // If file exists but is invalid/empty, treat as non-existent
-            log.warn("Configuration file exists but is invalid, treating as non-existent: {}", CONFIG_FILE);
-            return null;
-        }
+        ConnectionConfig config = cachedConfig();
+        return config != null ? config.copy() : null;
     }
 
     /**
-     * Saves connection configuration.
+     * Returns the snapshot's configuration, re-parsing the files if either changed on disk.
+     * The instance is shared: only read it here, and copy it before handing it out.
      *
-     * @param clientId     OAuth2 client ID
-     * @param clientSecret OAuth2 client secret
-     * @param tokenUrl     OAuth2 token endpoint URL
-     * @param apiUrl       Custom Claude API endpoint URL
-     * @param tokenExpiration Token expiration time
+     * @return ConnectionConfig or null if file doesn't exist or is invalid
      */
-    public void saveConnection(String clientId, String clientSecret, String tokenUrl,
-                                String apiUrl, Instant tokenExpiration) {
-        try {
-            // Create configuration directory if it doesn't exist
-            fileUtil.createDirectory("~/.gate-cli");
+    private ConnectionConfig cachedConfig() {
+        FileStamp configStamp = stat(CONFIG_FILE);
+        if (configStamp == null) {
+            snapshot.set(null);
+            return null;
+        }
+        FileStamp journalStamp = stat(JOURNAL_FILE);
 
-            ConnectionConfig.CurrentConnection currentConnection = ConnectionConfig.CurrentConnection.builder()
-                    .clientId(clientId)
-                    .clientSecret(clientSecret)
-                    .tokenUrl(tokenUrl)
-                    .apiUrl(apiUrl)
-                    .lastConnected(Instant.now())
-                    .tokenExpiration(tokenExpiration)
-                    .build();
+        ConfigSnapshot current = snapshot.get();
+        if (current != null && current.matches(configStamp, journalStamp)) {
+            meterRegistry.counter(READS_METRIC, "result", "hit").increment();
+            return current.config();
+        }
 
-            ConnectionConfig.BackupSettings backupSettings = ConnectionConfig.BackupSettings.builder()
-                    .maxBackups(10)
-                    .backupDirectory("~/.gate-cli/backups")
-                    .build();
+        LoadedConfig loaded = loadConfig();
+        meterRegistry.counter(READS_METRIC, "result", "parse").increment();
+        snapshot.set(new ConfigSnapshot(configStamp, journalStamp, loaded.config(), loaded.configDigest()));
+        return loaded.config();
+    }
 
-            ConnectionConfig config = ConnectionConfig.builder()
-                    .version(CONFIG_VERSION)
-                    .currentConnection(currentConnection)
-                    .backupSettings(backupSettings)
-                    .originalSettingsBackup("~/.gate-cli/backups/settings.json.original")
-                    .build();
+    /**
+     * Reads a private, mutable copy of the configuration, bypassing the snapshot.
+     *
+     * @return The loaded configuration, with a null config if file doesn't exist or is invalid
+     */
+    private LoadedConfig readConfigForUpdate() {
+        return fileUtil.exists(CONFIG_FILE) ? loadConfig() : new LoadedConfig(null, null, true);
+    }
 
-            fileUtil.atomicWriteJson(CONFIG_FILE, config);
-            log.info("Saved connection configuration to {}", CONFIG_FILE);
+    /**
+     * Loads config.json and replays the journal on top of it, under a shared lock.
+     */
+    private LoadedConfig loadConfig() {
+        try (FileUtil.FileLockHandle lock = fileUtil.lockShared(CONFIG_FILE)) {
+            if (!(fileUtil.readJsonTree(CONFIG_FILE) instanceof ObjectNode root)) {
+                throw new IOException("Configuration root is not a JSON object");
+            }
+            String configDigest = configDigest();
+            JsonJournal.Replay replay = jsonJournal.replay(JOURNAL_FILE, configDigest, root);
+            return new LoadedConfig(fileUtil.fromJsonTree(root, ConnectionConfig.class), configDigest, replay.intact());
         } catch (IOException e) {
-            throw ConfigurationException.writeFailed(CONFIG_FILE, e);
+            // If file exists but is invalid/empty or unreadable, treat as non-existent
+            log.warn("Configuration file exists but cannot be read, treating as non-existent: {} ({})",
+                    CONFIG_FILE, e.getMessage());
+            return new LoadedConfig(null, null, true);
         }
     }
 
     /**
-     * Updates token expiration time in the configuration.
+     * Writes the full configuration to config.json, drops the journal it now contains,
+     * and installs it as the current snapshot.
      *
-     * @param tokenExpiration New token expiration time
+     * @return true if config.json was written, false if it already had this content
      */
-    public void updateTokenExpiration(Instant tokenExpiration) {
-        ConnectionConfig config = readConfig();
-        if (config == null || config.getCurrentConnection() == null) {
-            throw new ConfigurationException("No active connection configuration found");
-        }
-
-        config.getCurrentConnection().setTokenExpiration(tokenExpiration);
-        config.getCurrentConnection().setLastConnected(Instant.now());
+    private boolean writeSnapshot(ConnectionConfig config) throws IOException {
+        boolean written = fileUtil.atomicWriteJson(CONFIG_FILE, config);
+        jsonJournal.clear(JOURNAL_FILE);
+        installSnapshot(config, null);
+        meterRegistry.counter(WRITES_METRIC, "mode", "snapshot").increment();
+        return written;
+    }
 
-        try {
-            fileUtil.atomicWriteJson(CONFIG_FILE, config);
-            log.debug("Updated token expiration to {}", tokenExpiration);
-        } catch (IOException e) {
-            throw ConfigurationException.writeFailed(CONFIG_FILE, e);
+    /**
+     * Appends the changed top-level fields to the journal, compacting it into
+     * config.json once it passes the configured threshold.
+     */
+    private void appendToJournal(ObjectNode patch, ConnectionConfig config, String configDigest) throws IOException {
+        long journalSize = jsonJournal.append(JOURNAL_FILE, configDigest, patch);
+        meterRegistry.counter(WRITES_METRIC, "mode", "journal").increment();
+
+        if (journalSize >= gateCliProperties.getJournalCompactionThreshold().toBytes()) {
+            log.debug("Journal reached {} bytes, compacting into {}", journalSize, CONFIG_FILE);
+            writeSnapshot(config);
+        } else {
+            // An append leaves config.json, and so its digest, unchanged
+            installSnapshot(config, configDigest);
         }
     }
 
     /**
-     * Clears the current connection configuration.
+     * Moves a journal with a corrupted record out of the way, so it can be inspected,
+     * before the configuration read up to that record is compacted into config.json.
      */
-    public void clearConnection() {
-        try {
-            ConnectionConfig config = readConfig();
-            if (config != null) {
-                config.setCurrentConnection(null);
-                fileUtil.atomicWriteJson(CONFIG_FILE, config);
-                log.info("Cleared connection configuration");
-            }
-        } catch (IOException e) {
-            throw ConfigurationException.writeFailed(CONFIG_FILE, e);
+    private void setAsideCorruptedJournal() throws IOException {
+        Path journal = fileUtil.expandPath(JOURNAL_FILE);
+        Path corrupted = fileUtil.expandPath(CORRUPTED_JOURNAL_FILE);
+        Files.move(journal, corrupted, StandardCopyOption.REPLACE_EXISTING);
+        log.error("Journal {} has a corrupted record; changes recorded from there on were not applied. "
+                + "Moved it to {}", JOURNAL_FILE, corrupted);
+    }
+
+    /**
+     * SHA-256 of config.json as on disk, which ties the journal to the file it patches.
+     * Taken from the snapshot while config.json has the stamp the snapshot was built from,
+     * so only a changed config.json is hashed again.
+     */
+    private String configDigest() throws IOException {
+        FileStamp configStamp = stat(CONFIG_FILE);
+        ConfigSnapshot current = snapshot.get();
+        if (configStamp != null && current != null && current.configDigest() != null
+                && current.configStamp().equals(configStamp)) {
+            return current.configDigest();
+        }
+        try (InputStream in = Files.newInputStream(fileUtil.expandPath(CONFIG_FILE))) {
+            return fileUtil.sha256Hex(in);
         }
     }
 
     /**
-     * Checks if there is an active connection configuration.
+     * Installs a configuration as the current snapshot.
      *
-     * @return true if connected
+     * @param configDigest SHA-256 of config.json as on disk, or null if not known
      */
-    public boolean isConnected() {
-        ConnectionConfig config = readConfig();
-        return config != null && config.getCurrentConnection() != null;
+    private void installSnapshot(ConnectionConfig config, String configDigest) {
+        FileStamp configStamp = stat(CONFIG_FILE);
+        snapshot.set(configStamp != null
+                ? new ConfigSnapshot(configStamp, stat(JOURNAL_FILE), config, configDigest)
+                : null);
     }
 
     /**
-     * Gets the current connection configuration.
-     *
-     * @return CurrentConnection or null if not connected
+     * Collects the top-level fields that differ between two config trees.
+     * Fields that disappeared are recorded as null.
      */
-    public ConnectionConfig.CurrentConnection getCurrentConnection() {
-        ConnectionConfig config = readConfig();
-        return config != null ? config.getCurrentConnection() : null;
+    private ObjectNode changedFields(JsonNode before, JsonNode after) {
+        ObjectNode patch = JsonNodeFactory.instance.objectNode();
+        after.fieldNames().forEachRemaining(name -> {
+            if (!after.get(name).equals(before.get(name))) {
+                patch.set(name, after.get(name));
+            }
+        });
+        before.fieldNames().forEachRemaining(name -> {
+            if (!after.has(name)) {
+                patch.putNull(name);
+            }
+        });
+        return patch;
     }
 
     /**
-     * Gets backup settings from configuration.
+     * Stats a configuration file.
      *
-     * @return BackupSettings with defaults if not configured
+     * @return file stamp, or null if the file doesn't exist or cannot be read
      */
-    public ConnectionConfig.BackupSettings getBackupSettings() {
-        ConnectionConfig config = readConfig();
-        if (config != null && config.getBackupSettings() != null) {
-            return config.getBackupSettings();
+    private FileStamp stat(String file) {
+        Path path = fileUtil.expandPath(file);
+        try {
+            return FileStamp.of(Files.readAttributes(path, BasicFileAttributes.class));
+        } catch (NoSuchFileException e) {
+            log.debug("Configuration file does not exist: {}", file);
+            return null;
+        } catch (IOException e) {
+            log.warn("Failed to stat configuration file: {}", file, e);
+            return null;
         }
-        // Return defaults
-        return ConnectionConfig.BackupSettings.builder()
-                .maxBackups(10)
-                .backupDirectory("~/.gate-cli/backups")
-                .build();
     }
 
+    // ========== Mutations ==========
+
     /**
-     * Sets the original settings backup path.
+     * Applies any number of changes to the configuration with a single read and a single write.
+     * The whole cycle runs under an exclusive lock, so concurrent gate-cli processes don't lose updates.
+     * Once config.json exists, only the changed top-level fields are appended to the journal;
+     * the journal is compacted back into config.json when it grows past the threshold.
+     * Nothing is written if none of the applied changes modified the configuration.
      *
-     * @param backupPath Path to the original settings backup
+     * @param changes Changes to apply
      */
-    public void setOriginalSettingsBackup(String backupPath) {
-        try {
-            ConnectionConfig config = readConfig();
-            if (config == null) {
-                config = ConnectionConfig.builder()
-                        .version(CONFIG_VERSION)
-                        .build();
+    public void update(Consumer<ConfigUpdate> changes) {
+        try (FileUtil.FileLockHandle lock = fileUtil.lockExclusive(CONFIG_FILE)) {
+            LoadedConfig current = readConfigForUpdate();
+            JsonNode before = current.config() != null ? fileUtil.toJsonTree(current.config()) : null;
+
+            ConfigUpdate update = new ConfigUpdate(current.config());
+            changes.accept(update);
+            if (!update.changed) {
+                return;
             }
-            config.setOriginalSettingsBackup(backupPath);
-            fileUtil.atomicWriteJson(CONFIG_FILE, config);
-            log.debug("Set original settings backup path: {}", backupPath);
+
+            if (!current.journalIntact()) {
+                // Appending behind the corrupted record would hide the change from every read
+                setAsideCorruptedJournal();
+                before = null;
+            }
+            if (before == null) {
+                // Nothing to layer a journal on yet: write the full document
+                writeSnapshot(update.config);
+                log.debug("Committed configuration update to {}", CONFIG_FILE);
+                return;
+            }
+
+            ObjectNode patch = changedFields(before, fileUtil.toJsonTree(update.config));
+            if (patch.isEmpty()) {
+                log.debug("Configuration unchanged, nothing written to {}", CONFIG_FILE);
+                return;
+            }
+            appendToJournal(patch, update.config, current.configDigest());
+            log.debug("Committed configuration update to {}", JOURNAL_FILE);
         } catch (IOException e) {
             throw ConfigurationException.writeFailed(CONFIG_FILE, e);
         }
     }
 
     /**
-     * Gets the original settings backup path.
+     * Saves connection configuration.
      *
-     * @return Original settings backup path or null if not set
+     * @param clientId     OAuth2 client ID
+     * @param clientSecret OAuth2 client secret
+     * @param tokenUrl     OAuth2 token endpoint URL
+     * @param apiUrl       Custom Claude API endpoint URL
+     * @param tokenExpiration Token expiration time
      */
-    public String getOriginalSettingsBackup() {
-        ConnectionConfig config = readConfig();
-        return config != null ? config.getOriginalSettingsBackup() : null;
+    public void saveConnection(String clientId, String clientSecret, String tokenUrl,
+                                String apiUrl, Instant tokenExpiration) {
+        update(config -> config.saveConnection(clientId, clientSecret, tokenUrl, apiUrl, tokenExpiration));
     }
 
-    // ========== Settings Management ==========
+    /**
+     * Saves login connection configuration (PKCE flow, no client_secret).
+     */
+    public void saveLoginConnection(String clientId, String issuerUri, String apiUrl, Instant tokenExpiration) {
+        update(config -> config.saveLoginConnection(clientId, issuerUri, apiUrl, tokenExpiration));
+    }
+
+    /**
+     * Updates token expiration time in the configuration.
+     *
+     * @param tokenExpiration New token expiration time
+     */
+    public void updateTokenExpiration(Instant tokenExpiration) {
+        update(config -> config.updateTokenExpiration(tokenExpiration));
+    }
+
+    /**
+     * Clears the current connection configuration.
+     */
+    public void clearConnection() {
+        update(ConfigUpdate::clearConnection);
+    }
+
+    /**
+     * Sets the original settings backup path.
+     *
+     * @param backupPath Path to the original settings backup
+     */
+    public void setOriginalSettingsBackup(String backupPath) {
+        update(config -> config.setOriginalSettingsBackup(backupPath));
+    }
 
     /**
      * Sets the API URL in settings.
      */
     public void setApiUrl(String apiUrl) {
-        updateSettings(settings -> settings.setApiUrl(apiUrl));
-        log.debug("Set API URL: {}", apiUrl);
+        update(config -> config.setApiUrl(apiUrl));
     }
 
     /**
      * Sets the Issuer URI in settings.
      */
     public void setIssuerUri(String issuerUri) {
-        updateSettings(settings -> settings.setIssuerUri(issuerUri));
-        log.debug("Set Issuer URI: {}", issuerUri);
+        update(config -> config.setIssuerUri(issuerUri));
     }
 
     /**
      * Sets the Client ID in settings.
      */
     public void setClientId(String clientId) {
-        updateSettings(settings -> settings.setClientId(clientId));
-        log.debug("Set Client ID: {}", clientId);
+        update(config -> config.setClientId(clientId));
     }
 
     /**
      * Sets the Client Secret in settings.
      */
     public void setClientSecret(String clientSecret) {
-        updateSettings(settings -> settings.setClientSecret(clientSecret));
-        log.debug("Set Client Secret: ****");
+        update(config -> config.setClientSecret(clientSecret));
     }
 
     /**
      * Resets settings to default values (clears config.json settings).
      */
     public void resetSettings() {
-        try {
-            ConnectionConfig config = readConfig();
-            if (config != null) {
-                config.setSettings(null);
-                fileUtil.atomicWriteJson(CONFIG_FILE, config);
-                log.info("Reset settings to default values");
-            }
-        } catch (IOException e) {
-            throw ConfigurationException.writeFailed(CONFIG_FILE, e);
-        }
+        update(ConfigUpdate::resetSettings);
     }
 
+    // ========== Queries ==========
+
     /**
-     * Helper method to update settings.
+     * Checks if there is an active connection configuration.
+     *
+     * @return true if connected
      */
-    private void updateSettings(java.util.function.Consumer<ConnectionConfig.Settings> updater) {
-        try {
-            fileUtil.createDirectory("~/.gate-cli");
-
-            ConnectionConfig config = readConfig();
-            if (config == null) {
-                config = ConnectionConfig.builder()
-                        .version(CONFIG_VERSION)
-                        .backupSettings(ConnectionConfig.BackupSettings.builder().build())
-                        .build();
-            }
+    public boolean isConnected() {
+        ConnectionConfig config = cachedConfig();
+        return config != null && config.getCurrentConnection() != null;
+    }
 
-            ConnectionConfig.Settings settings = config.getSettings();
-            if (settings == null) {
-                settings = ConnectionConfig.Settings.builder().build();
-                config.setSettings(settings);
-            }
+    /**
+     * Gets the current connection configuration.
+     *
+     * @return CurrentConnection or null if not connected
+     */
+    public ConnectionConfig.CurrentConnection getCurrentConnection() {
+        ConnectionConfig config = cachedConfig();
+        return config != null && config.getCurrentConnection() != null
+                ? config.getCurrentConnection().toBuilder().build()
+                : null;
+    }
 
-            updater.accept(settings);
-            fileUtil.atomicWriteJson(CONFIG_FILE, config);
-        } catch (IOException e) {
-            throw ConfigurationException.writeFailed(CONFIG_FILE, e);
+    /**
+     * Gets backup settings from configuration.
+     *
+     * @return BackupSettings with defaults if not configured
+     */
+    public ConnectionConfig.BackupSettings getBackupSettings() {
+        ConnectionConfig config = cachedConfig();
+        if (config != null && config.getBackupSettings() != null) {
+            return config.getBackupSettings().copy();
         }
+        // Return defaults
+        return ConnectionConfig.BackupSettings.builder()
+                .maxBackups(10)
+                .backupDirectory("~/.gate-cli/backups")
+                .build();
+    }
+
+    /**
+     * Gets the original settings backup path.
+     *
+     * @return Original settings backup path or null if not set
+     */
+    public String getOriginalSettingsBackup() {
+        ConnectionConfig config = cachedConfig();
+        return config != null ? config.getOriginalSettingsBackup() : null;
     }
 
     // ========== Effective Settings (config.json > yaml) ==========
@@ -278,7 +426,7 @@ public class ConfigurationService {
      * Gets the effective API URL (config.json > yaml).
      */
     public String getEffectiveApiUrl() {
-        ConnectionConfig config = readConfig();
+        ConnectionConfig config = cachedConfig();
         if (config != null && config.getSettings() != null) {
             String value = config.getSettings().getApiUrl();
             if (value != null && !value.isEmpty()) {
@@ -292,7 +440,7 @@ public class ConfigurationService {
      * Gets the effective Issuer URI (config.json > yaml).
      */
     public String getEffectiveIssuerUri() {
-        ConnectionConfig config = readConfig();
+        ConnectionConfig config = cachedConfig();
         if (config != null && config.getSettings() != null) {
             String value = config.getSettings().getIssuerUri();
             if (value != null && !value.isEmpty()) {
@@ -302,11 +450,29 @@ public class ConfigurationService {
         return emptyToNull(gateCliProperties.getIssuerUri());
     }
 
+    /**
+     * Gets the effective issuer URIs: the effective Issuer URI read as a comma-separated list
+     * of replicas, in order of preference.
+     *
+     * @return Issuer URIs, empty if none is configured
+     */
+    public List<String> getEffectiveIssuerUris() {
+        String value = getEffectiveIssuerUri();
+        if (value == null) {
+            return List.of();
+        }
+        return Arrays.stream(value.split(","))
+                .map(String::trim)
+                .filter(uri -> !uri.isEmpty())
+                .distinct()
+                .toList();
+    }
+
     /**
      * Gets the effective Client ID (config.json > yaml).
      */
     public String getEffectiveClientId() {
-        ConnectionConfig config = readConfig();
+        ConnectionConfig config = cachedConfig();
         if (config != null && config.getSettings() != null) {
             String value = config.getSettings().getClientId();
             if (value != null && !value.isEmpty()) {
@@ -320,7 +486,7 @@ public class ConfigurationService {
      * Gets the effective Client Secret (config.json only, no yaml fallback).
      */
     public String getEffectiveClientSecret() {
-        ConnectionConfig config = readConfig();
+        ConnectionConfig config = cachedConfig();
         if (config != null && config.getSettings() != null) {
             return config.getSettings().getClientSecret();
         }
@@ -348,43 +514,220 @@ public class ConfigurationService {
         return (value != null && !value.isEmpty()) ? value : null;
     }
 
-    // ========== Login Connection ==========
-
     /**
-     * Saves login connection configuration (PKCE flow, no client_secret).
+     * Pending changes to config.json, collected by {@link #update(Consumer)} and committed once.
+     * Operations that need an existing file (clear, reset, token expiration) do not create one.
      */
-    public void saveLoginConnection(String clientId, String issuerUri, String apiUrl, Instant tokenExpiration) {
-        try {
-            fileUtil.createDirectory("~/.gate-cli");
+    public static final class ConfigUpdate {
 
-            ConnectionConfig config = readConfig();
-            if (config == null) {
-                config = ConnectionConfig.builder()
-                        .version(CONFIG_VERSION)
-                        .backupSettings(ConnectionConfig.BackupSettings.builder().build())
-                        .originalSettingsBackup("~/.gate-cli/backups/settings.json.original")
-                        .build();
-            }
+        private ConnectionConfig config;
+        private boolean changed;
+
+        private ConfigUpdate(ConnectionConfig config) {
+            this.config = config;
+        }
 
-            // Preserve existing settings
-            ConnectionConfig.Settings existingSettings = config.getSettings();
+        /**
+         * Saves a client credentials connection, preserving existing settings.
+         */
+        public ConfigUpdate saveConnection(String clientId, String clientSecret, String tokenUrl,
+                                           String apiUrl, Instant tokenExpiration) {
+            ConnectionConfig target = configForWrite();
+            target.setCurrentConnection(ConnectionConfig.CurrentConnection.builder()
+                    .clientId(clientId)
+                    .clientSecret(clientSecret)
+                    .tokenUrl(tokenUrl)
+                    .apiUrl(apiUrl)
+                    .lastConnected(Instant.now())
+                    .tokenExpiration(tokenExpiration)
+                    .build());
+            if (target.getOriginalSettingsBackup() == null) {
+                target.setOriginalSettingsBackup(ORIGINAL_SETTINGS_BACKUP);
+            }
+            log.info("Saved connection configuration to {}", CONFIG_FILE);
+            return this;
+        }
 
-            ConnectionConfig.CurrentConnection currentConnection = ConnectionConfig.CurrentConnection.builder()
+        /**
+         * Saves a PKCE login connection (no client_secret), preserving existing settings.
+         */
+        public ConfigUpdate saveLoginConnection(String clientId, String issuerUri, String apiUrl,
+                                                Instant tokenExpiration) {
+            ConnectionConfig target = configForWrite();
+            target.setCurrentConnection(ConnectionConfig.CurrentConnection.builder()
                     .authType("pkce")
                     .clientId(clientId)
                     .issuerUri(issuerUri)
                     .apiUrl(apiUrl)
                     .lastConnected(Instant.now())
                     .tokenExpiration(tokenExpiration)
-                    .build();
+                    .build());
+            if (target.getOriginalSettingsBackup() == null) {
+                target.setOriginalSettingsBackup(ORIGINAL_SETTINGS_BACKUP);
+            }
+            log.info("Saved login connection configuration to {}", CONFIG_FILE);
+            return this;
+        }
 
-            config.setCurrentConnection(currentConnection);
-            config.setSettings(existingSettings);
+        /**
+         * Updates token expiration and last connected time of the current connection.
+         *
+         * @throws ConfigurationException if there is no active connection
+         */
+        public ConfigUpdate updateTokenExpiration(Instant tokenExpiration) {
+            if (config == null || config.getCurrentConnection() == null) {
+                throw new ConfigurationException("No active connection configuration found");
+            }
+            config.getCurrentConnection().setTokenExpiration(tokenExpiration);
+            config.getCurrentConnection().setLastConnected(Instant.now());
+            changed = true;
+            log.debug("Updated token expiration to {}", tokenExpiration);
+            return this;
+        }
 
-            fileUtil.atomicWriteJson(CONFIG_FILE, config);
-            log.info("Saved login connection configuration to {}", CONFIG_FILE);
-        } catch (IOException e) {
-            throw ConfigurationException.writeFailed(CONFIG_FILE, e);
+        /**
+         * Updates the token endpoint of the current connection, after a refresh failed over
+         * to another issuer.
+         *
+         * @throws ConfigurationException if there is no active connection
+         */
+        public ConfigUpdate updateTokenUrl(String tokenUrl) {
+            if (config == null || config.getCurrentConnection() == null) {
+                throw new ConfigurationException("No active connection configuration found");
+            }
+            if (!Objects.equals(config.getCurrentConnection().getTokenUrl(), tokenUrl)) {
+                config.getCurrentConnection().setTokenUrl(tokenUrl);
+                changed = true;
+                log.debug("Updated token URL to {}", tokenUrl);
+            }
+            return this;
+        }
+
+        /**
+         * Clears the current connection.
+         */
+        public ConfigUpdate clearConnection() {
+            if (config != null) {
+                config.setCurrentConnection(null);
+                changed = true;
+                log.info("Cleared connection configuration");
+            }
+            return this;
+        }
+
+        /**
+         * Sets the original settings backup path.
+         */
+        public ConfigUpdate setOriginalSettingsBackup(String backupPath) {
+            configForWrite().setOriginalSettingsBackup(backupPath);
+            log.debug("Set original settings backup path: {}", backupPath);
+            return this;
+        }
+
+        /**
+         * Sets the API URL in settings.
+         */
+        public ConfigUpdate setApiUrl(String apiUrl) {
+            settingsForWrite().setApiUrl(apiUrl);
+            log.debug("Set API URL: {}", apiUrl);
+            return this;
+        }
+
+        /**
+         * Sets the Issuer URI in settings.
+         */
+        public ConfigUpdate setIssuerUri(String issuerUri) {
+            settingsForWrite().setIssuerUri(issuerUri);
+            log.debug("Set Issuer URI: {}", issuerUri);
+            return this;
+        }
+
+        /**
+         * Sets the Client ID in settings.
+         */
+        public ConfigUpdate setClientId(String clientId) {
+            settingsForWrite().setClientId(clientId);
+            log.debug("Set Client ID: {}", clientId);
+            return this;
+        }
+
+        /**
+         * Sets the Client Secret in settings.
+         */
+        public ConfigUpdate setClientSecret(String clientSecret) {
+            settingsForWrite().setClientSecret(clientSecret);
+            log.debug("Set Client Secret: ****");
+            return this;
+        }
+
+        /**
+         * Resets settings to default values (clears config.json settings).
+         */
+        public ConfigUpdate resetSettings() {
+            if (config != null) {
+                config.setSettings(null);
+                changed = true;
+                log.info("Reset settings to default values");
+            }
+            return this;
+        }
+
+        /**
+         * Returns the config to modify, creating a new one if config.json doesn't exist yet.
+         */
+        private ConnectionConfig configForWrite() {
+            if (config == null) {
+                config = ConnectionConfig.builder()
+                        .version(CONFIG_VERSION)
+                        .backupSettings(ConnectionConfig.BackupSettings.builder().build())
+                        .build();
+            }
+            changed = true;
+            return config;
+        }
+
+        /**
+         * Returns the settings block to modify, creating it if needed.
+         */
+        private ConnectionConfig.Settings settingsForWrite() {
+            ConnectionConfig target = configForWrite();
+            if (target.getSettings() == null) {
+                target.setSettings(ConnectionConfig.Settings.builder().build());
+            }
+            return target.getSettings();
+        }
+    }
+
+    /**
+     * Identity of a file on disk. A rename-based write changes the file key
+     * even when mtime and size collide.
+     */
+    private record FileStamp(Object fileKey, FileTime lastModified, long size) {
+
+        static FileStamp of(BasicFileAttributes attributes) {
+            return new FileStamp(attributes.fileKey(), attributes.lastModifiedTime(), attributes.size());
+        }
+    }
+
+    /**
+     * Configuration as loaded from disk.
+     *
+     * @param config        The configuration, or null if config.json doesn't exist or is invalid
+     * @param configDigest  SHA-256 of config.json, which the journal was checked against
+     * @param journalIntact Whether every journal record could be applied
+     */
+    private record LoadedConfig(ConnectionConfig config, String configDigest, boolean journalIntact) {
+    }
+
+    /**
+     * Loaded configuration tagged with the config.json and journal stamps it was built from,
+     * and the digest of that config.json if known.
+     */
+    private record ConfigSnapshot(FileStamp configStamp, FileStamp journalStamp, ConnectionConfig config,
+                                  String configDigest) {
+
+        boolean matches(FileStamp configStamp, FileStamp journalStamp) {
+            return this.configStamp.equals(configStamp) && Objects.equals(this.journalStamp, journalStamp);
         }
     }
 }
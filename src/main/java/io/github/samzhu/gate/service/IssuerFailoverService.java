@@ -0,0 +1,339 @@
+package io.github.samzhu.gate.service;
+
+import io.github.samzhu.gate.exception.OAuth2Exception;
+import io.github.samzhu.gate.model.IssuerHealth;
+import io.github.samzhu.gate.model.OIDCConfiguration;
+import io.github.samzhu.gate.util.FileUtil;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletionService;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorCompletionService;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+import java.util.function.Function;
+
+/**
+ * Chooses among several replicas of the same OAuth2 issuer.
+ *
+ * Discovery is raced Happy Eyeballs style: the best ranked issuer starts first, and the next
+ * one starts after a short stagger or as soon as the previous attempt fails; the first
+ * successful discovery wins. Token requests fail over to the next issuer on network and
+ * server errors, but not on client errors such as bad credentials.
+ *
+ * Issuers are ranked by an EWMA of their token request latency, remembered across runs in
+ * ~/.gate-cli/cache/issuers.json; recently failed issuers go last. Token latency is used
+ * because discovery is usually answered from the local cache. Every discovery attempt that
+ * completes, including those that lose the race, records its success or failure.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class IssuerFailoverService {
+
+    private static final String HEALTH_FILE = "~/.gate-cli/cache/issuers.json";
+    private static final String FAILOVER_METRIC = "gate.issuer.failovers";
+    private static final Duration RACE_STAGGER = Duration.ofMillis(250);
+    private static final Duration FAILURE_PENALTY = Duration.ofMinutes(5);
+    private static final double EWMA_WEIGHT = 0.3;
+    private static final Duration RACE_DRAIN_TIMEOUT = Duration.ofSeconds(3);
+
+    private final OIDCDiscoveryService discoveryService;
+    private final FileUtil fileUtil;
+    private final MeterRegistry meterRegistry;
+
+    /**
+     * Runs discovery attempts. Attempts that lose the race are left to finish, so their
+     * documents still land in the discovery cache for a later failover.
+     */
+    private final ExecutorService raceExecutor = Executors.newThreadPerTaskExecutor(
+            Thread.ofVirtual().name("issuer-race-", 0).factory());
+
+    /**
+     * Gives losing discovery attempts a short time to finish before the CLI exits.
+     * An unfinished attempt only means that issuer is discovered again on failover.
+     */
+    @PreDestroy
+    void drainRaces() {
+        raceExecutor.shutdown();
+        try {
+            if (!raceExecutor.awaitTermination(RACE_DRAIN_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS)) {
+                log.debug("OIDC discovery race did not finish within {} s", RACE_DRAIN_TIMEOUT.toSeconds());
+                raceExecutor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    /**
+     * Discovery result of the issuer that won the race.
+     *
+     * @param issuerUri     Issuer that answered first
+     * @param configuration Its OIDC configuration
+     * @param ranked        All issuers in the order they were tried, for token failover
+     */
+    public record Discovered(String issuerUri, OIDCConfiguration configuration, List<String> ranked) {
+    }
+
+    /**
+     * Discovers the OIDC configuration of the fastest healthy issuer.
+     *
+     * @param issuerUris Configured issuers, in order of preference
+     * @return The winning issuer and its configuration
+     * @throws OAuth2Exception if discovery failed for every issuer
+     */
+    public Discovered discover(List<String> issuerUris) {
+        List<String> ranked = rank(issuerUris);
+        if (ranked.size() == 1) {
+            // Nothing to rank against, so the attempt is not scored
+            String issuerUri = ranked.getFirst();
+            return new Discovered(issuerUri, discoveryService.discover(issuerUri), ranked);
+        }
+
+        CompletionService<Discovered> race = new ExecutorCompletionService<>(raceExecutor);
+        Map<Future<Discovered>, String> pending = new HashMap<>();
+        OAuth2Exception failure = null;
+        int next = 0;
+        try {
+            while (next < ranked.size() || !pending.isEmpty()) {
+                if (next < ranked.size()) {
+                    String issuerUri = ranked.get(next++);
+                    log.debug("Starting OIDC discovery for {}", issuerUri);
+                    pending.put(race.submit(() -> attemptDiscovery(issuerUri, ranked)), issuerUri);
+                }
+
+                // Start the next issuer after the stagger, or at once if an attempt fails
+                Future<Discovered> done = next < ranked.size()
+                        ? race.poll(RACE_STAGGER.toMillis(), TimeUnit.MILLISECONDS)
+                        : race.take();
+                if (done == null) {
+                    continue;
+                }
+                String issuerUri = pending.remove(done);
+                try {
+                    Discovered winner = done.get();
+                    log.debug("OIDC discovery won by {}", issuerUri);
+                    return winner;
+                } catch (ExecutionException e) {
+                    OAuth2Exception cause = asOAuth2Exception(e.getCause());
+                    log.debug("OIDC discovery for {} failed: {}", issuerUri, cause.getMessage());
+                    if (failure == null) {
+                        failure = cause;
+                    } else {
+                        failure.addSuppressed(cause);
+                    }
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new OAuth2Exception("OIDC discovery interrupted", e);
+        }
+        throw failure;
+    }
+
+    /**
+     * Runs one raced discovery attempt and scores its outcome itself, so attempts still
+     * running when another issuer wins are scored once they complete.
+     */
+    private Discovered attemptDiscovery(String issuerUri, List<String> ranked) {
+        try {
+            Discovered discovered = new Discovered(issuerUri, discoveryService.discover(issuerUri), ranked);
+            recordDiscovered(issuerUri);
+            return discovered;
+        } catch (RuntimeException e) {
+            recordFailure(issuerUri);
+            throw e;
+        }
+    }
+
+    /**
+     * Sends a token request to the discovered issuer, failing over to the next ranked issuer
+     * on network and server errors. Latency and failures update the issuer scores.
+     *
+     * @param discovered Result of {@link #discover(List)}
+     * @param request    Token request against a token endpoint
+     * @return Token request result, and the issuer that answered it
+     * @throws OAuth2Exception the first failure (later ones suppressed) once every issuer failed,
+     *                         or the first non-retryable failure
+     */
+    public <T> Answered<T> requestToken(Discovered discovered, Function<String, T> request) {
+        String issuerUri = discovered.issuerUri();
+        OIDCConfiguration configuration = discovered.configuration();
+        List<String> remaining = new ArrayList<>(discovered.ranked());
+        remaining.remove(issuerUri);
+        OAuth2Exception failure = null;
+
+        while (true) {
+            long start = System.nanoTime();
+            try {
+                T result = request.apply(configuration.getTokenEndpoint());
+                recordSuccess(issuerUri, Duration.ofNanos(System.nanoTime() - start));
+                return new Answered<>(issuerUri, configuration.getTokenEndpoint(), result);
+            } catch (OAuth2Exception e) {
+                // Client errors such as bad credentials say nothing about the discovered endpoints
+                if (!e.isRetryable()) {
+                    throw e;
+                }
+                // The endpoint may come from a stale cached discovery; rediscover next time
+                discoveryService.invalidate(issuerUri);
+                recordFailure(issuerUri);
+                if (failure == null) {
+                    failure = e;
+                } else {
+                    failure.addSuppressed(e);
+                }
+            }
+
+            // Fail over to the next issuer, in ranked order, that can be discovered
+            configuration = null;
+            while (configuration == null && !remaining.isEmpty()) {
+                String candidate = remaining.removeFirst();
+                try {
+                    configuration = discoveryService.discover(candidate);
+                    issuerUri = candidate;
+                } catch (OAuth2Exception e) {
+                    recordFailure(candidate);
+                    failure.addSuppressed(e);
+                }
+            }
+            if (configuration == null) {
+                throw failure;
+            }
+            log.warn("Token request failed, failing over to {}", issuerUri);
+            meterRegistry.counter(FAILOVER_METRIC).increment();
+        }
+    }
+
+    /**
+     * Token request result with the issuer that produced it.
+     *
+     * @param issuerUri Issuer that answered
+     * @param tokenUrl  Its token endpoint
+     * @param result    Result of the request
+     */
+    public record Answered<T>(String issuerUri, String tokenUrl, T result) {
+    }
+
+    /**
+     * Orders issuers for trying: healthy before recently failed, then by remembered latency.
+     * Issuers without a measured latency keep their configured position, so a new replica is
+     * tried in its configured turn rather than after every measured one.
+     */
+    List<String> rank(List<String> issuerUris) {
+        if (issuerUris.isEmpty()) {
+            throw new OAuth2Exception("No issuer URI configured");
+        }
+        Map<String, IssuerHealth.Score> scores = readHealth().getIssuers();
+        Instant penaltyStart = Instant.now().minus(FAILURE_PENALTY);
+        List<String> healthy = new ArrayList<>();
+        List<String> failed = new ArrayList<>();
+        for (String issuerUri : issuerUris) {
+            (recentlyFailed(scores.get(issuerUri), penaltyStart) ? failed : healthy).add(issuerUri);
+        }
+        List<String> ranked = new ArrayList<>(issuerUris.size());
+        ranked.addAll(byLatency(healthy, scores));
+        ranked.addAll(byLatency(failed, scores));
+        return ranked;
+    }
+
+    /**
+     * Sorts the measured issuers by latency within the positions they hold, leaving
+     * unmeasured ones in place. Ties keep the configured order.
+     */
+    private List<String> byLatency(List<String> issuerUris, Map<String, IssuerHealth.Score> scores) {
+        Iterator<String> fastest = issuerUris.stream()
+                .filter(issuerUri -> latency(scores.get(issuerUri)) != null)
+                .sorted(Comparator.comparing((String issuerUri) -> latency(scores.get(issuerUri))))
+                .iterator();
+        List<String> ordered = new ArrayList<>(issuerUris.size());
+        for (String issuerUri : issuerUris) {
+            ordered.add(latency(scores.get(issuerUri)) != null ? fastest.next() : issuerUri);
+        }
+        return ordered;
+    }
+
+    private boolean recentlyFailed(IssuerHealth.Score score, Instant penaltyStart) {
+        return score != null && score.getLastFailure() != null && score.getLastFailure().isAfter(penaltyStart)
+                && (score.getLastSuccess() == null || score.getLastFailure().isAfter(score.getLastSuccess()));
+    }
+
+    private Double latency(IssuerHealth.Score score) {
+        return score != null ? score.getLatencyMillis() : null;
+    }
+
+    private void recordSuccess(String issuerUri, Duration latency) {
+        double millis = latency.toNanos() / 1_000_000.0;
+        updateScore(issuerUri, score -> {
+            score.setLatencyMillis(score.getLatencyMillis() == null
+                    ? millis
+                    : EWMA_WEIGHT * millis + (1 - EWMA_WEIGHT) * score.getLatencyMillis());
+            score.setLastSuccess(Instant.now());
+        });
+    }
+
+    /**
+     * Discovery is usually answered from the cache, so it clears a failure but measures nothing.
+     */
+    private void recordDiscovered(String issuerUri) {
+        updateScore(issuerUri, score -> score.setLastSuccess(Instant.now()));
+    }
+
+    private void recordFailure(String issuerUri) {
+        updateScore(issuerUri, score -> score.setLastFailure(Instant.now()));
+    }
+
+    /**
+     * Read-modify-write of one score under the exclusive lock of the health file, so
+     * concurrent race attempts and other gate-cli processes do not lose each other's updates.
+     */
+    private void updateScore(String issuerUri, Consumer<IssuerHealth.Score> change) {
+        if (issuerUri == null) {
+            return;
+        }
+        try (FileUtil.FileLockHandle lock = fileUtil.lockExclusive(HEALTH_FILE)) {
+            IssuerHealth health = readHealth();
+            change.accept(health.getIssuers().computeIfAbsent(issuerUri, key -> new IssuerHealth.Score()));
+            fileUtil.atomicWriteJson(HEALTH_FILE, health);
+        } catch (IOException e) {
+            // Scores only affect ordering
+            log.warn("Failed to save issuer health: {}", e.getMessage());
+        }
+    }
+
+    private IssuerHealth readHealth() {
+        try {
+            if (fileUtil.exists(HEALTH_FILE)) {
+                IssuerHealth health = fileUtil.readJson(HEALTH_FILE, IssuerHealth.class);
+                if (health.getIssuers() != null) {
+                    return health;
+                }
+            }
+        } catch (IOException e) {
+            log.debug("Ignoring unreadable issuer health {}: {}", HEALTH_FILE, e.getMessage());
+        }
+        return new IssuerHealth();
+    }
+
+    private OAuth2Exception asOAuth2Exception(Throwable cause) {
+        return cause instanceof OAuth2Exception oauth2Exception
+                ? oauth2Exception
+                : new OAuth2Exception("OIDC discovery failed: " + cause.getMessage(), cause);
+    }
+}
@@ -5,8 +5,10 @@ import io.github.samzhu.gate.model.AuthorizationResult;
 import io.github.samzhu.gate.model.OIDCConfiguration;
 import io.github.samzhu.gate.model.OAuth2TokenResponse;
 import io.github.samzhu.gate.model.PKCEPair;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpStatusCode;
 import org.springframework.http.MediaType;
 import org.springframework.stereotype.Service;
 import org.springframework.util.LinkedMultiValueMap;
@@ -18,7 +20,15 @@ import org.springframework.web.util.UriComponentsBuilder;
 import java.net.URI;
 import java.time.Duration;
 import java.time.Instant;
+import java.util.List;
+import java.util.Map;
 import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.function.Supplier;
 
 /**
  * Service for OAuth2 Authorization Code Flow with PKCE.
@@ -30,70 +40,197 @@ import java.util.concurrent.CompletableFuture;
 public class OAuth2LoginService {
 
     private final OIDCDiscoveryService discoveryService;
+    private final IssuerFailoverService issuerFailoverService;
     private final PKCEService pkceService;
     private final OAuthCallbackServer callbackServer;
-    private final RestClient.Builder restClientBuilder;
+    private final RestClient restClient;
+
+    private final MeterRegistry meterRegistry;
 
     private static final Duration CALLBACK_TIMEOUT = Duration.ofMinutes(5);
 
+    /**
+     * How often the token endpoint connection is touched while the user is in the browser.
+     * Below the JDK HttpClient's default 30 s keep-alive timeout, so the connection stays pooled.
+     */
+    private static final Duration KEEP_WARM_INTERVAL = Duration.ofSeconds(20);
+    private static final String LOGIN_PHASE_METRIC = "gate.login.phase";
+
+    public static final String PHASE_DISCOVERY = "discovery";
+    public static final String PHASE_CALLBACK_SERVER = "callback-server";
+    public static final String PHASE_PREWARM = "prewarm";
+    public static final String PHASE_AUTHORIZATION = "authorization";
+    public static final String PHASE_TOKEN = "token";
+
+    /**
+     * Login phases in display order. Discovery overlaps the callback server start,
+     * and the token endpoint pre-warm overlaps authorization in the browser.
+     */
+    public static final List<String> PHASES = List.of(
+            PHASE_DISCOVERY, PHASE_CALLBACK_SERVER, PHASE_PREWARM, PHASE_AUTHORIZATION, PHASE_TOKEN);
+
     /**
      * Executes OAuth2 Authorization Code Flow with PKCE.
      *
-     * @param issuerUri   The OAuth2 issuer URI
+     * OIDC discovery (raced across the issuer replicas) runs while the callback server binds
+     * its port, and while the user
+     * authorizes in the browser a connection to the token endpoint is opened and kept warm,
+     * so the code exchange only costs one round trip.
+     *
+     * @param issuerUris  The OAuth2 issuer URIs, in order of preference
      * @param clientId    The OAuth2 client ID
      * @param scope       The OAuth2 scope
      * @param redirectUri The redirect URI for callbacks
-     * @return OAuth2TokenResponse containing the access token
+     * @return Token response and phase timings
      * @throws OAuth2Exception if login fails
      */
-    public OAuth2TokenResponse login(
-            String issuerUri, String clientId, String scope, String redirectUri) {
+    public LoginResult login(
+            List<String> issuerUris, String clientId, String scope, String redirectUri) {
+
+        long start = System.nanoTime();
+        Map<String, Duration> timings = new ConcurrentHashMap<>();
 
-        // 1. OIDC Discovery
-        log.info("→ Discovering OIDC configuration...");
-        OIDCConfiguration oidcConfig = discoveryService.discover(issuerUri);
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            // 1. OIDC Discovery, in the background
+            log.info("→ Discovering OIDC configuration...");
+            CompletableFuture<IssuerFailoverService.Discovered> discovery = CompletableFuture.supplyAsync(
+                    () -> timed(PHASE_DISCOVERY, timings, () -> issuerFailoverService.discover(issuerUris)), executor);
 
-        // 2. Generate PKCE pair and state
-        PKCEPair pkce = pkceService.generate();
-        String state = pkceService.generateState();
+            // 2. Generate PKCE pair and state
+            PKCEPair pkce = pkceService.generate();
+            String state = pkceService.generateState();
 
-        // 3. Build authorization URL
-        String authUrl = buildAuthorizationUrl(
-                oidcConfig.getAuthorizationEndpoint(),
-                clientId, redirectUri,
-                pkce.codeChallenge(), state, scope
-        );
-        log.info("Authorization URL: {}", authUrl);
+            // 3. Start callback server (parse port from redirect URI)
+            int port = parsePort(redirectUri);
+            CompletableFuture<AuthorizationResult> callbackFuture = timed(PHASE_CALLBACK_SERVER, timings,
+                    () -> callbackServer.startAndWait(port, state, CALLBACK_TIMEOUT));
 
-        // 4. Parse port from redirect URI
-        int port = parsePort(redirectUri);
+            try {
+                // The authorization code is only valid at the issuer that issued it,
+                // so the code exchange does not fail over
+                IssuerFailoverService.Discovered discovered = join(discovery);
+                OIDCConfiguration oidcConfig = discovered.configuration();
+                if (callbackFuture.isCompletedExceptionally()) {
+                    // The port could not be bound; don't send the user to the browser
+                    awaitAuthorization(callbackFuture);
+                }
 
-        // 5. Start callback server
-        CompletableFuture<AuthorizationResult> callbackFuture =
-                callbackServer.startAndWait(port, state, CALLBACK_TIMEOUT);
+                // 4. Build authorization URL
+                String authUrl = buildAuthorizationUrl(
+                        oidcConfig.getAuthorizationEndpoint(),
+                        clientId, redirectUri,
+                        pkce.codeChallenge(), state, scope
+                );
+                log.info("Authorization URL: {}", authUrl);
 
-        // 6. Open browser
-        log.info("→ Opening browser for authorization...");
-        openBrowser(authUrl);
+                // 5. Open browser and wait for callback, keeping the token endpoint warm meanwhile
+                Future<?> keepWarm = executor.submit(() -> keepWarm(oidcConfig.getTokenEndpoint(), timings));
+                AuthorizationResult authResult;
+                try {
+                    log.info("→ Opening browser for authorization...");
+                    openBrowser(authUrl);
 
-        // 7. Wait for callback
-        log.info("→ Waiting for authorization (timeout: {} minutes)...", CALLBACK_TIMEOUT.toMinutes());
+                    log.info("→ Waiting for authorization (timeout: {} minutes)...", CALLBACK_TIMEOUT.toMinutes());
+                    authResult = timed(PHASE_AUTHORIZATION, timings, () -> awaitAuthorization(callbackFuture));
+                } finally {
+                    keepWarm.cancel(true);
+                }
+
+                // 6. Exchange authorization code for token
+                log.info("→ Exchanging authorization code for token...");
+                OAuth2TokenResponse token;
+                try {
+                    token = timed(PHASE_TOKEN, timings, () -> exchangeToken(
+                            oidcConfig.getTokenEndpoint(),
+                            clientId, authResult.code(),
+                            redirectUri, pkce.codeVerifier()
+                    ));
+                } catch (OAuth2Exception e) {
+                    // The endpoint may come from a stale cached discovery; rediscover next time
+                    discoveryService.invalidate(discovered.issuerUri());
+                    throw e;
+                }
+
+                Duration elapsed = Duration.ofNanos(System.nanoTime() - start);
+                log.debug("Login phase timings: {}, total {} ms", timings, elapsed.toMillis());
+                return new LoginResult(token, discovered.issuerUri(), Map.copyOf(timings), elapsed);
+            } catch (RuntimeException e) {
+                // Stops the callback server if it is still waiting
+                callbackFuture.cancel(true);
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Result of a browser login.
+     *
+     * @param token     Token response
+     * @param issuerUri Issuer that was logged in to
+     * @param timings   Duration of each phase that ran, keyed by the names in {@link #PHASES}
+     * @param elapsed   Wall-clock time of the whole login
+     */
+    public record LoginResult(OAuth2TokenResponse token, String issuerUri,
+                              Map<String, Duration> timings, Duration elapsed) {
+    }
 
-        AuthorizationResult authResult;
+    private AuthorizationResult awaitAuthorization(CompletableFuture<AuthorizationResult> callbackFuture) {
         try {
-            authResult = callbackFuture.get();
+            return callbackFuture.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new OAuth2Exception("Authorization interrupted", e);
         } catch (Exception e) {
             Throwable cause = e.getCause() != null ? e.getCause() : e;
             throw new OAuth2Exception("Authorization failed: " + cause.getMessage(), cause);
         }
+    }
 
-        // 8. Exchange authorization code for token
-        log.info("→ Exchanging authorization code for token...");
-        return exchangeToken(
-                oidcConfig.getTokenEndpoint(),
-                clientId, authResult.code(),
-                redirectUri, pkce.codeVerifier()
-        );
+    private <T> T join(CompletableFuture<T> future) {
+        try {
+            return future.join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException runtimeException) {
+                throw runtimeException;
+            }
+            throw e;
+        }
+    }
+
+    /**
+     * Opens a connection to the token endpoint and keeps it in the shared client's pool
+     * until interrupted. Best effort: any response (even 405) is fine, and errors only
+     * mean the exchange opens its own connection.
+     */
+    private void keepWarm(String tokenEndpoint, Map<String, Duration> timings) {
+        try {
+            timed(PHASE_PREWARM, timings, () -> touch(tokenEndpoint));
+            while (true) {
+                Thread.sleep(KEEP_WARM_INTERVAL.toMillis());
+                touch(tokenEndpoint);
+            }
+        } catch (InterruptedException e) {
+            // Authorization finished
+        } catch (RestClientException e) {
+            log.debug("Could not pre-warm token endpoint {}: {}", tokenEndpoint, e.getMessage());
+        }
+    }
+
+    private HttpStatusCode touch(String tokenEndpoint) {
+        return restClient.head()
+                .uri(tokenEndpoint)
+                .exchange((request, response) -> response.getStatusCode());
+    }
+
+    private <T> T timed(String phase, Map<String, Duration> timings, Supplier<T> step) {
+        long start = System.nanoTime();
+        try {
+            return step.get();
+        } finally {
+            Duration elapsed = Duration.ofNanos(System.nanoTime() - start);
+            timings.put(phase, elapsed);
+            meterRegistry.timer(LOGIN_PHASE_METRIC, "phase", phase).record(elapsed);
+        }
     }
 
     private String buildAuthorizationUrl(
@@ -124,8 +261,6 @@ public class OAuth2LoginService {
         body.add("code_verifier", codeVerifier);
 
         try {
-            RestClient restClient = restClientBuilder.build();
-
             OAuth2TokenResponse response = restClient.post()
                     .uri(tokenEndpoint)
                     .contentType(MediaType.APPLICATION_FORM_URLENCODED)
@@ -25,7 +25,7 @@ import java.util.Base64;
 @RequiredArgsConstructor
 public class OAuth2Service {
 
-    private final RestClient.Builder restClientBuilder;
+    private final RestClient restClient;
 
     /**
      * Obtains an access token using OAuth2 client credentials flow.
@@ -54,13 +54,9 @@ public class OAuth2Service {
             MultiValueMap<String, String> requestBody = new LinkedMultiValueMap<>();
             requestBody.add("grant_type", "client_credentials");
 
-            // Create RestClient for this request
-            RestClient restClient = restClientBuilder
-                    .baseUrl(tokenUrl)
-                    .build();
-
             // Execute token request with Basic Authentication
             OAuth2TokenResponse response = restClient.post()
+                    .uri(tokenUrl)
                     .contentType(MediaType.APPLICATION_FORM_URLENCODED)
                     .header("Authorization", "Basic " + encodedCredentials)
                     .body(requestBody)
@@ -72,7 +68,7 @@ public class OAuth2Service {
                     })
                     .onStatus(HttpStatusCode::is5xxServerError, (request, responseEntity) -> {
                         log.error("OAuth2 server error (5xx)");
-                        throw OAuth2Exception.authenticationFailed("OAuth2 server error. Please try again later.");
+                        throw OAuth2Exception.serverError();
                     })
                     .body(OAuth2TokenResponse.class);
 
@@ -1,32 +1,144 @@
 package io.github.samzhu.gate.service;
 
 import io.github.samzhu.gate.exception.OAuth2Exception;
+import io.github.samzhu.gate.model.CachedDiscovery;
 import io.github.samzhu.gate.model.OIDCConfiguration;
+import io.github.samzhu.gate.util.FileUtil;
+import io.micrometer.core.instrument.MeterRegistry;
+import jakarta.annotation.PreDestroy;
 import lombok.RequiredArgsConstructor;
 import lombok.extern.slf4j.Slf4j;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
 import org.springframework.stereotype.Service;
 import org.springframework.web.client.RestClient;
 import org.springframework.web.client.RestClientException;
 
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.Locale;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
 /**
  * Service for OIDC Discovery.
  * Retrieves OpenID Connect configuration from the issuer's well-known endpoint.
+ *
+ * Documents are cached per issuer under ~/.gate-cli/cache/oidc/ following the HTTP caching
+ * headers of the response: a fresh document is used without a request, a stale one is
+ * revalidated with If-None-Match / If-Modified-Since, and within the stale-while-revalidate
+ * window the stale document is returned at once while it is revalidated in the background.
+ * Only the server grants that window; without the directive a stale document is always
+ * revalidated before use, so rotated endpoints are picked up as soon as the document expires.
  */
 @Slf4j
 @Service
 @RequiredArgsConstructor
 public class OIDCDiscoveryService {
 
-    private final RestClient.Builder restClientBuilder;
+    private static final String CACHE_DIR = "~/.gate-cli/cache/oidc/";
+    private static final String DISCOVERY_METRIC = "gate.oidc.discovery";
+    private static final Duration DEFAULT_MAX_AGE = Duration.ofHours(1);
+    private static final Duration MAX_HEURISTIC_AGE = Duration.ofDays(1);
+    private static final Duration REVALIDATION_DRAIN_TIMEOUT = Duration.ofSeconds(3);
+
+    private final RestClient restClient;
+    private final FileUtil fileUtil;
+    private final MeterRegistry meterRegistry;
+
+    /**
+     * Background revalidations; one at a time per issuer.
+     */
+    private final ExecutorService revalidationExecutor = Executors.newThreadPerTaskExecutor(
+            Thread.ofVirtual().name("oidc-revalidate-", 0).factory());
+    private final Set<String> revalidating = ConcurrentHashMap.newKeySet();
+
+    /**
+     * Gives background revalidations a short time to finish before the CLI exits.
+     * An unfinished revalidation only means the next run revalidates again.
+     */
+    @PreDestroy
+    void drainRevalidations() {
+        revalidationExecutor.shutdown();
+        try {
+            if (!revalidationExecutor.awaitTermination(REVALIDATION_DRAIN_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS)) {
+                log.debug("OIDC revalidation did not finish within {} s", REVALIDATION_DRAIN_TIMEOUT.toSeconds());
+                revalidationExecutor.shutdownNow();
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
 
     /**
-     * Discovers OIDC configuration from the issuer URI.
+     * Discovers OIDC configuration from the issuer URI, using the cached document when allowed.
      *
      * @param issuerUri The OAuth2 issuer URI
      * @return OIDCConfiguration containing endpoints
      * @throws OAuth2Exception if discovery fails
      */
     public OIDCConfiguration discover(String issuerUri) {
+        Instant now = Instant.now();
+        CachedDiscovery cached = readCache(issuerUri);
+
+        if (cached != null && now.isBefore(cached.getExpires())) {
+            log.debug("Using cached OIDC configuration for {} (fresh until {})", issuerUri, cached.getExpires());
+            record("fresh");
+            return cached.getConfiguration();
+        }
+
+        if (cached != null && cached.getStaleUntil() != null && now.isBefore(cached.getStaleUntil())) {
+            log.debug("Using stale OIDC configuration for {}, revalidating in background", issuerUri);
+            record("stale");
+            revalidateInBackground(issuerUri, cached);
+            return cached.getConfiguration();
+        }
+
+        return fetch(issuerUri, cached);
+    }
+
+    /**
+     * Drops the cached document, e.g. after its endpoints stopped working.
+     *
+     * @param issuerUri The OAuth2 issuer URI
+     */
+    public void invalidate(String issuerUri) {
+        try {
+            fileUtil.deleteFile(cacheFile(issuerUri));
+        } catch (IOException e) {
+            log.warn("Failed to delete cached OIDC configuration for {}: {}", issuerUri, e.getMessage());
+        }
+    }
+
+    private void revalidateInBackground(String issuerUri, CachedDiscovery cached) {
+        if (!revalidating.add(issuerUri)) {
+            return;
+        }
+        try {
+            revalidationExecutor.execute(() -> {
+                try {
+                    fetch(issuerUri, cached);
+                } catch (RuntimeException e) {
+                    log.debug("Background OIDC revalidation for {} failed: {}", issuerUri, e.getMessage());
+                } finally {
+                    revalidating.remove(issuerUri);
+                }
+            });
+        } catch (RuntimeException e) {
+            // Executor already shut down
+            revalidating.remove(issuerUri);
+        }
+    }
+
+    /**
+     * Fetches the document, conditionally if a cached copy has validators, and updates the cache.
+     */
+    private OIDCConfiguration fetch(String issuerUri, CachedDiscovery cached) {
         String discoveryUrl = issuerUri.endsWith("/")
                 ? issuerUri + ".well-known/openid-configuration"
                 : issuerUri + "/.well-known/openid-configuration";
@@ -34,27 +146,190 @@ public class OIDCDiscoveryService {
         log.debug("Fetching OIDC configuration from: {}", discoveryUrl);
 
         try {
-            RestClient restClient = restClientBuilder.build();
-
-            OIDCConfiguration config = restClient.get()
+            CachedDiscovery result = restClient.get()
                     .uri(discoveryUrl)
-                    .retrieve()
-                    .body(OIDCConfiguration.class);
+                    .headers(headers -> {
+                        if (cached != null && cached.getEtag() != null) {
+                            headers.setIfNoneMatch(cached.getEtag());
+                        }
+                        if (cached != null && cached.getLastModified() != null) {
+                            headers.set(HttpHeaders.IF_MODIFIED_SINCE, cached.getLastModified());
+                        }
+                    })
+                    .exchange((request, response) -> {
+                        HttpHeaders headers = response.getHeaders();
+                        if (response.getStatusCode().isSameCodeAs(HttpStatus.NOT_MODIFIED) && cached != null) {
+                            CachedDiscovery revalidated = withFreshness(cached.toBuilder(), headers)
+                                    .etag(headers.getETag() != null ? headers.getETag() : cached.getEtag())
+                                    .build();
+                            record("revalidated");
+                            return revalidated;
+                        }
+                        if (!response.getStatusCode().is2xxSuccessful()) {
+                            throw new OAuth2Exception("OIDC discovery returned HTTP "
+                                    + response.getStatusCode().value() + " from: " + discoveryUrl);
+                        }
+                        OIDCConfiguration config = response.bodyTo(OIDCConfiguration.class);
+                        validate(config);
+                        record("fetched");
+                        return withFreshness(CachedDiscovery.builder().issuer(issuerUri).configuration(config), headers)
+                                .etag(headers.getETag())
+                                .lastModified(headers.getFirst(HttpHeaders.LAST_MODIFIED))
+                                .build();
+                    });
 
-            if (config == null) {
-                throw new OAuth2Exception("OIDC discovery returned empty configuration");
-            }
-
-            if (config.getAuthorizationEndpoint() == null || config.getTokenEndpoint() == null) {
-                throw new OAuth2Exception("OIDC configuration missing required endpoints");
-            }
+            writeCache(issuerUri, result);
 
-            log.debug("Discovered authorization_endpoint: {}", config.getAuthorizationEndpoint());
-            log.debug("Discovered token_endpoint: {}", config.getTokenEndpoint());
+            log.debug("Discovered authorization_endpoint: {}", result.getConfiguration().getAuthorizationEndpoint());
+            log.debug("Discovered token_endpoint: {}", result.getConfiguration().getTokenEndpoint());
 
-            return config;
+            return result.getConfiguration();
         } catch (RestClientException e) {
             throw new OAuth2Exception("Failed to fetch OIDC configuration from: " + discoveryUrl, e);
         }
     }
+
+    private void validate(OIDCConfiguration config) {
+        if (config == null) {
+            throw new OAuth2Exception("OIDC discovery returned empty configuration");
+        }
+
+        if (config.getAuthorizationEndpoint() == null || config.getTokenEndpoint() == null) {
+            throw new OAuth2Exception("OIDC configuration missing required endpoints");
+        }
+    }
+
+    /**
+     * Sets fetched, expires and staleUntil from the response caching headers.
+     * Freshness comes from max-age (less Age), then Expires, then 10% of the time since
+     * Last-Modified (capped at a day), then a one hour default. A stale window is only set from
+     * stale-while-revalidate, unless no-cache or must-revalidate is present. no-store leaves
+     * expires unset, which keeps the document out of the cache.
+     */
+    private CachedDiscovery.CachedDiscoveryBuilder withFreshness(CachedDiscovery.CachedDiscoveryBuilder builder,
+                                                                  HttpHeaders headers) {
+        Instant now = Instant.now();
+        builder.fetched(now).expires(null).staleUntil(null);
+
+        Duration maxAge = null;
+        Duration staleWindow = Duration.ZERO;
+        boolean mustRevalidate = false;
+        String cacheControl = headers.getCacheControl();
+        if (cacheControl != null) {
+            for (String directive : cacheControl.toLowerCase(Locale.ROOT).split(",")) {
+                String[] parts = directive.trim().split("=", 2);
+                String value = parts.length > 1 ? parts[1].trim().replace("\"", "") : null;
+                switch (parts[0].trim()) {
+                    case "no-store" -> {
+                        return builder;
+                    }
+                    case "no-cache" -> {
+                        maxAge = Duration.ZERO;
+                        mustRevalidate = true;
+                    }
+                    case "must-revalidate" -> mustRevalidate = true;
+                    case "max-age" -> {
+                        Duration seconds = parseSeconds(value);
+                        if (seconds != null && maxAge == null) {
+                            maxAge = seconds;
+                        }
+                    }
+                    case "stale-while-revalidate" -> {
+                        Duration seconds = parseSeconds(value);
+                        if (seconds != null) {
+                            staleWindow = seconds;
+                        }
+                    }
+                    default -> {
+                    }
+                }
+            }
+        }
+
+        long date = parseDate(headers);
+        Instant served = date > 0 ? Instant.ofEpochMilli(date) : now;
+        if (maxAge != null) {
+            Duration age = parseSeconds(headers.getFirst(HttpHeaders.AGE));
+            maxAge = age != null ? maxAge.minus(age) : maxAge;
+        } else if (headers.getExpires() > 0) {
+            maxAge = Duration.between(served, Instant.ofEpochMilli(headers.getExpires()));
+        } else if (headers.getLastModified() > 0) {
+            Duration sinceModified = Duration.between(Instant.ofEpochMilli(headers.getLastModified()), served);
+            maxAge = sinceModified.dividedBy(10);
+            maxAge = maxAge.compareTo(MAX_HEURISTIC_AGE) > 0 ? MAX_HEURISTIC_AGE : maxAge;
+        } else {
+            maxAge = DEFAULT_MAX_AGE;
+        }
+
+        Instant expires = now.plus(maxAge.isNegative() ? Duration.ZERO : maxAge);
+        boolean serveStale = !mustRevalidate && staleWindow.isPositive();
+        return builder.expires(expires).staleUntil(serveStale ? expires.plus(staleWindow) : null);
+    }
+
+    /**
+     * Reads the Date header, ignoring a malformed one like {@link HttpHeaders#getExpires()} does.
+     *
+     * @return Milliseconds since the epoch, or -1 if the header is missing or malformed
+     */
+    private long parseDate(HttpHeaders headers) {
+        try {
+            return headers.getDate();
+        } catch (IllegalArgumentException e) {
+            log.debug("Ignoring malformed Date header: {}", headers.getFirst(HttpHeaders.DATE));
+            return -1;
+        }
+    }
+
+    private Duration parseSeconds(String value) {
+        if (value == null) {
+            return null;
+        }
+        try {
+            return Duration.ofSeconds(Long.parseLong(value.trim()));
+        } catch (NumberFormatException e) {
+            return null;
+        }
+    }
+
+    private void record(String result) {
+        meterRegistry.counter(DISCOVERY_METRIC, "result", result).increment();
+    }
+
+    private CachedDiscovery readCache(String issuerUri) {
+        String path = cacheFile(issuerUri);
+        if (!fileUtil.exists(path)) {
+            return null;
+        }
+        try {
+            CachedDiscovery cached = fileUtil.readJson(path, CachedDiscovery.class);
+            // Guard against hash collisions and hand-edited files
+            if (!issuerUri.equals(cached.getIssuer()) || cached.getExpires() == null
+                    || cached.getConfiguration() == null) {
+                return null;
+            }
+            validate(cached.getConfiguration());
+            return cached;
+        } catch (IOException | OAuth2Exception e) {
+            log.debug("Ignoring unreadable OIDC cache {}: {}", path, e.getMessage());
+            return null;
+        }
+    }
+
+    private void writeCache(String issuerUri, CachedDiscovery entry) {
+        try {
+            if (entry.getExpires() == null) {
+                fileUtil.deleteFile(cacheFile(issuerUri));
+            } else {
+                fileUtil.atomicWriteJson(cacheFile(issuerUri), entry);
+            }
+        } catch (IOException e) {
+            // The cache is an optimization; discovery itself succeeded
+            log.warn("Failed to cache OIDC configuration for {}: {}", issuerUri, e.getMessage());
+        }
+    }
+
+    private String cacheFile(String issuerUri) {
+        String hash = fileUtil.sha256Hex(issuerUri.getBytes(StandardCharsets.UTF_8));
+        return CACHE_DIR + hash.substring(0, 32) + ".json";
+    }
 }
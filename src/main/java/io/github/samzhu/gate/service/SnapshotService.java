@@ -0,0 +1,690 @@
+package io.github.samzhu.gate.service;
+
+import io.github.samzhu.gate.exception.BackupException;
+import io.github.samzhu.gate.model.ConnectionConfig;
+import io.github.samzhu.gate.model.SnapshotIndex;
+import io.github.samzhu.gate.model.SnapshotTree;
+import io.github.samzhu.gate.util.FileUtil;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Service;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.FileVisitResult;
+import java.nio.file.Files;
+import java.nio.file.LinkOption;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.SimpleFileVisitor;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.attribute.PosixFileAttributes;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.time.format.DateTimeFormatter;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Deque;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+/**
+ * Incremental snapshots of the whole ~/.claude directory.
+ *
+ * A snapshot is a hash tree: file contents are stored once under snapshots/objects/, named by
+ * their SHA-256, and each directory is a {@link SnapshotTree} under snapshots/trees/, named by
+ * the SHA-256 of its JSON, so the root hash identifies the whole tree. Only new content is
+ * written, and unchanged subtrees share their tree objects with earlier snapshots.
+ *
+ * Files whose size and modification time match the last scan are not read at all, so a run
+ * with nothing changed costs one stat per file. POSIX permissions of files and directories are
+ * recorded along with the content and restored with it. Files modified shortly before the scan are
+ * not cached, since a second write within the same timestamp tick would go unnoticed.
+ *
+ * Restore builds the snapshot in a staging directory next to ~/.claude, carries over excluded
+ * paths and symbolic links, and swaps it in with two renames. Readers never see a mix of
+ * versions, but the swap is not atomic: between the renames ~/.claude does not exist. The
+ * current state is snapshotted first, so a restore can be undone; if the replaced directory
+ * no longer matches that snapshot when the swap is done, it was written to in the meantime
+ * and is kept next to ~/.claude instead of deleted. If ~/.claude is a symbolic link, the
+ * directory it points to is snapshotted and replaced.
+ *
+ * The last {@code backupSettings.maxBackups} snapshots are kept; content only they
+ * referenced is swept.
+ */
+@Slf4j
+@Service
+@RequiredArgsConstructor
+public class SnapshotService {
+
+    private static final String CLAUDE_DIR = "~/.claude";
+    private static final String SETTINGS_PATH = CLAUDE_DIR + "/settings.json";
+    private static final String SNAPSHOTS_DIR = "snapshots";
+    private static final String OBJECTS_DIR = "objects";
+    private static final String TREES_DIR = "trees";
+    private static final String TREE_SUFFIX = ".json";
+    private static final String INDEX_FILE = "index.json";
+    private static final Duration RACY_WINDOW = Duration.ofSeconds(2);
+    private static final String SNAPSHOT_DURATION_METRIC = "gate.snapshot.duration";
+    private static final DateTimeFormatter TIMESTAMP_FORMAT =
+            DateTimeFormatter.ofPattern("yyyy-MM-dd-HH-mm-ss").withZone(ZoneId.systemDefault());
+
+    private final FileUtil fileUtil;
+    private final ConfigurationService configurationService;
+    private final MeterRegistry meterRegistry;
+
+    private final boolean posix = FileSystems.getDefault().supportedFileAttributeViews().contains("posix");
+
+    /**
+     * Snapshots ~/.claude. If nothing changed since the last snapshot, no new snapshot is
+     * recorded and the last one is returned.
+     *
+     * @return The current snapshot and what the scan did
+     */
+    public SnapshotResult createSnapshot() {
+        ConnectionConfig.BackupSettings settings = configurationService.getBackupSettings();
+        String snapshotDir = settings.getBackupDirectory() + "/" + SNAPSHOTS_DIR;
+        Timer.Sample sample = Timer.start(meterRegistry);
+        try (FileUtil.FileLockHandle lock = fileUtil.lockExclusive(snapshotDir)) {
+            return snapshot(snapshotDir, settings, true);
+        } catch (IOException e) {
+            throw BackupException.snapshotFailed(CLAUDE_DIR, e);
+        } finally {
+            sample.stop(meterRegistry.timer(SNAPSHOT_DURATION_METRIC));
+        }
+    }
+
+    /**
+     * Lists snapshots, newest first.
+     *
+     * @return Recorded snapshots
+     */
+    public List<SnapshotIndex.Snapshot> listSnapshots() {
+        String snapshotDir = configurationService.getBackupSettings().getBackupDirectory() + "/" + SNAPSHOTS_DIR;
+        if (!fileUtil.exists(snapshotDir + "/" + INDEX_FILE)) {
+            return List.of();
+        }
+        try (FileUtil.FileLockHandle lock = fileUtil.lockShared(snapshotDir)) {
+            return readIndex(snapshotDir).getSnapshots().reversed();
+        } catch (IOException e) {
+            log.error("Failed to list snapshots", e);
+            return List.of();
+        }
+    }
+
+    /**
+     * Restores ~/.claude to a snapshot. Excluded paths (transcripts, caches) and symbolic
+     * links are kept as they are; everything else is replaced by the snapshot's tree.
+     *
+     * @param id Snapshot id
+     * @return The restored snapshot
+     */
+    public SnapshotIndex.Snapshot restoreSnapshot(long id) {
+        ConnectionConfig.BackupSettings settings = configurationService.getBackupSettings();
+        String snapshotDir = settings.getBackupDirectory() + "/" + SNAPSHOTS_DIR;
+
+        try (FileUtil.FileLockHandle settingsLock = fileUtil.lockExclusive(SETTINGS_PATH);
+             FileUtil.FileLockHandle lock = fileUtil.lockExclusive(snapshotDir)) {
+            Path target = claudeDir();
+            SnapshotIndex.Snapshot snapshot = readIndex(snapshotDir).getSnapshots().stream()
+                    .filter(s -> Objects.equals(s.getId(), id))
+                    .findFirst()
+                    .orElseThrow(() -> BackupException.snapshotNotFound(id));
+            Path store = fileUtil.expandPath(snapshotDir);
+
+            // Keep the current state restorable; without rotation, so the target snapshot stays
+            boolean hadTarget = Files.isDirectory(target);
+            String current = hadTarget ? snapshot(snapshotDir, settings, false).snapshot().getRoot() : null;
+
+            String timestamp = TIMESTAMP_FORMAT.format(Instant.now());
+            Path staging = target.resolveSibling(target.getFileName() + ".restore-" + timestamp);
+            Path previous = target.resolveSibling(target.getFileName() + ".before-restore-" + timestamp);
+            List<Path> carried = List.of();
+            boolean movedAway = false;
+            try {
+                Files.createDirectory(staging);
+                materialize(store, snapshot.getRoot(), staging);
+                if (hadTarget && posix) {
+                    // Snapshots record no entry for ~/.claude itself; keep its permissions
+                    Files.setPosixFilePermissions(staging, Files.getPosixFilePermissions(target));
+                }
+                if (hadTarget) {
+                    carried = carryOver(target, staging, excludeMatcher(settings));
+                    Files.move(target, previous, StandardCopyOption.ATOMIC_MOVE);
+                    movedAway = true;
+                }
+                // Swap the restored tree in
+                Files.move(staging, target, StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException | RuntimeException e) {
+                // Fails if something recreated ~/.claude between the two renames
+                Path home = target;
+                if (movedAway) {
+                    try {
+                        Files.move(previous, target, StandardCopyOption.ATOMIC_MOVE);
+                    } catch (IOException rollback) {
+                        e.addSuppressed(rollback);
+                        home = previous;
+                        log.warn("Could not move {} back to {}; left it in place for manual recovery",
+                                previous, target);
+                    }
+                }
+                // Carried paths are not in any snapshot, so they must go back before cleanup
+                if (moveAll(carried, staging, home)) {
+                    deleteTree(staging);
+                } else {
+                    log.warn("Left {} in place for manual recovery", staging);
+                }
+                throw e;
+            }
+            if (hadTarget) {
+                deleteIfUnchanged(previous, current, snapshotDir, settings);
+            }
+
+            log.info("Restored {} to snapshot {} ({} files)", target, id, snapshot.getFiles());
+            return snapshot;
+        } catch (IOException e) {
+            throw BackupException.snapshotRestoreFailed(id, e);
+        }
+    }
+
+    /**
+     * Deletes the directory swapped out by a restore, unless it no longer matches the snapshot
+     * taken before the swap: anything written to ~/.claude between that snapshot and the
+     * rename ended up there, and is not in any snapshot.
+     */
+    private void deleteIfUnchanged(Path previous, String rootHash, String snapshotDir,
+                                   ConnectionConfig.BackupSettings settings) {
+        try {
+            Scan scan = new Scan(previous, fileUtil.expandPath(snapshotDir), readIndex(snapshotDir).getStatCache(),
+                    excludeMatcher(settings));
+            Files.walkFileTree(previous, scan);
+            if (rootHash.equals(scan.rootHash)) {
+                deleteTree(previous);
+                return;
+            }
+            log.warn("{} changed during the restore; left the replaced directory at {}", CLAUDE_DIR, previous);
+        } catch (IOException e) {
+            log.warn("Could not check {} for changes made during the restore; left it in place: {}",
+                    previous, e.getMessage());
+        }
+    }
+
+    /**
+     * Scans ~/.claude and records a snapshot if the root hash changed.
+     * The caller holds the snapshot directory lock.
+     *
+     * @param rotate Whether to drop and sweep snapshots beyond the retention limit
+     */
+    private SnapshotResult snapshot(String snapshotDir, ConnectionConfig.BackupSettings settings,
+                                    boolean rotate) throws IOException {
+        long start = System.nanoTime();
+        Path source = claudeDir();
+        if (!Files.isDirectory(source)) {
+            throw new NoSuchFileException(source.toString());
+        }
+        Path store = fileUtil.expandPath(snapshotDir);
+        SnapshotIndex index = readIndex(snapshotDir);
+
+        Scan scan = new Scan(source, store, index.getStatCache(), excludeMatcher(settings));
+        Files.walkFileTree(source, scan);
+        if (scan.rootHash == null) {
+            // Removed between the check and the walk
+            throw new NoSuchFileException(source.toString());
+        }
+        index.setStatCache(scan.statCache);
+
+        List<SnapshotIndex.Snapshot> snapshots = index.getSnapshots();
+        SnapshotIndex.Snapshot snapshot = snapshots.isEmpty() ? null : snapshots.get(snapshots.size() - 1);
+        boolean created = snapshot == null || !scan.rootHash.equals(snapshot.getRoot());
+        if (created) {
+            snapshot = SnapshotIndex.Snapshot.builder()
+                    .id(index.getNextId())
+                    .root(scan.rootHash)
+                    .created(Instant.now())
+                    .files(scan.files)
+                    .size(scan.size)
+                    .build();
+            snapshots.add(snapshot);
+            index.setNextId(snapshot.getId() + 1);
+        }
+
+        int keep = Math.max(settings.getMaxBackups() != null ? settings.getMaxBackups() : 1, 1);
+        boolean rotated = rotate && snapshots.size() > keep;
+        if (rotated) {
+            snapshots.subList(0, snapshots.size() - keep).clear();
+        }
+        // A changed file is always re-read, so no reads and no removed files means
+        // the stat cache is unchanged and the index need not be rewritten
+        boolean cacheChanged = scan.hashed > 0 || scan.statCache.size() != scan.previous.size();
+        if (created || rotated || cacheChanged) {
+            writeIndex(snapshotDir, index);
+        }
+        if (rotated) {
+            sweep(store, snapshots);
+        }
+
+        Duration elapsed = Duration.ofNanos(System.nanoTime() - start);
+        log.info("Snapshot {} of {}: {} files, {} read, {} ms{}", snapshot.getId(), source, scan.files,
+                scan.hashed, elapsed.toMillis(), created ? "" : " (unchanged)");
+        return new SnapshotResult(snapshot, created, scan.files, scan.hashed, elapsed);
+    }
+
+    /**
+     * Resolves ~/.claude to the directory it points to if it is a symbolic link, so the
+     * real directory is scanned and swapped and the link itself is left alone.
+     */
+    private Path claudeDir() throws IOException {
+        Path dir = fileUtil.expandPath(CLAUDE_DIR);
+        return Files.exists(dir) ? dir.toRealPath() : dir;
+    }
+
+    /**
+     * Walks ~/.claude depth first, building the hash tree bottom up.
+     */
+    private final class Scan extends SimpleFileVisitor<Path> {
+        private final Path root;
+        private final Path objects;
+        private final Path trees;
+        private final Map<String, SnapshotTree.Node> previous;
+        private final PathMatcher excluded;
+        private final long racyAfter = System.currentTimeMillis() - RACY_WINDOW.toMillis();
+        private final Map<String, SnapshotTree.Node> statCache = new TreeMap<>();
+        private final Deque<List<SnapshotTree.Node>> directories = new ArrayDeque<>();
+        private String rootHash;
+        private long files;
+        private long size;
+        private int hashed;
+
+        private Scan(Path root, Path store, Map<String, SnapshotTree.Node> previous, PathMatcher excluded) {
+            this.root = root;
+            this.objects = store.resolve(OBJECTS_DIR);
+            this.trees = store.resolve(TREES_DIR);
+            this.previous = previous;
+            this.excluded = excluded;
+        }
+
+        @Override
+        public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+            if (!dir.equals(root) && excluded.matches(root.relativize(dir))) {
+                return FileVisitResult.SKIP_SUBTREE;
+            }
+            directories.push(new ArrayList<>());
+            return FileVisitResult.CONTINUE;
+        }
+
+        @Override
+        public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+            Path relative = root.relativize(file);
+            // Symbolic links are not followed or recorded
+            if (!attrs.isRegularFile() || excluded.matches(relative)) {
+                return FileVisitResult.CONTINUE;
+            }
+
+            String key = relative.toString().replace(File.separatorChar, '/');
+            long modified = attrs.lastModifiedTime().toMillis();
+            String mode = mode(file, attrs);
+            SnapshotTree.Node node = previous.get(key);
+            if (node == null || !Objects.equals(node.getSize(), attrs.size())
+                    || !Objects.equals(node.getModified(), modified)) {
+                node = fileNode(file.getFileName().toString(), storeFile(file, objects), attrs.size(), modified, mode);
+                hashed++;
+            } else if (!Objects.equals(node.getMode(), mode)) {
+                // A chmod leaves size and modification time alone, and the content unchanged
+                node = fileNode(node.getName(), node.getHash(), node.getSize(), modified, mode);
+            }
+            if (modified < racyAfter) {
+                statCache.put(key, node);
+            }
+
+            directories.element().add(node);
+            files++;
+            size += attrs.size();
+            return FileVisitResult.CONTINUE;
+        }
+
+        @Override
+        public FileVisitResult visitFileFailed(Path file, IOException exc) throws IOException {
+            // Temporary files come and go while Claude Code runs
+            if (exc instanceof NoSuchFileException) {
+                return FileVisitResult.CONTINUE;
+            }
+            throw exc;
+        }
+
+        @Override
+        public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
+            if (exc != null) {
+                throw exc;
+            }
+            List<SnapshotTree.Node> entries = directories.pop();
+            entries.sort(Comparator.comparing(SnapshotTree.Node::getName));
+            String hash = storeTree(trees, SnapshotTree.builder().entries(entries).build());
+            if (dir.equals(root)) {
+                rootHash = hash;
+            } else {
+                directories.element().add(SnapshotTree.Node.builder()
+                        .name(dir.getFileName().toString())
+                        .type(SnapshotTree.DIRECTORY)
+                        .hash(hash)
+                        .mode(mode(dir, null))
+                        .build());
+            }
+            return FileVisitResult.CONTINUE;
+        }
+
+        private SnapshotTree.Node fileNode(String name, String hash, long size, long modified, String mode) {
+            return SnapshotTree.Node.builder()
+                    .name(name)
+                    .type(SnapshotTree.FILE)
+                    .hash(hash)
+                    .size(size)
+                    .modified(modified)
+                    .mode(mode)
+                    .build();
+        }
+    }
+
+    /**
+     * POSIX permissions of a file or directory, as in "rwxr-xr-x", taken from the attributes
+     * the walk already read where they carry them.
+     *
+     * @return The permissions, or null on file systems without them
+     */
+    private String mode(Path path, BasicFileAttributes attrs) throws IOException {
+        if (attrs instanceof PosixFileAttributes posixAttrs) {
+            return PosixFilePermissions.toString(posixAttrs.permissions());
+        }
+        return posix
+                ? PosixFilePermissions.toString(Files.getPosixFilePermissions(path, LinkOption.NOFOLLOW_LINKS))
+                : null;
+    }
+
+    /**
+     * Applies the POSIX permissions recorded for an entry. Snapshots taken before they were
+     * recorded only say whether a file is executable; such files get owner-only permissions.
+     */
+    private void restoreMode(Path path, SnapshotTree.Node node) throws IOException {
+        String mode = node.getMode();
+        if (mode == null && SnapshotTree.FILE.equals(node.getType())) {
+            mode = Boolean.TRUE.equals(node.getExecutable()) ? "rwx------" : "rw-------";
+        }
+        if (!posix || mode == null) {
+            return;
+        }
+        try {
+            Files.setPosixFilePermissions(path, PosixFilePermissions.fromString(mode));
+        } catch (IllegalArgumentException e) {
+            throw new IOException("Invalid snapshot entry mode: " + mode, e);
+        }
+    }
+
+    /**
+     * Stores a file's content unless already stored, and returns its hash.
+     * The content is hashed first, so unchanged content already in the store is only read once.
+     */
+    private String storeFile(Path file, Path objects) throws IOException {
+        String hash;
+        try (InputStream in = Files.newInputStream(file)) {
+            hash = fileUtil.sha256Hex(in);
+        }
+        Path object = objects.resolve(hash);
+        if (!Files.exists(object)) {
+            fileUtil.atomicWrite(object.toString(), out -> {
+                try (InputStream in = Files.newInputStream(file)) {
+                    if (!fileUtil.transferAndHash(in, out).equals(hash)) {
+                        throw new IOException("File changed while taking snapshot: " + file);
+                    }
+                }
+            });
+        }
+        return hash;
+    }
+
+    private String storeTree(Path trees, SnapshotTree tree) throws IOException {
+        ByteArrayOutputStream json = new ByteArrayOutputStream();
+        fileUtil.writeJson(json, tree);
+        String hash = fileUtil.sha256Hex(json.toByteArray());
+        Path path = trees.resolve(hash + TREE_SUFFIX);
+        if (!Files.exists(path)) {
+            fileUtil.atomicWrite(path.toString(), json::writeTo);
+        }
+        return hash;
+    }
+
+    private SnapshotTree readTree(Path store, String hash) throws IOException {
+        return fileUtil.readJson(store.resolve(TREES_DIR).resolve(hash + TREE_SUFFIX).toString(), SnapshotTree.class);
+    }
+
+    /**
+     * Writes the tree with the given hash into an empty directory, checking every file
+     * against its hash. Modification times and permissions are restored, so the next scan
+     * reads nothing.
+     */
+    private void materialize(Path store, String treeHash, Path dir) throws IOException {
+        for (SnapshotTree.Node node : readTree(store, treeHash).getEntries()) {
+            String name = node.getName();
+            if (name.isEmpty() || name.equals(".") || name.equals("..") || name.contains("/")
+                    || name.contains(File.separator)) {
+                throw new IOException("Invalid snapshot entry name: " + name);
+            }
+            Path path = dir.resolve(name);
+
+            if (SnapshotTree.DIRECTORY.equals(node.getType())) {
+                Files.createDirectory(path);
+                materialize(store, node.getHash(), path);
+                // Only once filled, so a read-only directory can still be written into
+                restoreMode(path, node);
+                continue;
+            }
+
+            try (InputStream in = Files.newInputStream(store.resolve(OBJECTS_DIR).resolve(node.getHash()));
+                 OutputStream out = Files.newOutputStream(path, StandardOpenOption.CREATE_NEW)) {
+                if (!fileUtil.transferAndHash(in, out).equals(node.getHash())) {
+                    throw new IOException("Snapshot content does not match its checksum: " + node.getHash());
+                }
+            }
+            restoreMode(path, node);
+            if (node.getModified() != null) {
+                Files.setLastModifiedTime(path, FileTime.fromMillis(node.getModified()));
+            }
+        }
+    }
+
+    /**
+     * Moves what snapshots leave out (excluded paths, symbolic links, special files)
+     * from the live directory into the staging directory. On failure, whatever was
+     * already moved is moved back.
+     *
+     * @return Moved paths, relative to the directories
+     */
+    private List<Path> carryOver(Path target, Path staging, PathMatcher excluded) throws IOException {
+        List<Path> carried = new ArrayList<>();
+        Files.walkFileTree(target, new SimpleFileVisitor<>() {
+            @Override
+            public FileVisitResult preVisitDirectory(Path dir, BasicFileAttributes attrs) {
+                if (!dir.equals(target) && excluded.matches(target.relativize(dir))) {
+                    carried.add(target.relativize(dir));
+                    return FileVisitResult.SKIP_SUBTREE;
+                }
+                return FileVisitResult.CONTINUE;
+            }
+
+            @Override
+            public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) {
+                if (!attrs.isRegularFile() || excluded.matches(target.relativize(file))) {
+                    carried.add(target.relativize(file));
+                }
+                return FileVisitResult.CONTINUE;
+            }
+        });
+
+        List<Path> moved = new ArrayList<>();
+        try {
+            for (Path path : carried) {
+                Path destination = staging.resolve(path);
+                Files.createDirectories(destination.getParent());
+                deleteTree(destination);
+                Files.move(target.resolve(path), destination, StandardCopyOption.ATOMIC_MOVE);
+                moved.add(path);
+            }
+        } catch (IOException e) {
+            moveAll(moved, staging, target);
+            throw e;
+        }
+        return moved;
+    }
+
+    /**
+     * Moves relative paths from one directory to another, best effort.
+     *
+     * @return true if everything was moved
+     */
+    private boolean moveAll(List<Path> paths, Path from, Path to) {
+        boolean complete = true;
+        for (Path path : paths) {
+            try {
+                Files.move(from.resolve(path), to.resolve(path), StandardCopyOption.ATOMIC_MOVE);
+            } catch (IOException e) {
+                log.warn("Failed to move {} back to {}: {}", from.resolve(path), to, e.getMessage());
+                complete = false;
+            }
+        }
+        return complete;
+    }
+
+    /**
+     * Deletes snapshot content and trees that no kept snapshot references.
+     */
+    private void sweep(Path store, List<SnapshotIndex.Snapshot> snapshots) throws IOException {
+        Set<String> trees = new HashSet<>();
+        Set<String> objects = new HashSet<>();
+        Deque<String> pending = new ArrayDeque<>();
+        snapshots.forEach(snapshot -> pending.push(snapshot.getRoot()));
+        while (!pending.isEmpty()) {
+            String hash = pending.pop();
+            if (!trees.add(hash)) {
+                continue;
+            }
+            for (SnapshotTree.Node node : readTree(store, hash).getEntries()) {
+                if (SnapshotTree.DIRECTORY.equals(node.getType())) {
+                    pending.push(node.getHash());
+                } else {
+                    objects.add(node.getHash());
+                }
+            }
+        }
+
+        int deleted = deleteUnreferenced(store.resolve(TREES_DIR), name ->
+                trees.contains(name.substring(0, name.length() - TREE_SUFFIX.length())));
+        deleted += deleteUnreferenced(store.resolve(OBJECTS_DIR), objects::contains);
+        log.debug("Swept {} unreferenced snapshot file(s)", deleted);
+    }
+
+    private int deleteUnreferenced(Path dir, Predicate<String> referenced) throws IOException {
+        if (!Files.isDirectory(dir)) {
+            return 0;
+        }
+        int deleted = 0;
+        try (Stream<Path> files = Files.list(dir)) {
+            for (Path file : files.toList()) {
+                String name = file.getFileName().toString();
+                // Skip temp files of writes in progress
+                if (!name.startsWith(".") && !referenced.test(name)) {
+                    Files.deleteIfExists(file);
+                    deleted++;
+                }
+            }
+        }
+        return deleted;
+    }
+
+    private void deleteTree(Path root) {
+        if (!Files.exists(root, LinkOption.NOFOLLOW_LINKS)) {
+            return;
+        }
+        try {
+            Files.walkFileTree(root, new SimpleFileVisitor<>() {
+                @Override
+                public FileVisitResult visitFile(Path file, BasicFileAttributes attrs) throws IOException {
+                    Files.delete(file);
+                    return FileVisitResult.CONTINUE;
+                }
+
+                @Override
+                public FileVisitResult postVisitDirectory(Path dir, IOException exc) throws IOException {
+                    if (exc != null) {
+                        throw exc;
+                    }
+                    Files.delete(dir);
+                    return FileVisitResult.CONTINUE;
+                }
+            });
+        } catch (IOException e) {
+            log.warn("Failed to delete {}: {}", root, e.getMessage());
+        }
+    }
+
+    private PathMatcher excludeMatcher(ConnectionConfig.BackupSettings settings) {
+        FileSystem fileSystem = FileSystems.getDefault();
+        List<PathMatcher> matchers = settings.getSnapshotExclude() == null ? List.of()
+                : settings.getSnapshotExclude().stream()
+                        .map(pattern -> fileSystem.getPathMatcher("glob:" + pattern))
+                        .toList();
+        return path -> matchers.stream().anyMatch(matcher -> matcher.matches(path));
+    }
+
+    private SnapshotIndex readIndex(String snapshotDir) throws IOException {
+        String indexFile = snapshotDir + "/" + INDEX_FILE;
+        if (!fileUtil.exists(indexFile)) {
+            return SnapshotIndex.builder().build();
+        }
+        SnapshotIndex index = fileUtil.readJson(indexFile, SnapshotIndex.class);
+        if (index.getSnapshots() == null) {
+            index.setSnapshots(new ArrayList<>());
+        }
+        if (index.getStatCache() == null) {
+            index.setStatCache(Map.of());
+        }
+        if (index.getNextId() == null) {
+            index.setNextId(1L);
+        }
+        return index;
+    }
+
+    private void writeIndex(String snapshotDir, SnapshotIndex index) throws IOException {
+        fileUtil.atomicWriteJson(snapshotDir + "/" + INDEX_FILE, index);
+    }
+
+    /**
+     * Outcome of taking a snapshot.
+     *
+     * @param snapshot The current snapshot (the previous one if nothing changed)
+     * @param created  Whether a new snapshot was recorded
+     * @param files    Number of files in the snapshot
+     * @param hashed   Number of files that had to be read because they changed
+     * @param elapsed  Time taken
+     */
+    public record SnapshotResult(SnapshotIndex.Snapshot snapshot, boolean created, long files, int hashed,
+                                 Duration elapsed) {
+    }
+}
@@ -0,0 +1,119 @@
+package io.github.samzhu.gate.util;
+
+import org.springframework.stereotype.Component;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+
+/**
+ * Byte-exact delta between two versions of a file.
+ *
+ * A delta keeps the bytes the two versions share at the start and at the end, and stores
+ * only the range in between. Consecutive settings.json backups usually differ in a single
+ * token value, so the delta is a few hundred bytes, and applying it reproduces the new
+ * version byte for byte (unlike a JSON-level diff, which would re-serialize the document).
+ *
+ * Encoded layout: magic, version, base content hash, prefix length, suffix length,
+ * replacement length and replacement bytes.
+ */
+@Component
+public class DeltaCodec {
+
+    private static final int MAGIC = 0x47444C54; // "GDLT"
+    private static final int VERSION = 1;
+
+    /**
+     * A decoded delta.
+     *
+     * @param baseHash    Content hash of the version the delta applies to
+     * @param prefix      Number of leading bytes kept from the base
+     * @param suffix      Number of trailing bytes kept from the base
+     * @param replacement Bytes that replace the middle of the base
+     */
+    public record Delta(String baseHash, int prefix, int suffix, byte[] replacement) {
+    }
+
+    /**
+     * Encodes the delta that turns base into target.
+     *
+     * @param baseHash Content hash of base, recorded so the delta can find its base later
+     * @param base     Base version
+     * @param target   New version
+     * @return Encoded delta
+     */
+    public byte[] encode(String baseHash, byte[] base, byte[] target) throws IOException {
+        int limit = Math.min(base.length, target.length);
+        int prefix = Arrays.mismatch(base, target);
+        if (prefix < 0) {
+            prefix = limit;
+        }
+        int suffix = 0;
+        while (suffix < limit - prefix
+                && base[base.length - 1 - suffix] == target[target.length - 1 - suffix]) {
+            suffix++;
+        }
+
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeInt(MAGIC);
+            out.writeByte(VERSION);
+            out.writeUTF(baseHash);
+            out.writeInt(prefix);
+            out.writeInt(suffix);
+            out.writeInt(target.length - prefix - suffix);
+            out.write(target, prefix, target.length - prefix - suffix);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * Decodes a delta.
+     *
+     * @param in Encoded delta; closed by the caller
+     * @return Decoded delta
+     * @throws IOException if the stream does not hold a valid delta
+     */
+    public Delta decode(InputStream in) throws IOException {
+        DataInputStream data = new DataInputStream(in);
+        if (data.readInt() != MAGIC || data.readUnsignedByte() != VERSION) {
+            throw new IOException("Not a backup delta");
+        }
+        String baseHash = data.readUTF();
+        int prefix = data.readInt();
+        int suffix = data.readInt();
+        int length = data.readInt();
+        if (prefix < 0 || suffix < 0 || length < 0) {
+            throw new IOException("Corrupted backup delta");
+        }
+        byte[] replacement = data.readNBytes(length);
+        if (replacement.length != length) {
+            throw new IOException("Truncated backup delta");
+        }
+        return new Delta(baseHash, prefix, suffix, replacement);
+    }
+
+    /**
+     * Reconstructs the target version from its base.
+     *
+     * @param delta Decoded delta
+     * @param base  Base version the delta was encoded against
+     * @return Target version
+     * @throws IOException if the delta does not fit the base
+     */
+    public byte[] apply(Delta delta, byte[] base) throws IOException {
+        if ((long) delta.prefix() + delta.suffix() > base.length) {
+            throw new IOException("Backup delta does not match its base");
+        }
+        byte[] replacement = delta.replacement();
+        byte[] target = new byte[delta.prefix() + replacement.length + delta.suffix()];
+        System.arraycopy(base, 0, target, 0, delta.prefix());
+        System.arraycopy(replacement, 0, target, delta.prefix(), replacement.length);
+        System.arraycopy(base, base.length - delta.suffix(), target,
+                delta.prefix() + replacement.length, delta.suffix());
+        return target;
+    }
+}
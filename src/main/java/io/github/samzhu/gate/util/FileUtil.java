@@ -1,30 +1,86 @@
 package io.github.samzhu.gate.util;
 
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.databind.JsonNode;
 import com.fasterxml.jackson.databind.ObjectMapper;
 import com.fasterxml.jackson.databind.SerializationFeature;
 import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import io.github.samzhu.gate.config.GateCliProperties;
+import io.github.samzhu.gate.config.GateCliProperties.Durability;
+import io.github.samzhu.gate.model.GeneratedJsonCodecs;
+import io.micrometer.core.instrument.MeterRegistry;
 import lombok.extern.slf4j.Slf4j;
 import org.springframework.stereotype.Component;
 
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.io.OutputStream;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.*;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
 import java.nio.file.attribute.PosixFilePermission;
 import java.nio.file.attribute.PosixFilePermissions;
+import java.security.DigestInputStream;
+import java.security.DigestOutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.time.Duration;
+import java.util.HexFormat;
+import java.util.Objects;
+import java.util.Map;
 import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
 
 /**
  * Utility class for atomic file operations.
- * Uses temp file + atomic rename pattern to prevent corruption.
+ * Uses temp file + atomic rename pattern to prevent corruption,
+ * and lock files under ~/.gate-cli/locks to serialize read-modify-write cycles across processes.
  */
 @Slf4j
 @Component
 public class FileUtil {
 
+    private static final String LOCK_DIR = "~/.gate-cli/locks";
+    private static final String LOCK_SUFFIX = ".lock";
+    private static final String LOCK_WAIT_METRIC = "gate.file.lock.wait";
+    private static final long MAX_LOCK_POLL_MILLIS = 100;
+    private static final String WRITES_METRIC = "gate.file.writes";
+    private static final String WRITE_DURATION_METRIC = "gate.file.write.duration";
+    private static final String REWRITE_CONFLICTS_METRIC = "gate.file.rewrite.conflicts";
+    private static final int MAX_REWRITE_ATTEMPTS = 3;
+    private static final String DIGEST_ALGORITHM = "SHA-256";
+
     private final ObjectMapper objectMapper;
+    private final GateCliProperties gateCliProperties;
+    private final MeterRegistry meterRegistry;
+
+    /**
+     * Lock state per lock file. The file lock is held once per process;
+     * nested acquisitions by the same thread reuse it.
+     */
+    private final Map<Path, LockState> lockStates = new ConcurrentHashMap<>();
+
+    /**
+     * Content digests of files last seen or written, keyed by path.
+     */
+    private final Map<Path, FileIdentity> fileIdentities = new ConcurrentHashMap<>();
 
-    public FileUtil() {
+    public FileUtil(GateCliProperties gateCliProperties, MeterRegistry meterRegistry) {
+        this.gateCliProperties = gateCliProperties;
+        this.meterRegistry = meterRegistry;
         this.objectMapper = new ObjectMapper();
         this.objectMapper.registerModule(new JavaTimeModule());
+        this.objectMapper.registerModule(new GeneratedJsonCodecs());
         this.objectMapper.disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
         this.objectMapper.enable(SerializationFeature.INDENT_OUTPUT);
     }
@@ -44,12 +100,153 @@ public class FileUtil {
     /**
      * Atomically writes content to a file using temp file + rename pattern.
      * Creates parent directories if they don't exist.
+     * The write is skipped if the file already holds exactly this content.
      *
      * @param targetPath Path to the target file
      * @param content    Content to write
+     * @return true if the file was written, false if the write was elided
      * @throws IOException if write operation fails
      */
-    public void atomicWrite(String targetPath, String content) throws IOException {
+    public boolean atomicWrite(String targetPath, String content) throws IOException {
+        byte[] bytes = content.getBytes(StandardCharsets.UTF_8);
+        Path target = expandPath(targetPath);
+
+        // Skip before creating a temp file when the content is already there
+        if (hasContent(target, bytes.length, newDigest().digest(bytes))) {
+            return elideWrite(target);
+        }
+        return atomicWrite(targetPath, out -> out.write(bytes));
+    }
+
+    /**
+     * Computes the SHA-256 hash of content, as lowercase hex.
+     *
+     * @param content Content to hash
+     * @return Hex-encoded SHA-256 hash
+     */
+    public String sha256Hex(byte[] content) {
+        return HexFormat.of().formatHex(newDigest().digest(content));
+    }
+
+    /**
+     * Computes the SHA-256 hash of a stream's remaining content, as lowercase hex.
+     *
+     * @param in Content to hash; read to the end but not closed
+     * @return Hex-encoded SHA-256 hash
+     * @throws IOException if reading fails
+     */
+    public String sha256Hex(InputStream in) throws IOException {
+        MessageDigest digest = newDigest();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            digest.update(buffer, 0, read);
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    /**
+     * Copies a stream's remaining content and computes its SHA-256 hash on the way.
+     *
+     * @param in  Content to copy; read to the end but not closed
+     * @param out Destination; not closed
+     * @return Hex-encoded SHA-256 hash of the copied content
+     * @throws IOException if reading or writing fails
+     */
+    public String transferAndHash(InputStream in, OutputStream out) throws IOException {
+        MessageDigest digest = newDigest();
+        byte[] buffer = new byte[8192];
+        int read;
+        while ((read = in.read(buffer)) != -1) {
+            digest.update(buffer, 0, read);
+            out.write(buffer, 0, read);
+        }
+        return HexFormat.of().formatHex(digest.digest());
+    }
+
+    /**
+     * Atomically writes streamed content to a file using temp file + rename pattern.
+     * The writer streams straight into the temp file, so large content is never
+     * materialized in memory. If the writer fails, the target file is left untouched.
+     * If the streamed content equals the current file content, the temp file is
+     * discarded instead of renamed, so file watchers see no change.
+     * The configured {@link Durability} decides whether the temp file and the
+     * parent directory are fsynced around the rename.
+     *
+     * @param targetPath Path to the target file
+     * @param writer     Writes the new content to the temp file
+     * @return true if the file was written, false if the write was elided
+     * @throws IOException if write operation fails
+     */
+    public boolean atomicWrite(String targetPath, ContentWriter writer) throws IOException {
+        return atomicWrite(targetPath, writer, null);
+    }
+
+    /**
+     * Atomically rewrites an existing file from its current content (compare-and-swap).
+     * The identity of the file (file key, mtime, size, SHA-256) is captured while it is read,
+     * and verified again right before the rename. If another process changed the file in
+     * between, the rewrite starts over from the new content, up to a bounded number of attempts.
+     * This lets callers preserve concurrent edits without holding a lock.
+     *
+     * @param targetPath  Path to the existing file
+     * @param transformer Streams the current content into the new content
+     * @return true if the file was written, false if the write was elided
+     * @throws FileChangedException if the file kept changing on every attempt
+     * @throws IOException          if the file doesn't exist or the write fails
+     */
+    public boolean atomicRewrite(String targetPath, ContentTransformer transformer) throws IOException {
+        Path target = expandPath(targetPath);
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return rewriteOnce(targetPath, target, transformer);
+            } catch (FileChangedException e) {
+                meterRegistry.counter(REWRITE_CONFLICTS_METRIC).increment();
+                if (attempt >= MAX_REWRITE_ATTEMPTS) {
+                    throw e;
+                }
+                log.debug("File changed during rewrite, retrying ({}/{}): {}", attempt, MAX_REWRITE_ATTEMPTS, target);
+            }
+        }
+    }
+
+    private boolean rewriteOnce(String targetPath, Path target, ContentTransformer transformer) throws IOException {
+        BasicFileAttributes attributes = Files.readAttributes(target, BasicFileAttributes.class);
+        MessageDigest readDigest = newDigest();
+        FileIdentity[] expected = new FileIdentity[1];
+
+        try (InputStream in = new DigestInputStream(
+                new BufferedInputStream(Files.newInputStream(target)), readDigest)) {
+            return atomicWrite(targetPath, out -> {
+                transformer.transform(in, out);
+                // Hash the whole file, even if the transformer stopped reading early
+                in.transferTo(OutputStream.nullOutputStream());
+                expected[0] = FileIdentity.of(attributes, readDigest.digest());
+                fileIdentities.put(target, expected[0]);
+            }, () -> isUnchanged(target, expected[0]));
+        }
+    }
+
+    /**
+     * Checks that a file still has the identity captured earlier.
+     * A matching stat is enough; otherwise the content hash decides (e.g. after a touch).
+     */
+    private boolean isUnchanged(Path target, FileIdentity expected) throws IOException {
+        BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(target, BasicFileAttributes.class);
+        } catch (NoSuchFileException e) {
+            return false;
+        }
+        if (expected.matches(attributes)) {
+            return true;
+        }
+        return attributes.size() == expected.size()
+                && MessageDigest.isEqual(digestFile(target), expected.digest());
+    }
+
+    private boolean atomicWrite(String targetPath, ContentWriter writer,
+                                WritePrecondition precondition) throws IOException {
         Path target = expandPath(targetPath);
         Path parent = target.getParent();
 
@@ -61,21 +258,57 @@ public class FileUtil {
         // Create temp file in the same directory to ensure same filesystem
         Path temp = Files.createTempFile(parent, ".gate-cli-", ".tmp");
 
+        Durability durability = gateCliProperties.getDurability();
+        long start = System.nanoTime();
+
         try {
-            // Write content to temp file
-            Files.writeString(temp, content, StandardOpenOption.WRITE);
+            // Write content to temp file, hashing it on the way
+            MessageDigest digest = newDigest();
+            byte[] contentDigest;
+            try (FileChannel channel = FileChannel.open(temp, StandardOpenOption.WRITE)) {
+                OutputStream out = new DigestOutputStream(
+                        new BufferedOutputStream(Channels.newOutputStream(channel)), digest);
+                writer.writeTo(out);
+                out.flush();
+
+                contentDigest = digest.digest();
+                if (hasContent(target, channel.size(), contentDigest)) {
+                    channel.close();
+                    Files.delete(temp);
+                    return elideWrite(target);
+                }
+
+                // Set restrictive permissions (600 - owner read/write only)
+                setRestrictivePermissions(temp);
+
+                // Make the content durable before it becomes visible under the target name
+                if (durability != Durability.NONE) {
+                    channel.force(true);
+                }
+            }
 
-            // Set restrictive permissions (600 - owner read/write only)
-            setRestrictivePermissions(temp);
+            // Verify nobody changed the target since it was read (compare-and-swap)
+            if (precondition != null && !precondition.holds()) {
+                throw new FileChangedException(target);
+            }
 
             // Atomic rename
             Files.move(temp, target,
                     StandardCopyOption.ATOMIC_MOVE,
                     StandardCopyOption.REPLACE_EXISTING);
 
-            log.debug("Atomically wrote to file: {}", target);
-        } catch (IOException e) {
-            // Clean up temp file on failure
+            if (durability == Durability.FILE_AND_DIRECTORY) {
+                syncDirectory(parent);
+            }
+
+            rememberDigest(target, contentDigest);
+            meterRegistry.counter(WRITES_METRIC, "result", "written").increment();
+            meterRegistry.timer(WRITE_DURATION_METRIC, "durability", durability.name().toLowerCase())
+                    .record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+            log.debug("Atomically wrote to file: {} (durability={})", target, durability);
+            return true;
+        } catch (IOException | RuntimeException e) {
+            // Clean up temp file on failure, including writers that throw unchecked exceptions
             try {
                 Files.deleteIfExists(temp);
             } catch (IOException ex) {
@@ -85,16 +318,97 @@ public class FileUtil {
         }
     }
 
+    /**
+     * Fsyncs a directory so a rename inside it survives a crash.
+     * Not all platforms can open directories as channels (e.g. Windows); there it is a no-op.
+     */
+    private void syncDirectory(Path directory) {
+        if (directory == null) {
+            return;
+        }
+        try (FileChannel channel = FileChannel.open(directory, StandardOpenOption.READ)) {
+            channel.force(true);
+        } catch (IOException e) {
+            log.debug("Directory sync not supported for: {}", directory, e);
+        }
+    }
+
     /**
      * Atomically writes an object as JSON to a file.
      *
      * @param targetPath Path to the target file
      * @param object     Object to serialize as JSON
+     * @return true if the file was written, false if it already had this content
      * @throws IOException if write operation fails
      */
-    public void atomicWriteJson(String targetPath, Object object) throws IOException {
+    public boolean atomicWriteJson(String targetPath, Object object) throws IOException {
         String json = objectMapper.writeValueAsString(object);
-        atomicWrite(targetPath, json);
+        return atomicWrite(targetPath, json);
+    }
+
+    /**
+     * Checks whether the target file currently holds content with the given size and digest.
+     * The digest of the current file is cached by file key + mtime + size.
+     */
+    private boolean hasContent(Path target, long size, byte[] contentDigest) throws IOException {
+        BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(target, BasicFileAttributes.class);
+        } catch (NoSuchFileException e) {
+            return false;
+        }
+        if (!attributes.isRegularFile() || attributes.size() != size) {
+            return false;
+        }
+
+        FileIdentity cached = fileIdentities.get(target);
+        byte[] currentDigest;
+        if (cached != null && cached.matches(attributes)) {
+            currentDigest = cached.digest();
+        } else {
+            currentDigest = digestFile(target);
+            fileIdentities.put(target, FileIdentity.of(attributes, currentDigest));
+        }
+        return MessageDigest.isEqual(currentDigest, contentDigest);
+    }
+
+    /**
+     * Caches the digest of content just written to the target file.
+     */
+    private void rememberDigest(Path target, byte[] contentDigest) {
+        try {
+            BasicFileAttributes attributes = Files.readAttributes(target, BasicFileAttributes.class);
+            fileIdentities.put(target, FileIdentity.of(attributes, contentDigest));
+        } catch (IOException e) {
+            fileIdentities.remove(target);
+        }
+    }
+
+    /**
+     * Records a skipped write. The file still ends up owner-only, as it would have after a rename,
+     * even if its permissions were loosened since it was written.
+     */
+    private boolean elideWrite(Path target) {
+        setRestrictivePermissions(target);
+        meterRegistry.counter(WRITES_METRIC, "result", "elided").increment();
+        log.debug("Content unchanged, skipped write to file: {}", target);
+        return false;
+    }
+
+    private byte[] digestFile(Path path) throws IOException {
+        MessageDigest digest = newDigest();
+        try (InputStream in = new DigestInputStream(Files.newInputStream(path), digest)) {
+            in.transferTo(OutputStream.nullOutputStream());
+        }
+        return digest.digest();
+    }
+
+    private MessageDigest newDigest() {
+        try {
+            return MessageDigest.getInstance(DIGEST_ALGORITHM);
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(DIGEST_ALGORITHM + " not available", e);
+        }
     }
 
     /**
@@ -125,6 +439,68 @@ public class FileUtil {
         return objectMapper.readValue(json, clazz);
     }
 
+    /**
+     * Deserializes JSON from a stream, leaving the stream open (e.g. an archive entry).
+     *
+     * @param in    JSON content; not closed
+     * @param clazz Class to deserialize to
+     * @return Deserialized object
+     * @throws IOException if read or parse operation fails
+     */
+    public <T> T readJson(InputStream in, Class<T> clazz) throws IOException {
+        return objectMapper.readerFor(clazz)
+                .without(JsonParser.Feature.AUTO_CLOSE_SOURCE)
+                .readValue(in);
+    }
+
+    /**
+     * Serializes an object as JSON to a stream, leaving the stream open,
+     * with the same settings as {@link #atomicWriteJson}.
+     *
+     * @param out    Destination; not closed
+     * @param object Object to serialize
+     * @throws IOException if serialization or writing fails
+     */
+    public void writeJson(OutputStream out, Object object) throws IOException {
+        objectMapper.writer()
+                .without(JsonGenerator.Feature.AUTO_CLOSE_TARGET)
+                .writeValue(out, object);
+    }
+
+    /**
+     * Reads a JSON file as a tree.
+     *
+     * @param path Path to the JSON file
+     * @return Root node of the document
+     * @throws IOException if read or parse operation fails
+     */
+    public JsonNode readJsonTree(String path) throws IOException {
+        String json = readFile(path);
+        return objectMapper.readTree(json);
+    }
+
+    /**
+     * Converts an object to a JSON tree, using the same settings as {@link #atomicWriteJson}.
+     *
+     * @param object Object to convert
+     * @return Tree representation of the object
+     */
+    public JsonNode toJsonTree(Object object) {
+        return objectMapper.valueToTree(object);
+    }
+
+    /**
+     * Binds a JSON tree to an object.
+     *
+     * @param node  Tree to bind
+     * @param clazz Class to bind to
+     * @return Bound object
+     * @throws IOException if the tree does not match the class
+     */
+    public <T> T fromJsonTree(JsonNode node, Class<T> clazz) throws IOException {
+        return objectMapper.treeToValue(node, clazz);
+    }
+
     /**
      * Checks if a file exists.
      *
@@ -188,7 +564,7 @@ public class FileUtil {
      *
      * @param path Path to the file
      */
-    private void setRestrictivePermissions(Path path) {
+    public void setRestrictivePermissions(Path path) {
         try {
             if (FileSystems.getDefault().supportedFileAttributeViews().contains("posix")) {
                 Set<PosixFilePermission> permissions = PosixFilePermissions.fromString("rw-------");
@@ -201,18 +577,231 @@ public class FileUtil {
     }
 
     /**
-     * Validates that a file contains valid JSON.
+     * Acquires a shared lock guarding the given file, for readers.
+     * Waits up to the configured lock timeout for other processes to release it.
      *
-     * @param path Path to the JSON file
-     * @return true if file contains valid JSON
+     * @param path Path of the guarded file (see {@link #lockPath} for where the lock lives)
+     * @return Lock handle to close when done
+     * @throws IOException if the lock cannot be acquired within the timeout
      */
-    public boolean isValidJson(String path) {
+    public FileLockHandle lockShared(String path) throws IOException {
+        return lock(path, true);
+    }
+
+    /**
+     * Acquires an exclusive lock guarding the given file, for read-modify-write cycles.
+     * Waits up to the configured lock timeout for other processes to release it.
+     *
+     * @param path Path of the guarded file (see {@link #lockPath} for where the lock lives)
+     * @return Lock handle to close when done
+     * @throws IOException if the lock cannot be acquired within the timeout
+     */
+    public FileLockHandle lockExclusive(String path) throws IOException {
+        return lock(path, false);
+    }
+
+    /**
+     * Returns the lock file guarding the given path. Lock files live under ~/.gate-cli/locks
+     * rather than next to the guarded file, so none are left in directories gate-cli does not
+     * own (such as ~/.claude). The name keeps the file name for readability and adds a hash of
+     * the absolute path, so files with the same name in different directories get different locks.
+     *
+     * @param path Path of the guarded file
+     * @return Path of its lock file
+     */
+    Path lockPath(String path) {
+        Path guarded = expandPath(path).toAbsolutePath().normalize();
+        String pathHash = sha256Hex(guarded.toString().getBytes(StandardCharsets.UTF_8)).substring(0, 16);
+        Path fileName = guarded.getFileName();
+        return expandPath(LOCK_DIR).resolve((fileName != null ? fileName + "-" : "") + pathHash + LOCK_SUFFIX);
+    }
+
+    /**
+     * Acquires a lock on the lock file of the given path.
+     * Within this process holders are serialized; a thread that already holds
+     * the lock re-enters it, but cannot upgrade a shared lock to exclusive.
+     */
+    private FileLockHandle lock(String path, boolean shared) throws IOException {
+        Path lockPath = lockPath(path);
+        Duration timeout = gateCliProperties.getLockTimeout();
+        long start = System.nanoTime();
+        long deadline = start + timeout.toNanos();
+
+        LockState state = lockStates.computeIfAbsent(lockPath, p -> new LockState());
         try {
-            String content = readFile(path);
-            objectMapper.readTree(content);
-            return true;
-        } catch (IOException e) {
-            return false;
+            if (!state.threadLock.tryLock(timeout.toNanos(), TimeUnit.NANOSECONDS)) {
+                throw lockTimeout(lockPath, timeout);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException("Interrupted waiting for lock: " + lockPath);
+        }
+
+        try {
+            if (state.threadLock.getHoldCount() > 1) {
+                if (state.shared && !shared) {
+                    throw new IllegalStateException("Cannot upgrade shared lock to exclusive: " + lockPath);
+                }
+                return new FileLockHandle(lockPath, state);
+            }
+
+            Path parent = lockPath.getParent();
+            if (parent != null && !Files.exists(parent)) {
+                Files.createDirectories(parent);
+            }
+
+            FileChannel channel = FileChannel.open(lockPath,
+                    StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+            try {
+                FileLock fileLock = acquireFileLock(channel, shared, deadline);
+                if (fileLock == null) {
+                    throw lockTimeout(lockPath, timeout);
+                }
+                state.channel = channel;
+                state.fileLock = fileLock;
+                state.shared = shared;
+            } catch (IOException | RuntimeException e) {
+                channel.close();
+                throw e;
+            }
+
+            long waited = System.nanoTime() - start;
+            meterRegistry.timer(LOCK_WAIT_METRIC, "mode", shared ? "shared" : "exclusive")
+                    .record(waited, TimeUnit.NANOSECONDS);
+            log.debug("Acquired {} lock on {} after {} ms",
+                    shared ? "shared" : "exclusive", lockPath, TimeUnit.NANOSECONDS.toMillis(waited));
+            return new FileLockHandle(lockPath, state);
+        } catch (IOException | RuntimeException e) {
+            state.threadLock.unlock();
+            throw e;
+        }
+    }
+
+    /**
+     * Polls for the file lock with a growing back-off until the deadline passes.
+     *
+     * @return The file lock, or null if the deadline passed
+     */
+    private FileLock acquireFileLock(FileChannel channel, boolean shared, long deadline) throws IOException {
+        long pollMillis = 5;
+        while (true) {
+            FileLock fileLock = channel.tryLock(0L, Long.MAX_VALUE, shared);
+            if (fileLock != null) {
+                return fileLock;
+            }
+            if (System.nanoTime() >= deadline) {
+                return null;
+            }
+            try {
+                Thread.sleep(pollMillis);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted waiting for file lock");
+            }
+            pollMillis = Math.min(pollMillis * 2, MAX_LOCK_POLL_MILLIS);
+        }
+    }
+
+    private IOException lockTimeout(Path lockPath, Duration timeout) {
+        return new IOException("Timed out after " + timeout.toMillis() + " ms waiting for lock: " + lockPath);
+    }
+
+    /**
+     * Streams new file content into the temp file of an atomic write.
+     */
+    @FunctionalInterface
+    public interface ContentWriter {
+        void writeTo(OutputStream out) throws IOException;
+    }
+
+    /**
+     * Streams the current content of a file into its new content, for {@link #atomicRewrite}.
+     */
+    @FunctionalInterface
+    public interface ContentTransformer {
+        void transform(InputStream in, OutputStream out) throws IOException;
+    }
+
+    /**
+     * Checked right before the rename of an atomic write; returning false aborts it.
+     */
+    @FunctionalInterface
+    private interface WritePrecondition {
+        boolean holds() throws IOException;
+    }
+
+    /**
+     * Thrown when a file changed on disk between being read and being replaced.
+     */
+    public static class FileChangedException extends IOException {
+
+        public FileChangedException(Path path) {
+            super("File was modified concurrently: " + path);
+        }
+    }
+
+    /**
+     * Identity of a file: its content digest tagged with the attributes it was computed for.
+     */
+    private record FileIdentity(Object fileKey, FileTime lastModified, long size, byte[] digest) {
+
+        static FileIdentity of(BasicFileAttributes attributes, byte[] digest) {
+            return new FileIdentity(attributes.fileKey(), attributes.lastModifiedTime(), attributes.size(), digest);
+        }
+
+        boolean matches(BasicFileAttributes attributes) {
+            return Objects.equals(fileKey, attributes.fileKey())
+                    && lastModified.equals(attributes.lastModifiedTime())
+                    && size == attributes.size();
+        }
+    }
+
+    /**
+     * Lock bookkeeping for one lock file.
+     */
+    private static final class LockState {
+        private final ReentrantLock threadLock = new ReentrantLock();
+        private FileChannel channel;
+        private FileLock fileLock;
+        private boolean shared;
+    }
+
+    /**
+     * Handle for a held file lock. Closing it releases one level of nesting;
+     * the underlying file lock is released when the outermost handle is closed.
+     */
+    public static final class FileLockHandle implements AutoCloseable {
+
+        private final Path lockPath;
+        private final LockState state;
+        private boolean closed;
+
+        private FileLockHandle(Path lockPath, LockState state) {
+            this.lockPath = lockPath;
+            this.state = state;
+        }
+
+        @Override
+        public void close() {
+            if (closed) {
+                return;
+            }
+            closed = true;
+            try {
+                if (state.threadLock.getHoldCount() == 1) {
+                    try {
+                        state.fileLock.release();
+                        state.channel.close();
+                    } catch (IOException e) {
+                        log.warn("Failed to release lock: {}", lockPath, e);
+                    } finally {
+                        state.fileLock = null;
+                        state.channel = null;
+                    }
+                }
+            } finally {
+                state.threadLock.unlock();
+            }
         }
     }
 }
@@ -0,0 +1,304 @@
+package io.github.samzhu.gate.util;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import io.github.samzhu.gate.config.GateCliProperties;
+import lombok.RequiredArgsConstructor;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.OpenOption;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileAttribute;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.zip.CRC32C;
+
+/**
+ * Append-only journal of JSON patches layered over a snapshot file.
+ *
+ * Each record is one line: a CRC32C checksum in hex, a space, and a compact JSON object
+ * whose top-level fields replace the same fields of the snapshot (null removes a field).
+ * Because records set whole fields, replaying a record that is already part of the
+ * snapshot is harmless, which keeps compaction crash-consistent.
+ *
+ * Replay stops at the first record that fails its checksum: later records may only make sense
+ * on top of it, so applying them would produce a state that never existed. The caller decides
+ * what to do with the records that were not applied (see {@link Replay#intact()}).
+ *
+ * The first record is a header naming the SHA-256 of the snapshot the journal was started on.
+ * A journal whose base no longer matches the snapshot (the snapshot was rewritten or edited
+ * by hand) is ignored on replay and discarded by the next append, so the snapshot wins.
+ * The journal holds the same data as the snapshot, credentials included, so it is created
+ * owner-only (600) like the snapshot.
+ *
+ * Callers are expected to hold the lock of the snapshot file while appending or compacting.
+ */
+@Slf4j
+@Component
+@RequiredArgsConstructor
+public class JsonJournal {
+
+    private static final String BASE_FIELD = "$base";
+    private static final int MAX_HEADER_LENGTH = 256;
+    private static final int TAIL_SCAN_BLOCK = 4096;
+    private static final Set<OpenOption> APPEND_OPTIONS =
+            Set.of(StandardOpenOption.CREATE, StandardOpenOption.READ, StandardOpenOption.WRITE);
+
+    private final FileUtil fileUtil;
+    private final GateCliProperties gateCliProperties;
+
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    /**
+     * Appends a patch record to the journal, creating it if needed.
+     * A torn record left at the tail by a crash is cut off first, and a journal started on
+     * a different snapshot is discarded.
+     *
+     * @param journalPath Path to the journal file
+     * @param baseDigest  SHA-256 of the snapshot file the patch applies to
+     * @param patch       Top-level fields to replace
+     * @return Journal size in bytes after the append
+     * @throws IOException if the append fails
+     */
+    public long append(String journalPath, String baseDigest, ObjectNode patch) throws IOException {
+        byte[] record = encode(patch);
+        Path path = fileUtil.expandPath(journalPath);
+        boolean existed = Files.exists(path);
+
+        try (FileChannel channel = FileChannel.open(path, APPEND_OPTIONS, ownerOnly())) {
+            if (existed) {
+                // Journals created by older versions may be world-readable
+                fileUtil.setRestrictivePermissions(path);
+            }
+            truncateTornTail(channel);
+            if (channel.size() > 0 && !baseDigest.equals(readBase(channel))) {
+                log.info("Discarding journal started on a different snapshot: {}", path);
+                channel.truncate(0);
+            }
+            if (channel.size() == 0) {
+                write(channel, encode(JsonNodeFactory.instance.objectNode().put(BASE_FIELD, baseDigest)));
+            }
+            channel.position(channel.size());
+            write(channel, record);
+            if (gateCliProperties.getDurability() != GateCliProperties.Durability.NONE) {
+                channel.force(false);
+            }
+
+            log.debug("Appended {} byte record to journal: {}", record.length, path);
+            return channel.size();
+        }
+    }
+
+    /**
+     * Replays journal records onto the snapshot tree, in order, up to the first corrupted one.
+     * A partial record at the very end is a torn append and is ignored; the next append cuts it
+     * off. The whole journal is ignored if it was not started on this snapshot.
+     *
+     * @param journalPath Path to the journal file
+     * @param baseDigest  SHA-256 of the snapshot file the tree was read from
+     * @param snapshot    Snapshot tree to patch in place
+     * @return How many records were applied, and how many were not because one was corrupted
+     * @throws IOException if the journal cannot be read
+     */
+    public Replay replay(String journalPath, String baseDigest, ObjectNode snapshot) throws IOException {
+        Path path = fileUtil.expandPath(journalPath);
+        byte[] content;
+        try {
+            // Bounded by the compaction threshold
+            content = Files.readAllBytes(path);
+        } catch (NoSuchFileException e) {
+            return new Replay(0, 0);
+        }
+
+        // Complete lines only: anything after the last newline is a torn append
+        String text = new String(content, StandardCharsets.UTF_8);
+        int end = text.lastIndexOf('\n');
+        if (end < 0) {
+            return new Replay(0, 0);
+        }
+        String[] lines = text.substring(0, end).split("\n", -1);
+        if (!baseDigest.equals(base(decode(lines[0])))) {
+            log.warn("Ignoring journal that was not started on the current snapshot "
+                    + "(edited by hand or rewritten by another version): {}", path);
+            return new Replay(0, 0);
+        }
+
+        int applied = 0;
+        for (int i = 1; i < lines.length; i++) {
+            ObjectNode patch = decode(lines[i]);
+            if (patch == null) {
+                int dropped = lines.length - i;
+                log.error("Journal record {} of {} is corrupted; replay stopped there and {} record(s) "
+                        + "were not applied: {}", i, lines.length - 1, dropped, path);
+                return new Replay(applied, dropped);
+            }
+            apply(snapshot, patch);
+            applied++;
+        }
+        log.debug("Replayed {} record(s) from journal: {}", applied, path);
+        return new Replay(applied, 0);
+    }
+
+    /**
+     * Deletes the journal, typically after its records were compacted into the snapshot.
+     *
+     * @param journalPath Path to the journal file
+     * @throws IOException if the delete fails
+     */
+    public void clear(String journalPath) throws IOException {
+        fileUtil.deleteFile(journalPath);
+    }
+
+    /**
+     * Reads the base digest from the header record at the start of the journal.
+     *
+     * @return The digest, or null if the journal has no valid header
+     */
+    private String readBase(FileChannel channel) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate((int) Math.min(channel.size(), MAX_HEADER_LENGTH));
+        channel.read(buffer, 0);
+        String start = new String(buffer.array(), 0, buffer.position(), StandardCharsets.UTF_8);
+        int end = start.indexOf('\n');
+        return end < 0 ? null : base(decode(start.substring(0, end)));
+    }
+
+    private String base(ObjectNode header) {
+        return header != null && header.size() == 1 && header.get(BASE_FIELD) != null
+                ? header.get(BASE_FIELD).asText()
+                : null;
+    }
+
+    private void write(FileChannel channel, byte[] bytes) throws IOException {
+        ByteBuffer buffer = ByteBuffer.wrap(bytes);
+        while (buffer.hasRemaining()) {
+            channel.write(buffer);
+        }
+    }
+
+    /**
+     * Creation attributes for an owner-only (600) journal, where POSIX permissions are supported.
+     */
+    private FileAttribute<?>[] ownerOnly() {
+        if (!FileSystems.getDefault().supportedFileAttributeViews().contains("posix")) {
+            return new FileAttribute<?>[0];
+        }
+        return new FileAttribute<?>[]{PosixFilePermissions.asFileAttribute(PosixFilePermissions.fromString("rw-------"))};
+    }
+
+    private void apply(ObjectNode snapshot, ObjectNode patch) {
+        Iterator<Map.Entry<String, JsonNode>> fields = patch.fields();
+        while (fields.hasNext()) {
+            Map.Entry<String, JsonNode> field = fields.next();
+            if (field.getValue().isNull()) {
+                snapshot.remove(field.getKey());
+            } else {
+                snapshot.set(field.getKey(), field.getValue());
+            }
+        }
+    }
+
+    private byte[] encode(ObjectNode patch) throws JsonProcessingException {
+        String json = objectMapper.writeValueAsString(patch);
+        byte[] payload = json.getBytes(StandardCharsets.UTF_8);
+        String line = String.format("%08x %s\n", checksum(payload), json);
+        return line.getBytes(StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Decodes one journal line.
+     *
+     * @return The patch, or null if the line is malformed or fails its checksum
+     */
+    private ObjectNode decode(String line) {
+        int separator = line.indexOf(' ');
+        if (separator != 8) {
+            return null;
+        }
+        String json = line.substring(separator + 1);
+        try {
+            long expected = Long.parseLong(line.substring(0, separator), 16);
+            if (expected != checksum(json.getBytes(StandardCharsets.UTF_8))) {
+                return null;
+            }
+            JsonNode node = objectMapper.readTree(json);
+            return node instanceof ObjectNode objectNode ? objectNode : null;
+        } catch (NumberFormatException | JsonProcessingException e) {
+            return null;
+        }
+    }
+
+    private long checksum(byte[] payload) {
+        CRC32C crc = new CRC32C();
+        crc.update(payload);
+        return crc.getValue();
+    }
+
+    /**
+     * Cuts the journal back to its last complete line, if a crash left a partial record.
+     */
+    private void truncateTornTail(FileChannel channel) throws IOException {
+        long size = channel.size();
+        long position = endOfLastLine(channel, size);
+        if (position == size) {
+            return;
+        }
+        log.warn("Truncating torn record at end of journal ({} -> {} bytes)", size, position);
+        channel.truncate(position);
+    }
+
+    /**
+     * Scans backwards from the end, a block at a time, for the last newline.
+     *
+     * @return Position just after the last newline, or 0 if there is none
+     */
+    private long endOfLastLine(FileChannel channel, long size) throws IOException {
+        ByteBuffer block = ByteBuffer.allocate(TAIL_SCAN_BLOCK);
+        long blockEnd = size;
+        while (blockEnd > 0) {
+            long blockStart = Math.max(0, blockEnd - TAIL_SCAN_BLOCK);
+            block.clear().limit((int) (blockEnd - blockStart));
+            while (block.hasRemaining()) {
+                if (channel.read(block, blockStart + block.position()) < 0) {
+                    throw new IOException("Journal shrank while reading it");
+                }
+            }
+            for (int i = block.limit() - 1; i >= 0; i--) {
+                if (block.get(i) == '\n') {
+                    return blockStart + i + 1;
+                }
+            }
+            blockEnd = blockStart;
+        }
+        return 0;
+    }
+
+    /**
+     * Outcome of a replay.
+     *
+     * @param applied Number of records applied
+     * @param dropped Number of records not applied because replay stopped at a corrupted one
+     */
+    public record Replay(int applied, int dropped) {
+
+        /**
+         * @return true if every complete record was applied
+         */
+        public boolean intact() {
+            return dropped == 0;
+        }
+    }
+}
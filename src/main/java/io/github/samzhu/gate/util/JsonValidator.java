@@ -0,0 +1,137 @@
+package io.github.samzhu.gate.util;
+
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.StreamReadFeature;
+import lombok.RequiredArgsConstructor;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.util.Set;
+
+/**
+ * Streaming JSON validator.
+ * Walks the token stream once without building a tree, so memory use does not depend on
+ * the file size, and stops at the first error; the thrown {@link JsonParseException}
+ * carries the line and column of the offending token.
+ *
+ * {@link #validateWellFormed(InputStream)} only checks the syntax. The settings shape check
+ * ({@link #validateSettings(InputStream)}) is stricter than Claude Code itself, so it is
+ * meant for reporting, not for refusing content a user wrote.
+ */
+@Component
+@RequiredArgsConstructor
+public class JsonValidator {
+
+    private static final String ENV_FIELD = "env";
+    private static final String PERMISSIONS_FIELD = "permissions";
+    private static final String API_KEY_HELPER_FIELD = "apiKeyHelper";
+    private static final Set<String> PERMISSION_LISTS = Set.of("allow", "deny", "ask");
+
+    private final FileUtil fileUtil;
+
+    private final JsonFactory jsonFactory = JsonFactory.builder()
+            .disable(StreamReadFeature.AUTO_CLOSE_SOURCE)
+            .build();
+
+    /**
+     * Checks that a stream holds exactly one well-formed JSON value.
+     *
+     * @param in JSON content; closed by the caller
+     * @throws JsonParseException if the content is empty or malformed
+     * @throws IOException        if the stream cannot be read
+     */
+    public void validateWellFormed(InputStream in) throws IOException {
+        try (JsonParser parser = jsonFactory.createParser(in)) {
+            if (parser.nextToken() == null) {
+                throw new JsonParseException(parser, "No content");
+            }
+            parser.skipChildren();
+            expectEnd(parser);
+        }
+    }
+
+    /**
+     * Checks that a file is well-formed JSON with the shape of Claude Code settings.json:
+     * an object whose {@code env} is an object of strings, whose {@code permissions} lists
+     * are arrays of strings, and whose {@code apiKeyHelper} is a string.
+     * Other fields are only checked for well-formedness.
+     *
+     * @param path Path to the settings file
+     * @throws JsonParseException if the content is malformed or has the wrong shape
+     * @throws IOException        if the file cannot be read
+     */
+    public void validateSettings(String path) throws IOException {
+        try (InputStream in = Files.newInputStream(fileUtil.expandPath(path))) {
+            validateSettings(in);
+        }
+    }
+
+    /**
+     * Checks that a stream holds settings.json content, as {@link #validateSettings(String)}.
+     *
+     * @param in Settings content; closed by the caller
+     * @throws JsonParseException if the content is malformed or has the wrong shape
+     * @throws IOException        if the stream cannot be read
+     */
+    public void validateSettings(InputStream in) throws IOException {
+        try (JsonParser parser = jsonFactory.createParser(in)) {
+            expect(parser, parser.nextToken(), JsonToken.START_OBJECT, "Settings root must be an object");
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = parser.currentName();
+                JsonToken value = parser.nextToken();
+                switch (name) {
+                    case ENV_FIELD -> validateEnv(parser, value);
+                    case PERMISSIONS_FIELD -> validatePermissions(parser, value);
+                    case API_KEY_HELPER_FIELD ->
+                            expect(parser, value, JsonToken.VALUE_STRING, "'apiKeyHelper' must be a string");
+                    default -> parser.skipChildren();
+                }
+            }
+            expectEnd(parser);
+        }
+    }
+
+    private void validateEnv(JsonParser parser, JsonToken value) throws IOException {
+        expect(parser, value, JsonToken.START_OBJECT, "'env' must be an object");
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String key = parser.currentName();
+            expect(parser, parser.nextToken(), JsonToken.VALUE_STRING, "'env." + key + "' must be a string");
+        }
+    }
+
+    private void validatePermissions(JsonParser parser, JsonToken value) throws IOException {
+        expect(parser, value, JsonToken.START_OBJECT, "'permissions' must be an object");
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String name = parser.currentName();
+            JsonToken list = parser.nextToken();
+            if (!PERMISSION_LISTS.contains(name)) {
+                parser.skipChildren();
+                continue;
+            }
+            String field = "'permissions." + name + "'";
+            expect(parser, list, JsonToken.START_ARRAY, field + " must be an array");
+            JsonToken element;
+            while ((element = parser.nextToken()) != JsonToken.END_ARRAY) {
+                expect(parser, element, JsonToken.VALUE_STRING, field + " must only contain strings");
+            }
+        }
+    }
+
+    private void expect(JsonParser parser, JsonToken actual, JsonToken expected, String message)
+            throws JsonParseException {
+        if (actual != expected) {
+            throw new JsonParseException(parser, message);
+        }
+    }
+
+    private void expectEnd(JsonParser parser) throws IOException {
+        if (parser.nextToken() != null) {
+            throw new JsonParseException(parser, "Unexpected content after root value");
+        }
+    }
+}
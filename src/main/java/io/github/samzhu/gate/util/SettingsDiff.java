@@ -0,0 +1,87 @@
+package io.github.samzhu.gate.util;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import org.springframework.stereotype.Component;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * Field-level diff of two settings documents.
+ * Objects are compared field by field down to their leaves; arrays and scalars are
+ * compared as whole values, so a changed permissions list shows up as one change.
+ */
+@Component
+public class SettingsDiff {
+
+    /**
+     * One changed leaf.
+     *
+     * @param path   Dotted path of the field, e.g. {@code env.ANTHROPIC_BASE_URL}
+     * @param before Value before, or null if the field is added
+     * @param after  Value after, or null if the field is removed
+     */
+    public record Change(String path, JsonNode before, JsonNode after) {
+
+        public boolean isAdded() {
+            return before == null;
+        }
+
+        public boolean isRemoved() {
+            return after == null;
+        }
+    }
+
+    /**
+     * Lists the leaves that differ between two documents, in document order
+     * (fields of before first, then fields only in after).
+     *
+     * @param before Current document (null or missing counts as empty)
+     * @param after  New document (null or missing counts as empty)
+     * @return Changes; empty if the documents are equal
+     */
+    public List<Change> diff(JsonNode before, JsonNode after) {
+        Map<String, JsonNode> beforeLeaves = new LinkedHashMap<>();
+        Map<String, JsonNode> afterLeaves = new LinkedHashMap<>();
+        flatten("", before, beforeLeaves);
+        flatten("", after, afterLeaves);
+
+        List<Change> changes = new ArrayList<>();
+        beforeLeaves.forEach((path, value) -> {
+            JsonNode other = afterLeaves.get(path);
+            if (!Objects.equals(value, other)) {
+                changes.add(new Change(path, value, other));
+            }
+        });
+        afterLeaves.forEach((path, value) -> {
+            if (!beforeLeaves.containsKey(path)) {
+                changes.add(new Change(path, null, value));
+            }
+        });
+        return changes;
+    }
+
+    private void flatten(String prefix, JsonNode node, Map<String, JsonNode> leaves) {
+        if (node == null || node.isMissingNode()) {
+            return;
+        }
+        if (!node.isObject()) {
+            leaves.put(prefix, node);
+            return;
+        }
+        Iterator<Map.Entry<String, JsonNode>> fields = node.fields();
+        while (fields.hasNext()) {
+            Map.Entry<String, JsonNode> field = fields.next();
+            String path = prefix.isEmpty() ? field.getKey() : prefix + "." + field.getKey();
+            if (field.getValue().isObject() && !field.getValue().isEmpty()) {
+                flatten(path, field.getValue(), leaves);
+            } else {
+                leaves.put(path, field.getValue());
+            }
+        }
+    }
+}
@@ -0,0 +1,154 @@
+package io.github.samzhu.gate.util;
+
+import com.fasterxml.jackson.core.JsonEncoding;
+import com.fasterxml.jackson.core.JsonFactory;
+import com.fasterxml.jackson.core.JsonGenerator;
+import com.fasterxml.jackson.core.JsonParseException;
+import com.fasterxml.jackson.core.JsonParser;
+import com.fasterxml.jackson.core.JsonToken;
+import com.fasterxml.jackson.core.StreamReadFeature;
+import com.fasterxml.jackson.core.StreamWriteFeature;
+import lombok.extern.slf4j.Slf4j;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.HashSet;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Streaming patcher for the env block of Claude Code settings.json.
+ * Copies every token through unchanged except the env keys being patched,
+ * so settings gate-cli does not model (hooks, MCP servers, permissions)
+ * survive a refresh without being bound to a POJO.
+ */
+@Slf4j
+@Component
+public class SettingsEnvPatcher {
+
+    private static final String ENV_FIELD = "env";
+
+    private final JsonFactory jsonFactory = JsonFactory.builder()
+            .disable(StreamReadFeature.AUTO_CLOSE_SOURCE)
+            .disable(StreamWriteFeature.AUTO_CLOSE_TARGET)
+            .build();
+
+    /**
+     * Copies a settings document from in to out, applying env changes.
+     * A null value removes the key; any other value sets or replaces it in place.
+     * Keys not present yet are appended to the end of the env block.
+     *
+     * @param in         Existing settings document
+     * @param out        Destination for the patched document
+     * @param envChanges Env keys to set (or remove, when the value is null)
+     * @throws JsonParseException if the existing document is not a well-formed JSON object
+     * @throws IOException        if reading or writing fails
+     */
+    public void patch(InputStream in, OutputStream out, Map<String, String> envChanges) throws IOException {
+        try (JsonParser parser = jsonFactory.createParser(in);
+             JsonGenerator generator = createGenerator(out)) {
+
+            if (parser.nextToken() != JsonToken.START_OBJECT) {
+                throw new JsonParseException(parser, "Settings root must be a JSON object");
+            }
+
+            generator.writeStartObject();
+            boolean envPatched = false;
+            while (parser.nextToken() == JsonToken.FIELD_NAME) {
+                String name = parser.currentName();
+                parser.nextToken();
+                generator.writeFieldName(name);
+                if (ENV_FIELD.equals(name) && !envPatched) {
+                    copyEnv(parser, generator, envChanges);
+                    envPatched = true;
+                } else {
+                    generator.copyCurrentStructure(parser);
+                }
+            }
+
+            if (parser.nextToken() != null) {
+                throw new JsonParseException(parser, "Unexpected content after settings root object");
+            }
+
+            if (!envPatched) {
+                generator.writeFieldName(ENV_FIELD);
+                writeEnv(generator, envChanges, Set.of());
+            }
+            generator.writeEndObject();
+        }
+    }
+
+    /**
+     * Writes a new settings document containing only the env block.
+     *
+     * @param out        Destination for the new document
+     * @param envChanges Env keys to set (null values are skipped)
+     * @throws IOException if writing fails
+     */
+    public void writeNew(OutputStream out, Map<String, String> envChanges) throws IOException {
+        try (JsonGenerator generator = createGenerator(out)) {
+            generator.writeStartObject();
+            generator.writeFieldName(ENV_FIELD);
+            writeEnv(generator, envChanges, Set.of());
+            generator.writeEndObject();
+        }
+    }
+
+    /**
+     * Copies the env value the parser is positioned on, patching the requested keys.
+     * A non-object env value is replaced by an object holding only the new keys.
+     */
+    private void copyEnv(JsonParser parser, JsonGenerator generator,
+                         Map<String, String> envChanges) throws IOException {
+        if (parser.currentToken() != JsonToken.START_OBJECT) {
+            log.debug("Settings env is not an object, replacing it");
+            parser.skipChildren();
+            writeEnv(generator, envChanges, Set.of());
+            return;
+        }
+
+        Set<String> patched = new HashSet<>();
+        generator.writeStartObject();
+        while (parser.nextToken() == JsonToken.FIELD_NAME) {
+            String key = parser.currentName();
+            parser.nextToken();
+            if (envChanges.containsKey(key)) {
+                parser.skipChildren();
+                String value = envChanges.get(key);
+                if (patched.add(key) && value != null) {
+                    generator.writeStringField(key, value);
+                }
+            } else {
+                generator.writeFieldName(key);
+                generator.copyCurrentStructure(parser);
+            }
+        }
+        writeEntries(generator, envChanges, patched);
+        generator.writeEndObject();
+    }
+
+    /**
+     * Writes a complete env object from the changes, skipping removals.
+     */
+    private void writeEnv(JsonGenerator generator, Map<String, String> envChanges,
+                          Set<String> alreadyWritten) throws IOException {
+        generator.writeStartObject();
+        writeEntries(generator, envChanges, alreadyWritten);
+        generator.writeEndObject();
+    }
+
+    private void writeEntries(JsonGenerator generator, Map<String, String> envChanges,
+                              Set<String> alreadyWritten) throws IOException {
+        for (Map.Entry<String, String> entry : envChanges.entrySet()) {
+            if (entry.getValue() != null && !alreadyWritten.contains(entry.getKey())) {
+                generator.writeStringField(entry.getKey(), entry.getValue());
+            }
+        }
+    }
+
+    private JsonGenerator createGenerator(OutputStream out) throws IOException {
+        return jsonFactory.createGenerator(out, JsonEncoding.UTF8).useDefaultPrettyPrinter();
+    }
+}
@@ -0,0 +1,40 @@
+package io.github.samzhu.gate;
+
+import io.github.samzhu.gate.config.GateCliProperties;
+import io.github.samzhu.gate.util.FileUtil;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+
+/**
+ * Base for tests of code that resolves paths under ~ (~/.gate-cli, ~/.claude).
+ *
+ * Each test runs with user.home pointing at its own temporary directory, restored after the
+ * test and after the subclass's own {@code @AfterEach} methods, so background work drained
+ * there still sees the temporary home. Also provides the {@link FileUtil} most tests share.
+ */
+public abstract class TempHomeSupport {
+
+    @TempDir
+    protected Path tempDir;
+
+    protected final GateCliProperties properties = new GateCliProperties();
+    protected final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+    protected final FileUtil fileUtil = new FileUtil(properties, meterRegistry);
+
+    private String originalHome;
+
+    @BeforeEach
+    protected final void useTempHome() {
+        originalHome = System.getProperty("user.home");
+        System.setProperty("user.home", tempDir.toString());
+    }
+
+    @AfterEach
+    protected final void restoreHome() {
+        System.setProperty("user.home", originalHome);
+    }
+}
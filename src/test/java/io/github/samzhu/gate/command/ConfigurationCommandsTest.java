@@ -0,0 +1,72 @@
+package io.github.samzhu.gate.command;
+
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class ConfigurationCommandsTest {
+
+    static Stream<Arguments> durations() {
+        return Stream.of(
+                Arguments.of("30s", Duration.ofSeconds(30)),
+                Arguments.of("90m", Duration.ofMinutes(90)),
+                Arguments.of("2h", Duration.ofHours(2)),
+                Arguments.of("1d12h", Duration.ofHours(36)),
+                Arguments.of("1w", Duration.ofDays(7)),
+                Arguments.of(" 2H ", Duration.ofHours(2)),
+                Arguments.of("0m", Duration.ZERO),
+                Arguments.of("PT2H30M", Duration.ofMinutes(150)),
+                Arguments.of("p1d", Duration.ofDays(1)));
+    }
+
+    @ParameterizedTest
+    @MethodSource("durations")
+    void parseAgoAcceptsRelativeAndIsoDurations(String value, Duration expected) {
+        assertThat(ConfigurationCommands.parseAgo(value)).isEqualTo(expected);
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"", " ", "5x", "-3h", "3", "h", "2h-", "2h 30m", "1.5h", "PT-3H", "P", "Pfoo"})
+    void parseAgoRejectsMalformedDurations(String value) {
+        assertThatThrownBy(() -> ConfigurationCommands.parseAgo(value))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("Invalid duration");
+    }
+
+    static Stream<Arguments> timestamps() {
+        ZoneId zone = ZoneId.systemDefault();
+        Instant afternoon = LocalDateTime.of(2026, 10, 15, 14, 0).atZone(zone).toInstant();
+        return Stream.of(
+                Arguments.of("2026-10-15T14:00:00Z", Instant.parse("2026-10-15T14:00:00Z")),
+                Arguments.of("2026-10-15T16:00:00+02:00", Instant.parse("2026-10-15T14:00:00Z")),
+                Arguments.of("2026-10-15T14:00", afternoon),
+                Arguments.of("2026-10-15 14:00", afternoon),
+                Arguments.of(" 2026-10-15 14:00:30 ", afternoon.plusSeconds(30)),
+                Arguments.of("2026-10-15", LocalDate.of(2026, 10, 15).atStartOfDay(zone).toInstant()));
+    }
+
+    @ParameterizedTest
+    @MethodSource("timestamps")
+    void parseTimestampAcceptsAbsoluteAndLocalTimes(String value, Instant expected) {
+        assertThat(ConfigurationCommands.parseTimestamp(value)).isEqualTo(expected);
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"", "yesterday", "2026-13-01", "2026-10-15T25:00", "15/10/2026"})
+    void parseTimestampRejectsMalformedTimes(String value) {
+        assertThatThrownBy(() -> ConfigurationCommands.parseTimestamp(value))
+                .isInstanceOf(IllegalArgumentException.class)
+                .hasMessageContaining("Invalid time");
+    }
+}
@@ -0,0 +1,195 @@
+package io.github.samzhu.gate.command;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import io.github.samzhu.gate.TempHomeSupport;
+import io.github.samzhu.gate.command.availability.ConnectedAvailability;
+import io.github.samzhu.gate.exception.OAuth2Exception;
+import io.github.samzhu.gate.model.ClaudeSettings;
+import io.github.samzhu.gate.model.OAuth2TokenResponse;
+import io.github.samzhu.gate.model.OIDCConfiguration;
+import io.github.samzhu.gate.service.BackupRetention;
+import io.github.samzhu.gate.service.BackupService;
+import io.github.samzhu.gate.service.ClaudeConfigService;
+import io.github.samzhu.gate.service.ConfigurationService;
+import io.github.samzhu.gate.service.IssuerFailoverService;
+import io.github.samzhu.gate.service.OAuth2Service;
+import io.github.samzhu.gate.service.OIDCDiscoveryService;
+import io.github.samzhu.gate.util.DeltaCodec;
+import io.github.samzhu.gate.util.FileUtil;
+import io.github.samzhu.gate.util.JsonJournal;
+import io.github.samzhu.gate.util.JsonValidator;
+import io.github.samzhu.gate.util.SettingsDiff;
+import io.github.samzhu.gate.util.SettingsEnvPatcher;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.client.RestClient;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Function;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ConnectionCommandsTest extends TempHomeSupport {
+
+    private static final String ISSUER = "https://idp.example.com";
+    private static final String STANDBY_ISSUER = "https://idp-standby.example.com";
+    private static final String SETTINGS = "{\"model\":\"opus\"}";
+
+    private final List<String> tokenRequests = new CopyOnWriteArrayList<>();
+
+    private Path settingsFile;
+    private ConfigurationService configurationService;
+    private BackupService backupService;
+    private ConnectionCommands commands;
+    private Function<String, OAuth2TokenResponse> tokenEndpoint;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        settingsFile = tempDir.resolve(".claude/settings.json");
+        Files.createDirectories(settingsFile.getParent());
+        Files.writeString(settingsFile, SETTINGS);
+
+        configurationService = new ConfigurationService(
+                fileUtil, new JsonJournal(fileUtil, properties), properties, meterRegistry);
+        configurationService.setApiUrl("https://api.example.com");
+        configurationService.setIssuerUri(ISSUER);
+        configurationService.setClientId("cli");
+        configurationService.setClientSecret("secret");
+
+        backupService = new BackupService(fileUtil, configurationService, new JsonValidator(fileUtil),
+                new DeltaCodec(), meterRegistry, new BackupRetention(), new SettingsDiff());
+        ClaudeConfigService claudeConfigService =
+                new ClaudeConfigService(fileUtil, new SettingsEnvPatcher(), backupService);
+        // The first issuer answers discovery at once, so no race is left running
+        IssuerFailoverService issuerFailoverService = new IssuerFailoverService(
+                new StubDiscoveryService(fileUtil, meterRegistry), fileUtil, meterRegistry);
+        OAuth2Service oauth2Service = new OAuth2Service(RestClient.create()) {
+            @Override
+            public OAuth2TokenResponse getAccessToken(String clientId, String clientSecret, String tokenUrl) {
+                tokenRequests.add(tokenUrl);
+                return tokenEndpoint.apply(tokenUrl);
+            }
+        };
+        // Login is not exercised here
+        commands = new ConnectionCommands(oauth2Service, null, issuerFailoverService, claudeConfigService,
+                configurationService, new ConnectedAvailability(configurationService), meterRegistry);
+    }
+
+    @Test
+    void failedConnectRecordsNoBackup() {
+        tokenEndpoint = tokenUrl -> {
+            throw OAuth2Exception.authenticationFailed("invalid_client");
+        };
+
+        String output = commands.connect();
+
+        assertThat(output).startsWith("✗ Connection failed").contains("invalid_client");
+        assertThat(tokenRequests).containsExactly(ISSUER + "/token");
+        assertThat(records()).isEmpty();
+        assertThat(configurationService.isConnected()).isFalse();
+        assertThat(settingsFile).hasContent(SETTINGS);
+    }
+
+    @Test
+    void connectRecordsBackupThenUpdatesSettingsAndSavesConnection() throws IOException {
+        tokenEndpoint = tokenUrl -> {
+            throw OAuth2Exception.serverError();
+        };
+        commands.connect();
+        commands.connect();
+        tokenEndpoint = tokenUrl -> token("abc");
+
+        String output = commands.connect();
+
+        assertThat(output).contains("✓ Saved connection configuration").contains("Timings: ");
+        // Only the successful attempt is recorded
+        List<BackupService.BackupInfo> records = records();
+        assertThat(records).hasSize(1);
+        Path restored = tempDir.resolve("restored.json");
+        backupService.restoreBackup(records.getFirst().getPath(), restored.toString());
+        assertThat(restored).hasContent(SETTINGS);
+
+        JsonNode settings = fileUtil.readJsonTree(settingsFile.toString());
+        assertThat(settings.get("model").asText()).isEqualTo("opus");
+        assertThat(settings.get("env").get(ClaudeSettings.ENV_AUTH_TOKEN).asText()).isEqualTo("abc");
+        assertThat(settings.get("env").get(ClaudeSettings.ENV_BASE_URL).asText()).isEqualTo("https://api.example.com");
+        assertThat(configurationService.getCurrentConnection().getTokenUrl()).isEqualTo(ISSUER + "/token");
+        assertThat(configurationService.getOriginalSettingsBackup()).isNotNull();
+        for (String phase : List.of("discovery", "token", "backup", "settings", "save")) {
+            assertThat(meterRegistry.timer("gate.connect.phase", "phase", phase).count()).isPositive();
+        }
+    }
+
+    @Test
+    void refreshFailsOverAndSavesTheAnsweringTokenEndpoint() throws IOException {
+        tokenEndpoint = tokenUrl -> token("abc");
+        commands.connect();
+        configurationService.setIssuerUri(ISSUER + "," + STANDBY_ISSUER);
+        tokenRequests.clear();
+        tokenEndpoint = tokenUrl -> {
+            if (tokenUrl.startsWith(ISSUER)) {
+                throw OAuth2Exception.serverError();
+            }
+            return token("def");
+        };
+
+        String output = commands.refresh();
+
+        assertThat(output).contains("✓ Token issued by " + STANDBY_ISSUER).contains("✓ Token refreshed successfully");
+        assertThat(tokenRequests).containsExactly(ISSUER + "/token", STANDBY_ISSUER + "/token");
+        assertThat(configurationService.getCurrentConnection().getTokenUrl()).isEqualTo(STANDBY_ISSUER + "/token");
+        JsonNode settings = fileUtil.readJsonTree(settingsFile.toString());
+        assertThat(settings.get("env").get(ClaudeSettings.ENV_AUTH_TOKEN).asText()).isEqualTo("def");
+    }
+
+    @Test
+    void refreshWithoutConfiguredIssuerUsesSavedTokenEndpoint() {
+        tokenEndpoint = tokenUrl -> token("abc");
+        commands.connect();
+        configurationService.setIssuerUri("");
+        tokenRequests.clear();
+
+        String output = commands.refresh();
+
+        assertThat(output).contains("✓ Token refreshed successfully");
+        assertThat(tokenRequests).containsExactly(ISSUER + "/token");
+        assertThat(configurationService.getCurrentConnection().getTokenUrl()).isEqualTo(ISSUER + "/token");
+    }
+
+    private static OAuth2TokenResponse token(String accessToken) {
+        return OAuth2TokenResponse.builder().accessToken(accessToken).tokenType("Bearer").expiresIn(3600).build();
+    }
+
+    /**
+     * Backup records, leaving out the original settings backup.
+     */
+    private List<BackupService.BackupInfo> records() {
+        return backupService.listBackups().stream()
+                .filter(backup -> !backup.getPath().endsWith("settings.json.original"))
+                .toList();
+    }
+
+    /**
+     * Answers discovery with a fixed configuration instead of the network.
+     */
+    private static final class StubDiscoveryService extends OIDCDiscoveryService {
+
+        StubDiscoveryService(FileUtil fileUtil, MeterRegistry meterRegistry) {
+            super(RestClient.create(), fileUtil, meterRegistry);
+        }
+
+        @Override
+        public OIDCConfiguration discover(String issuerUri) {
+            return new OIDCConfiguration(issuerUri, issuerUri + "/authorize", issuerUri + "/token", null, null);
+        }
+
+        @Override
+        public void invalidate(String issuerUri) {
+        }
+    }
+}
@@ -0,0 +1,194 @@
+package io.github.samzhu.gate.model;
+
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.SerializationFeature;
+import com.fasterxml.jackson.databind.exc.UnrecognizedPropertyException;
+import com.fasterxml.jackson.datatype.jsr310.JavaTimeModule;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.io.IOException;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Checks the generated codecs against what reflective Jackson does with the same annotations.
+ */
+class GeneratedJsonCodecsTest {
+
+    private static final Instant CREATED = Instant.parse("2025-01-02T03:04:05.123456789Z");
+
+    private final ObjectMapper generated = mapper().registerModule(new GeneratedJsonCodecs());
+    private final ObjectMapper reflective = mapper();
+
+    static Stream<Arguments> models() {
+        SnapshotTree.Node file = SnapshotTree.Node.builder()
+                .name("settings.json").type(SnapshotTree.FILE).hash("ab".repeat(32))
+                .size(42L).modified(1_700_000_000_000L).mode("rwxr-xr-x").executable(true).build();
+        return Stream.of(
+                // name, model instance
+                Arguments.of("ConnectionConfig", ConnectionConfig.builder()
+                        .version("1.0")
+                        .settings(ConnectionConfig.Settings.builder()
+                                .apiUrl("https://api").issuerUri("https://idp").clientId("cli").clientSecret("s").build())
+                        .currentConnection(ConnectionConfig.CurrentConnection.builder()
+                                .authType("client_credentials").clientId("cli").tokenUrl("https://idp/token")
+                                .lastConnected(CREATED).tokenExpiration(CREATED.plusSeconds(3600)).build())
+                        .backupSettings(ConnectionConfig.BackupSettings.builder().keepDaily(7).compress(true).build())
+                        .originalSettingsBackup("/tmp/settings.json")
+                        .build()),
+                Arguments.of("ConnectionConfig empty", new ConnectionConfig()),
+                Arguments.of("ConnectionConfig.BackupSettings defaults", new ConnectionConfig.BackupSettings()),
+                Arguments.of("ClaudeSettings", ClaudeSettings.builder()
+                        .env(new HashMap<>(Map.of(ClaudeSettings.ENV_AUTH_TOKEN, "t", ClaudeSettings.ENV_BASE_URL, "u")))
+                        .permissions(ClaudeSettings.Permissions.builder().deny(List.of("Bash")).build())
+                        .apiKeyHelper("helper.sh")
+                        .build()),
+                Arguments.of("ClaudeSettings empty", new ClaudeSettings()),
+                Arguments.of("OAuth2TokenResponse", OAuth2TokenResponse.builder()
+                        .accessToken("abc").tokenType("Bearer").expiresIn(3600).scope("openid")
+                        .expiresAt(CREATED).build()),
+                Arguments.of("OAuth2TokenResponse empty", new OAuth2TokenResponse()),
+                Arguments.of("OIDCConfiguration", new OIDCConfiguration(
+                        "https://idp", "https://idp/authorize", "https://idp/token", "https://idp/userinfo",
+                        "https://idp/jwks")),
+                Arguments.of("OIDCConfiguration empty", new OIDCConfiguration()),
+                Arguments.of("CachedDiscovery", CachedDiscovery.builder()
+                        .issuer("https://idp")
+                        .configuration(new OIDCConfiguration("https://idp", null, "https://idp/token", null, null))
+                        .etag("\"v1\"").lastModified("Thu, 02 Jan 2025 03:04:05 GMT")
+                        .fetched(CREATED).expires(CREATED.plusSeconds(600)).staleUntil(CREATED.plusSeconds(900))
+                        .build()),
+                Arguments.of("BackupManifest", BackupManifest.builder()
+                        .nextSequence(3L)
+                        .backups(new ArrayList<>(List.of(BackupManifest.Entry.builder()
+                                .sequence(2L).file("settings.json.2").blob("cd".repeat(32))
+                                .size(100L).storedSize(60L).created(CREATED).build())))
+                        .build()),
+                Arguments.of("BackupRecord", BackupRecord.builder()
+                        .sequence(2L).blob("cd".repeat(32)).size(100L).storedSize(60L)
+                        .created(CREATED).source("/home/user/.claude/settings.json").build()),
+                Arguments.of("SnapshotIndex", SnapshotIndex.builder()
+                        .nextId(5L)
+                        .snapshots(new ArrayList<>(List.of(SnapshotIndex.Snapshot.builder()
+                                .id(4L).root("ef".repeat(32)).created(CREATED).files(12L).size(4096L).build())))
+                        .statCache(new HashMap<>(Map.of("settings.json", file)))
+                        .build()),
+                Arguments.of("SnapshotTree", SnapshotTree.builder()
+                        .entries(new ArrayList<>(List.of(file, SnapshotTree.Node.builder()
+                                .name("agents").type(SnapshotTree.DIRECTORY).hash("01".repeat(32)).build())))
+                        .build()),
+                Arguments.of("IssuerHealth", IssuerHealth.builder()
+                        .issuers(new HashMap<>(Map.of("https://idp", IssuerHealth.Score.builder()
+                                .latencyMillis(12.5).lastSuccess(CREATED).lastFailure(CREATED.minusSeconds(60)).build())))
+                        .build()));
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @MethodSource("models")
+    void generatedCodecMatchesReflectiveJackson(String name, Object model) throws IOException {
+        assertThat(generated.getSerializerProviderInstance().findValueSerializer(model.getClass()).getClass().getName())
+                .endsWith("JsonCodec$Serializer");
+
+        String generatedJson = generated.writeValueAsString(model);
+        String reflectiveJson = reflective.writeValueAsString(model);
+
+        assertThat(tree(generatedJson)).isEqualTo(tree(reflectiveJson));
+        assertThat(generated.readValue(reflectiveJson, model.getClass())).isEqualTo(model);
+        assertThat(reflective.readValue(generatedJson, model.getClass())).isEqualTo(model);
+    }
+
+    @Test
+    void tokenResponseUsesSnakeCaseNames() throws IOException {
+        String json = """
+                {"access_token":"abc","token_type":"Bearer","expires_in":3600,"scope":"openid"}
+                """;
+
+        OAuth2TokenResponse response = generated.readValue(json, OAuth2TokenResponse.class);
+
+        assertThat(response).isEqualTo(reflective.readValue(json, OAuth2TokenResponse.class));
+        assertThat(response.getAccessToken()).isEqualTo("abc");
+        assertThat(response.getExpiresIn()).isEqualTo(3600);
+        // Derived getters are not properties
+        assertThat(tree(generated.writeValueAsString(response)).fieldNames())
+                .toIterable().containsExactlyInAnyOrder("access_token", "token_type", "expires_in", "scope");
+    }
+
+    @Test
+    void nonNullSkipsNullsWhileOtherModelsWriteThem() throws IOException {
+        OAuth2TokenResponse response = OAuth2TokenResponse.builder().accessToken("abc").build();
+        OIDCConfiguration configuration = new OIDCConfiguration("https://idp", null, "https://idp/token", null, null);
+
+        assertThat(generated.writeValueAsString(response)).isEqualTo("{\"access_token\":\"abc\"}");
+        JsonNode written = tree(generated.writeValueAsString(configuration));
+        assertThat(written).isEqualTo(tree(reflective.writeValueAsString(configuration)));
+        assertThat(written.get("authorization_endpoint").isNull()).isTrue();
+    }
+
+    @Test
+    void explicitNullsReplaceDefaults() throws IOException {
+        String settingsJson = "{\"env\":null,\"permissions\":null}";
+        String backupJson = "{\"maxBackups\":null,\"snapshotExclude\":null}";
+
+        ClaudeSettings settings = generated.readValue(settingsJson, ClaudeSettings.class);
+        ConnectionConfig.BackupSettings backup = generated.readValue(backupJson, ConnectionConfig.BackupSettings.class);
+
+        assertThat(settings).isEqualTo(reflective.readValue(settingsJson, ClaudeSettings.class));
+        assertThat(settings.getEnv()).isNull();
+        assertThat(backup).isEqualTo(reflective.readValue(backupJson, ConnectionConfig.BackupSettings.class));
+        assertThat(backup.getMaxBackups()).isNull();
+        assertThat(backup.getSnapshotExclude()).isNull();
+        assertThat(backup.getBackupDirectory()).isEqualTo("~/.gate-cli/backups");
+    }
+
+    @Test
+    void ignoreUnknownSkipsUnknownProperties() throws IOException {
+        String discoveryJson = """
+                {"issuer":"https://idp","token_endpoint":"https://idp/token",
+                 "response_types_supported":["code"],"mtls_endpoint_aliases":{"token_endpoint":"https://mtls"}}
+                """;
+        String settingsJson = """
+                {"env":{"A":"b"},"model":"opus","hooks":{"PreToolUse":[{"matcher":"Bash"}]}}
+                """;
+
+        OIDCConfiguration configuration = generated.readValue(discoveryJson, OIDCConfiguration.class);
+        ClaudeSettings settings = generated.readValue(settingsJson, ClaudeSettings.class);
+
+        assertThat(configuration).isEqualTo(reflective.readValue(discoveryJson, OIDCConfiguration.class));
+        assertThat(configuration.getTokenEndpoint()).isEqualTo("https://idp/token");
+        assertThat(settings).isEqualTo(reflective.readValue(settingsJson, ClaudeSettings.class));
+        assertThat(settings.getEnv()).containsExactly(Map.entry("A", "b"));
+    }
+
+    @Test
+    void unknownPropertiesFailWithoutIgnoreUnknown() {
+        String json = "{\"version\":\"1.0\",\"unexpected\":{\"nested\":[1,2]}}";
+
+        assertThatThrownBy(() -> generated.readValue(json, ConnectionConfig.class))
+                .isInstanceOf(UnrecognizedPropertyException.class)
+                .hasMessageContaining("unexpected");
+        assertThatThrownBy(() -> reflective.readValue(json, ConnectionConfig.class))
+                .isInstanceOf(UnrecognizedPropertyException.class)
+                .hasMessageContaining("unexpected");
+    }
+
+    private JsonNode tree(String json) throws IOException {
+        return reflective.readTree(json);
+    }
+
+    private static ObjectMapper mapper() {
+        return new ObjectMapper()
+                .registerModule(new JavaTimeModule())
+                .disable(SerializationFeature.WRITE_DATES_AS_TIMESTAMPS);
+    }
+}
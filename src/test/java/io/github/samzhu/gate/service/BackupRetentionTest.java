@@ -0,0 +1,130 @@
+package io.github.samzhu.gate.service;
+
+import io.github.samzhu.gate.model.BackupManifest;
+import io.github.samzhu.gate.model.ConnectionConfig;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.time.LocalDateTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class BackupRetentionTest {
+
+    /**
+     * Monday, so the first days of the history share an ISO week.
+     */
+    private static final LocalDateTime START = LocalDateTime.of(2026, 3, 2, 9, 0);
+
+    /**
+     * Backups 0-9 (oldest first): four in week 1 on Mon 09:00, Mon 09:30, Mon 10:00 and Tue 09:00;
+     * two in week 2 on Mon 09:00 and Mon 09:10; four in week 3 on Mon 09:00, 09:20, 10:00 and 11:00.
+     */
+    private static final List<LocalDateTime> HISTORY = List.of(
+            START,
+            START.plusMinutes(30),
+            START.plusHours(1),
+            START.plusDays(1),
+            START.plusWeeks(1),
+            START.plusWeeks(1).plusMinutes(10),
+            START.plusWeeks(2),
+            START.plusWeeks(2).plusMinutes(20),
+            START.plusWeeks(2).plusHours(1),
+            START.plusWeeks(2).plusHours(2));
+
+    private final BackupRetention retention = new BackupRetention();
+
+    static Stream<Arguments> policies() {
+        return Stream.of(
+                // name, maxBackups, keepHourly, keepDaily, keepWeekly, expired backups
+                Arguments.of("keep last only", 3, null, null, null, List.of(0, 1, 2, 3, 4, 5, 6)),
+                Arguments.of("keep everything", 10, null, null, null, List.of()),
+                Arguments.of("keep more than exist", 50, null, null, null, List.of()),
+                Arguments.of("null settings keep nothing", null, null, null, null,
+                        List.of(0, 1, 2, 3, 4, 5, 6, 7, 8, 9)),
+                Arguments.of("zero settings keep nothing", 0, 0, 0, 0,
+                        List.of(0, 1, 2, 3, 4, 5, 6, 7, 8, 9)),
+                Arguments.of("negative settings keep nothing", -1, -1, -1, -1,
+                        List.of(0, 1, 2, 3, 4, 5, 6, 7, 8, 9)),
+                // Newest of the hours 11:00, 10:00 and 09:00 of week 3
+                Arguments.of("hourly", 0, 3, null, null, List.of(0, 1, 2, 3, 4, 5, 6)),
+                // Newest of week 3 Monday, week 2 Monday, week 1 Tuesday and week 1 Monday
+                Arguments.of("daily", 0, null, 4, null, List.of(0, 1, 4, 6, 7, 8)),
+                Arguments.of("weekly", 0, null, null, 2, List.of(0, 1, 2, 3, 4, 6, 7, 8)),
+                Arguments.of("weekly beyond history", 0, null, null, 10, List.of(0, 1, 2, 4, 6, 7, 8)),
+                // Tiers overlap: each keeps its own buckets and a backup is kept if any tier wants it
+                Arguments.of("all tiers", 1, 2, 2, 3, List.of(0, 1, 2, 4, 6, 7)),
+                Arguments.of("keep last with weekly", 2, null, null, 3, List.of(0, 1, 2, 4, 6, 7)));
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @MethodSource("policies")
+    void expired(String name, Integer maxBackups, Integer keepHourly, Integer keepDaily, Integer keepWeekly,
+                 List<Integer> expected) {
+        List<BackupManifest.Entry> backups = history();
+        ConnectionConfig.BackupSettings settings = ConnectionConfig.BackupSettings.builder()
+                .maxBackups(maxBackups)
+                .keepHourly(keepHourly)
+                .keepDaily(keepDaily)
+                .keepWeekly(keepWeekly)
+                .build();
+
+        assertThat(sequences(retention.expired(backups, settings))).isEqualTo(expected);
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @MethodSource("policies")
+    void entriesWithoutCreationTimeOnlyCountForKeepLast(String name, Integer maxBackups, Integer keepHourly,
+                                                        Integer keepDaily, Integer keepWeekly,
+                                                        List<Integer> expected) {
+        List<BackupManifest.Entry> backups = history();
+        backups.forEach(backup -> backup.setCreated(null));
+        ConnectionConfig.BackupSettings settings = ConnectionConfig.BackupSettings.builder()
+                .maxBackups(maxBackups)
+                .keepHourly(keepHourly)
+                .keepDaily(keepDaily)
+                .keepWeekly(keepWeekly)
+                .build();
+
+        int keepLast = maxBackups != null ? Math.max(maxBackups, 0) : 0;
+        List<Integer> oldest = new ArrayList<>();
+        for (int i = 0; i < HISTORY.size() - keepLast; i++) {
+            oldest.add(i);
+        }
+        assertThat(sequences(retention.expired(backups, settings))).isEqualTo(oldest);
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @MethodSource("policies")
+    void emptyHistoryExpiresNothing(String name, Integer maxBackups, Integer keepHourly, Integer keepDaily,
+                                    Integer keepWeekly, List<Integer> expected) {
+        ConnectionConfig.BackupSettings settings = ConnectionConfig.BackupSettings.builder()
+                .maxBackups(maxBackups)
+                .keepHourly(keepHourly)
+                .keepDaily(keepDaily)
+                .keepWeekly(keepWeekly)
+                .build();
+
+        assertThat(retention.expired(List.of(), settings)).isEmpty();
+    }
+
+    private static List<BackupManifest.Entry> history() {
+        List<BackupManifest.Entry> backups = new ArrayList<>();
+        for (int i = 0; i < HISTORY.size(); i++) {
+            backups.add(BackupManifest.Entry.builder()
+                    .sequence((long) i)
+                    .created(HISTORY.get(i).atZone(ZoneId.systemDefault()).toInstant())
+                    .build());
+        }
+        return backups;
+    }
+
+    private static List<Integer> sequences(List<BackupManifest.Entry> backups) {
+        return backups.stream().map(backup -> backup.getSequence().intValue()).toList();
+    }
+}
@@ -0,0 +1,440 @@
+package io.github.samzhu.gate.service;
+
+import io.github.samzhu.gate.TempHomeSupport;
+import io.github.samzhu.gate.exception.BackupException;
+import io.github.samzhu.gate.util.DeltaCodec;
+import io.github.samzhu.gate.util.JsonJournal;
+import io.github.samzhu.gate.util.JsonValidator;
+import io.github.samzhu.gate.util.SettingsDiff;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipOutputStream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class BackupServiceTest extends TempHomeSupport {
+
+    private Path settingsFile;
+    private Path objects;
+    private BackupService backupService;
+
+    @BeforeEach
+    void setUp() {
+        settingsFile = tempDir.resolve("settings.json");
+        objects = tempDir.resolve("backups/objects");
+    }
+
+    @AfterEach
+    void tearDown() {
+        if (backupService != null) {
+            backupService.drainMaintenance();
+        }
+    }
+
+    @Test
+    void deltaChainRestoresAfterRotationAndSweep() throws IOException {
+        backupService = newBackupService(2, 10);
+        List<String> versions = new ArrayList<>();
+        for (int i = 1; i <= 6; i++) {
+            versions.add(writeSettings("token-" + i));
+            backupService.createBackup(settingsFile.toString());
+        }
+        backupService.drainMaintenance();
+
+        // Only the last two records survive, but they are deltas on top of the first backup
+        List<BackupService.BackupInfo> backups = backupService.listBackups();
+        assertThat(backups).hasSize(2);
+        assertThat(backupService.sweepUnreferencedContent()).isZero();
+        try (Stream<Path> blobs = Files.list(objects)) {
+            assertThat(blobs.filter(blob -> blob.toString().endsWith(".delta"))).hasSize(5);
+        }
+
+        for (int i = 0; i < backups.size(); i++) {
+            Path restored = tempDir.resolve("restored-" + i + ".json");
+            backupService.restoreBackup(backups.get(i).getPath(), restored.toString());
+            assertThat(restored).hasContent(versions.get(versions.size() - 1 - i));
+        }
+    }
+
+    @Test
+    void sweepDeletesContentOfRotatedFullBackups() throws IOException {
+        backupService = newBackupService(2, 1);
+        for (int i = 1; i <= 4; i++) {
+            writeSettings("token-" + i);
+            backupService.createBackup(settingsFile.toString());
+        }
+        backupService.drainMaintenance();
+
+        assertThat(backupService.listBackups()).hasSize(2);
+        assertThat(backupService.sweepUnreferencedContent()).isZero();
+        try (Stream<Path> blobs = Files.list(objects)) {
+            assertThat(blobs).hasSize(2);
+        }
+    }
+
+    @Test
+    void importAppliesRetentionAndReportsDroppedBackups() throws IOException {
+        BackupService source = newBackupService(10, 10);
+        List<String> versions = new ArrayList<>();
+        for (int i = 1; i <= 4; i++) {
+            versions.add(writeSettings("token-" + i));
+            source.createBackup(settingsFile.toString());
+        }
+        String archive = tempDir.resolve("backups.zip").toString();
+        BackupService.ArchiveResult exported = source.exportBackups(archive);
+        source.drainMaintenance();
+        assertThat(exported.backups()).isEqualTo(4);
+        assertThat(exported.dropped()).isZero();
+
+        backupService = newBackupService(2, 10, tempDir.resolve("imported"));
+        BackupService.ArchiveResult imported = backupService.importBackups(archive);
+
+        assertThat(imported.backups()).isEqualTo(2);
+        assertThat(imported.dropped()).isEqualTo(2);
+        assertThat(imported.blobs()).isEqualTo(4);
+        List<BackupService.BackupInfo> backups = backupService.listBackups();
+        assertThat(backups).hasSize(2);
+        // Content of the dropped backups is swept before import returns
+        try (Stream<Path> blobs = Files.list(tempDir.resolve("imported/objects"))) {
+            assertThat(blobs).hasSize(2);
+        }
+        Path restored = tempDir.resolve("restored.json");
+        backupService.restoreBackup(backups.getFirst().getPath(), restored.toString());
+        assertThat(restored).hasContent(versions.getLast());
+    }
+
+    @Test
+    void importSkipsManifestEntriesWithInvalidBlobNames() throws IOException {
+        backupService = newBackupService(10, 10);
+        // A file outside the content store that a crafted manifest points at
+        Files.createDirectories(objects);
+        Files.writeString(tempDir.resolve("backups/outside"), "{}");
+        Path archive = tempDir.resolve("crafted.zip");
+        try (ZipOutputStream zip = new ZipOutputStream(Files.newOutputStream(archive))) {
+            zip.putNextEntry(new ZipEntry("manifest.json"));
+            zip.write("""
+                    {"nextSequence":2,"backups":[{"sequence":1,"file":"records/x","blob":"../outside",\
+                    "size":2,"created":"2026-01-01T00:00:00Z"}]}
+                    """.getBytes(StandardCharsets.UTF_8));
+            zip.closeEntry();
+        }
+
+        BackupService.ArchiveResult imported = backupService.importBackups(archive.toString());
+
+        assertThat(imported.backups()).isZero();
+        assertThat(imported.skipped()).isEqualTo(1);
+        assertThat(backupService.listBackups()).isEmpty();
+    }
+
+    @Test
+    void findBackupAtPicksNewestBackupAtOrBeforeInstant() throws IOException, InterruptedException {
+        backupService = newBackupService(10, 10);
+        for (int i = 1; i <= 3; i++) {
+            writeSettings("token-" + i);
+            backupService.createBackup(settingsFile.toString());
+            // Keep creation times distinct
+            Thread.sleep(5);
+        }
+        List<BackupService.BackupInfo> backups = backupService.listBackups().reversed();
+        Instant first = backups.get(0).getCreated();
+        Instant second = backups.get(1).getCreated();
+        Instant last = backups.get(2).getCreated();
+
+        assertThat(backupService.findBackupAt(first.minusMillis(1))).isNull();
+        assertThat(backupService.findBackupAt(first).getPath()).isEqualTo(backups.get(0).getPath());
+        assertThat(backupService.findBackupAt(second).getPath()).isEqualTo(backups.get(1).getPath());
+        assertThat(backupService.findBackupAt(second.plusNanos(1)).getPath()).isEqualTo(backups.get(1).getPath());
+        assertThat(backupService.findBackupAt(last.minusNanos(1)).getPath()).isEqualTo(backups.get(1).getPath());
+        assertThat(backupService.findBackupAt(last).getPath()).isEqualTo(backups.get(2).getPath());
+        assertThat(backupService.findBackupAt(last.plus(Duration.ofDays(365))).getPath())
+                .isEqualTo(backups.get(2).getPath());
+    }
+
+    @Test
+    void findBackupAtFallsBackToOriginalBackup() throws IOException {
+        backupService = newBackupService(10, 10);
+        writeSettings("token-0");
+        backupService.createOriginalBackup(settingsFile.toString());
+        BackupService.BackupInfo original = backupService.listBackups().getFirst();
+
+        assertThat(backupService.findBackupAt(original.getCreated().minusSeconds(60))).isNull();
+        assertThat(backupService.findBackupAt(original.getCreated()).getPath()).isEqualTo(original.getPath());
+
+        writeSettings("token-1");
+        backupService.createBackup(settingsFile.toString());
+        Instant created = backupService.listBackups().getFirst().getCreated();
+        assertThat(backupService.findBackupAt(created.minusNanos(1)).getPath()).isEqualTo(original.getPath());
+    }
+
+    @Test
+    void findBackupAtWithoutBackupDirectoryIsNull() throws IOException {
+        backupService = newBackupService(10, 10);
+
+        assertThat(backupService.findBackupAt(Instant.now())).isNull();
+    }
+
+    @Test
+    void preparedBackupIsOnlyListedOnceCommitted() throws IOException {
+        backupService = newBackupService(10, 10);
+        String content = writeSettings("token-1");
+
+        BackupService.PreparedBackup prepared = backupService.prepareBackup(settingsFile.toString());
+        writeSettings("token-2");
+
+        assertThat(backupService.listBackups()).isEmpty();
+        Path blob = objects.resolve(fileUtil.sha256Hex(content.getBytes(StandardCharsets.UTF_8)));
+        assertThat(blob).exists();
+
+        String record = backupService.commitBackup(prepared);
+
+        assertThat(backupService.listBackups()).extracting(BackupService.BackupInfo::getPath).containsExactly(record);
+        Path restored = tempDir.resolve("restored.json");
+        backupService.restoreBackup(record, restored.toString());
+        // The content as it was prepared, not as it is now
+        assertThat(restored).hasContent(content);
+    }
+
+    @Test
+    void uncommittedPreparedBackupIsSweptAndStoredAgainOnCommit() throws IOException {
+        backupService = newBackupService(10, 10);
+        String content = writeSettings("token-1");
+        BackupService.PreparedBackup prepared = backupService.prepareBackup(settingsFile.toString());
+
+        assertThat(backupService.sweepUnreferencedContent()).isEqualTo(1);
+
+        String record = backupService.commitBackup(prepared);
+        Path restored = tempDir.resolve("restored.json");
+        backupService.restoreBackup(record, restored.toString());
+        assertThat(restored).hasContent(content);
+    }
+
+    @Test
+    void compressedBackupRoundTrips() throws IOException {
+        // No deltas, so every backup is a full compressed blob
+        backupService = newBackupService(10, 1, tempDir.resolve("backups"), true);
+        String first = writeSettings("token-1");
+        String firstBackup = backupService.createBackup(settingsFile.toString());
+        writeSettings("token-2");
+        backupService.createBackup(settingsFile.toString());
+
+        Path blob = objects.resolve(fileUtil.sha256Hex(first.getBytes(StandardCharsets.UTF_8)) + ".gz");
+        try (InputStream in = new GZIPInputStream(Files.newInputStream(blob))) {
+            assertThat(new String(in.readAllBytes(), StandardCharsets.UTF_8)).isEqualTo(first);
+        }
+        assertThat(Files.size(blob)).isLessThan(first.length());
+
+        backupService.restoreBackup(firstBackup, settingsFile.toString());
+
+        assertThat(settingsFile).hasContent(first);
+        assertThat(backupService.verifyBackups(false))
+                .extracting(BackupService.VerifyResult::status)
+                .hasSize(3)
+                .containsOnly(BackupService.VerifyStatus.OK);
+    }
+
+    @Test
+    void restoreRefusesCompressedBlobThatInflatesToOtherContent() throws IOException {
+        backupService = newBackupService(10, 1, tempDir.resolve("backups"), true);
+        String first = writeSettings("token-1");
+        String firstBackup = backupService.createBackup(settingsFile.toString());
+        String current = writeSettings("token-2");
+
+        Path blob = objects.resolve(fileUtil.sha256Hex(first.getBytes(StandardCharsets.UTF_8)) + ".gz");
+        try (OutputStream out = new GZIPOutputStream(Files.newOutputStream(blob))) {
+            out.write(current.getBytes(StandardCharsets.UTF_8));
+        }
+
+        assertThatThrownBy(() -> backupService.restoreBackup(firstBackup, settingsFile.toString()))
+                .isInstanceOf(BackupException.class)
+                .hasMessage("Backup content does not match its checksum (corrupted): " + firstBackup);
+        assertThat(settingsFile).hasContent(current);
+    }
+
+    @Test
+    void restoreOfBackupWithoutChecksumOnlyRequiresWellFormedJson() throws IOException {
+        backupService = newBackupService(10, 10);
+        // Claude Code accepts this, even though it is not shaped like typical settings
+        String original = "{\"env\":{\"MAX_TOKENS\":4096},\"permissions\":\"all\"}";
+        Files.writeString(settingsFile, original);
+        String originalBackup = backupService.createOriginalBackup(settingsFile.toString());
+        writeSettings("token-1");
+
+        backupService.restoreBackup(originalBackup, settingsFile.toString());
+
+        assertThat(settingsFile).hasContent(original);
+    }
+
+    @Test
+    void restoreRefusesMalformedBackupWithoutChecksum() throws IOException {
+        backupService = newBackupService(10, 10);
+        Files.writeString(settingsFile, "{\"env\":");
+        String originalBackup = backupService.createOriginalBackup(settingsFile.toString());
+        String current = writeSettings("token-1");
+
+        assertThatThrownBy(() -> backupService.restoreBackup(originalBackup, settingsFile.toString()))
+                .isInstanceOf(BackupException.class)
+                .hasMessageStartingWith("Invalid backup file " + originalBackup);
+        assertThat(settingsFile).hasContent(current);
+    }
+
+    @Test
+    void rebuildManifestIndexesRecordsAndLegacyCopiesInCreationOrder() throws IOException {
+        backupService = newBackupService(10, 10);
+        Path backups = tempDir.resolve("backups");
+        writeSettings("token-1");
+        String first = backupService.createBackup(settingsFile.toString());
+        writeSettings("token-2");
+        String second = backupService.createBackup(settingsFile.toString());
+        Path legacy = backups.resolve("settings.json.backup.2020-01-01-00-00-00");
+        Files.writeString(legacy, "{\"env\":{}}");
+        Files.setLastModifiedTime(legacy, FileTime.from(Instant.parse("2020-01-01T00:00:00Z")));
+        Files.writeString(backups.resolve("records/settings.json.backup.2020-01-02-00-00-00.9"), "{\"sequence\":");
+        Files.delete(backups.resolve("manifest.json"));
+
+        // The unreadable record is skipped
+        assertThat(backupService.rebuildManifest()).isEqualTo(3);
+
+        assertThat(backups.resolve("manifest.json")).isRegularFile();
+        assertThat(backupService.listBackups())
+                .extracting(BackupService.BackupInfo::getPath)
+                .containsExactly(second, first, legacy.toString());
+        // Sequence numbers continue after the highest readable record
+        writeSettings("token-3");
+        assertThat(backupService.createBackup(settingsFile.toString())).endsWith(".3");
+    }
+
+    @Test
+    void rebuildManifestDropsRecordsDeletedByHand() throws IOException {
+        backupService = newBackupService(10, 10);
+        writeSettings("token-1");
+        String first = backupService.createBackup(settingsFile.toString());
+        writeSettings("token-2");
+        String second = backupService.createBackup(settingsFile.toString());
+        Files.delete(Path.of(first));
+
+        // The manifest still lists it until rebuilt
+        assertThat(backupService.listBackups()).hasSize(2);
+        assertThat(backupService.rebuildManifest()).isEqualTo(1);
+
+        assertThat(backupService.listBackups())
+                .extracting(BackupService.BackupInfo::getPath)
+                .containsExactly(second);
+    }
+
+    @Test
+    void verifyReportsCorruptedMissingAndUncheckedBackups() throws IOException {
+        // No deltas, so every backup has its own plain blob
+        backupService = newBackupService(10, 1);
+        Path backups = tempDir.resolve("backups");
+        String corrupted = writeSettings("token-1");
+        String corruptedBackup = backupService.createBackup(settingsFile.toString());
+        String missing = writeSettings("token-2");
+        String missingBackup = backupService.createBackup(settingsFile.toString());
+        String intact = writeSettings("token-3");
+        String intactBackup = backupService.createBackup(settingsFile.toString());
+        Files.writeString(blob(corrupted), intact);
+        Files.delete(blob(missing));
+        Path legacy = backups.resolve("settings.json.backup.2020-01-01-00-00-00");
+        Files.writeString(legacy, "{\"env\":{}}");
+        Path malformedLegacy = backups.resolve("settings.json.backup.2020-01-02-00-00-00");
+        Files.writeString(malformedLegacy, "{\"env\":");
+        backupService.rebuildManifest();
+
+        Map<String, BackupService.VerifyResult> results = backupService.verifyBackups(false).stream()
+                .collect(Collectors.toMap(result -> result.backup().getPath(), result -> result));
+
+        assertThat(results).hasSize(5);
+        assertThat(results.get(intactBackup).status()).isEqualTo(BackupService.VerifyStatus.OK);
+        assertThat(results.get(corruptedBackup).status()).isEqualTo(BackupService.VerifyStatus.CORRUPTED);
+        assertThat(results.get(corruptedBackup).detail()).isEqualTo("checksum mismatch");
+        assertThat(results.get(missingBackup).status()).isEqualTo(BackupService.VerifyStatus.MISSING);
+        assertThat(results.get(legacy.toString()).status()).isEqualTo(BackupService.VerifyStatus.UNCHECKED);
+        assertThat(results.get(malformedLegacy.toString()).status()).isEqualTo(BackupService.VerifyStatus.CORRUPTED);
+        assertThat(results.get(malformedLegacy.toString()).detail()).startsWith("invalid JSON: ");
+    }
+
+    @Test
+    void verifyReportsSettingsShapeOnlyWhenAsked() throws IOException {
+        backupService = newBackupService(10, 10);
+        Files.writeString(settingsFile, "{\"env\":{\"MAX_TOKENS\":4096}}");
+        backupService.createOriginalBackup(settingsFile.toString());
+        backupService.createBackup(settingsFile.toString());
+
+        assertThat(backupService.verifyBackups(false))
+                .extracting(BackupService.VerifyResult::status)
+                .containsExactlyInAnyOrder(BackupService.VerifyStatus.OK, BackupService.VerifyStatus.UNCHECKED);
+        assertThat(backupService.verifyBackups(true))
+                .allSatisfy(result -> {
+                    assertThat(result.status()).isEqualTo(BackupService.VerifyStatus.UNEXPECTED_SHAPE);
+                    assertThat(result.detail()).isEqualTo("'env.MAX_TOKENS' must be a string");
+                })
+                .hasSize(2);
+    }
+
+    private BackupService newBackupService(int maxBackups, int snapshotInterval) throws IOException {
+        return newBackupService(maxBackups, snapshotInterval, tempDir.resolve("backups"));
+    }
+
+    private BackupService newBackupService(int maxBackups, int snapshotInterval, Path backupDir) throws IOException {
+        return newBackupService(maxBackups, snapshotInterval, backupDir, false);
+    }
+
+    /**
+     * Creates the service on a config.json that keeps the given number of backups in backupDir.
+     */
+    private BackupService newBackupService(int maxBackups, int snapshotInterval, Path backupDir,
+                                           boolean compress) throws IOException {
+        Path config = tempDir.resolve(".gate-cli/config.json");
+        Files.createDirectories(config.getParent());
+        Files.writeString(config, """
+                {"version":"2.0","backupSettings":{"maxBackups":%d,"snapshotInterval":%d,"backupDirectory":"%s",\
+                "compress":%b}}
+                """.formatted(maxBackups, snapshotInterval, backupDir, compress));
+
+        ConfigurationService configurationService = new ConfigurationService(
+                fileUtil, new JsonJournal(fileUtil, properties), properties, meterRegistry);
+        return new BackupService(fileUtil, configurationService, new JsonValidator(fileUtil),
+                new DeltaCodec(), meterRegistry, new BackupRetention(), new SettingsDiff());
+    }
+
+    /**
+     * Plain (uncompressed, non-delta) blob of the given content.
+     */
+    private Path blob(String content) {
+        return objects.resolve(fileUtil.sha256Hex(content.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * Writes a settings.json large enough that a changed token is stored as a delta.
+     */
+    private String writeSettings(String token) throws IOException {
+        StringBuilder allow = new StringBuilder();
+        for (int i = 0; i < 200; i++) {
+            allow.append(i > 0 ? "," : "").append("\"Bash(command-").append(i).append(":*)\"");
+        }
+        String content = "{\"env\":{\"ANTHROPIC_AUTH_TOKEN\":\"" + token + "\"},"
+                + "\"permissions\":{\"allow\":[" + allow + "]}}";
+        Files.writeString(settingsFile, content);
+        return content;
+    }
+}
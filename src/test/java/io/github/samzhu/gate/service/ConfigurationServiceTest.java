@@ -0,0 +1,45 @@
+package io.github.samzhu.gate.service;
+
+import io.github.samzhu.gate.TempHomeSupport;
+import io.github.samzhu.gate.model.ConnectionConfig;
+import io.github.samzhu.gate.util.JsonJournal;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Instant;
+
+import static org.assertj.core.api.Assertions.assertThat;
+
+class ConfigurationServiceTest extends TempHomeSupport {
+
+    private ConfigurationService configurationService;
+
+    @BeforeEach
+    void setUp() {
+        configurationService = new ConfigurationService(
+                fileUtil, new JsonJournal(fileUtil, properties), properties, meterRegistry);
+    }
+
+    @Test
+    void callersCannotModifyCachedSnapshot() {
+        configurationService.update(config -> config
+                .setApiUrl("https://api")
+                .saveConnection("cli", "secret", "https://idp/token", "https://api", Instant.EPOCH));
+
+        ConnectionConfig config = configurationService.readConfig();
+        config.getSettings().setApiUrl("https://changed");
+        config.getBackupSettings().setMaxBackups(1);
+        config.getBackupSettings().getSnapshotExclude().clear();
+        configurationService.getCurrentConnection().setClientId("changed");
+        configurationService.getBackupSettings().setBackupDirectory("/changed");
+
+        assertThat(configurationService.getEffectiveApiUrl()).isEqualTo("https://api");
+        assertThat(configurationService.getCurrentConnection().getClientId()).isEqualTo("cli");
+        ConnectionConfig.BackupSettings settings = configurationService.getBackupSettings();
+        assertThat(settings.getMaxBackups()).isEqualTo(10);
+        assertThat(settings.getBackupDirectory()).isEqualTo("~/.gate-cli/backups");
+        assertThat(settings.getSnapshotExclude()).contains("projects");
+        // All of the above came from the snapshot installed by the update, not from disk
+        assertThat(meterRegistry.counter("gate.config.reads", "result", "parse").count()).isZero();
+    }
+}
@@ -0,0 +1,279 @@
+package io.github.samzhu.gate.service;
+
+import io.github.samzhu.gate.TempHomeSupport;
+import io.github.samzhu.gate.exception.OAuth2Exception;
+import io.github.samzhu.gate.model.IssuerHealth;
+import io.github.samzhu.gate.model.OIDCConfiguration;
+import io.github.samzhu.gate.util.FileUtil;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.client.RestClient;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.assertj.core.api.Assertions.within;
+
+class IssuerFailoverServiceTest extends TempHomeSupport {
+
+    private static final String HEALTH_FILE = "~/.gate-cli/cache/issuers.json";
+    private static final String A = "https://a.example.com";
+    private static final String B = "https://b.example.com";
+    private static final String C = "https://c.example.com";
+    private static final String D = "https://d.example.com";
+    private static final String E = "https://e.example.com";
+
+    private final CountDownLatch release = new CountDownLatch(1);
+
+    private StubDiscoveryService discoveryService;
+    private IssuerFailoverService failoverService;
+
+    @BeforeEach
+    void setUp() {
+        discoveryService = new StubDiscoveryService(fileUtil, meterRegistry);
+        failoverService = new IssuerFailoverService(discoveryService, fileUtil, meterRegistry);
+    }
+
+    @AfterEach
+    void tearDown() {
+        release.countDown();
+        failoverService.drainRaces();
+        discoveryService.drainRevalidations();
+    }
+
+    @Test
+    void rankPutsRecentlyFailedLastAndOrdersByLatency() throws IOException {
+        Instant now = Instant.now();
+        writeHealth(Map.of(
+                A, IssuerHealth.Score.builder().latencyMillis(300.0).lastSuccess(now.minusSeconds(60)).build(),
+                // Fastest, but failed after its last success
+                B, IssuerHealth.Score.builder().latencyMillis(10.0).lastSuccess(now.minusSeconds(60))
+                        .lastFailure(now.minusSeconds(30)).build(),
+                // Never measured, so it keeps its configured position
+                C, IssuerHealth.Score.builder().lastFailure(now.minus(Duration.ofHours(1))).build(),
+                // Failed before the penalty window
+                D, IssuerHealth.Score.builder().latencyMillis(100.0).lastFailure(now.minus(Duration.ofHours(1))).build(),
+                // Recovered since its last failure
+                E, IssuerHealth.Score.builder().latencyMillis(50.0).lastFailure(now.minusSeconds(30))
+                        .lastSuccess(now.minusSeconds(10)).build()));
+
+        assertThat(failoverService.rank(List.of(A, B, C, D, E))).containsExactly(E, C, D, A, B);
+    }
+
+    @Test
+    void rankKeepsConfiguredOrderForTies() throws IOException {
+        assertThat(failoverService.rank(List.of(C, A, B))).containsExactly(C, A, B);
+
+        writeHealth(Map.of(
+                A, IssuerHealth.Score.builder().latencyMillis(100.0).build(),
+                B, IssuerHealth.Score.builder().latencyMillis(100.0).build()));
+
+        assertThat(failoverService.rank(List.of(B, C, A))).containsExactly(B, C, A);
+    }
+
+    @Test
+    void rankRejectsEmptyIssuerList() {
+        assertThatThrownBy(() -> failoverService.rank(List.of()))
+                .isInstanceOf(OAuth2Exception.class)
+                .hasMessageContaining("No issuer URI configured");
+    }
+
+    @Test
+    void discoverStartsNextIssuerAfterStaggerAndTakesFirstAnswer() {
+        discoveryService.answer(A, () -> {
+            awaitRelease();
+            return configuration(A);
+        });
+
+        IssuerFailoverService.Discovered discovered = failoverService.discover(List.of(A, B));
+
+        assertThat(discovered.issuerUri()).isEqualTo(B);
+        assertThat(discovered.configuration().getTokenEndpoint()).isEqualTo(B + "/token");
+        assertThat(discovered.ranked()).containsExactly(A, B);
+        assertThat(discoveryService.startGap(A, B)).isGreaterThanOrEqualTo(Duration.ofMillis(200));
+    }
+
+    @Test
+    void discoverStartsNextIssuerAtOnceWhenOneFails() {
+        discoveryService.answer(A, () -> {
+            throw new OAuth2Exception("unreachable", null, true);
+        });
+
+        IssuerFailoverService.Discovered discovered = failoverService.discover(List.of(A, B));
+
+        assertThat(discovered.issuerUri()).isEqualTo(B);
+        assertThat(discoveryService.startGap(A, B)).isLessThan(Duration.ofMillis(200));
+        // The failed issuer goes last next time
+        assertThat(failoverService.rank(List.of(A, B))).containsExactly(B, A);
+    }
+
+    @Test
+    void discoverFailsWithEveryFailureWhenNoIssuerAnswers() throws IOException {
+        discoveryService.answer(A, () -> {
+            throw new OAuth2Exception("a down", null, true);
+        });
+        discoveryService.answer(B, () -> {
+            throw new OAuth2Exception("b down", null, true);
+        });
+
+        assertThatThrownBy(() -> failoverService.discover(List.of(A, B)))
+                .isInstanceOf(OAuth2Exception.class)
+                .hasMessage("a down")
+                .satisfies(e -> assertThat(e.getSuppressed()).extracting(Throwable::getMessage)
+                        .containsExactly("b down"));
+        // Concurrent attempts do not lose each other's scores
+        assertThat(readHealth()).allSatisfy((issuerUri, score) -> assertThat(score.getLastFailure()).isNotNull())
+                .containsOnlyKeys(A, B);
+    }
+
+    @Test
+    void discoverScoresAttemptsThatLoseTheRace() throws IOException {
+        discoveryService.answer(A, () -> {
+            awaitRelease();
+            throw new OAuth2Exception("a down", null, true);
+        });
+
+        assertThat(failoverService.discover(List.of(A, B)).issuerUri()).isEqualTo(B);
+        release.countDown();
+        failoverService.drainRaces();
+
+        Map<String, IssuerHealth.Score> scores = readHealth();
+        assertThat(scores.get(A).getLastFailure()).isNotNull();
+        assertThat(scores.get(B).getLastSuccess()).isNotNull();
+        // Discovery is not a latency measurement
+        assertThat(scores.get(B).getLatencyMillis()).isNull();
+        assertThat(failoverService.rank(List.of(A, B))).containsExactly(B, A);
+    }
+
+    @Test
+    void requestTokenFailsOverOnRetryableFailure() {
+        IssuerFailoverService.Discovered discovered = failoverService.discover(List.of(A, B));
+        List<String> tried = new ArrayList<>();
+
+        IssuerFailoverService.Answered<String> answered = failoverService.requestToken(discovered, tokenUrl -> {
+            tried.add(tokenUrl);
+            if (tokenUrl.startsWith(A)) {
+                throw OAuth2Exception.serverError();
+            }
+            return "token";
+        });
+
+        assertThat(answered.issuerUri()).isEqualTo(B);
+        assertThat(answered.tokenUrl()).isEqualTo(B + "/token");
+        assertThat(answered.result()).isEqualTo("token");
+        assertThat(tried).containsExactly(A + "/token", B + "/token");
+        assertThat(discoveryService.invalidated).containsExactly(A);
+        assertThat(meterRegistry.counter("gate.issuer.failovers").count()).isEqualTo(1.0);
+        assertThat(failoverService.rank(List.of(A, B))).containsExactly(B, A);
+    }
+
+    @Test
+    void requestTokenDoesNotFailOverOnClientError() {
+        IssuerFailoverService.Discovered discovered = failoverService.discover(List.of(A, B));
+        List<String> tried = new ArrayList<>();
+
+        assertThatThrownBy(() -> failoverService.requestToken(discovered, tokenUrl -> {
+            tried.add(tokenUrl);
+            throw OAuth2Exception.authenticationFailed("invalid_client");
+        }))
+                .isInstanceOf(OAuth2Exception.class)
+                .hasMessageContaining("invalid_client");
+
+        assertThat(tried).containsExactly(A + "/token");
+        // Bad credentials say nothing about the cached discovery document
+        assertThat(discoveryService.invalidated).isEmpty();
+        assertThat(meterRegistry.counter("gate.issuer.failovers").count()).isZero();
+    }
+
+    @Test
+    void requestTokenFailsWithEveryFailureWhenNoIssuerAnswers() {
+        IssuerFailoverService.Discovered discovered = failoverService.discover(List.of(A, B));
+
+        assertThatThrownBy(() -> failoverService.requestToken(discovered, tokenUrl -> {
+            throw OAuth2Exception.connectionFailed(tokenUrl, null);
+        }))
+                .isInstanceOf(OAuth2Exception.class)
+                .hasMessageContaining(A + "/token")
+                .satisfies(e -> assertThat(e.getSuppressed()).hasSize(1));
+
+        assertThat(discoveryService.invalidated).containsExactly(A, B);
+    }
+
+    @Test
+    void requestTokenUpdatesLatencyAverage() throws IOException {
+        writeHealth(Map.of(A, IssuerHealth.Score.builder().latencyMillis(100.0).build()));
+        IssuerFailoverService.Discovered discovered = failoverService.discover(List.of(A));
+
+        failoverService.requestToken(discovered, tokenUrl -> "token");
+
+        IssuerHealth.Score score = readHealth().get(A);
+        // 0.3 of a near-zero latency plus 0.7 of the previous average
+        assertThat(score.getLatencyMillis()).isCloseTo(70.0, within(5.0));
+        assertThat(score.getLastSuccess()).isNotNull();
+    }
+
+    private void writeHealth(Map<String, IssuerHealth.Score> scores) throws IOException {
+        fileUtil.atomicWriteJson(HEALTH_FILE, IssuerHealth.builder().issuers(new ConcurrentHashMap<>(scores)).build());
+    }
+
+    private Map<String, IssuerHealth.Score> readHealth() throws IOException {
+        return fileUtil.readJson(HEALTH_FILE, IssuerHealth.class).getIssuers();
+    }
+
+    private void awaitRelease() {
+        try {
+            release.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new OAuth2Exception("interrupted", e);
+        }
+    }
+
+    private static OIDCConfiguration configuration(String issuerUri) {
+        return new OIDCConfiguration(issuerUri, issuerUri + "/authorize", issuerUri + "/token", null, null);
+    }
+
+    /**
+     * Answers discovery from canned suppliers instead of the network, recording what was asked.
+     */
+    private static final class StubDiscoveryService extends OIDCDiscoveryService {
+        private final Map<String, Supplier<OIDCConfiguration>> answers = new ConcurrentHashMap<>();
+        private final Map<String, Long> started = new ConcurrentHashMap<>();
+        private final List<String> invalidated = new CopyOnWriteArrayList<>();
+
+        StubDiscoveryService(FileUtil fileUtil, MeterRegistry meterRegistry) {
+            super(RestClient.create(), fileUtil, meterRegistry);
+        }
+
+        void answer(String issuerUri, Supplier<OIDCConfiguration> answer) {
+            answers.put(issuerUri, answer);
+        }
+
+        Duration startGap(String first, String second) {
+            return Duration.ofNanos(started.get(second) - started.get(first));
+        }
+
+        @Override
+        public OIDCConfiguration discover(String issuerUri) {
+            started.putIfAbsent(issuerUri, System.nanoTime());
+            return answers.getOrDefault(issuerUri, () -> configuration(issuerUri)).get();
+        }
+
+        @Override
+        public void invalidate(String issuerUri) {
+            invalidated.add(issuerUri);
+        }
+    }
+}
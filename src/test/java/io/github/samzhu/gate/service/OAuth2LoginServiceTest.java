@@ -0,0 +1,108 @@
+package io.github.samzhu.gate.service;
+
+import io.github.samzhu.gate.TempHomeSupport;
+import io.github.samzhu.gate.exception.OAuth2Exception;
+import io.github.samzhu.gate.model.AuthorizationResult;
+import io.github.samzhu.gate.model.OIDCConfiguration;
+import org.junit.jupiter.api.Test;
+import org.springframework.web.client.RestClient;
+
+import java.net.BindException;
+import java.time.Duration;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+/**
+ * Checks that OIDC discovery overlaps the callback server start. The callback server never
+ * accepts a connection here, so the browser is never opened.
+ */
+class OAuth2LoginServiceTest extends TempHomeSupport {
+
+    private static final String ISSUER = "https://idp.example.com";
+    private static final String REDIRECT_URI = "http://localhost:8765/callback";
+    private static final long OVERLAP_TIMEOUT_SECONDS = 5;
+
+    private final OIDCDiscoveryService discoveryService =
+            new OIDCDiscoveryService(RestClient.create(), fileUtil, meterRegistry);
+    private final CountDownLatch discoveryStarted = new CountDownLatch(1);
+    private final CountDownLatch callbackServerStarted = new CountDownLatch(1);
+    private final CompletableFuture<AuthorizationResult> callback = new CompletableFuture<>();
+
+    private Supplier<OIDCConfiguration> discoveryAnswer;
+
+    @Test
+    void discoveryRunsWhileCallbackServerStarts() {
+        discoveryAnswer = () -> {
+            // Only completes if the callback server starts before discovery is joined
+            await(callbackServerStarted);
+            return new OIDCConfiguration(ISSUER, ISSUER + "/authorize", ISSUER + "/token", null, null);
+        };
+        callback.completeExceptionally(new BindException("Address already in use"));
+
+        assertThatThrownBy(() -> newLoginService().login(List.of(ISSUER), "cli", "openid", REDIRECT_URI))
+                .isInstanceOf(OAuth2Exception.class)
+                .hasMessage("Authorization failed: Address already in use");
+
+        for (String phase : List.of(OAuth2LoginService.PHASE_DISCOVERY, OAuth2LoginService.PHASE_CALLBACK_SERVER)) {
+            assertThat(meterRegistry.timer("gate.login.phase", "phase", phase).count()).isEqualTo(1);
+        }
+        // Failing before the browser, so neither later phase ran
+        assertThat(meterRegistry.timer("gate.login.phase", "phase", OAuth2LoginService.PHASE_AUTHORIZATION).count())
+                .isZero();
+    }
+
+    @Test
+    void discoveryFailureStopsTheWaitingCallbackServer() {
+        discoveryAnswer = () -> {
+            await(callbackServerStarted);
+            throw new OAuth2Exception("unreachable", null, true);
+        };
+
+        assertThatThrownBy(() -> newLoginService().login(List.of(ISSUER), "cli", "openid", REDIRECT_URI))
+                .isInstanceOf(OAuth2Exception.class)
+                .hasMessage("unreachable");
+
+        assertThat(callback).isCancelled();
+    }
+
+    private OAuth2LoginService newLoginService() {
+        IssuerFailoverService issuerFailoverService =
+                new IssuerFailoverService(discoveryService, fileUtil, meterRegistry) {
+                    @Override
+                    public Discovered discover(List<String> issuerUris) {
+                        discoveryStarted.countDown();
+                        return new Discovered(issuerUris.getFirst(), discoveryAnswer.get(), issuerUris);
+                    }
+                };
+        OAuthCallbackServer callbackServer = new OAuthCallbackServer() {
+            @Override
+            public CompletableFuture<AuthorizationResult> startAndWait(int port, String expectedState,
+                                                                       Duration timeout) {
+                assertThat(port).isEqualTo(8765);
+                // Discovery was started before the server, in the background
+                await(discoveryStarted);
+                callbackServerStarted.countDown();
+                return callback;
+            }
+        };
+        return new OAuth2LoginService(discoveryService, issuerFailoverService, new PKCEService(),
+                callbackServer, RestClient.create(), meterRegistry);
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            if (!latch.await(OVERLAP_TIMEOUT_SECONDS, TimeUnit.SECONDS)) {
+                throw new OAuth2Exception("Discovery and callback server start did not overlap");
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new OAuth2Exception("interrupted", e);
+        }
+    }
+}
@@ -0,0 +1,216 @@
+package io.github.samzhu.gate.service;
+
+import io.github.samzhu.gate.TempHomeSupport;
+import io.github.samzhu.gate.model.CachedDiscovery;
+import io.github.samzhu.gate.model.OIDCConfiguration;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.test.web.client.MockRestServiceServer;
+import org.springframework.web.client.RestClient;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.ZoneOffset;
+import java.time.format.DateTimeFormatter;
+import java.time.temporal.ChronoUnit;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.header;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.method;
+import static org.springframework.test.web.client.match.MockRestRequestMatchers.requestTo;
+import static org.springframework.test.web.client.response.MockRestResponseCreators.withStatus;
+import static org.springframework.test.web.client.response.MockRestResponseCreators.withSuccess;
+
+class OIDCDiscoveryServiceTest extends TempHomeSupport {
+
+    private static final String ISSUER = "https://idp.example.com";
+    private static final String DISCOVERY_URL = ISSUER + "/.well-known/openid-configuration";
+    private static final String DOCUMENT = """
+            {"issuer":"https://idp.example.com",
+             "authorization_endpoint":"https://idp.example.com/authorize",
+             "token_endpoint":"https://idp.example.com/token"}
+            """;
+
+    /**
+     * Date-based cases are computed from this instant; HTTP dates have whole seconds.
+     */
+    private static final Instant NOW = Instant.now().truncatedTo(ChronoUnit.SECONDS);
+    private static final Duration DATE_TOLERANCE = Duration.ofSeconds(2);
+
+    private MockRestServiceServer server;
+    private OIDCDiscoveryService discoveryService;
+
+    @BeforeEach
+    void setUp() {
+        RestClient.Builder builder = RestClient.builder();
+        server = MockRestServiceServer.bindTo(builder).build();
+        discoveryService = new OIDCDiscoveryService(builder.build(), fileUtil, meterRegistry);
+    }
+
+    @AfterEach
+    void tearDown() {
+        discoveryService.drainRevalidations();
+    }
+
+    static Stream<Arguments> freshness() {
+        return Stream.of(
+                // name, response headers, expected freshness (null: not cached), expected stale window
+                Arguments.of("max-age", Map.of("Cache-Control", "max-age=600"),
+                        Duration.ofSeconds(600), null),
+                Arguments.of("max-age minus Age", Map.of("Cache-Control", "max-age=600", "Age", "100"),
+                        Duration.ofSeconds(500), null),
+                Arguments.of("Age beyond max-age", Map.of("Cache-Control", "max-age=60", "Age", "120"),
+                        Duration.ZERO, null),
+                Arguments.of("max-age wins over Expires",
+                        Map.of("Cache-Control", "max-age=600", "Expires", httpDate(NOW.plus(Duration.ofHours(5)))),
+                        Duration.ofSeconds(600), null),
+                // The server's clock is 10 minutes behind: Expires counts from Date, not from now
+                Arguments.of("Expires relative to Date",
+                        Map.of("Date", httpDate(NOW.minus(Duration.ofMinutes(10))),
+                                "Expires", httpDate(NOW.plus(Duration.ofMinutes(20)))),
+                        Duration.ofMinutes(30), null),
+                Arguments.of("Expires without Date", Map.of("Expires", httpDate(NOW.plus(Duration.ofMinutes(20)))),
+                        Duration.ofMinutes(20), null),
+                Arguments.of("Expires with malformed Date",
+                        Map.of("Date", "yesterday", "Expires", httpDate(NOW.plus(Duration.ofMinutes(20)))),
+                        Duration.ofMinutes(20), null),
+                Arguments.of("Expires in the past", Map.of("Expires", httpDate(NOW.minus(Duration.ofMinutes(5)))),
+                        Duration.ZERO, null),
+                Arguments.of("Last-Modified heuristic",
+                        Map.of("Last-Modified", httpDate(NOW.minus(Duration.ofHours(10)))),
+                        Duration.ofHours(1), null),
+                Arguments.of("Last-Modified heuristic cap",
+                        Map.of("Last-Modified", httpDate(NOW.minus(Duration.ofDays(30)))),
+                        Duration.ofDays(1), null),
+                Arguments.of("default", Map.of(), Duration.ofHours(1), null),
+                Arguments.of("stale-while-revalidate",
+                        Map.of("Cache-Control", "max-age=600, stale-while-revalidate=300"),
+                        Duration.ofSeconds(600), Duration.ofSeconds(300)),
+                Arguments.of("no-cache suppresses stale window",
+                        Map.of("Cache-Control", "stale-while-revalidate=300, no-cache"),
+                        Duration.ZERO, null),
+                Arguments.of("must-revalidate suppresses stale window",
+                        Map.of("Cache-Control", "stale-while-revalidate=300, max-age=600, must-revalidate"),
+                        Duration.ofSeconds(600), null),
+                Arguments.of("no-store", Map.of("Cache-Control", "no-store, max-age=600"), null, null));
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @MethodSource("freshness")
+    void fetchCachesWithFreshnessFromHeaders(String name, Map<String, String> responseHeaders,
+                                             Duration expectedFreshness, Duration expectedStaleWindow)
+            throws IOException {
+        expectDiscovery(responseHeaders);
+
+        OIDCConfiguration config = discoveryService.discover(ISSUER);
+
+        server.verify();
+        assertThat(config.getTokenEndpoint()).isEqualTo(ISSUER + "/token");
+        CachedDiscovery cached = readCache();
+        if (expectedFreshness == null) {
+            assertThat(cached).isNull();
+            return;
+        }
+        Duration freshness = Duration.between(cached.getFetched(), cached.getExpires());
+        assertThat(freshness.minus(expectedFreshness).abs()).isLessThanOrEqualTo(DATE_TOLERANCE);
+        if (expectedStaleWindow == null) {
+            assertThat(cached.getStaleUntil()).isNull();
+        } else {
+            assertThat(Duration.between(cached.getExpires(), cached.getStaleUntil())).isEqualTo(expectedStaleWindow);
+        }
+    }
+
+    @Test
+    void freshDocumentIsServedWithoutRequest() throws IOException {
+        expectDiscovery(Map.of("Cache-Control", "max-age=600"));
+        discoveryService.discover(ISSUER);
+
+        OIDCConfiguration config = discoveryService.discover(ISSUER);
+
+        server.verify();
+        assertThat(config.getAuthorizationEndpoint()).isEqualTo(ISSUER + "/authorize");
+    }
+
+    @Test
+    void noStoreDeletesCachedEntry() throws IOException {
+        expectDiscovery(Map.of("Cache-Control", "no-cache"));
+        discoveryService.discover(ISSUER);
+        assertThat(readCache()).isNotNull();
+
+        expectDiscovery(Map.of("Cache-Control", "no-store"));
+        discoveryService.discover(ISSUER);
+
+        server.verify();
+        assertThat(readCache()).isNull();
+    }
+
+    @Test
+    void notModifiedRefreshesFreshnessAndKeepsEtag() throws IOException {
+        HttpHeaders first = new HttpHeaders();
+        first.setCacheControl("no-cache");
+        first.setETag("\"v1\"");
+        server.expect(requestTo(DISCOVERY_URL))
+                .andRespond(withSuccess(DOCUMENT, MediaType.APPLICATION_JSON).headers(first));
+        discoveryService.discover(ISSUER);
+        CachedDiscovery before = readCache();
+
+        // The 304 carries new caching headers but no ETag
+        HttpHeaders notModified = new HttpHeaders();
+        notModified.setCacheControl("max-age=600");
+        server.expect(requestTo(DISCOVERY_URL))
+                .andExpect(header(HttpHeaders.IF_NONE_MATCH, "\"v1\""))
+                .andRespond(withStatus(HttpStatus.NOT_MODIFIED).headers(notModified));
+
+        OIDCConfiguration config = discoveryService.discover(ISSUER);
+
+        server.verify();
+        assertThat(config.getTokenEndpoint()).isEqualTo(ISSUER + "/token");
+        CachedDiscovery after = readCache();
+        assertThat(after.getEtag()).isEqualTo("\"v1\"");
+        assertThat(after.getConfiguration()).isEqualTo(before.getConfiguration());
+        assertThat(Duration.between(after.getFetched(), after.getExpires())).isEqualTo(Duration.ofSeconds(600));
+        assertThat(after.getExpires()).isAfter(before.getExpires());
+    }
+
+    private void expectDiscovery(Map<String, String> responseHeaders) {
+        HttpHeaders headers = new HttpHeaders();
+        responseHeaders.forEach(headers::add);
+        server.expect(requestTo(DISCOVERY_URL))
+                .andExpect(method(HttpMethod.GET))
+                .andRespond(withSuccess(DOCUMENT, MediaType.APPLICATION_JSON).headers(headers));
+    }
+
+    /**
+     * Reads the only cache entry, or null if there is none.
+     */
+    private CachedDiscovery readCache() throws IOException {
+        Path cacheDir = tempDir.resolve(".gate-cli/cache/oidc");
+        if (!Files.isDirectory(cacheDir)) {
+            return null;
+        }
+        List<Path> entries;
+        try (Stream<Path> files = Files.list(cacheDir)) {
+            entries = files.filter(file -> file.toString().endsWith(".json")).toList();
+        }
+        assertThat(entries).hasSizeLessThanOrEqualTo(1);
+        return entries.isEmpty() ? null : fileUtil.readJson(entries.getFirst().toString(), CachedDiscovery.class);
+    }
+
+    private static String httpDate(Instant instant) {
+        return DateTimeFormatter.RFC_1123_DATE_TIME.format(instant.atOffset(ZoneOffset.UTC));
+    }
+}
@@ -0,0 +1,271 @@
+package io.github.samzhu.gate.service;
+
+import io.github.samzhu.gate.TempHomeSupport;
+import io.github.samzhu.gate.exception.BackupException;
+import io.github.samzhu.gate.model.SnapshotIndex;
+import io.github.samzhu.gate.util.JsonJournal;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.List;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class SnapshotServiceTest extends TempHomeSupport {
+
+    /**
+     * Older than the racy window, so scans cache these files.
+     */
+    private static final Instant OLD = Instant.parse("2025-01-02T03:04:05Z");
+
+    private Path claudeDir;
+    private Path store;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        claudeDir = tempDir.resolve(".claude");
+        store = tempDir.resolve("backups/snapshots");
+        Files.createDirectories(claudeDir);
+    }
+
+    @Test
+    void unchangedSecondRunReadsNothingAndKeepsIndex() throws IOException {
+        SnapshotService snapshotService = newSnapshotService(10);
+        writeClaudeFile("settings.json", "{}", OLD);
+        writeClaudeFile("agents/reviewer.md", "# Reviewer", OLD);
+
+        SnapshotService.SnapshotResult first = snapshotService.createSnapshot();
+        assertThat(first.created()).isTrue();
+        assertThat(first.files()).isEqualTo(2);
+        assertThat(first.hashed()).isEqualTo(2);
+
+        Path index = store.resolve("index.json");
+        Files.setLastModifiedTime(index, FileTime.from(Instant.now().minus(Duration.ofHours(1))));
+        FileTime indexWritten = Files.getLastModifiedTime(index);
+
+        SnapshotService.SnapshotResult second = snapshotService.createSnapshot();
+
+        assertThat(second.created()).isFalse();
+        assertThat(second.files()).isEqualTo(2);
+        assertThat(second.hashed()).isZero();
+        assertThat(second.snapshot().getId()).isEqualTo(first.snapshot().getId());
+        assertThat(Files.getLastModifiedTime(index)).isEqualTo(indexWritten);
+    }
+
+    @Test
+    void restoreRoundTripRestoresContentAndModificationTimes() throws IOException {
+        SnapshotService snapshotService = newSnapshotService(10);
+        Instant agentWritten = OLD.minus(Duration.ofDays(3));
+        writeClaudeFile("settings.json", "{\"model\":\"opus\"}", OLD);
+        writeClaudeFile("agents/reviewer.md", "# Reviewer", agentWritten);
+        long restored = snapshotService.createSnapshot().snapshot().getId();
+
+        writeClaudeFile("settings.json", "{\"model\":\"sonnet\"}", Instant.now());
+        Files.delete(claudeDir.resolve("agents/reviewer.md"));
+        writeClaudeFile("CLAUDE.md", "notes", Instant.now());
+
+        SnapshotIndex.Snapshot snapshot = snapshotService.restoreSnapshot(restored);
+
+        assertThat(snapshot.getId()).isEqualTo(restored);
+        assertThat(claudeDir.resolve("settings.json")).hasContent("{\"model\":\"opus\"}");
+        assertThat(Files.getLastModifiedTime(claudeDir.resolve("settings.json")).toInstant()).isEqualTo(OLD);
+        assertThat(claudeDir.resolve("agents/reviewer.md")).hasContent("# Reviewer");
+        assertThat(Files.getLastModifiedTime(claudeDir.resolve("agents/reviewer.md")).toInstant())
+                .isEqualTo(agentWritten);
+        assertThat(claudeDir.resolve("CLAUDE.md")).doesNotExist();
+        assertThat(restoreLeftovers()).isEmpty();
+
+        // The state before the restore was snapshotted, so the restore can be undone
+        List<SnapshotIndex.Snapshot> snapshots = snapshotService.listSnapshots();
+        assertThat(snapshots).hasSize(2);
+        snapshotService.restoreSnapshot(snapshots.getFirst().getId());
+        assertThat(claudeDir.resolve("settings.json")).hasContent("{\"model\":\"sonnet\"}");
+        assertThat(claudeDir.resolve("CLAUDE.md")).hasContent("notes");
+    }
+
+    @Test
+    void restoreCarriesOverExcludedPathsAndSymbolicLinks() throws IOException {
+        SnapshotService snapshotService = newSnapshotService(10);
+        writeClaudeFile("settings.json", "{}", OLD);
+        writeClaudeFile("projects/app/session.jsonl", "old transcript", OLD);
+        long restored = snapshotService.createSnapshot().snapshot().getId();
+
+        writeClaudeFile("projects/app/session.jsonl", "new transcript", Instant.now());
+        Path outside = Files.writeString(tempDir.resolve("shared-commands.md"), "shared");
+        Files.createSymbolicLink(claudeDir.resolve("commands.md"), outside);
+
+        snapshotService.restoreSnapshot(restored);
+
+        // Neither is in the snapshot, so both are kept as they are
+        assertThat(claudeDir.resolve("projects/app/session.jsonl")).hasContent("new transcript");
+        assertThat(Files.isSymbolicLink(claudeDir.resolve("commands.md"))).isTrue();
+        assertThat(Files.readSymbolicLink(claudeDir.resolve("commands.md"))).isEqualTo(outside);
+        assertThat(claudeDir.resolve("settings.json")).hasContent("{}");
+        assertThat(restoreLeftovers()).isEmpty();
+    }
+
+    @Test
+    void failedRestoreLeavesClaudeDirIntact() throws IOException {
+        SnapshotService snapshotService = newSnapshotService(10);
+        writeClaudeFile("settings.json", "{\"version\":1}", OLD);
+        writeClaudeFile("projects/app/session.jsonl", "transcript", OLD);
+        long restored = snapshotService.createSnapshot().snapshot().getId();
+        writeClaudeFile("settings.json", "{\"version\":22}", OLD);
+        snapshotService.createSnapshot();
+
+        // Corrupt the content only the first snapshot references
+        Files.writeString(objectFor("{\"version\":1}"), "corrupted");
+
+        assertThatThrownBy(() -> snapshotService.restoreSnapshot(restored))
+                .isInstanceOf(BackupException.class)
+                .hasMessage("Failed to restore snapshot: " + restored)
+                .hasRootCauseMessage("Snapshot content does not match its checksum: "
+                        + fileUtil.sha256Hex("{\"version\":1}".getBytes(StandardCharsets.UTF_8)));
+
+        assertThat(claudeDir.resolve("settings.json")).hasContent("{\"version\":22}");
+        assertThat(claudeDir.resolve("projects/app/session.jsonl")).hasContent("transcript");
+        assertThat(restoreLeftovers()).isEmpty();
+    }
+
+    @Test
+    void sweepKeepsObjectsSharedWithKeptSnapshots() throws IOException {
+        SnapshotService snapshotService = newSnapshotService(2);
+        writeClaudeFile("CLAUDE.md", "shared", OLD);
+        for (String version : List.of("1", "22", "333")) {
+            writeClaudeFile("settings.json", version, OLD);
+            snapshotService.createSnapshot();
+        }
+
+        assertThat(snapshotService.listSnapshots()).extracting(SnapshotIndex.Snapshot::getId).containsExactly(3L, 2L);
+        assertThat(objectFor("1")).doesNotExist();
+        assertThat(objectFor("22")).exists();
+        assertThat(objectFor("333")).exists();
+        // Unchanged since the swept snapshot, so still referenced by the kept ones
+        assertThat(objectFor("shared")).exists();
+
+        snapshotService.restoreSnapshot(2);
+        assertThat(claudeDir.resolve("settings.json")).hasContent("22");
+        assertThat(claudeDir.resolve("CLAUDE.md")).hasContent("shared");
+    }
+
+    @Test
+    void symbolicLinkedClaudeDirIsSnapshottedAndKeptAsLink() throws IOException {
+        SnapshotService snapshotService = newSnapshotService(10);
+        Files.delete(claudeDir);
+        Path realDir = Files.createDirectories(tempDir.resolve("dotfiles/claude"));
+        Files.createSymbolicLink(claudeDir, realDir);
+        writeClaudeFile("settings.json", "{\"model\":\"opus\"}", OLD);
+
+        SnapshotService.SnapshotResult result = snapshotService.createSnapshot();
+        assertThat(result.files()).isEqualTo(1);
+        assertThat(result.snapshot().getRoot()).isNotNull();
+
+        writeClaudeFile("settings.json", "{\"model\":\"sonnet\"}", Instant.now());
+        snapshotService.restoreSnapshot(result.snapshot().getId());
+
+        assertThat(Files.isSymbolicLink(claudeDir)).isTrue();
+        assertThat(realDir.resolve("settings.json")).hasContent("{\"model\":\"opus\"}");
+    }
+
+    @Test
+    void restoreRestoresPermissions() throws IOException {
+        assumeTrue(FileSystems.getDefault().supportedFileAttributeViews().contains("posix"));
+        SnapshotService snapshotService = newSnapshotService(10);
+        writeClaudeFile("settings.json", "{}", OLD);
+        writeClaudeFile("hooks/format.sh", "#!/bin/sh", OLD);
+        setMode(claudeDir.resolve("settings.json"), "rw-r--r--");
+        setMode(claudeDir.resolve("hooks/format.sh"), "rwxr-x---");
+        setMode(claudeDir.resolve("hooks"), "rwxr-xr-x");
+        setMode(claudeDir, "rwxr-x---");
+        long restored = snapshotService.createSnapshot().snapshot().getId();
+
+        writeClaudeFile("settings.json", "{\"model\":\"opus\"}", Instant.now());
+        setMode(claudeDir.resolve("settings.json"), "rw-------");
+        setMode(claudeDir.resolve("hooks/format.sh"), "rw-------");
+        setMode(claudeDir.resolve("hooks"), "rwx------");
+
+        snapshotService.restoreSnapshot(restored);
+
+        assertThat(mode(claudeDir.resolve("settings.json"))).isEqualTo("rw-r--r--");
+        assertThat(mode(claudeDir.resolve("hooks/format.sh"))).isEqualTo("rwxr-x---");
+        assertThat(mode(claudeDir.resolve("hooks"))).isEqualTo("rwxr-xr-x");
+        // Not part of the snapshot, so it keeps the permissions it had
+        assertThat(mode(claudeDir)).isEqualTo("rwxr-x---");
+    }
+
+    @Test
+    void permissionChangeAloneIsSnapshotted() throws IOException {
+        assumeTrue(FileSystems.getDefault().supportedFileAttributeViews().contains("posix"));
+        SnapshotService snapshotService = newSnapshotService(10);
+        writeClaudeFile("settings.json", "{}", OLD);
+        setMode(claudeDir.resolve("settings.json"), "rw-------");
+        long before = snapshotService.createSnapshot().snapshot().getId();
+
+        // Leaves size and modification time alone, so the file is not read again
+        setMode(claudeDir.resolve("settings.json"), "rw-r--r--");
+        SnapshotService.SnapshotResult after = snapshotService.createSnapshot();
+
+        assertThat(after.created()).isTrue();
+        assertThat(after.hashed()).isZero();
+        snapshotService.restoreSnapshot(before);
+        assertThat(mode(claudeDir.resolve("settings.json"))).isEqualTo("rw-------");
+        snapshotService.restoreSnapshot(after.snapshot().getId());
+        assertThat(mode(claudeDir.resolve("settings.json"))).isEqualTo("rw-r--r--");
+    }
+
+    /**
+     * Creates the service on a config.json that keeps the given number of snapshots.
+     */
+    private SnapshotService newSnapshotService(int maxBackups) throws IOException {
+        Path config = tempDir.resolve(".gate-cli/config.json");
+        Files.createDirectories(config.getParent());
+        Files.writeString(config, """
+                {"version":"2.0","backupSettings":{"maxBackups":%d,"backupDirectory":"%s",
+                 "snapshotExclude":["projects"]}}
+                """.formatted(maxBackups, tempDir.resolve("backups")));
+
+        ConfigurationService configurationService = new ConfigurationService(
+                fileUtil, new JsonJournal(fileUtil, properties), properties, meterRegistry);
+        return new SnapshotService(fileUtil, configurationService, meterRegistry);
+    }
+
+    private void writeClaudeFile(String relative, String content, Instant modified) throws IOException {
+        Path file = claudeDir.resolve(relative);
+        Files.createDirectories(file.getParent());
+        Files.writeString(file, content);
+        Files.setLastModifiedTime(file, FileTime.from(modified));
+    }
+
+    private static void setMode(Path path, String mode) throws IOException {
+        Files.setPosixFilePermissions(path, PosixFilePermissions.fromString(mode));
+    }
+
+    private static String mode(Path path) throws IOException {
+        return PosixFilePermissions.toString(Files.getPosixFilePermissions(path));
+    }
+
+    private Path objectFor(String content) {
+        return store.resolve("objects").resolve(fileUtil.sha256Hex(content.getBytes(StandardCharsets.UTF_8)));
+    }
+
+    /**
+     * Staging and replaced directories a restore leaves next to ~/.claude.
+     */
+    private List<Path> restoreLeftovers() throws IOException {
+        try (Stream<Path> files = Files.list(claudeDir.getParent())) {
+            return files.filter(file -> file.getFileName().toString().startsWith(".claude.")).toList();
+        }
+    }
+}
@@ -0,0 +1,92 @@
+package io.github.samzhu.gate.util;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class DeltaCodecTest {
+
+    private static final String BASE_HASH = "a".repeat(64);
+    private static final String SETTINGS =
+            "{\"env\":{\"ANTHROPIC_AUTH_TOKEN\":\"token-1\",\"ANTHROPIC_BASE_URL\":\"https://gate\"}}";
+
+    private final DeltaCodec codec = new DeltaCodec();
+
+    static Stream<Arguments> versions() {
+        return Stream.of(
+                Arguments.of("identical", SETTINGS, SETTINGS, SETTINGS.length(), 0),
+                Arguments.of("change at the end keeps only a prefix",
+                        SETTINGS, SETTINGS.substring(0, SETTINGS.length() - 1) + "]", SETTINGS.length() - 1, 0),
+                Arguments.of("change at the start keeps only a suffix",
+                        SETTINGS, "[" + SETTINGS.substring(1), 0, SETTINGS.length() - 1),
+                Arguments.of("change in the middle", SETTINGS, SETTINGS.replace("token-1", "token-2"),
+                        SETTINGS.indexOf("token-1") + 6, SETTINGS.length() - SETTINGS.indexOf("token-1") - 7),
+                Arguments.of("appended", SETTINGS, SETTINGS + "\n", SETTINGS.length(), 0),
+                Arguments.of("truncated", SETTINGS, SETTINGS.substring(0, 10), 10, 0),
+                Arguments.of("empty base", "", SETTINGS, 0, 0),
+                Arguments.of("empty target", SETTINGS, "", 0, 0),
+                Arguments.of("both empty", "", "", 0, 0),
+                Arguments.of("full replacement", "abcdef", "uvwxyz", 0, 0),
+                // Shared bytes are never counted twice when prefix and suffix overlap
+                Arguments.of("repeated bytes", "aaaa", "aaaaaa", 4, 0));
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @MethodSource("versions")
+    void roundTripReproducesTarget(String name, String base, String target,
+                                   int prefix, int suffix) throws IOException {
+        byte[] baseBytes = base.getBytes(StandardCharsets.UTF_8);
+        byte[] targetBytes = target.getBytes(StandardCharsets.UTF_8);
+
+        DeltaCodec.Delta delta = codec.decode(new ByteArrayInputStream(codec.encode(BASE_HASH, baseBytes, targetBytes)));
+
+        assertThat(delta.baseHash()).isEqualTo(BASE_HASH);
+        assertThat(delta.prefix()).isEqualTo(prefix);
+        assertThat(delta.suffix()).isEqualTo(suffix);
+        assertThat(delta.replacement()).hasSize(targetBytes.length - prefix - suffix);
+        assertThat(codec.apply(delta, baseBytes)).isEqualTo(targetBytes);
+    }
+
+    @Test
+    void deltaOfSmallChangeIsSmall() throws IOException {
+        byte[] base = ("{\"padding\":\"" + "x".repeat(10_000) + "\"," + SETTINGS.substring(1))
+                .getBytes(StandardCharsets.UTF_8);
+        byte[] target = new String(base, StandardCharsets.UTF_8).replace("token-1", "token-2")
+                .getBytes(StandardCharsets.UTF_8);
+
+        assertThat(codec.encode(BASE_HASH, base, target)).hasSizeLessThan(200);
+    }
+
+    @Test
+    void applyRejectsDeltaForShorterBase() throws IOException {
+        byte[] encoded = codec.encode(BASE_HASH, SETTINGS.getBytes(StandardCharsets.UTF_8),
+                SETTINGS.replace("token-1", "token-2").getBytes(StandardCharsets.UTF_8));
+        DeltaCodec.Delta delta = codec.decode(new ByteArrayInputStream(encoded));
+
+        assertThatThrownBy(() -> codec.apply(delta, new byte[10]))
+                .isInstanceOf(IOException.class)
+                .hasMessageContaining("does not match its base");
+    }
+
+    @Test
+    void decodeRejectsForeignAndTruncatedContent() throws IOException {
+        byte[] encoded = codec.encode(BASE_HASH, new byte[0], SETTINGS.getBytes(StandardCharsets.UTF_8));
+
+        assertThatThrownBy(() -> codec.decode(new ByteArrayInputStream(SETTINGS.getBytes(StandardCharsets.UTF_8))))
+                .isInstanceOf(IOException.class)
+                .hasMessage("Not a backup delta");
+        assertThatThrownBy(() -> codec.decode(new ByteArrayInputStream(Arrays.copyOf(encoded, encoded.length - 1))))
+                .isInstanceOf(IOException.class)
+                .hasMessage("Truncated backup delta");
+    }
+}
@@ -0,0 +1,332 @@
+package io.github.samzhu.gate.util;
+
+import io.github.samzhu.gate.TempHomeSupport;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
+import java.nio.channels.FileLock;
+import java.nio.channels.OverlappingFileLockException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.FileTime;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class FileUtilTest extends TempHomeSupport {
+
+    private static final Duration LOCK_TIMEOUT = Duration.ofMillis(200);
+
+    private String guarded;
+    private Path lockFile;
+
+    @BeforeEach
+    void setUp() {
+        properties.setLockTimeout(LOCK_TIMEOUT);
+        guarded = tempDir.resolve("settings.json").toString();
+        lockFile = fileUtil.lockPath(guarded);
+    }
+
+    @Test
+    void lockFilesLiveUnderGateCliLocks() throws Exception {
+        try (FileUtil.FileLockHandle lock = fileUtil.lockExclusive(guarded)) {
+            assertThat(lockFile.getParent()).isEqualTo(tempDir.resolve(".gate-cli/locks"));
+            assertThat(lockFile.getFileName().toString()).startsWith("settings.json-").endsWith(".lock");
+            assertThat(fileLockHeld()).isTrue();
+        }
+        // Nothing is left next to the guarded file
+        assertThat(tempDir.resolve("settings.json.lock")).doesNotExist();
+        // Same file name in another directory, different lock
+        assertThat(fileUtil.lockPath(tempDir.resolve("other/settings.json").toString())).isNotEqualTo(lockFile);
+        assertThat(fileUtil.lockPath("~/settings.json")).isEqualTo(lockFile);
+    }
+
+    @Test
+    void sameThreadReentersAndReleasesOnOutermostClose() throws Exception {
+        FileUtil.FileLockHandle outer = fileUtil.lockExclusive(guarded);
+        try (FileUtil.FileLockHandle inner = fileUtil.lockExclusive(guarded);
+             FileUtil.FileLockHandle nestedShared = fileUtil.lockShared(guarded)) {
+            assertThat(fileLockHeld()).isTrue();
+        }
+
+        // Closing the nested handles keeps the lock
+        assertThat(fileLockHeld()).isTrue();
+        assertThat(lockFromOtherThread()).isFalse();
+
+        outer.close();
+        assertThat(fileLockHeld()).isFalse();
+        assertThat(lockFromOtherThread()).isTrue();
+    }
+
+    @Test
+    void closingHandleTwiceReleasesOnlyOneLevel() throws Exception {
+        try (FileUtil.FileLockHandle outer = fileUtil.lockExclusive(guarded)) {
+            FileUtil.FileLockHandle inner = fileUtil.lockExclusive(guarded);
+            inner.close();
+            inner.close();
+            assertThat(fileLockHeld()).isTrue();
+        }
+        assertThat(fileLockHeld()).isFalse();
+    }
+
+    @Test
+    void sharedLockCannotBeUpgradedToExclusive() throws Exception {
+        try (FileUtil.FileLockHandle shared = fileUtil.lockShared(guarded)) {
+            assertThatThrownBy(() -> fileUtil.lockExclusive(guarded))
+                    .isInstanceOf(IllegalStateException.class)
+                    .hasMessageContaining("Cannot upgrade shared lock to exclusive");
+
+            // The rejected upgrade leaves the shared lock held once
+            assertThat(fileLockHeld()).isTrue();
+        }
+        assertThat(fileLockHeld()).isFalse();
+        assertThat(lockFromOtherThread()).isTrue();
+    }
+
+    @Test
+    void lockTimesOutWhileAnotherThreadHoldsIt() throws Exception {
+        try (FileUtil.FileLockHandle held = fileUtil.lockShared(guarded)) {
+            long start = System.nanoTime();
+            CompletableFuture<Void> waiter = CompletableFuture.runAsync(() -> {
+                try (FileUtil.FileLockHandle other = fileUtil.lockShared(guarded)) {
+                    throw new AssertionError("Lock acquired while held by another thread");
+                } catch (IOException e) {
+                    assertThat(e).hasMessageContaining("Timed out after " + LOCK_TIMEOUT.toMillis() + " ms");
+                }
+            });
+            waiter.get();
+            assertThat(Duration.ofNanos(System.nanoTime() - start)).isGreaterThanOrEqualTo(LOCK_TIMEOUT);
+        }
+    }
+
+    @Test
+    void virtualThreadsTakeTurns() throws Exception {
+        // Unsynchronized read-increment-write: only correct if the lock serializes the threads
+        int threads = 8;
+        int[] counter = new int[1];
+        properties.setLockTimeout(Duration.ofSeconds(10));
+        try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+            List<Future<?>> futures = new ArrayList<>();
+            for (int i = 0; i < threads; i++) {
+                futures.add(executor.submit(() -> {
+                    try (FileUtil.FileLockHandle lock = fileUtil.lockExclusive(guarded)) {
+                        int seen = counter[0];
+                        Thread.sleep(5);
+                        counter[0] = seen + 1;
+                    }
+                    return null;
+                }));
+            }
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        }
+        assertThat(counter[0]).isEqualTo(threads);
+        assertThat(fileLockHeld()).isFalse();
+    }
+
+    @Test
+    void writeOfUnchangedContentIsElided() throws IOException {
+        Path target = writeTarget("{\"env\":{}}");
+        FileTime written = Files.getLastModifiedTime(target);
+
+        assertThat(fileUtil.atomicWrite(guarded, "{\"env\":{}}")).isFalse();
+        assertThat(fileUtil.atomicWrite(guarded, out -> out.write("{\"env\":{}}".getBytes(StandardCharsets.UTF_8))))
+                .isFalse();
+
+        // Neither the rename nor the temp file happened
+        assertThat(Files.getLastModifiedTime(target)).isEqualTo(written);
+        assertThat(tempFiles()).isEmpty();
+        assertThat(writes("elided")).isEqualTo(2.0);
+        assertThat(writes("written")).isZero();
+    }
+
+    @Test
+    void writeOfChangedContentIsNotElided() throws IOException {
+        Path target = writeTarget("{\"env\":{}}");
+
+        // Same size, different content
+        assertThat(fileUtil.atomicWrite(guarded, "{\"ENV\":{}}")).isTrue();
+        assertThat(fileUtil.atomicWrite(guarded, out -> out.write("{}".getBytes(StandardCharsets.UTF_8)))).isTrue();
+
+        assertThat(target).hasContent("{}");
+        assertThat(writes("written")).isEqualTo(2.0);
+        assertThat(writes("elided")).isZero();
+    }
+
+    @Test
+    void elidedWriteStillRestrictsPermissions() throws IOException {
+        assumeTrue(FileSystems.getDefault().supportedFileAttributeViews().contains("posix"));
+        Path target = writeTarget("token");
+        Files.setPosixFilePermissions(target, PosixFilePermissions.fromString("rw-r--r--"));
+
+        assertThat(fileUtil.atomicWrite(guarded, "token")).isFalse();
+        assertThat(PosixFilePermissions.toString(Files.getPosixFilePermissions(target))).isEqualTo("rw-------");
+
+        Files.setPosixFilePermissions(target, PosixFilePermissions.fromString("rw-r--r--"));
+        assertThat(fileUtil.atomicWrite(guarded, out -> out.write("token".getBytes(StandardCharsets.UTF_8)))).isFalse();
+        assertThat(PosixFilePermissions.toString(Files.getPosixFilePermissions(target))).isEqualTo("rw-------");
+    }
+
+    @Test
+    void rewriteTransformsCurrentContent() throws IOException {
+        Path target = writeTarget("{\"env\":{}}");
+
+        boolean written = fileUtil.atomicRewrite(target.toString(), FileUtilTest::upperCase);
+
+        assertThat(written).isTrue();
+        assertThat(target).hasContent("{\"ENV\":{}}");
+        assertThat(conflicts()).isZero();
+    }
+
+    @Test
+    void rewriteRetriesFromConcurrentEdit() throws IOException {
+        Path target = writeTarget("original");
+        AtomicInteger attempts = new AtomicInteger();
+
+        fileUtil.atomicRewrite(target.toString(), (in, out) -> {
+            upperCase(in, out);
+            if (attempts.incrementAndGet() == 1) {
+                Files.writeString(target, "concurrent edit");
+            }
+        });
+
+        // The second attempt starts over from the concurrent edit instead of overwriting it
+        assertThat(attempts).hasValue(2);
+        assertThat(target).hasContent("CONCURRENT EDIT");
+        assertThat(conflicts()).isEqualTo(1.0);
+        assertThat(tempFiles()).isEmpty();
+    }
+
+    @Test
+    void rewriteDetectsSameSizeEditByDigest() throws IOException {
+        Path target = writeTarget("aaaa");
+        AtomicInteger attempts = new AtomicInteger();
+
+        fileUtil.atomicRewrite(target.toString(), (in, out) -> {
+            upperCase(in, out);
+            if (attempts.incrementAndGet() == 1) {
+                Files.writeString(target, "bbbb");
+                touch(target);
+            }
+        });
+
+        assertThat(attempts).hasValue(2);
+        assertThat(target).hasContent("BBBB");
+        assertThat(conflicts()).isEqualTo(1.0);
+    }
+
+    @Test
+    void rewriteIgnoresTouchWithoutContentChange() throws IOException {
+        Path target = writeTarget("aaaa");
+        AtomicInteger attempts = new AtomicInteger();
+
+        fileUtil.atomicRewrite(target.toString(), (in, out) -> {
+            upperCase(in, out);
+            attempts.incrementAndGet();
+            touch(target);
+        });
+
+        // Same size and digest: the stat changed but the content did not
+        assertThat(attempts).hasValue(1);
+        assertThat(target).hasContent("AAAA");
+        assertThat(conflicts()).isZero();
+    }
+
+    @Test
+    void rewriteGivesUpWhenFileKeepsChanging() throws IOException {
+        Path target = writeTarget("original");
+        AtomicInteger attempts = new AtomicInteger();
+
+        assertThatThrownBy(() -> fileUtil.atomicRewrite(target.toString(), (in, out) -> {
+            upperCase(in, out);
+            // A different size every time, so the edit is seen even within one mtime tick
+            Files.writeString(target, "edit".repeat(attempts.incrementAndGet()));
+        })).isInstanceOf(FileUtil.FileChangedException.class);
+
+        assertThat(attempts).hasValue(3);
+        assertThat(target).hasContent("editeditedit");
+        assertThat(conflicts()).isEqualTo(3.0);
+        assertThat(tempFiles()).isEmpty();
+    }
+
+    private Path writeTarget(String content) throws IOException {
+        Path target = Path.of(guarded);
+        Files.writeString(target, content);
+        // Older than any write the test makes, so every edit changes the mtime
+        Files.setLastModifiedTime(target, FileTime.from(Instant.now().minus(Duration.ofHours(1))));
+        return target;
+    }
+
+    private static void upperCase(InputStream in, OutputStream out) throws IOException {
+        out.write(new String(in.readAllBytes(), StandardCharsets.UTF_8)
+                .toUpperCase(Locale.ROOT).getBytes(StandardCharsets.UTF_8));
+    }
+
+    private static void touch(Path path) throws IOException {
+        Files.setLastModifiedTime(path, FileTime.from(Instant.now().plus(Duration.ofMinutes(1))));
+    }
+
+    private double writes(String result) {
+        return meterRegistry.counter("gate.file.writes", "result", result).count();
+    }
+
+    private double conflicts() {
+        return meterRegistry.counter("gate.file.rewrite.conflicts").count();
+    }
+
+    private List<Path> tempFiles() throws IOException {
+        try (Stream<Path> files = Files.list(tempDir)) {
+            return files.filter(file -> file.getFileName().toString().endsWith(".tmp")).toList();
+        }
+    }
+
+    /**
+     * Tries to lock the guarded file exclusively from another thread, with the configured timeout.
+     */
+    private boolean lockFromOtherThread() throws InterruptedException, ExecutionException {
+        return CompletableFuture.supplyAsync(() -> {
+            try (FileUtil.FileLockHandle handle = fileUtil.lockExclusive(guarded)) {
+                return true;
+            } catch (IOException e) {
+                return false;
+            }
+        }).get();
+    }
+
+    /**
+     * Whether this process still holds the OS-level lock on the sidecar lock file.
+     */
+    private boolean fileLockHeld() throws IOException {
+        try (FileChannel channel = FileChannel.open(lockFile, StandardOpenOption.WRITE)) {
+            FileLock lock = channel.tryLock();
+            if (lock != null) {
+                lock.release();
+            }
+            return false;
+        } catch (OverlappingFileLockException e) {
+            return true;
+        }
+    }
+}
@@ -0,0 +1,241 @@
+package io.github.samzhu.gate.util;
+
+import com.fasterxml.jackson.databind.node.JsonNodeFactory;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import io.github.samzhu.gate.TempHomeSupport;
+import io.github.samzhu.gate.model.ConnectionConfig;
+import io.github.samzhu.gate.service.ConfigurationService;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.util.unit.DataSize;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.PosixFilePermissions;
+import java.util.List;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.junit.jupiter.api.Assumptions.assumeTrue;
+
+class JsonJournalTest extends TempHomeSupport {
+
+    private static final String BASE = "a".repeat(64);
+
+    private final JsonJournal journal = new JsonJournal(fileUtil, properties);
+
+    private String journalPath;
+
+    @BeforeEach
+    void setUp() {
+        journalPath = tempDir.resolve("config.journal").toString();
+    }
+
+    @Test
+    void appendThenReplayAppliesRecordsInOrder() throws IOException {
+        journal.append(journalPath, BASE, patch("apiUrl", "https://one"));
+        journal.append(journalPath, BASE, patch("apiUrl", "https://two").put("clientId", "cli"));
+        ObjectNode removal = object();
+        removal.putNull("clientSecret");
+        journal.append(journalPath, BASE, removal);
+
+        ObjectNode snapshot = object().put("clientSecret", "secret").put("version", "2.0");
+        JsonJournal.Replay replay = journal.replay(journalPath, BASE, snapshot);
+
+        assertThat(replay.applied()).isEqualTo(3);
+        assertThat(replay.intact()).isTrue();
+        assertThat(snapshot).isEqualTo(object()
+                .put("version", "2.0")
+                .put("apiUrl", "https://two")
+                .put("clientId", "cli"));
+    }
+
+    @Test
+    void replayOfMissingJournalAppliesNothing() throws IOException {
+        ObjectNode snapshot = object().put("apiUrl", "https://one");
+
+        assertThat(journal.replay(journalPath, BASE, snapshot).applied()).isZero();
+        assertThat(snapshot).isEqualTo(object().put("apiUrl", "https://one"));
+    }
+
+    @Test
+    void appendCutsOffTornTail() throws IOException {
+        journal.append(journalPath, BASE, patch("apiUrl", "https://one"));
+        // A crash in the middle of a record leaves a partial line without newline
+        Files.writeString(Path.of(journalPath), "1234abcd {\"apiUrl\":\"https://to",
+                StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+
+        journal.append(journalPath, BASE, patch("clientId", "cli"));
+
+        List<String> lines = Files.readAllLines(Path.of(journalPath));
+        assertThat(lines).hasSize(3);
+        assertThat(lines).noneMatch(line -> line.contains("https://to"));
+        ObjectNode snapshot = object();
+        assertThat(journal.replay(journalPath, BASE, snapshot).applied()).isEqualTo(2);
+        assertThat(snapshot).isEqualTo(object().put("apiUrl", "https://one").put("clientId", "cli"));
+    }
+
+    @Test
+    void appendCutsOffTornTailLongerThanOneScanBlock() throws IOException {
+        journal.append(journalPath, BASE, patch("apiUrl", "https://one"));
+        Files.writeString(Path.of(journalPath), "1234abcd {\"apiUrl\":\"" + "x".repeat(10_000),
+                StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+
+        journal.append(journalPath, BASE, patch("clientId", "cli"));
+
+        assertThat(Files.readAllLines(Path.of(journalPath))).hasSize(3);
+        ObjectNode snapshot = object();
+        assertThat(journal.replay(journalPath, BASE, snapshot).applied()).isEqualTo(2);
+        assertThat(snapshot).isEqualTo(object().put("apiUrl", "https://one").put("clientId", "cli"));
+    }
+
+    @Test
+    void replayIgnoresTornTail() throws IOException {
+        journal.append(journalPath, BASE, patch("apiUrl", "https://one"));
+        Files.writeString(Path.of(journalPath), "1234abcd {\"apiUrl\":\"https://to",
+                StandardCharsets.UTF_8, StandardOpenOption.APPEND);
+
+        ObjectNode snapshot = object();
+        JsonJournal.Replay replay = journal.replay(journalPath, BASE, snapshot);
+
+        // An interrupted append, not a lost record
+        assertThat(replay.applied()).isEqualTo(1);
+        assertThat(replay.intact()).isTrue();
+        assertThat(snapshot).isEqualTo(object().put("apiUrl", "https://one"));
+    }
+
+    @Test
+    void replayStopsAtCorruptRecord() throws IOException {
+        journal.append(journalPath, BASE, patch("apiUrl", "https://one"));
+        journal.append(journalPath, BASE, patch("clientId", "cli"));
+        journal.append(journalPath, BASE, patch("issuerUri", "https://issuer"));
+
+        // Flip a byte inside the second patch record so its checksum no longer matches
+        List<String> lines = Files.readAllLines(Path.of(journalPath));
+        lines.set(2, lines.get(2).replace("cli", "clj"));
+        Files.write(Path.of(journalPath), lines);
+
+        ObjectNode snapshot = object();
+        JsonJournal.Replay replay = journal.replay(journalPath, BASE, snapshot);
+
+        // Later records may depend on the lost one, so none of them are applied
+        assertThat(replay.applied()).isEqualTo(1);
+        assertThat(replay.dropped()).isEqualTo(2);
+        assertThat(replay.intact()).isFalse();
+        assertThat(snapshot).isEqualTo(object().put("apiUrl", "https://one"));
+    }
+
+    @Test
+    void replayIgnoresJournalStartedOnAnotherSnapshot() throws IOException {
+        journal.append(journalPath, BASE, patch("apiUrl", "https://one"));
+
+        ObjectNode snapshot = object().put("apiUrl", "https://edited");
+        assertThat(journal.replay(journalPath, "b".repeat(64), snapshot).applied()).isZero();
+        assertThat(snapshot).isEqualTo(object().put("apiUrl", "https://edited"));
+    }
+
+    @Test
+    void appendDiscardsJournalStartedOnAnotherSnapshot() throws IOException {
+        String otherBase = "b".repeat(64);
+        journal.append(journalPath, BASE, patch("apiUrl", "https://one"));
+
+        journal.append(journalPath, otherBase, patch("clientId", "cli"));
+
+        ObjectNode snapshot = object();
+        assertThat(journal.replay(journalPath, otherBase, snapshot).applied()).isEqualTo(1);
+        assertThat(snapshot).isEqualTo(object().put("clientId", "cli"));
+    }
+
+    @Test
+    void replayIgnoresJournalWithoutHeader() throws IOException {
+        // Journals written before headers existed start directly with a patch record
+        Files.writeString(Path.of(journalPath), "00000000 {\"apiUrl\":\"https://one\"}\n");
+
+        ObjectNode snapshot = object();
+        assertThat(journal.replay(journalPath, BASE, snapshot).applied()).isZero();
+        assertThat(snapshot).isEmpty();
+    }
+
+    @Test
+    void journalIsOwnerOnly() throws IOException {
+        assumeTrue(FileSystems.getDefault().supportedFileAttributeViews().contains("posix"));
+
+        journal.append(journalPath, BASE, patch("clientSecret", "secret"));
+        assertThat(PosixFilePermissions.toString(Files.getPosixFilePermissions(Path.of(journalPath))))
+                .isEqualTo("rw-------");
+
+        // An existing world-readable journal is tightened on the next append
+        Files.setPosixFilePermissions(Path.of(journalPath), PosixFilePermissions.fromString("rw-r--r--"));
+        journal.append(journalPath, BASE, patch("clientSecret", "other"));
+        assertThat(PosixFilePermissions.toString(Files.getPosixFilePermissions(Path.of(journalPath))))
+                .isEqualTo("rw-------");
+    }
+
+    @Test
+    void compactionClearsJournal() {
+        properties.setJournalCompactionThreshold(DataSize.ofBytes(1));
+        ConfigurationService configurationService = newConfigurationService();
+        Path configJournal = tempDir.resolve(".gate-cli/config.journal");
+
+        configurationService.setApiUrl("https://one");
+        configurationService.setClientId("cli");
+
+        assertThat(configJournal).doesNotExist();
+        assertThat(newConfigurationService().readConfig().getSettings().getApiUrl()).isEqualTo("https://one");
+        assertThat(newConfigurationService().readConfig().getSettings().getClientId()).isEqualTo("cli");
+    }
+
+    @Test
+    void handEditedConfigWinsOverJournal() throws IOException {
+        ConfigurationService configurationService = newConfigurationService();
+        Path configFile = tempDir.resolve(".gate-cli/config.json");
+
+        configurationService.setApiUrl("https://one");
+        configurationService.setApiUrl("https://two");
+        assertThat(tempDir.resolve(".gate-cli/config.journal")).exists();
+
+        Files.writeString(configFile, Files.readString(configFile).replace("https://one", "https://edited"));
+
+        assertThat(newConfigurationService().readConfig().getSettings().getApiUrl()).isEqualTo("https://edited");
+    }
+
+    @Test
+    void updateAfterCorruptRecordCompactsAndKeepsDamagedJournal() throws IOException {
+        ConfigurationService configurationService = newConfigurationService();
+        Path configJournal = tempDir.resolve(".gate-cli/config.journal");
+
+        configurationService.setApiUrl("https://one");
+        configurationService.setApiUrl("https://two");
+        configurationService.setClientId("cli");
+        List<String> lines = Files.readAllLines(configJournal);
+        lines.set(1, lines.get(1).replace("https://two", "https://twp"));
+        Files.write(configJournal, lines);
+
+        ConfigurationService reader = newConfigurationService();
+        assertThat(reader.readConfig().getSettings().getApiUrl()).isEqualTo("https://one");
+        assertThat(reader.readConfig().getSettings().getClientId()).isNull();
+
+        reader.setClientSecret("secret");
+
+        assertThat(configJournal).doesNotExist();
+        assertThat(Files.readAllLines(tempDir.resolve(".gate-cli/config.journal.corrupted"))).isEqualTo(lines);
+        ConnectionConfig.Settings settings = newConfigurationService().readConfig().getSettings();
+        assertThat(settings.getApiUrl()).isEqualTo("https://one");
+        assertThat(settings.getClientSecret()).isEqualTo("secret");
+    }
+
+    private ConfigurationService newConfigurationService() {
+        return new ConfigurationService(fileUtil, journal, properties, meterRegistry);
+    }
+
+    private static ObjectNode patch(String field, String value) {
+        return object().put(field, value);
+    }
+
+    private static ObjectNode object() {
+        return JsonNodeFactory.instance.objectNode();
+    }
+}
@@ -0,0 +1,82 @@
+package io.github.samzhu.gate.util;
+
+import com.fasterxml.jackson.core.JsonParseException;
+import io.github.samzhu.gate.config.GateCliProperties;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.ByteArrayInputStream;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.stream.Stream;
+
+import static org.assertj.core.api.Assertions.assertThatCode;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+
+class JsonValidatorTest {
+
+    private final JsonValidator validator =
+            new JsonValidator(new FileUtil(new GateCliProperties(), new SimpleMeterRegistry()));
+
+    @ParameterizedTest
+    @ValueSource(strings = {
+            "{}",
+            "{\"env\":{\"MAX_TOKENS\":4096},\"permissions\":\"all\"}",
+            "[1, 2, 3]",
+            "\"text\"",
+            "  {\"nested\":{\"a\":[{}]}}\n"
+    })
+    void wellFormedAcceptsAnySingleValue(String json) {
+        assertThatCode(() -> validator.validateWellFormed(stream(json))).doesNotThrowAnyException();
+    }
+
+    @ParameterizedTest
+    @ValueSource(strings = {"", "   ", "{\"env\":", "{\"a\":1,}", "{} {}", "{}]"})
+    void wellFormedRejectsMalformedContent(String json) {
+        assertThatThrownBy(() -> validator.validateWellFormed(stream(json)))
+                .isInstanceOf(JsonParseException.class);
+    }
+
+    @Test
+    void settingsAcceptsExpectedShapeAndIgnoresOtherFields() {
+        String json = """
+                {"env":{"ANTHROPIC_AUTH_TOKEN":"t"},
+                 "permissions":{"allow":["Bash"],"deny":[],"ask":["Edit"],"defaultMode":"plan"},
+                 "apiKeyHelper":"helper.sh",
+                 "model":"opus","hooks":{"PreToolUse":[{"matcher":1}]}}
+                """;
+
+        assertThatCode(() -> validator.validateSettings(stream(json))).doesNotThrowAnyException();
+    }
+
+    static Stream<Arguments> wrongShapes() {
+        return Stream.of(
+                // settings.json, expected message
+                Arguments.of("[]", "Settings root must be an object"),
+                Arguments.of("{\"env\":[]}", "'env' must be an object"),
+                Arguments.of("{\"env\":{\"MAX_TOKENS\":4096}}", "'env.MAX_TOKENS' must be a string"),
+                Arguments.of("{\"permissions\":[]}", "'permissions' must be an object"),
+                Arguments.of("{\"permissions\":{\"allow\":\"Bash\"}}", "'permissions.allow' must be an array"),
+                Arguments.of("{\"permissions\":{\"deny\":[\"Bash\",1]}}",
+                        "'permissions.deny' must only contain strings"),
+                Arguments.of("{\"apiKeyHelper\":true}", "'apiKeyHelper' must be a string"),
+                Arguments.of("{} []", "Unexpected content after root value"));
+    }
+
+    @ParameterizedTest(name = "{0}")
+    @MethodSource("wrongShapes")
+    void settingsRejectsWrongShape(String json, String message) {
+        assertThatThrownBy(() -> validator.validateSettings(stream(json)))
+                .isInstanceOf(JsonParseException.class)
+                .extracting(e -> ((JsonParseException) e).getOriginalMessage())
+                .isEqualTo(message);
+    }
+
+    private static InputStream stream(String json) {
+        return new ByteArrayInputStream(json.getBytes(StandardCharsets.UTF_8));
+    }
+}
@@ -0,0 +1,151 @@
+package io.github.samzhu.gate.util;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.JsonNode;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.fasterxml.jackson.databind.node.ArrayNode;
+import com.fasterxml.jackson.databind.node.ObjectNode;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.ValueSource;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.assertj.core.api.Assertions.assertThat;
+import static org.assertj.core.api.Assertions.assertThatThrownBy;
+import static org.junit.jupiter.api.Assertions.assertTimeout;
+
+class SettingsEnvPatcherTest {
+
+    private final SettingsEnvPatcher patcher = new SettingsEnvPatcher();
+    private final ObjectMapper objectMapper = new ObjectMapper();
+
+    @Test
+    void patchKeepsUnknownKeysNestedObjectsAndArrays() throws IOException {
+        String settings = """
+                {
+                  "model": "opus",
+                  "hooks": {"PreToolUse": [{"matcher": "Bash", "hooks": [{"type": "command", "command": "x"}]}]},
+                  "permissions": {"allow": ["Read", "Edit"], "deny": []},
+                  "env": {"KEEP": "1", "ANTHROPIC_BASE_URL": "https://old"},
+                  "numbers": [1, 2.5, true, null],
+                  "empty": {}
+                }
+                """;
+
+        JsonNode patched = patch(settings, Map.of("ANTHROPIC_BASE_URL", "https://new"));
+
+        ObjectNode expected = (ObjectNode) objectMapper.readTree(settings);
+        ((ObjectNode) expected.get("env")).put("ANTHROPIC_BASE_URL", "https://new");
+        assertThat(patched).isEqualTo(expected);
+    }
+
+    @Test
+    void patchAppendsNewKeysToEnd() throws IOException {
+        JsonNode patched = patch("{\"env\": {\"A\": \"1\"}}", Map.of("B", "2"));
+
+        assertThat(patched.get("env").fieldNames()).toIterable().containsExactly("A", "B");
+    }
+
+    @Test
+    void patchAddsEnvWhenMissing() throws IOException {
+        JsonNode patched = patch("{\"model\": \"opus\"}", Map.of("A", "1"));
+
+        assertThat(patched.get("model").asText()).isEqualTo("opus");
+        assertThat(patched.get("env").get("A").asText()).isEqualTo("1");
+    }
+
+    @Test
+    void nullValueRemovesKey() throws IOException {
+        Map<String, String> changes = new HashMap<>();
+        changes.put("ANTHROPIC_AUTH_TOKEN", null);
+
+        JsonNode patched = patch("{\"env\": {\"ANTHROPIC_AUTH_TOKEN\": \"secret\", \"KEEP\": \"1\"}}", changes);
+
+        assertThat(patched.get("env").has("ANTHROPIC_AUTH_TOKEN")).isFalse();
+        assertThat(patched.get("env").get("KEEP").asText()).isEqualTo("1");
+    }
+
+    @Test
+    void nullValueForMissingKeyWritesNothing() throws IOException {
+        Map<String, String> changes = new HashMap<>();
+        changes.put("ABSENT", null);
+
+        JsonNode patched = patch("{\"env\": {\"KEEP\": \"1\"}}", changes);
+
+        assertThat(patched.get("env")).isEqualTo(objectMapper.readTree("{\"KEEP\": \"1\"}"));
+    }
+
+    @Test
+    void nonObjectRootThrows() {
+        for (String root : List.of("[]", "\"text\"", "42", "null")) {
+            assertThatThrownBy(() -> patch(root, Map.of("A", "1")))
+                    .as(root)
+                    .isInstanceOf(JsonProcessingException.class);
+        }
+    }
+
+    @Test
+    void trailingContentThrows() {
+        assertThatThrownBy(() -> patch("{} {}", Map.of("A", "1")))
+                .isInstanceOf(JsonProcessingException.class);
+    }
+
+    @Test
+    void writeNewSkipsRemovals() throws IOException {
+        Map<String, String> changes = new LinkedHashMap<>();
+        changes.put("A", "1");
+        changes.put("B", null);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        patcher.writeNew(out, changes);
+
+        assertThat(objectMapper.readTree(out.toByteArray()))
+                .isEqualTo(objectMapper.readTree("{\"env\": {\"A\": \"1\"}}"));
+    }
+
+    /**
+     * Streaming keeps the cost proportional to the document size, so even a 5 MB
+     * settings file (large hook and permission lists) patches well within the bound.
+     */
+    @ParameterizedTest
+    @ValueSource(ints = {1024, 100 * 1024, 5 * 1024 * 1024})
+    void patchScalesToLargeDocuments(int size) throws IOException {
+        String settings = largeSettings(size);
+        assertThat(settings.length()).isGreaterThanOrEqualTo(size);
+
+        JsonNode patched = assertTimeout(Duration.ofSeconds(10),
+                () -> patch(settings, Map.of("ANTHROPIC_AUTH_TOKEN", "new")));
+
+        ObjectNode expected = (ObjectNode) objectMapper.readTree(settings);
+        ((ObjectNode) expected.get("env")).put("ANTHROPIC_AUTH_TOKEN", "new");
+        assertThat(patched).isEqualTo(expected);
+    }
+
+    private JsonNode patch(String settings, Map<String, String> changes) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        patcher.patch(new ByteArrayInputStream(settings.getBytes(StandardCharsets.UTF_8)), out, changes);
+        return objectMapper.readTree(out.toByteArray());
+    }
+
+    private String largeSettings(int size) throws JsonProcessingException {
+        ObjectNode root = objectMapper.createObjectNode();
+        root.putObject("env").put("ANTHROPIC_AUTH_TOKEN", "old");
+        ArrayNode allow = root.putObject("permissions").putArray("allow");
+        // Each entry adds its text plus quotes and a comma
+        for (int i = 0, length = 0; length < size; i++) {
+            String entry = "Bash(command-" + i + ":*)";
+            allow.add(entry);
+            length += entry.length() + 3;
+        }
+        return objectMapper.writeValueAsString(root);
+    }
+}